@@ -0,0 +1,43 @@
+/*
+ * License: Apache License, Version 2.0
+ * See http://www.apache.org/licenses/LICENSE-2.0
+ */
+package org.hibernate.testing.db
+
+/**
+ * Stands in for the extension within the extension block of a profile fragment, noticing the
+ * fragment configuring anything other than the profiles.
+ *
+ * @see ProfileFragmentTarget#extensionConfigured
+ */
+class ProfileFragmentExtensionTarget {
+	private final ProfileFragmentTarget fragmentTarget
+
+	ProfileFragmentExtensionTarget(ProfileFragmentTarget fragmentTarget) {
+		this.fragmentTarget = fragmentTarget
+	}
+
+	def getProfiles() {
+		return fragmentTarget.dslExtension.profiles
+	}
+
+	void profiles(Closure<?> closure) {
+		closure.setDelegate( fragmentTarget.dslExtension.profiles )
+		closure.call()
+	}
+
+	def methodMissing(String name, args) {
+		fragmentTarget.extensionConfigured = true
+		return fragmentTarget.dslExtension.invokeMethod( name, args )
+	}
+
+	def propertyMissing(String name) {
+		fragmentTarget.extensionConfigured = true
+		return fragmentTarget.dslExtension."$name"
+	}
+
+	def propertyMissing(String name, value) {
+		fragmentTarget.extensionConfigured = true
+		fragmentTarget.dslExtension."$name" = value
+	}
+}
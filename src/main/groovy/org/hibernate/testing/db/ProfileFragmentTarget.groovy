@@ -13,9 +13,15 @@ package org.hibernate.testing.db
  * @author Steve Ebersole
  */
 class ProfileFragmentTarget {
-	private final DslExtension dslExtension
+	final DslExtension dslExtension
 	private final ProfileCreator profileCreator;
 
+	/**
+	 * Whether a fragment configured the extension itself (rather than just its profiles), which
+	 * affects the project loading the fragment only
+	 */
+	boolean extensionConfigured
+
 	ProfileFragmentTarget(DslExtension dslExtension, ProfileCreator profileCreator) {
 		this.dslExtension = dslExtension
 		this.profileCreator = profileCreator;
@@ -25,7 +31,7 @@ class ProfileFragmentTarget {
 		final Closure<?> closure = (Closure<?>) args[0];
 
 		if ( name == Helper.DSL_NAME ) {
-			closure.setDelegate( dslExtension )
+			closure.setDelegate( new ProfileFragmentExtensionTarget( this ) )
 			closure.call()
 		}
 		else if ( name == 'profiles' ) {
@@ -6,6 +6,7 @@ package org.hibernate.testing.db;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
@@ -13,10 +14,18 @@ import org.gradle.api.tasks.testing.Test;
 import org.gradle.api.tasks.testing.TestDescriptor;
 import org.gradle.api.tasks.testing.TestResult;
 
+import groovy.lang.Closure;
+
 /**
  * @author Steve Ebersole
  */
 public abstract class AbstractActionContainer {
+	/**
+	 * Option for the before/after each test actions indicating that the action must be performed
+	 * synchronously, in order with the test events, rather than asynchronously in the background
+	 */
+	public static final String SYNCHRONOUS = "synchronous";
+
 	private List<Consumer<Test>> beforeTestTaskActions;
 	private List<Consumer<Test>> afterTestTaskActions;
 
@@ -41,6 +50,10 @@ public abstract class AbstractActionContainer {
 		beforeTestTaskActions.add( action );
 	}
 
+	public void beforeTestTask(Closure<?> action) {
+		beforeTestTask( new ClosureConsumer<>( action ) );
+	}
+
 	public void visitBeforeTestTaskActions(Consumer<Consumer<Test>> consumer) {
 		if ( beforeTestTaskActions == null ) {
 			return;
@@ -67,6 +80,10 @@ public abstract class AbstractActionContainer {
 		afterTestTaskActions.add( action );
 	}
 
+	public void afterTestTask(Closure<?> action) {
+		afterTestTask( new ClosureConsumer<>( action ) );
+	}
+
 	public void visitAfterTestTaskActions(Consumer<Consumer<Test>> consumer) {
 		if ( afterTestTaskActions == null ) {
 			return;
@@ -93,6 +110,21 @@ public abstract class AbstractActionContainer {
 		beforeEachTestActions.add( action );
 	}
 
+	public void beforeEachTest(Closure<?> action) {
+		beforeEachTest( new ClosureConsumer<>( action ) );
+	}
+
+	/**
+	 * Allows specifying options for the action - e.g. `beforeEachTest( synchronous: true ) { ... }`
+	 */
+	public void beforeEachTest(Map<String, ?> options, Consumer<TestDescriptor> action) {
+		beforeEachTest( isSynchronous( options ) ? new SynchronousConsumer<>( action ) : action );
+	}
+
+	public void beforeEachTest(Map<String, ?> options, Closure<?> action) {
+		beforeEachTest( options, new ClosureConsumer<>( action ) );
+	}
+
 	public void visitBeforeEachTestActions(Consumer<Consumer<TestDescriptor>> consumer) {
 		if ( beforeEachTestActions == null ) {
 			return;
@@ -119,10 +151,114 @@ public abstract class AbstractActionContainer {
 		afterEachTestActions.add( action );
 	}
 
+	public void afterEachTest(Closure<?> action) {
+		afterEachTest( new ClosureBiConsumer<>( action ) );
+	}
+
+	/**
+	 * Allows specifying options for the action - e.g. `afterEachTest( synchronous: true ) { ... }`
+	 */
+	public void afterEachTest(Map<String, ?> options, BiConsumer<TestDescriptor,TestResult> action) {
+		afterEachTest( isSynchronous( options ) ? new SynchronousBiConsumer<>( action ) : action );
+	}
+
+	public void afterEachTest(Map<String, ?> options, Closure<?> action) {
+		afterEachTest( options, new ClosureBiConsumer<>( action ) );
+	}
+
 	public void visitAfterEachTestActions(Consumer<BiConsumer<TestDescriptor,TestResult>> consumer) {
 		if ( afterEachTestActions == null ) {
 			return;
 		}
 		afterEachTestActions.forEach( consumer );
 	}
+
+
+	private static boolean isSynchronous(Map<String, ?> options) {
+		if ( options == null ) {
+			return false;
+		}
+
+		for ( String option : options.keySet() ) {
+			if ( ! SYNCHRONOUS.equals( option ) ) {
+				throw new ProfileCreationException( "Unknown test action option : " + option );
+			}
+		}
+
+		final Object synchronous = options.get( SYNCHRONOUS );
+		return synchronous instanceof Boolean ? (Boolean) synchronous : synchronous != null && Boolean.parseBoolean( synchronous.toString() );
+	}
+
+	/**
+	 * Whether the given before/after each test action was registered as
+	 * {@linkplain #SYNCHRONOUS synchronous}
+	 */
+	static boolean isSynchronous(Object action) {
+		return action instanceof SynchronousConsumer || action instanceof SynchronousBiConsumer;
+	}
+
+	/**
+	 * Marks a before each test action as {@linkplain #SYNCHRONOUS synchronous}
+	 */
+	private static class SynchronousConsumer<T> implements Consumer<T> {
+		private final Consumer<T> delegate;
+
+		private SynchronousConsumer(Consumer<T> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void accept(T value) {
+			delegate.accept( value );
+		}
+	}
+
+	/**
+	 * @see SynchronousConsumer
+	 */
+	private static class SynchronousBiConsumer<T,U> implements BiConsumer<T,U> {
+		private final BiConsumer<T,U> delegate;
+
+		private SynchronousBiConsumer(BiConsumer<T,U> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void accept(T first, U second) {
+			delegate.accept( first, second );
+		}
+	}
+
+	/**
+	 * Adapts a Closure as a Consumer.  Groovy's own coercion of a Closure to a functional
+	 * interface produces a Proxy, which the configuration-cache is not able to serialize
+	 */
+	private static class ClosureConsumer<T> implements Consumer<T> {
+		private final Closure<?> closure;
+
+		private ClosureConsumer(Closure<?> closure) {
+			this.closure = closure;
+		}
+
+		@Override
+		public void accept(T value) {
+			closure.call( value );
+		}
+	}
+
+	/**
+	 * @see ClosureConsumer
+	 */
+	private static class ClosureBiConsumer<T,U> implements BiConsumer<T,U> {
+		private final Closure<?> closure;
+
+		private ClosureBiConsumer(Closure<?> closure) {
+			this.closure = closure;
+		}
+
+		@Override
+		public void accept(T first, U second) {
+			closure.call( first, second );
+		}
+	}
 }
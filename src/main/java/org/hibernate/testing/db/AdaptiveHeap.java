@@ -0,0 +1,388 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.api.Action;
+import org.gradle.api.JavaVersion;
+import org.gradle.api.Task;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Sizes the heap of a profile's test JVMs based on how previous runs behaved.
+ *
+ * The forked JVMs write a GC log into `dbProfile/<name>/gc`.  When the Test task next runs,
+ * those logs are summarized (peak heap occupancy, total GC pause time, JVM uptime) into
+ * `dbProfile/<name>/jvm-history.properties` before the new JVMs are started.  The heap for
+ * the new JVMs is then sized from that history: the peak occupancy of the recent runs plus
+ * headroom, growing further when the last run spent too much of its time in GC.  Until there
+ * is history, the configured (or default) heap size is used.
+ *
+ * The history deliberately lags one run behind - recording it as the run starts means it is
+ * kept even when tests fail.  The heap arguments are not task inputs, so a change in sizing
+ * does not make the tests out-of-date.
+ */
+class AdaptiveHeap implements CommandLineArgumentProvider, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final String HISTORY_FILE_NAME = "jvm-history.properties";
+	static final String GC_LOG_DIRECTORY_NAME = "gc";
+
+	/**
+	 * How many runs are kept in the history
+	 */
+	static final int HISTORY_SIZE = 5;
+
+	/**
+	 * Headroom over the observed peak occupancy
+	 */
+	private static final double HEADROOM = 1.5;
+
+	/**
+	 * Fraction of JVM uptime spent in GC pauses above which the heap is grown
+	 */
+	private static final double GC_OVERHEAD_THRESHOLD = 0.05;
+
+	private static final long GRANULARITY_MB = 64;
+
+	// unified logging (JDK 9+) : `[1.234s] GC(3) Pause Young (Normal) (G1 Evacuation Pause) 23M->4M(256M) 3.116ms`
+	private static final Pattern UNIFIED_GC_LINE = Pattern.compile(
+			"^\\[([\\d.,]+)s\\].*?(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\)\\s+([\\d.,]+)ms"
+	);
+	// legacy logging (JDK 8) : `1.234: [GC (Allocation Failure)  33280K->1040K(125952K), 0.0032 secs]`
+	private static final Pattern LEGACY_GC_LINE = Pattern.compile(
+			"^([\\d.,]+): \\[.*?(\\d+)K->(\\d+)K\\((\\d+)K\\), ([\\d.,]+) secs\\]"
+	);
+
+	private final File historyFile;
+	private final File gcLogDirectory;
+	/**
+	 * Whether the forked JVMs use unified logging (Java 9+), determined from the Test task's
+	 * executable as the task starts - `null` until then, or if the version is unknown
+	 */
+	private volatile Boolean unifiedLogging;
+
+	private final long initialHeapMb;
+	private final long minHeapMb;
+	private final long maxHeapMb;
+
+	private AdaptiveHeap(
+			File historyFile,
+			File gcLogDirectory,
+			long initialHeapMb,
+			long minHeapMb,
+			long maxHeapMb) {
+		this.historyFile = historyFile;
+		this.gcLogDirectory = gcLogDirectory;
+		this.initialHeapMb = initialHeapMb;
+		this.minHeapMb = minHeapMb;
+		this.maxHeapMb = maxHeapMb;
+	}
+
+	static void apply(Test testTask, TestJvmSettings settings, String profileName, File outputDirectory) {
+		final AdaptiveHeap adaptiveHeap = new AdaptiveHeap(
+				new File( outputDirectory, HISTORY_FILE_NAME ),
+				new File( outputDirectory, GC_LOG_DIRECTORY_NAME ),
+				TestJvmSettings.toMegabytes( settings.determineMaxHeapSize(), "maxHeapSize", profileName ),
+				TestJvmSettings.toMegabytes( settings.getAdaptiveMinHeapSize(), "adaptiveMinHeapSize", profileName ),
+				TestJvmSettings.toMegabytes( settings.getAdaptiveMaxHeapSize(), "adaptiveMaxHeapSize", profileName )
+		);
+
+		Logging.getLogger( AdaptiveHeap.class ).debug(
+				"Using adaptive heap sizing for `{}` profile Test task `{}`",
+				profileName,
+				testTask.getPath()
+		);
+
+		testTask.getJvmArgumentProviders().add( adaptiveHeap );
+		testTask.doFirst( new RecordPreviousRunAction( adaptiveHeap ) );
+	}
+
+	@Internal
+	public File getHistoryFile() {
+		return historyFile;
+	}
+
+	@Internal
+	public File getGcLogDirectory() {
+		return gcLogDirectory;
+	}
+
+	@Override
+	public Iterable<String> asArguments() {
+		final long heapMb = determineHeapSize( History.load( historyFile ) );
+		final String logFile = new File( gcLogDirectory, "gc-%p.log" ).getAbsolutePath();
+
+		final List<String> arguments = new ArrayList<>();
+		arguments.add( "-Xms" + heapMb + "M" );
+		arguments.add( "-Xmx" + heapMb + "M" );
+		if ( unifiedLogging == Boolean.TRUE ) {
+			arguments.add( "-Xlog:gc:file=" + logFile + ":uptime" );
+		}
+		else {
+			// also accepted (though deprecated) by Java 9+, which then logs in the unified format
+			arguments.add( "-Xloggc:" + logFile );
+		}
+		return arguments;
+	}
+
+	long determineHeapSize(History history) {
+		if ( history.runs.isEmpty() ) {
+			return clamp( initialHeapMb );
+		}
+
+		long peakMb = 0;
+		for ( Run run : history.runs ) {
+			peakMb = Math.max( peakMb, run.peakHeapMb );
+		}
+		long heapMb = (long) Math.ceil( peakMb * HEADROOM );
+
+		final Run lastRun = history.runs.get( 0 );
+		if ( lastRun.gcOverhead() > GC_OVERHEAD_THRESHOLD ) {
+			// the last run was struggling - give it more room than it had
+			heapMb = Math.max( heapMb, (long) Math.ceil( lastRun.heapMb * HEADROOM ) );
+		}
+
+		return clamp( heapMb );
+	}
+
+	private long clamp(long heapMb) {
+		final long rounded = ( ( heapMb + GRANULARITY_MB - 1 ) / GRANULARITY_MB ) * GRANULARITY_MB;
+		return Math.max( minHeapMb, Math.min( maxHeapMb, rounded ) );
+	}
+
+	/**
+	 * Summarizes the GC logs of the previous run into the history, and clears them for this run.
+	 * Also determines the logging format of the JVMs about to be forked
+	 */
+	private static class RecordPreviousRunAction implements Action<Task>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final AdaptiveHeap adaptiveHeap;
+
+		private RecordPreviousRunAction(AdaptiveHeap adaptiveHeap) {
+			this.adaptiveHeap = adaptiveHeap;
+		}
+
+		@Override
+		@SuppressWarnings("ResultOfMethodCallIgnored")
+		public void execute(Task task) {
+			// the forked JVMs are not necessarily the JVM running Gradle (`Test#executable`)
+			final JavaVersion javaVersion = TestJavaVersion.of( (Test) task );
+			adaptiveHeap.unifiedLogging = javaVersion == null ? null : javaVersion.isJava9Compatible();
+
+			final File gcLogDirectory = adaptiveHeap.gcLogDirectory;
+			final File[] logFiles = gcLogDirectory.listFiles( (dir, name) -> name.startsWith( "gc-" ) );
+
+			if ( logFiles != null && logFiles.length > 0 ) {
+				final Run run = summarize( Arrays.asList( logFiles ) );
+				if ( run != null ) {
+					final History history = History.load( adaptiveHeap.historyFile );
+					history.record( run );
+					history.store( adaptiveHeap.historyFile );
+
+					task.getLogger().info(
+							"Recorded previous run of `{}` : peak heap {}M of {}M, {}ms GC over {}ms",
+							task.getPath(),
+							run.peakHeapMb,
+							run.heapMb,
+							run.gcPauseMillis,
+							run.uptimeMillis
+					);
+				}
+
+				for ( File logFile : logFiles ) {
+					logFile.delete();
+				}
+			}
+
+			gcLogDirectory.mkdirs();
+		}
+	}
+
+	/**
+	 * Summarize the GC logs of all JVMs forked for a run
+	 */
+	static Run summarize(List<File> logFiles) {
+		long peakHeapMb = 0;
+		long heapMb = 0;
+		double gcPauseMillis = 0;
+		double uptimeMillis = 0;
+		boolean found = false;
+
+		for ( File logFile : logFiles ) {
+			final List<String> lines;
+			try {
+				lines = Files.readAllLines( logFile.toPath(), StandardCharsets.UTF_8 );
+			}
+			catch (IOException e) {
+				Logging.getLogger( AdaptiveHeap.class ).debug( "Unable to read GC log : " + logFile, e );
+				continue;
+			}
+
+			double logUptimeMillis = 0;
+			for ( String line : lines ) {
+				final Matcher unified = UNIFIED_GC_LINE.matcher( line );
+				if ( unified.find() ) {
+					found = true;
+					logUptimeMillis = number( unified.group( 1 ) ) * 1000;
+					peakHeapMb = Math.max( peakHeapMb, megabytes( unified.group( 2 ), unified.group( 3 ) ) );
+					heapMb = Math.max( heapMb, megabytes( unified.group( 6 ), unified.group( 7 ) ) );
+					gcPauseMillis += number( unified.group( 8 ) );
+					continue;
+				}
+
+				final Matcher legacy = LEGACY_GC_LINE.matcher( line );
+				if ( legacy.find() ) {
+					found = true;
+					logUptimeMillis = number( legacy.group( 1 ) ) * 1000;
+					peakHeapMb = Math.max( peakHeapMb, megabytes( legacy.group( 2 ), "K" ) );
+					heapMb = Math.max( heapMb, megabytes( legacy.group( 4 ), "K" ) );
+					gcPauseMillis += number( legacy.group( 5 ) ) * 1000;
+				}
+			}
+			uptimeMillis += logUptimeMillis;
+		}
+
+		if ( ! found ) {
+			return null;
+		}
+
+		return new Run( peakHeapMb, heapMb, Math.round( gcPauseMillis ), Math.round( uptimeMillis ) );
+	}
+
+	private static double number(String value) {
+		// some locales log a decimal comma
+		return Double.parseDouble( value.replace( ',', '.' ) );
+	}
+
+	private static long megabytes(String amount, String unit) {
+		return TestJvmSettings.toMegabytes( amount + unit );
+	}
+
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// History
+
+	/**
+	 * Summary of one run of the Test task
+	 */
+	static class Run {
+		private final long peakHeapMb;
+		private final long heapMb;
+		private final long gcPauseMillis;
+		private final long uptimeMillis;
+
+		Run(long peakHeapMb, long heapMb, long gcPauseMillis, long uptimeMillis) {
+			this.peakHeapMb = peakHeapMb;
+			this.heapMb = heapMb;
+			this.gcPauseMillis = gcPauseMillis;
+			this.uptimeMillis = uptimeMillis;
+		}
+
+		public long getPeakHeapMb() {
+			return peakHeapMb;
+		}
+
+		public long getHeapMb() {
+			return heapMb;
+		}
+
+		public long getGcPauseMillis() {
+			return gcPauseMillis;
+		}
+
+		public long getUptimeMillis() {
+			return uptimeMillis;
+		}
+
+		double gcOverhead() {
+			return uptimeMillis <= 0 ? 0 : (double) gcPauseMillis / uptimeMillis;
+		}
+	}
+
+	/**
+	 * The recent runs, most recent first
+	 */
+	static class History {
+		private final List<Run> runs = new ArrayList<>();
+
+		static History load(File historyFile) {
+			final History history = new History();
+			if ( ! historyFile.exists() ) {
+				return history;
+			}
+
+			try {
+				final Properties properties = Helper.loadProperties( historyFile );
+				for ( int i = 0; i < HISTORY_SIZE; i++ ) {
+					final String prefix = "run." + i + ".";
+					if ( properties.getProperty( prefix + "peakHeapMb" ) == null ) {
+						break;
+					}
+					history.runs.add(
+							new Run(
+									Long.parseLong( properties.getProperty( prefix + "peakHeapMb" ) ),
+									Long.parseLong( properties.getProperty( prefix + "heapMb" ) ),
+									Long.parseLong( properties.getProperty( prefix + "gcPauseMillis" ) ),
+									Long.parseLong( properties.getProperty( prefix + "uptimeMillis" ) )
+							)
+					);
+				}
+			}
+			catch (RuntimeException e) {
+				// just start over
+				Logging.getLogger( AdaptiveHeap.class ).debug( "Ignoring unreadable JVM history : " + historyFile, e );
+				history.runs.clear();
+			}
+
+			return history;
+		}
+
+		List<Run> getRuns() {
+			return runs;
+		}
+
+		void record(Run run) {
+			runs.add( 0, run );
+			while ( runs.size() > HISTORY_SIZE ) {
+				runs.remove( runs.size() - 1 );
+			}
+		}
+
+		void store(File historyFile) {
+			final Properties properties = new Properties();
+			for ( int i = 0; i < runs.size(); i++ ) {
+				final String prefix = "run." + i + ".";
+				final Run run = runs.get( i );
+				properties.setProperty( prefix + "peakHeapMb", Long.toString( run.peakHeapMb ) );
+				properties.setProperty( prefix + "heapMb", Long.toString( run.heapMb ) );
+				properties.setProperty( prefix + "gcPauseMillis", Long.toString( run.gcPauseMillis ) );
+				properties.setProperty( prefix + "uptimeMillis", Long.toString( run.uptimeMillis ) );
+			}
+			Helper.writeProperties(
+					properties,
+					historyFile,
+					"JVM history for adaptive heap sizing (most recent run first)"
+			);
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Aggregates the JUnit XML results of the profile Test tasks (including shards) into a
+ * test &times; profile outcome matrix (see {@link ResultMatrix}), reported as JSON and HTML.  The
+ * reports highlight the tests failing against some of the profiles while passing against others.
+ *
+ * Only aggregates the results already present - run the profile Test tasks first, e.g.
+ * `gradle testAllDbProfiles aggregateDbProfileResults`
+ */
+public class AggregateProfileResultsTask extends DefaultTask {
+	public static final String NAME = "aggregateDbProfileResults";
+
+	private final Map<String, File> outputDirectories = new LinkedHashMap<>();
+	private File jsonReportFile;
+	private File htmlReportFile;
+
+	public AggregateProfileResultsTask() {
+		setGroup( "database" );
+		setDescription( "Aggregates the test results of all profiles, highlighting profile-specific failures" );
+
+		// the results are (re)written by the Test tasks, which may be up-to-date or not run at all
+		getOutputs().upToDateWhen( task -> false );
+	}
+
+	/**
+	 * The output directories of each profile, keyed by profile name
+	 */
+	@Internal
+	public Map<String, File> getOutputDirectories() {
+		return outputDirectories;
+	}
+
+	public void results(String profileName, File outputDirectory) {
+		outputDirectories.put( profileName, outputDirectory );
+	}
+
+	@OutputFile
+	public File getJsonReportFile() {
+		return jsonReportFile;
+	}
+
+	public void setJsonReportFile(File jsonReportFile) {
+		this.jsonReportFile = jsonReportFile;
+	}
+
+	@OutputFile
+	public File getHtmlReportFile() {
+		return htmlReportFile;
+	}
+
+	public void setHtmlReportFile(File htmlReportFile) {
+		this.htmlReportFile = htmlReportFile;
+	}
+
+	@TaskAction
+	public void aggregate() {
+		final ResultMatrix matrix = new ResultMatrix( new ArrayList<>( outputDirectories.keySet() ) );
+		outputDirectories.forEach(
+				(profileName, outputDirectory) -> resultsDirectories( outputDirectory ).forEach(
+						resultsDirectory -> matrix.addResults( profileName, resultsDirectory )
+				)
+		);
+
+		final List<String> profileSpecific = new ArrayList<>();
+		final List<String> common = new ArrayList<>();
+		matrix.getOutcomes().keySet().forEach(
+				test -> {
+					if ( matrix.isProfileSpecificFailure( test ) ) {
+						profileSpecific.add( test );
+					}
+					else if ( matrix.isCommonFailure( test ) ) {
+						common.add( test );
+					}
+				}
+		);
+
+		try {
+			writeJson( matrix, profileSpecific, common );
+			writeHtml( matrix, profileSpecific, common );
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to write aggregated test results", e );
+		}
+
+		getLogger().lifecycle(
+				"Aggregated {} tests across {} profiles : {} profile-specific failures, {} failing against all profiles - see {}",
+				matrix.getOutcomes().size(),
+				outputDirectories.size(),
+				profileSpecific.size(),
+				common.size(),
+				htmlReportFile
+		);
+		profileSpecific.stream().limit( 10 ).forEach(
+				test -> getLogger().lifecycle( "  > {}  {}", matrix.outcomes( test ), test )
+		);
+	}
+
+	/**
+	 * The results of the profile Test task, and of its shards
+	 */
+	private static List<File> resultsDirectories(File outputDirectory) {
+		final List<File> directories = new ArrayList<>();
+		directories.add( new File( outputDirectory, "results" ) );
+
+		final File[] shardDirectories = outputDirectory.listFiles(
+				file -> file.isDirectory() && file.getName().startsWith( "shard-" )
+		);
+		if ( shardDirectories != null ) {
+			for ( File shardDirectory : shardDirectories ) {
+				directories.add( new File( shardDirectory, "results" ) );
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * Written entry by entry, rather than building the (potentially large) document in memory
+	 */
+	private void writeJson(ResultMatrix matrix, List<String> profileSpecific, List<String> common) throws IOException {
+		Files.createDirectories( jsonReportFile.getParentFile().toPath() );
+		try ( Writer writer = Files.newBufferedWriter( jsonReportFile.toPath(), StandardCharsets.UTF_8 ) ) {
+			final List<String> profileNames = matrix.getProfileNames();
+
+			writer.write( "{\n  \"profiles\": " );
+			writer.write( JsonOutput.toJson( profileNames ) );
+
+			writer.write( ",\n  \"outcomeCodes\": " );
+			writer.write( JsonOutput.toJson( "-: not run, S: skipped, P: passed, F: failed" ) );
+
+			writer.write( ",\n  \"summary\": {" );
+			for ( int i = 0; i < profileNames.size(); i++ ) {
+				final Map<String, Object> counts = new LinkedHashMap<>();
+				counts.put( "passed", matrix.count( i, ResultMatrix.PASSED ) );
+				counts.put( "failed", matrix.count( i, ResultMatrix.FAILED ) );
+				counts.put( "skipped", matrix.count( i, ResultMatrix.SKIPPED ) );
+				writer.write( i == 0 ? "\n    " : ",\n    " );
+				writer.write( JsonOutput.toJson( profileNames.get( i ) ) );
+				writer.write( ": " );
+				writer.write( JsonOutput.toJson( counts ) );
+			}
+
+			writer.write( "\n  },\n  \"profileSpecificFailures\": [" );
+			boolean first = true;
+			for ( String test : profileSpecific ) {
+				final Map<String, Object> failures = new LinkedHashMap<>();
+				for ( int i = 0; i < profileNames.size(); i++ ) {
+					if ( matrix.getOutcomes().get( test )[i] == ResultMatrix.FAILED ) {
+						failures.put( profileNames.get( i ), matrix.getFailureMessage( test, i ) );
+					}
+				}
+				final Map<String, Object> entry = new LinkedHashMap<>();
+				entry.put( "test", test );
+				entry.put( "outcomes", matrix.outcomes( test ) );
+				entry.put( "failures", failures );
+				writer.write( first ? "\n    " : ",\n    " );
+				writer.write( JsonOutput.toJson( entry ) );
+				first = false;
+			}
+
+			writer.write( "\n  ],\n  \"commonFailures\": " );
+			writer.write( JsonOutput.toJson( common ) );
+
+			writer.write( ",\n  \"matrix\": {" );
+			first = true;
+			for ( String test : matrix.getOutcomes().keySet() ) {
+				writer.write( first ? "\n    " : ",\n    " );
+				writer.write( JsonOutput.toJson( test ) );
+				writer.write( ": \"" );
+				writer.write( matrix.outcomes( test ) );
+				writer.write( '"' );
+				first = false;
+			}
+			writer.write( "\n  }\n}\n" );
+		}
+	}
+
+	private void writeHtml(ResultMatrix matrix, List<String> profileSpecific, List<String> common) throws IOException {
+		Files.createDirectories( htmlReportFile.getParentFile().toPath() );
+		try ( Writer writer = Files.newBufferedWriter( htmlReportFile.toPath(), StandardCharsets.UTF_8 ) ) {
+			final List<String> profileNames = matrix.getProfileNames();
+
+			writer.write( "<!DOCTYPE html>\n<html><head><meta charset=\"utf-8\"><title>Test results by profile</title>\n" );
+			writer.write( "<style>body{font-family:sans-serif}table{border-collapse:collapse}td,th{border:1px solid #ccc;padding:2px 6px}" );
+			writer.write( ".P{background:#cfc}.F{background:#f99}.S{background:#eee}</style></head><body>\n" );
+
+			writer.write( "<h1>Test results by profile</h1>\n<table><tr><th>Profile</th><th>Passed</th><th>Failed</th><th>Skipped</th></tr>\n" );
+			for ( int i = 0; i < profileNames.size(); i++ ) {
+				writer.write( "<tr><td>" + escape( profileNames.get( i ) ) + "</td><td>" + matrix.count( i, ResultMatrix.PASSED )
+						+ "</td><td>" + matrix.count( i, ResultMatrix.FAILED ) + "</td><td>" + matrix.count( i, ResultMatrix.SKIPPED )
+						+ "</td></tr>\n" );
+			}
+			writer.write( "</table>\n" );
+
+			writer.write( "<h2>Profile-specific failures (" + profileSpecific.size() + ")</h2>\n<table><tr><th>Test</th>" );
+			for ( String profileName : profileNames ) {
+				writer.write( "<th>" + escape( profileName ) + "</th>" );
+			}
+			writer.write( "</tr>\n" );
+			for ( String test : profileSpecific ) {
+				final byte[] outcomes = matrix.getOutcomes().get( test );
+				writer.write( "<tr><td>" + escape( test ) + "</td>" );
+				for ( int i = 0; i < outcomes.length; i++ ) {
+					final char code = ResultMatrix.OUTCOME_CODES[ outcomes[i] ];
+					final String message = matrix.getFailureMessage( test, i );
+					writer.write( "<td class=\"" + code + "\"" + ( message == null ? "" : " title=\"" + escape( message ) + "\"" ) + ">" + code + "</td>" );
+				}
+				writer.write( "</tr>\n" );
+			}
+			writer.write( "</table>\n" );
+
+			writer.write( "<h2>Failing against all profiles (" + common.size() + ")</h2>\n<ul>\n" );
+			for ( String test : common ) {
+				writer.write( "<li>" + escape( test ) + "</li>\n" );
+			}
+			writer.write( "</ul>\n</body></html>\n" );
+		}
+	}
+
+	private static String escape(String text) {
+		final StringBuilder escaped = new StringBuilder( text.length() );
+		for ( char c : text.toCharArray() ) {
+			switch ( c ) {
+				case '<': escaped.append( "&lt;" ); break;
+				case '>': escaped.append( "&gt;" ); break;
+				case '&': escaped.append( "&amp;" ); break;
+				case '"': escaped.append( "&quot;" ); break;
+				default: escaped.append( c );
+			}
+		}
+		return escaped.toString();
+	}
+}
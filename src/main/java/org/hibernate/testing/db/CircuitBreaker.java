@@ -0,0 +1,209 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+
+import org.hibernate.testing.db.alloc.AllocationRegistry;
+import org.hibernate.testing.db.alloc.DatabaseAllocator;
+
+/**
+ * Aborts a profile Test task once the database appears to have gone away - after a number of
+ * consecutive tests failed with connection-related exceptions (see {@link CircuitBreakerSettings}) -
+ * rather than letting every remaining test fail on connection timeouts.
+ *
+ * Gradle offers no way to stop a running Test task from a test listener, so as the breaker trips it
+ * writes a trip file which the {@link ForkSlotAgent} in each forked JVM watches for; the forks then
+ * exit, so no further tests are run.  The task's database leases are returned right away, and the
+ * Test task fails reporting the breaker.
+ *
+ * NOTE : only captures the settings, the trip file and task path (not the Profile), so that the
+ * configuration-cache can serialize it
+ */
+class CircuitBreaker implements TestListener {
+	private static final Logger log = Logging.getLogger( CircuitBreaker.class );
+
+	private final String profileName;
+	private final String taskPath;
+	private final int threshold;
+	private final List<String> failurePatterns;
+	private final File tripFile;
+	private final Provider<AllocationRegistry> registry;
+
+	private transient List<Pattern> compiledPatterns;
+	private transient int consecutiveFailures;
+	private transient String trippedBy;
+	private transient int testsAfterTrip;
+
+	CircuitBreaker(
+			String profileName,
+			String taskPath,
+			CircuitBreakerSettings settings,
+			File tripFile,
+			Provider<AllocationRegistry> registry) {
+		this.profileName = profileName;
+		this.taskPath = taskPath;
+		this.threshold = settings.getConsecutiveFailures();
+		this.failurePatterns = new ArrayList<>( settings.getFailurePatterns() );
+		this.tripFile = tripFile;
+		this.registry = registry;
+	}
+
+	static void apply(Profile profile, Test testTask, Project project) {
+		final CircuitBreakerSettings settings = profile.getCircuitBreaker();
+		if ( ! settings.isEnabled() ) {
+			return;
+		}
+
+		final File tripFile = new File(
+				new File( Helper.determineOutputDirectory( project, profile.getName() ), "breaker" ),
+				testTask.getName() + ".tripped"
+		);
+		final Provider<AllocationRegistry> registry = DatabaseAllocator.locateRegistry( project );
+
+		testTask.usesService( registry );
+		testTask.doFirst( new ArmAction( tripFile ) );
+		testTask.addTestListener( new CircuitBreaker( profile.getName(), testTask.getPath(), settings, tripFile, registry ) );
+	}
+
+	@Override
+	public void beforeSuite(TestDescriptor testDescriptor) {
+	}
+
+	@Override
+	public synchronized void afterSuite(TestDescriptor testDescriptor, TestResult testResult) {
+		if ( testDescriptor.getParent() != null || trippedBy == null ) {
+			return;
+		}
+
+		final String cause = trippedBy;
+		trippedBy = null;
+		consecutiveFailures = 0;
+		throw new BuildExecutionException(
+				"Circuit breaker for profile `" + profileName + "` stopped `" + taskPath + "` after " + threshold
+						+ " consecutive connection failures (" + testsAfterTrip + " test(s) reported after that were ignored) : " + cause
+		);
+	}
+
+	@Override
+	public void beforeTest(TestDescriptor testDescriptor) {
+	}
+
+	@Override
+	public synchronized void afterTest(TestDescriptor testDescriptor, TestResult testResult) {
+		if ( trippedBy != null ) {
+			testsAfterTrip++;
+			return;
+		}
+
+		if ( testResult.getResultType() == TestResult.ResultType.SKIPPED ) {
+			return;
+		}
+
+		final String failure = testResult.getResultType() == TestResult.ResultType.FAILURE
+				? findConnectionFailure( testResult.getExceptions() )
+				: null;
+		if ( failure == null ) {
+			consecutiveFailures = 0;
+			return;
+		}
+
+		if ( ++consecutiveFailures >= threshold ) {
+			trip( testDescriptor, failure );
+		}
+	}
+
+	/**
+	 * The description of the first exception (or cause) matching one of the failure patterns
+	 */
+	String findConnectionFailure(List<Throwable> exceptions) {
+		if ( compiledPatterns == null ) {
+			compiledPatterns = new ArrayList<>( failurePatterns.size() );
+			failurePatterns.forEach( pattern -> compiledPatterns.add( Pattern.compile( pattern ) ) );
+		}
+
+		for ( Throwable exception : exceptions ) {
+			for ( Throwable current = exception; current != null; current = current.getCause() ) {
+				// includes the original exception class name, even for exceptions Gradle could not deserialize
+				final String description = current.toString();
+				for ( Pattern pattern : compiledPatterns ) {
+					if ( pattern.matcher( description ).find() ) {
+						return description;
+					}
+				}
+				if ( current.getCause() == current ) {
+					break;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void trip(TestDescriptor testDescriptor, String failure) {
+		trippedBy = failure;
+		log.lifecycle(
+				"Circuit breaker for profile `{}` tripped by `{}` after {} consecutive connection failures - stopping `{}` : {}",
+				profileName,
+				testDescriptor,
+				consecutiveFailures,
+				taskPath,
+				failure
+		);
+
+		try {
+			Files.createDirectories( tripFile.getParentFile().toPath() );
+			Files.write( tripFile.toPath(), failure.getBytes( StandardCharsets.UTF_8 ) );
+		}
+		catch (IOException e) {
+			log.warn( "Unable to write circuit breaker trip file : {}", tripFile, e );
+		}
+
+		// no need to hold on to the database while the forks go away
+		registry.get().returnLeases( taskPath );
+	}
+
+	/**
+	 * Clears the trip file of a previous run and passes it along to the forks.  The (absolute) file
+	 * is only passed as the task starts, so that it is not part of the build cache key.
+	 */
+	private static class ArmAction implements Action<Task> {
+		private final File tripFile;
+
+		private ArmAction(File tripFile) {
+			this.tripFile = tripFile;
+		}
+
+		@Override
+		public void execute(Task task) {
+			try {
+				Files.deleteIfExists( tripFile.toPath() );
+			}
+			catch (IOException e) {
+				throw new BuildExecutionException( "Unable to delete circuit breaker trip file : " + tripFile, e );
+			}
+			( (Test) task ).systemProperty( ForkSlotAgent.CIRCUIT_BREAKER_FILE, tripFile.getAbsolutePath() );
+		}
+	}
+}
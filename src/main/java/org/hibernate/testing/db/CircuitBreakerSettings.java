@@ -0,0 +1,97 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings for the {@link CircuitBreaker} of a profile's Test tasks.  Exposed as
+ * {@link Profile#getCircuitBreaker()}:
+ *
+ * ----
+ * oracle {
+ *     ...
+ *     circuitBreaker {
+ *         consecutiveFailures 5
+ *         // optional - added to the defaults
+ *         failurePattern 'ORA-12541'
+ *     }
+ * }
+ * ----
+ *
+ * Configuring `circuitBreaker` enables it.
+ */
+public class CircuitBreakerSettings {
+	/**
+	 * Patterns matching the exceptions of connection-related failures, used unless
+	 * {@link #getFailurePatterns() replaced}
+	 */
+	public static final List<String> DEFAULT_FAILURE_PATTERNS = Arrays.asList(
+			"java\\.net\\.(Connect|NoRouteToHost|Socket|SocketTimeout|UnknownHost)Exception",
+			"SQL(Non)?TransientConnectionException",
+			"SQLRecoverableException",
+			"JDBCConnectionException",
+			"(?i)connection refused",
+			"(?i)connection reset",
+			"(?i)communications link failure"
+	);
+
+	private boolean enabled;
+	private int consecutiveFailures = 10;
+	private final List<String> failurePatterns = new ArrayList<>( DEFAULT_FAILURE_PATTERNS );
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void enabled(boolean enabled) {
+		setEnabled( enabled );
+	}
+
+	/**
+	 * The number of consecutive connection-related test failures which trips the breaker.
+	 * Defaults to 10
+	 */
+	public int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	public void setConsecutiveFailures(int consecutiveFailures) {
+		if ( consecutiveFailures < 1 ) {
+			throw new ProfileCreationException( "Circuit breaker `consecutiveFailures` must be at least 1 : " + consecutiveFailures );
+		}
+		this.consecutiveFailures = consecutiveFailures;
+	}
+
+	public void consecutiveFailures(int consecutiveFailures) {
+		setConsecutiveFailures( consecutiveFailures );
+	}
+
+	/**
+	 * Regular expressions identifying a connection-related failure - a test failure counts if any
+	 * of them is found in any of its exceptions (class name and message, including the causes).
+	 * Defaults to {@link #DEFAULT_FAILURE_PATTERNS}
+	 */
+	public List<String> getFailurePatterns() {
+		return failurePatterns;
+	}
+
+	public void setFailurePatterns(List<String> failurePatterns) {
+		this.failurePatterns.clear();
+		this.failurePatterns.addAll( failurePatterns );
+	}
+
+	public void failurePattern(String failurePattern) {
+		failurePatterns.add( failurePattern );
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gradle.api.Action;
+import org.gradle.api.JavaVersion;
+import org.gradle.api.Task;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Starts a profile's test JVMs from a (dynamic, JDK 13+) Class Data Sharing archive of the
+ * classes they load - Hibernate, the JDBC driver and the rest of the test classpath - rather than
+ * loading and verifying them from the jars again in each fork.
+ *
+ * The archives are kept in `dbProfile/<name>/cds`, one per Test task, named after a fingerprint of
+ * the task's classpath (the path, size and timestamp of each entry) and the java executable.  When
+ * there is no archive for the current fingerprint, each fork dumps the classes it loaded into a
+ * file of its own as it exits; one of these is then promoted to be the archive (when the task
+ * finishes, or as it next starts if the tests failed) and the stale archives are removed.
+ *
+ * The archive arguments are not task inputs - using an archive does not make the tests out-of-date.
+ * The JVM validates the archive against the classpath itself and simply ignores it when it does not
+ * match.
+ */
+class ClassDataSharing implements CommandLineArgumentProvider, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final String DIRECTORY_NAME = "cds";
+
+	private static final String ARCHIVE_EXTENSION = ".jsa";
+	private static final String DUMP_EXTENSION = ".dump";
+
+	// `CDS_DYNAMIC_ARCHIVE_MAGIC`, written in native byte order
+	private static final int DYNAMIC_ARCHIVE_MAGIC = 0xf00baba8;
+
+	private static final AtomicInteger DUMP_COUNTER = new AtomicInteger();
+
+	private final File archiveDirectory;
+	private final String taskName;
+
+	private volatile String fingerprint;
+
+	ClassDataSharing(File archiveDirectory, String taskName) {
+		this.archiveDirectory = archiveDirectory;
+		this.taskName = taskName;
+	}
+
+	static void apply(Test testTask, String profileName, File outputDirectory) {
+		final ClassDataSharing classDataSharing = new ClassDataSharing(
+				new File( outputDirectory, DIRECTORY_NAME ),
+				testTask.getName()
+		);
+
+		testTask.getJvmArgumentProviders().add( classDataSharing );
+		testTask.doFirst( new PrepareArchiveAction( classDataSharing, profileName ) );
+		testTask.doLast( new PromoteDumpAction( classDataSharing ) );
+	}
+
+	@Internal
+	public File getArchiveDirectory() {
+		return archiveDirectory;
+	}
+
+	@Override
+	public Iterable<String> asArguments() {
+		if ( fingerprint == null ) {
+			// the task is not executing
+			return Collections.emptyList();
+		}
+
+		final File archive = archiveFile( fingerprint );
+		if ( archive.exists() ) {
+			return Collections.singletonList( "-XX:SharedArchiveFile=" + archive.getAbsolutePath() );
+		}
+
+		// called for each fork - give each its own file to dump into
+		final File dump = new File(
+				archiveDirectory,
+				baseName( fingerprint ) + "." + DUMP_COUNTER.incrementAndGet() + DUMP_EXTENSION
+		);
+		return Collections.singletonList( "-XX:ArchiveClassesAtExit=" + dump.getAbsolutePath() );
+	}
+
+	private String baseName(String fingerprint) {
+		return taskName + "-" + fingerprint;
+	}
+
+	File archiveFile(String fingerprint) {
+		return new File( archiveDirectory, baseName( fingerprint ) + ARCHIVE_EXTENSION );
+	}
+
+	/**
+	 * Fingerprint of the classpath (and java executable) the archive is created for - the JVM
+	 * validates the jars of an archive by their size and timestamp as well
+	 */
+	static String fingerprint(Iterable<File> classpath, String executable) {
+		final StringBuilder buffer = new StringBuilder();
+		if ( executable != null ) {
+			final File executableFile = new File( executable );
+			buffer.append( executableFile.getAbsolutePath() ).append( ':' ).append( executableFile.lastModified() ).append( '\n' );
+		}
+		for ( File entry : classpath ) {
+			buffer.append( entry.getAbsolutePath() );
+			if ( entry.isFile() ) {
+				buffer.append( ':' ).append( entry.length() ).append( ':' ).append( entry.lastModified() );
+			}
+			buffer.append( '\n' );
+		}
+		return ProfileDiscoveryIndex.hash( buffer.toString().getBytes( StandardCharsets.UTF_8 ) ).substring( 0, 16 );
+	}
+
+	/**
+	 * Promote the largest (most classes) complete dump for the current fingerprint to be its
+	 * archive, unless there already is one, and remove all other archives and dumps of the task
+	 */
+	void promoteDumps(String fingerprint) {
+		final File archive = archiveFile( fingerprint );
+		final String dumpPrefix = baseName( fingerprint ) + ".";
+
+		if ( ! archive.exists() ) {
+			final File[] dumps = archiveDirectory.listFiles(
+					(dir, name) -> name.startsWith( dumpPrefix ) && name.endsWith( DUMP_EXTENSION )
+			);
+			File best = null;
+			if ( dumps != null ) {
+				for ( File dump : dumps ) {
+					if ( isArchive( dump ) && ( best == null || dump.length() > best.length() ) ) {
+						best = dump;
+					}
+				}
+			}
+
+			if ( best != null ) {
+				try {
+					Files.move( best.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE );
+				}
+				catch (IOException e) {
+					throw new BuildExecutionException( "Unable to create class data sharing archive : " + archive, e );
+				}
+				Logging.getLogger( ClassDataSharing.class ).info( "Created class data sharing archive {}", archive );
+			}
+		}
+
+		final String taskPrefix = taskName + "-";
+		final File[] stale = archiveDirectory.listFiles(
+				(dir, name) -> name.startsWith( taskPrefix ) && ! name.equals( archive.getName() )
+		);
+		if ( stale != null ) {
+			for ( File file : stale ) {
+				try {
+					Files.deleteIfExists( file.toPath() );
+				}
+				catch (IOException e) {
+					throw new BuildExecutionException( "Unable to delete stale class data sharing archive : " + file, e );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether the file starts with the dynamic archive magic number - a fork killed while dumping
+	 * leaves an incomplete file behind
+	 */
+	static boolean isArchive(File file) {
+		try ( InputStream stream = Files.newInputStream( file.toPath() ) ) {
+			final int magic = new DataInputStream( stream ).readInt();
+			return magic == DYNAMIC_ARCHIVE_MAGIC || Integer.reverseBytes( magic ) == DYNAMIC_ARCHIVE_MAGIC;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Determines the fingerprint for this execution of the task, and promotes the dumps of an
+	 * earlier (failed) run - unless the test JVM does not support dynamic archives
+	 */
+	private static class PrepareArchiveAction implements Action<Task>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final ClassDataSharing classDataSharing;
+		private final String profileName;
+
+		private PrepareArchiveAction(ClassDataSharing classDataSharing, String profileName) {
+			this.classDataSharing = classDataSharing;
+			this.profileName = profileName;
+		}
+
+		@Override
+		@SuppressWarnings("ResultOfMethodCallIgnored")
+		public void execute(Task task) {
+			final Test testTask = (Test) task;
+
+			// the forked JVMs are not necessarily the JVM running Gradle (`Test#executable`) -
+			// without a fingerprint, no archive arguments are passed
+			final JavaVersion javaVersion = TestJavaVersion.of( testTask );
+			if ( javaVersion == null || ! javaVersion.isCompatibleWith( JavaVersion.VERSION_13 ) ) {
+				task.getLogger().lifecycle(
+						"Class data sharing for `{}` profile Test task `{}` requires Java 13 or later (test JVM : {}); ignoring",
+						profileName,
+						task.getPath(),
+						javaVersion == null ? "unknown version" : javaVersion
+				);
+				classDataSharing.fingerprint = null;
+				return;
+			}
+
+			classDataSharing.archiveDirectory.mkdirs();
+			classDataSharing.fingerprint = fingerprint( testTask.getClasspath(), testTask.getExecutable() );
+			classDataSharing.promoteDumps( classDataSharing.fingerprint );
+
+			task.getLogger().info(
+					"Class data sharing archive for `{}` : {}",
+					task.getPath(),
+					classDataSharing.archiveFile( classDataSharing.fingerprint ).exists() ? "found" : "to be created"
+			);
+		}
+	}
+
+	/**
+	 * Promotes the dumps of this run
+	 */
+	private static class PromoteDumpAction implements Action<Task>, Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final ClassDataSharing classDataSharing;
+
+		private PromoteDumpAction(ClassDataSharing classDataSharing) {
+			this.classDataSharing = classDataSharing;
+		}
+
+		@Override
+		public void execute(Task task) {
+			if ( classDataSharing.fingerprint != null ) {
+				classDataSharing.promoteDumps( classDataSharing.fingerprint );
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Compares the {@linkplain TestTimings test timings} recorded for each profile against those of
+ * the baseline (default) profile, ranking the tests by how much slower they run against the
+ * profile.  The full comparison is written as JSON; the slowest tests are also logged.
+ *
+ * Only compares the timings already recorded - run the profile Test tasks first, e.g.
+ * `gradle testAllDbProfiles compareDbProfileTimings`
+ */
+public class CompareProfileTimingsTask extends DefaultTask {
+	public static final String NAME = "compareDbProfileTimings";
+
+	/**
+	 * The number of tests logged per profile
+	 */
+	private static final int LOGGED_TESTS = 10;
+
+	private String baselineProfile;
+	private final Map<String, File> timingsDirectories = new TreeMap<>();
+	private File reportFile;
+
+	public CompareProfileTimingsTask() {
+		setGroup( "database" );
+		setDescription( "Ranks tests by how much slower they run against each profile than against the default profile" );
+	}
+
+	@Input
+	public String getBaselineProfile() {
+		return baselineProfile;
+	}
+
+	public void setBaselineProfile(String baselineProfile) {
+		this.baselineProfile = baselineProfile;
+	}
+
+	/**
+	 * The directories holding the timings for each profile, keyed by profile name
+	 */
+	@Internal
+	public Map<String, File> getTimingsDirectories() {
+		return timingsDirectories;
+	}
+
+	public void timings(String profileName, File timingsDirectory) {
+		timingsDirectories.put( profileName, timingsDirectory );
+	}
+
+	@InputFiles
+	public List<File> getTimingsFiles() {
+		return new ArrayList<>( timingsDirectories.values() );
+	}
+
+	@OutputFile
+	public File getReportFile() {
+		return reportFile;
+	}
+
+	public void setReportFile(File reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	@TaskAction
+	public void compare() {
+		final File baselineDirectory = timingsDirectories.get( baselineProfile );
+		if ( baselineDirectory == null ) {
+			throw new BuildExecutionException( "No timings for baseline profile : " + baselineProfile );
+		}
+		final TestTimings baseline = TestTimings.readAll( baselineDirectory, baselineProfile );
+		if ( baseline.getHistograms().isEmpty() ) {
+			getLogger().lifecycle(
+					"No test timings recorded for baseline profile `{}` - run `test_{}` first",
+					baselineProfile,
+					baselineProfile
+			);
+		}
+
+		final Map<String, Object> profiles = new LinkedHashMap<>();
+		timingsDirectories.forEach(
+				(profileName, directory) -> {
+					if ( profileName.equals( baselineProfile ) ) {
+						return;
+					}
+
+					final List<Slowdown> slowdowns = compare( baseline, TestTimings.readAll( directory, profileName ) );
+					if ( slowdowns.isEmpty() ) {
+						return;
+					}
+
+					final List<Map<String, Object>> ranked = new ArrayList<>( slowdowns.size() );
+					slowdowns.forEach( slowdown -> ranked.add( slowdown.toJson() ) );
+					profiles.put( profileName, ranked );
+
+					getLogger().lifecycle( "Slowest tests against `{}` (relative to `{}`):", profileName, baselineProfile );
+					slowdowns.stream().limit( LOGGED_TESTS ).forEach(
+							slowdown -> getLogger().lifecycle(
+									"  > {}x  {} ({} ms vs. {} ms)",
+									String.format( "%.1f", slowdown.ratio ),
+									slowdown.test,
+									String.format( "%.1f", slowdown.meanMillis ),
+									String.format( "%.1f", slowdown.baselineMeanMillis )
+							)
+					);
+				}
+		);
+
+		final Map<String, Object> report = new LinkedHashMap<>();
+		report.put( "baseline", baselineProfile );
+		report.put( "profiles", profiles );
+
+		try {
+			Files.createDirectories( reportFile.getParentFile().toPath() );
+			try ( Writer writer = Files.newBufferedWriter( reportFile.toPath(), StandardCharsets.UTF_8 ) ) {
+				writer.write( JsonOutput.prettyPrint( JsonOutput.toJson( report ) ) );
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to write profile timings comparison : " + reportFile, e );
+		}
+	}
+
+	/**
+	 * The tests recorded for both profiles, ranked by the ratio of their mean durations (slowest first).
+	 * Means under 1ms are treated as 1ms, so that trivial tests do not dominate the ranking
+	 */
+	static List<Slowdown> compare(TestTimings baseline, TestTimings profile) {
+		final List<Slowdown> slowdowns = new ArrayList<>();
+		profile.getHistograms().forEach(
+				(test, histogram) -> {
+					final TestTimings.Histogram baselineHistogram = baseline.getHistograms().get( test );
+					if ( baselineHistogram == null || baselineHistogram.getCount() == 0 || histogram.getCount() == 0 ) {
+						return;
+					}
+
+					slowdowns.add(
+							new Slowdown(
+									test,
+									histogram.getMeanMillis(),
+									baselineHistogram.getMeanMillis()
+							)
+					);
+				}
+		);
+		slowdowns.sort( Comparator.comparingDouble( (Slowdown slowdown) -> slowdown.ratio ).reversed() );
+		return slowdowns;
+	}
+
+	static class Slowdown {
+		final String test;
+		final double meanMillis;
+		final double baselineMeanMillis;
+		final double ratio;
+
+		Slowdown(String test, double meanMillis, double baselineMeanMillis) {
+			this.test = test;
+			this.meanMillis = meanMillis;
+			this.baselineMeanMillis = baselineMeanMillis;
+			this.ratio = Math.max( 1, meanMillis ) / Math.max( 1, baselineMeanMillis );
+		}
+
+		private Map<String, Object> toJson() {
+			final Map<String, Object> json = new LinkedHashMap<>();
+			json.put( "test", test );
+			json.put( "ratio", round( ratio ) );
+			json.put( "meanMillis", round( meanMillis ) );
+			json.put( "baselineMeanMillis", round( baselineMeanMillis ) );
+			return json;
+		}
+
+		private static double round(double value) {
+			return Math.round( value * 100 ) / 100d;
+		}
+	}
+}
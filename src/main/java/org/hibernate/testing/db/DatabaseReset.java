@@ -0,0 +1,390 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Snapshot/restore based database reset, performed inside the forked test JVMs before each test
+ * class (see {@link DatabaseResetListener}).
+ *
+ * The database is snapshot as the first JVM of a fork slot starts executing its tests - that is
+ * once the database has been allocated (pooled schema, local server, per-fork database) and any
+ * set up done by the build before the Test task, but before any test class ran.  Every test class
+ * in that slot (in the same or a later JVM), including the first, starts by restoring the
+ * snapshot, so each starts from the same known state whatever the classes before it left behind.
+ * The strategies are:
+ *
+ * `script`:: H2 - `SCRIPT TO` / `DROP ALL OBJECTS` + `RUNSCRIPT FROM`
+ * `template`:: PostgreSQL - the database is cloned into (and later re-created from) a template database.
+ * 		Requires that nothing else is connected to the database, i.e. a database per fork
+ * `files`:: Derby / HSQLDB embedded (file-based) databases - the database is shut down and its files copied
+ * `auto`:: chosen based on the JDBC URL
+ *
+ * In-memory databases are not supported - they are gone with the JVM, and cannot be shut down
+ * and copied.
+ *
+ * Snapshots are kept under the directory given by {@link #DIRECTORY}, which the Test task clears
+ * as it starts.
+ *
+ * NOTE : like {@link ForkSlotAgent}, this class is copied into the agent jar, so it must not depend
+ * on anything but the JDK (nor use nested/anonymous classes)
+ */
+public final class DatabaseReset {
+	/**
+	 * System property naming the reset strategy
+	 */
+	public static final String STRATEGY = "db-profile.reset";
+
+	/**
+	 * System property naming the directory in which snapshots are kept
+	 */
+	public static final String DIRECTORY = "db-profile.reset.dir";
+
+	public static final String AUTO = "auto";
+	public static final String SCRIPT = "script";
+	public static final String TEMPLATE = "template";
+	public static final String FILES = "files";
+
+	public static final List<String> STRATEGIES = Collections.unmodifiableList( Arrays.asList( AUTO, SCRIPT, TEMPLATE, FILES ) );
+
+	private static final String MARKER = "snapshot.taken";
+
+	// the same as Profile's - repeated to keep the agent jar self-contained
+	private static final String URL = "hibernate.connection.url";
+	private static final String DRIVER = "hibernate.connection.driver_class";
+	private static final String USERNAME = "hibernate.connection.username";
+	private static final String PASSWORD = "hibernate.connection.password";
+
+	private DatabaseReset() {
+	}
+
+	/**
+	 * Called as the fork starts executing its tests - takes the snapshot, unless an earlier JVM
+	 * of the same fork slot took it already
+	 */
+	static void beforeTestPlan(int slot, Properties properties) throws IOException, SQLException {
+		if ( properties.getProperty( STRATEGY ) == null ) {
+			return;
+		}
+		final File marker = new File( snapshotDirectory( slot, properties ), MARKER );
+		if ( ! marker.exists() ) {
+			reset( slot, properties, false );
+			Files.write( marker.toPath(), new byte[0] );
+		}
+	}
+
+	/**
+	 * Called as a test class starts - restores the snapshot
+	 */
+	static void beforeTestClass(int slot, Properties properties) throws IOException, SQLException {
+		if ( properties.getProperty( STRATEGY ) == null ) {
+			return;
+		}
+		if ( ! new File( snapshotDirectory( slot, properties ), MARKER ).exists() ) {
+			throw new IllegalStateException( "No database snapshot was taken for fork slot " + slot );
+		}
+		reset( slot, properties, true );
+	}
+
+	private static File snapshotDirectory(int slot, Properties properties) {
+		return new File( properties.getProperty( DIRECTORY ), "slot-" + slot );
+	}
+
+	private static void reset(int slot, Properties properties, boolean restore) throws IOException, SQLException {
+		final String url = properties.getProperty( URL );
+		final String strategy = resolveStrategy( properties.getProperty( STRATEGY ), url );
+		final File snapshotDirectory = snapshotDirectory( slot, properties );
+
+		Files.createDirectories( snapshotDirectory.toPath() );
+
+		switch ( strategy ) {
+			case SCRIPT: {
+				script( properties, snapshotDirectory, restore );
+				break;
+			}
+			case TEMPLATE: {
+				template( properties, restore );
+				break;
+			}
+			case FILES: {
+				shutdown( properties, url );
+				files( url, snapshotDirectory, restore );
+				break;
+			}
+			default: {
+				throw new IllegalArgumentException( "Unknown database reset strategy : " + strategy );
+			}
+		}
+	}
+
+	/**
+	 * The strategy to use for the URL - the requested one, or the one determined for the URL for `auto`
+	 *
+	 * @throws IllegalArgumentException If the URL refers to an in-memory database, or there is no
+	 * strategy for it
+	 */
+	public static String resolveStrategy(String requestedStrategy, String url) {
+		if ( isInMemory( url ) ) {
+			throw new IllegalArgumentException( "Database reset is not supported for in-memory databases : " + url );
+		}
+		return AUTO.equals( requestedStrategy ) ? determineStrategy( url ) : requestedStrategy;
+	}
+
+	static boolean isInMemory(String url) {
+		return url != null
+				&& ( url.startsWith( "jdbc:h2:mem:" ) || url.startsWith( "jdbc:hsqldb:mem:" ) || url.startsWith( "jdbc:derby:memory:" ) );
+	}
+
+	static String determineStrategy(String url) {
+		if ( url != null ) {
+			if ( url.startsWith( "jdbc:h2:" ) ) {
+				return SCRIPT;
+			}
+			if ( url.startsWith( "jdbc:postgresql:" ) ) {
+				return TEMPLATE;
+			}
+			if ( url.startsWith( "jdbc:derby:" ) || url.startsWith( "jdbc:hsqldb:file:" ) ) {
+				return FILES;
+			}
+		}
+		throw new IllegalArgumentException( "No database reset strategy for URL : " + url );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// H2 script
+
+	private static void script(Properties properties, File snapshotDirectory, boolean restore) throws SQLException {
+		final String script = new File( snapshotDirectory, "snapshot.sql" ).getAbsolutePath().replace( "'", "''" );
+		if ( restore ) {
+			execute( properties, properties.getProperty( URL ), "DROP ALL OBJECTS", "RUNSCRIPT FROM '" + script + "'" );
+		}
+		else {
+			execute( properties, properties.getProperty( URL ), "SCRIPT TO '" + script + "'" );
+		}
+	}
+
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// PostgreSQL template database
+
+	private static void template(Properties properties, boolean restore) throws SQLException {
+		final String url = properties.getProperty( URL );
+		final String database = postgresqlDatabase( url );
+		final String snapshot = database + "_snapshot";
+		final String maintenanceUrl = postgresqlUrl( url, "postgres" );
+
+		if ( restore ) {
+			execute(
+					properties,
+					maintenanceUrl,
+					"DROP DATABASE IF EXISTS " + quote( database ),
+					"CREATE DATABASE " + quote( database ) + " TEMPLATE " + quote( snapshot )
+			);
+		}
+		else {
+			execute(
+					properties,
+					maintenanceUrl,
+					"DROP DATABASE IF EXISTS " + quote( snapshot ),
+					"CREATE DATABASE " + quote( snapshot ) + " TEMPLATE " + quote( database )
+			);
+		}
+	}
+
+	/**
+	 * The database named by a `jdbc:postgresql://host:port/database?params` URL
+	 */
+	static String postgresqlDatabase(String url) {
+		final int hostStart = url.indexOf( "//" );
+		final int databaseStart = url.indexOf( '/', hostStart < 0 ? "jdbc:postgresql:".length() : hostStart + 2 );
+		final int parametersStart = url.indexOf( '?' );
+		final int start = databaseStart < 0 ? "jdbc:postgresql:".length() : databaseStart + 1;
+		return url.substring( start, parametersStart < 0 ? url.length() : parametersStart );
+	}
+
+	static String postgresqlUrl(String url, String database) {
+		final String current = postgresqlDatabase( url );
+		final int parametersStart = url.indexOf( '?' );
+		final int end = parametersStart < 0 ? url.length() : parametersStart;
+		return url.substring( 0, end - current.length() ) + database + url.substring( end );
+	}
+
+	private static String quote(String identifier) {
+		return '"' + identifier.replace( "\"", "\"\"" ) + '"';
+	}
+
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Derby / HSQLDB files
+
+	/**
+	 * Shuts the embedded database down, so that its files are complete and can be replaced
+	 */
+	private static void shutdown(Properties properties, String url) throws SQLException {
+		if ( url.startsWith( "jdbc:derby:" ) ) {
+			try {
+				execute( properties, stripAttributes( url, ';' ) + ";shutdown=true" );
+			}
+			catch (SQLException e) {
+				// 08006 : the database was shut down; XJ004 : there is no database (yet)
+				if ( ! "08006".equals( e.getSQLState() ) && ! "XJ004".equals( e.getSQLState() ) ) {
+					throw e;
+				}
+			}
+		}
+		else {
+			execute( properties, url, "SHUTDOWN" );
+		}
+	}
+
+	static void files(String url, File snapshotDirectory, boolean restore) throws IOException {
+		final File snapshotFiles = new File( snapshotDirectory, "files" );
+		final List<Path> databaseFiles = databaseFiles( url );
+
+		if ( restore ) {
+			for ( Path databaseFile : databaseFiles ) {
+				delete( databaseFile );
+			}
+			final File[] snapshot = snapshotFiles.listFiles();
+			if ( snapshot != null ) {
+				final Path target = databaseFiles.get( 0 ).getParent();
+				for ( File file : snapshot ) {
+					copy( file.toPath(), target.resolve( file.getName() ) );
+				}
+			}
+		}
+		else {
+			delete( snapshotFiles.toPath() );
+			Files.createDirectories( snapshotFiles.toPath() );
+			for ( Path databaseFile : databaseFiles ) {
+				if ( Files.exists( databaseFile ) ) {
+					copy( databaseFile, snapshotFiles.toPath().resolve( databaseFile.getFileName() ) );
+				}
+			}
+		}
+	}
+
+	/**
+	 * The files making up an embedded Derby (a directory) or HSQLDB (`<name>.*` files) database.
+	 * The first is always the "main" file, even if it does not exist (yet)
+	 */
+	static List<Path> databaseFiles(String url) throws IOException {
+		if ( url.startsWith( "jdbc:derby:" ) ) {
+			String path = stripAttributes( url.substring( "jdbc:derby:".length() ), ';' );
+			if ( path.startsWith( "directory:" ) ) {
+				path = path.substring( "directory:".length() );
+			}
+			else if ( path.startsWith( "memory:" ) || path.startsWith( "//" ) ) {
+				throw new IllegalArgumentException( "Files reset requires an embedded, file-based Derby database : " + url );
+			}
+			final String home = System.getProperty( "derby.system.home" );
+			final File directory = new File( path ).isAbsolute() || home == null ? new File( path ) : new File( home, path );
+			return Collections.singletonList( directory.getAbsoluteFile().toPath() );
+		}
+
+		if ( url.startsWith( "jdbc:hsqldb:file:" ) ) {
+			final File base = new File( stripAttributes( url.substring( "jdbc:hsqldb:file:".length() ), ';' ) ).getAbsoluteFile();
+			final List<Path> files = new ArrayList<>();
+			files.add( new File( base.getParentFile(), base.getName() + ".script" ).toPath() );
+			if ( base.getParentFile().exists() ) {
+				try ( Stream<Path> siblings = Files.list( base.getParentFile().toPath() ) ) {
+					files.addAll(
+							siblings.filter( sibling -> sibling.getFileName().toString().startsWith( base.getName() + "." ) )
+									.filter( sibling -> ! sibling.getFileName().toString().equals( base.getName() + ".script" ) )
+									.collect( Collectors.toList() )
+					);
+				}
+			}
+			return files;
+		}
+
+		throw new IllegalArgumentException( "Files reset requires an embedded Derby or HSQLDB database : " + url );
+	}
+
+	private static String stripAttributes(String value, char separator) {
+		final int position = value.indexOf( separator );
+		return position < 0 ? value : value.substring( 0, position );
+	}
+
+	private static void copy(Path source, Path target) throws IOException {
+		if ( Files.isDirectory( source ) ) {
+			try ( Stream<Path> paths = Files.walk( source ) ) {
+				for ( Path path : (Iterable<Path>) paths::iterator ) {
+					final Path destination = target.resolve( source.relativize( path ).toString() );
+					if ( Files.isDirectory( path ) ) {
+						Files.createDirectories( destination );
+					}
+					else {
+						Files.copy( path, destination, StandardCopyOption.REPLACE_EXISTING );
+					}
+				}
+			}
+		}
+		else {
+			Files.copy( source, target, StandardCopyOption.REPLACE_EXISTING );
+		}
+	}
+
+	private static void delete(Path path) throws IOException {
+		if ( ! Files.exists( path ) ) {
+			return;
+		}
+		if ( Files.isDirectory( path ) ) {
+			try ( Stream<Path> paths = Files.walk( path ) ) {
+				final List<Path> all = paths.collect( Collectors.toList() );
+				Collections.reverse( all );
+				for ( Path each : all ) {
+					Files.delete( each );
+				}
+			}
+		}
+		else {
+			Files.delete( path );
+		}
+	}
+
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	private static void execute(Properties properties, String url, String... statements) throws SQLException {
+		final String driver = properties.getProperty( DRIVER );
+		if ( driver != null ) {
+			try {
+				Class.forName( driver, true, ClassLoader.getSystemClassLoader() );
+			}
+			catch (ClassNotFoundException e) {
+				throw new SQLException( "Unable to load JDBC driver : " + driver, e );
+			}
+		}
+
+		try ( Connection connection = DriverManager.getConnection(
+				url,
+				properties.getProperty( USERNAME ),
+				properties.getProperty( PASSWORD ) );
+				Statement statement = connection.createStatement() ) {
+			for ( String sql : statements ) {
+				statement.execute( sql );
+			}
+		}
+	}
+}
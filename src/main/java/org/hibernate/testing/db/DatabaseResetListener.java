@@ -0,0 +1,78 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import org.junit.platform.engine.support.descriptor.ClassSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+/**
+ * JUnit Platform listener performing the profile's {@linkplain DatabaseReset database reset}
+ * inside the forked test JVM - the snapshot as the test plan starts, the restore before each
+ * (top-level) test class.  The agent jar of the
+ * {@link ForkSlotAgent} registers it as a service, so the JUnit Platform launcher of every fork
+ * picks it up.
+ *
+ * If the reset fails the fork is stopped, rather than running the remaining tests against a
+ * database in an unknown state.
+ *
+ * NOTE : like {@link ForkSlotAgent}, this class is copied into the agent jar, so it must not depend
+ * on anything but the JDK, the JUnit Platform launcher and {@link DatabaseReset} (nor use
+ * nested/anonymous classes)
+ */
+public final class DatabaseResetListener implements TestExecutionListener {
+	/**
+	 * The exit status of a fork stopped because the database could not be reset
+	 */
+	static final int RESET_FAILURE_EXIT_STATUS = 76;
+
+	private TestPlan testPlan;
+
+	@Override
+	public void testPlanExecutionStarted(TestPlan testPlan) {
+		this.testPlan = testPlan;
+		reset( "test plan", false );
+	}
+
+	@Override
+	public void executionStarted(TestIdentifier testIdentifier) {
+		if ( isTopLevelClass( testIdentifier ) ) {
+			reset( testIdentifier.getDisplayName(), true );
+		}
+	}
+
+	private boolean isTopLevelClass(TestIdentifier testIdentifier) {
+		if ( ! ( testIdentifier.getSource().orElse( null ) instanceof ClassSource ) ) {
+			return false;
+		}
+		// not a nested class
+		final TestIdentifier parent = testPlan == null ? null : testPlan.getParent( testIdentifier ).orElse( null );
+		return parent == null || ! ( parent.getSource().orElse( null ) instanceof ClassSource );
+	}
+
+	private static void reset(String description, boolean restore) {
+		final int slot = Integer.getInteger( ForkSlotAgent.FORK_SLOT, 1 );
+		try {
+			if ( restore ) {
+				DatabaseReset.beforeTestClass( slot, System.getProperties() );
+			}
+			else {
+				DatabaseReset.beforeTestPlan( slot, System.getProperties() );
+			}
+		}
+		catch (Exception e) {
+			System.err.println(
+					"[db-profile] Unable to " + ( restore ? "restore" : "snapshot" ) + " database for fork slot "
+							+ slot + " (" + description + ") : " + e
+			);
+			e.printStackTrace();
+			// halt rather than exit - no shutdown hooks against the database in an unknown state
+			Runtime.getRuntime().halt( RESET_FAILURE_EXIT_STATUS );
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.Configuration;
+import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.artifacts.ExternalModuleDependency;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build-scoped cache of the resolved profile (driver) dependencies.
+ *
+ * Profiles shared between projects through the {@link ProfileCatalog} keep the
+ * `profileDependencies<Name>` Configuration of the project which defined them, so every project
+ * running such a profile uses the very same Configuration.  Each Configuration is resolved just
+ * once per build - by whichever project needs it first - and the (de-duplicated) files are handed
+ * to the others.
+ *
+ * Configurations are deliberately not shared based on what they declare : their resolution also
+ * depends on the resolution strategy (forced versions, substitutions, dynamic version caching),
+ * dependency constraints, attributes, component metadata rules and repository content filters,
+ * most of which cannot be compared through Gradle's API.  Profiles a project defines (or adjusts)
+ * itself are therefore resolved by that project, against its own Configuration.
+ */
+public abstract class DriverResolutions implements BuildService<BuildServiceParameters.None> {
+	/**
+	 * Name under which the resolutions are registered as a shared build service
+	 */
+	public static final String SERVICE_NAME = "dbProfileDrivers";
+
+	private final Map<String, List<File>> resolutions = new ConcurrentHashMap<>();
+
+	/**
+	 * The (de-duplicated) files of the given profile dependencies, resolving them if no project
+	 * has done so yet
+	 *
+	 * @param key Identifies the Configuration within the build; see {@link #key}
+	 */
+	List<File> resolve(String key, Configuration dependencies) {
+		return resolutions.computeIfAbsent( key, k -> resolveFiles( dependencies ) );
+	}
+
+	private static List<File> resolveFiles(Configuration dependencies) {
+		return Collections.unmodifiableList( new ArrayList<>( new LinkedHashSet<>( dependencies.getFiles() ) ) );
+	}
+
+	/**
+	 * The profile's driver classpath, shared with the other projects running the same profile
+	 * (see {@link DriverResolutions})
+	 */
+	public static FileCollection driverClasspath(Profile profile, Project project) {
+		final Provider<DriverResolutions> resolutions = project.getGradle().getSharedServices().registerIfAbsent(
+				SERVICE_NAME,
+				DriverResolutions.class,
+				spec -> {}
+		);
+		final Configuration dependencies = profile.getDependencies();
+		final String key = key( dependencies, profile.getDefiningProject() );
+
+		final ConfigurableFileCollection classpath = project.files(
+				(Callable<List<File>>) () -> resolutions.get().resolve( key, dependencies )
+		);
+		if ( ! isExternalOnly( dependencies ) ) {
+			// project (or built file) dependencies need to be built first
+			classpath.builtBy( dependencies );
+		}
+		return classpath;
+	}
+
+	private static boolean isExternalOnly(Configuration dependencies) {
+		for ( Dependency dependency : dependencies.getAllDependencies() ) {
+			if ( ! ( dependency instanceof ExternalModuleDependency ) ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Identifies the Configuration within the build - the Configuration (and the repositories it
+	 * is resolved from) belong to the project which defined the profile, which differs from the
+	 * project running it for profiles shared through the catalog
+	 */
+	static String key(Configuration dependencies, Project definingProject) {
+		return definingProject.getPath() + ":" + dependencies.getName();
+	}
+}
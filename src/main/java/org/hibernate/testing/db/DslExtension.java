@@ -8,12 +8,16 @@ package org.hibernate.testing.db;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import org.gradle.api.NamedDomainObjectContainer;
 import org.gradle.api.Project;
 
+import static org.hibernate.testing.db.Helper.CONCURRENT_SUITES_CONFIG_NAME;
 import static org.hibernate.testing.db.Helper.CUSTOM_DATABASES_DIRECTORY_KEY;
 import static org.hibernate.testing.db.Helper.STANDARD_DATABASES_DIRECTORY;
 
@@ -34,6 +38,14 @@ public class DslExtension extends AbstractActionContainer implements ProfileAcce
 
 	private final List<File> profileSearchDirectories = new ArrayList<>();
 
+	private boolean concurrentProfileSuites;
+
+	/**
+	 * Limits, by database kind, of the number of Test tasks running against that kind of
+	 * database at once.  Kinds without a limit are unlimited.
+	 */
+	private final Map<String, Integer> databaseConcurrencyLimits = new HashMap<>();
+
 	public DslExtension(ProfileCreator profileCreator, Project project) {
 		this.project = project;
 
@@ -51,6 +63,13 @@ public class DslExtension extends AbstractActionContainer implements ProfileAcce
 			profileSearchDirectories.add( customDirectoryViaProperty );
 		}
 
+		databaseConcurrencyLimits.put( "oracle", 1 );
+		databaseConcurrencyLimits.put( "postgresql", 2 );
+
+		if ( project.hasProperty( CONCURRENT_SUITES_CONFIG_NAME ) ) {
+			concurrentProfileSuites = Boolean.parseBoolean( String.valueOf( project.property( CONCURRENT_SUITES_CONFIG_NAME ) ) );
+		}
+
 		project.afterEvaluate(
 				p -> {
 					// just want to get a callback for debugging
@@ -92,6 +111,44 @@ public class DslExtension extends AbstractActionContainer implements ProfileAcce
 	}
 
 
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Concurrent profile suites
+
+	/**
+	 * Whether the profile Test tasks should be run concurrently.  A plugin cannot make Gradle do
+	 * so: the profile Test tasks of a project only run concurrently when the build uses the
+	 * configuration cache (`--configuration-cache`), and those of different projects when parallel
+	 * execution (`--parallel`) is enabled - a warning is logged when the configuration cache is not
+	 * used.  The limits defined by {@link #getDatabaseConcurrencyLimits()} (and
+	 * {@link Profile#getMaxConcurrentSuites()}) keep that from overloading a database server.
+	 * Without it, no limits apply.
+	 *
+	 * Can also be enabled using the `db_profile_concurrent` project property
+	 */
+	public boolean isConcurrentProfileSuites() {
+		return concurrentProfileSuites;
+	}
+
+	public void setConcurrentProfileSuites(boolean concurrentProfileSuites) {
+		this.concurrentProfileSuites = concurrentProfileSuites;
+	}
+
+	/**
+	 * Limits, keyed by {@link Profile#getDatabaseKind() database kind}, of the number of Test tasks
+	 * which may run against that kind of database at once, across the entire build, when
+	 * {@linkplain #isConcurrentProfileSuites() concurrent profile suites} are requested.  By default
+	 * `oracle` is limited to 1 and `postgresql` to 2; other kinds (h2, etc) are unlimited.  All
+	 * projects must declare the same limit for a kind.
+	 */
+	public Map<String, Integer> getDatabaseConcurrencyLimits() {
+		return databaseConcurrencyLimits;
+	}
+
+	public void databaseConcurrencyLimit(String databaseKind, int limit) {
+		databaseConcurrencyLimits.put( databaseKind.toLowerCase( Locale.ROOT ), limit );
+	}
+
+
 	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
 	// Profile search directories
 
@@ -0,0 +1,68 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Properties;
+
+import org.junit.jupiter.api.ClassDescriptor;
+import org.junit.jupiter.api.ClassOrderer;
+import org.junit.jupiter.api.ClassOrdererContext;
+
+/**
+ * JUnit Jupiter class orderer running the test classes of a fork longest (expected duration)
+ * first, so that the heaviest classes do not end up last (see {@link TestClassOrdering}).  Classes
+ * without a recorded duration run after those with one, in the order Jupiter found them.
+ *
+ * Requires JUnit Jupiter 5.8 or later; earlier versions, and other engines (e.g. Vintage), ignore
+ * the orderer.
+ *
+ * NOTE : like {@link ForkSlotAgent}, this class is copied into the agent jar, so it must not depend
+ * on anything but the JDK and the JUnit Jupiter API (nor use nested/anonymous classes)
+ */
+public final class DurationClassOrderer implements ClassOrderer {
+	/**
+	 * The JUnit Jupiter configuration parameter (or system property) naming the default class orderer
+	 */
+	public static final String DEFAULT_ORDER = "junit.jupiter.testclass.order.default";
+
+	/**
+	 * System property naming the file holding the expected test class durations
+	 */
+	public static final String DURATIONS = "db-profile.class-durations";
+
+	@Override
+	public void orderClasses(ClassOrdererContext context) {
+		final String durationsFile = context.getConfigurationParameter( DURATIONS ).orElse( null );
+		if ( durationsFile == null ) {
+			return;
+		}
+
+		final Properties durations = new Properties();
+		try ( InputStream stream = Files.newInputStream( Paths.get( durationsFile ) ) ) {
+			durations.load( stream );
+		}
+		catch (IOException e) {
+			System.err.println( "[db-profile] Unable to read test class durations (" + durationsFile + ") : " + e );
+			return;
+		}
+
+		// stable - classes with equal (or no) durations keep their order
+		context.getClassDescriptors().sort(
+				Comparator.comparingDouble( (ClassDescriptor descriptor) -> expectedDuration( durations, descriptor ) ).reversed()
+		);
+	}
+
+	private static double expectedDuration(Properties durations, ClassDescriptor descriptor) {
+		final String duration = durations.getProperty( descriptor.getTestClass().getName() );
+		return duration == null ? -1 : Double.parseDouble( duration );
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.tasks.Classpath;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskAction;
+
+import groovy.json.JsonOutput;
+
+/**
+ * Exports, as JSON, the plan for running the project's tests against its profiles - for each
+ * profile its Test tasks (including shards), a fingerprint of their classpath, the expected
+ * durations (from the {@linkplain TestTimings recorded timings}) and what the profile needs
+ * allocated (schema pool, local server, per-fork isolation, ...).  Meant for CI orchestration,
+ * e.g. splitting a sweep of the profiles across agents.
+ *
+ * The plan is captured from the profiles themselves, so none of the (lazily registered) profile
+ * Test tasks are realized.  The classpath fingerprint covers the content (not the location, which
+ * differs between CI agents) of each entry of the test runtime classpath and the profile's (driver)
+ * dependencies.
+ *
+ * The classpaths are declared as a {@link Classpath} input, along with the recorded timings and the
+ * captured profile settings, so the test classes are built first and the (potentially large)
+ * classpath is only hashed again when one of them changed - otherwise the task is up-to-date.
+ */
+public class ExportProfilePlanTask extends DefaultTask {
+	public static final String NAME = "exportDbProfilePlan";
+
+	private final String projectPath;
+	private String defaultProfile;
+	private final List<ProfilePlan> profilePlans = new ArrayList<>();
+	private final ConfigurableFileCollection classpath;
+	private final ConfigurableFileCollection timings;
+	private File planFile;
+
+	public ExportProfilePlanTask() {
+		this.projectPath = getProject().getPath();
+		this.classpath = getProject().files();
+		this.timings = getProject().files();
+
+		setGroup( "database" );
+		setDescription( "Exports the profiles, their Test tasks, expected durations and allocation requirements as JSON" );
+	}
+
+	@Input
+	@Optional
+	public String getDefaultProfile() {
+		return defaultProfile;
+	}
+
+	public void setDefaultProfile(String defaultProfile) {
+		this.defaultProfile = defaultProfile;
+	}
+
+	/**
+	 * Include the given profile in the plan
+	 *
+	 * @param baseTestTaskName The name of the Test task the profile Test tasks are copies of
+	 */
+	public void include(Profile profile, String baseTestTaskName, JavaPluginConvention javaPluginConvention) {
+		final ProfilePlan profilePlan = new ProfilePlan( profile, baseTestTaskName, javaPluginConvention, getProject() );
+		profilePlans.add( profilePlan );
+		classpath.from( profilePlan.classpath );
+		timings.from( profilePlan.timingsDirectory );
+	}
+
+	/**
+	 * The settings of each profile captured in the plan
+	 */
+	@Input
+	public List<Map<String, Object>> getProfileSettings() {
+		final List<Map<String, Object>> profileSettings = new ArrayList<>( profilePlans.size() );
+		profilePlans.forEach( profilePlan -> profileSettings.add( profilePlan.settings ) );
+		return profileSettings;
+	}
+
+	/**
+	 * The classpaths of the profile Test tasks, which the plan fingerprints
+	 */
+	@Classpath
+	public FileCollection getClasspath() {
+		return classpath;
+	}
+
+	/**
+	 * The recorded timings (see {@link TestTimings}) of the profiles, from which the expected
+	 * durations are taken
+	 */
+	@InputFiles
+	@PathSensitive( PathSensitivity.RELATIVE )
+	public FileCollection getTimings() {
+		return timings;
+	}
+
+	@OutputFile
+	public File getPlanFile() {
+		return planFile;
+	}
+
+	public void setPlanFile(File planFile) {
+		this.planFile = planFile;
+	}
+
+	@TaskAction
+	public void export() {
+		final List<Map<String, Object>> profiles = new ArrayList<>( profilePlans.size() );
+		profilePlans.forEach( profilePlan -> profiles.add( profilePlan.toJson() ) );
+
+		final Map<String, Object> plan = new LinkedHashMap<>();
+		plan.put( "project", projectPath );
+		plan.put( "defaultProfile", defaultProfile );
+		plan.put( "profiles", profiles );
+
+		try {
+			Files.createDirectories( planFile.getParentFile().toPath() );
+			try ( Writer writer = Files.newBufferedWriter( planFile.toPath(), StandardCharsets.UTF_8 ) ) {
+				writer.write( JsonOutput.prettyPrint( JsonOutput.toJson( plan ) ) );
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to write profile plan : " + planFile, e );
+		}
+
+		getLogger().lifecycle( "Exported plan for {} profiles to {}", profiles.size(), planFile );
+	}
+
+	/**
+	 * The plan for one profile, captured as the task is configured - the Profile itself (and its
+	 * Project) cannot be referenced during execution when using the configuration-cache
+	 */
+	private static class ProfilePlan implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String name;
+		private final Map<String, Object> settings = new LinkedHashMap<>();
+		private final FileCollection classpath;
+		private final File timingsDirectory;
+
+		private ProfilePlan(
+				Profile profile,
+				String baseTestTaskName,
+				JavaPluginConvention javaPluginConvention,
+				Project project) {
+			this.name = profile.getName();
+
+			final String baseName = baseTestTaskName + "_" + profile.getName();
+			final List<String> shardTaskPaths = new ArrayList<>();
+			if ( TestShards.isSharded( profile ) ) {
+				for ( int shard = 1; shard <= profile.getJvm().getShards(); shard++ ) {
+					shardTaskPaths.add( project.absoluteProjectPath( baseName + "_shard" + shard ) );
+				}
+			}
+
+			final Map<String, Object> allocation = new LinkedHashMap<>();
+			allocation.put( "pool", profile.getPool().isEnabled() ? profile.getPool().getSize() : null );
+			allocation.put( "localServer", profile.getLocalServer().isEnabled() );
+			allocation.put( "reset", profile.getReset() );
+			allocation.put( "forkIsolation", ForkIsolation.requiresIsolation( profile ) );
+			allocation.put( "maxConcurrentSuites", profile.getMaxConcurrentSuites() );
+
+			final Map<String, Object> jvm = new LinkedHashMap<>();
+			jvm.put( "maxHeapSize", profile.getJvm().determineMaxHeapSize() );
+			jvm.put( "maxParallelForks", profile.getJvm().getMaxParallelForks() );
+			jvm.put( "autoParallelForks", profile.getJvm().isAutoParallelForks() );
+			jvm.put( "forkEvery", profile.getJvm().getForkEvery() );
+			jvm.put( "shards", profile.getJvm().getShards() );
+
+			settings.put( "name", name );
+			settings.put( "databaseKind", profile.getDatabaseKind().toLowerCase( Locale.ROOT ) );
+			settings.put( "testTask", project.absoluteProjectPath( baseName ) );
+			settings.put( "shardTasks", shardTaskPaths );
+			settings.put( "allocation", allocation );
+			settings.put( "jvm", jvm );
+
+			final SourceSet testSourceSet = javaPluginConvention.getSourceSets().getByName( SourceSet.TEST_SOURCE_SET_NAME );
+			this.classpath = DriverResolutions.driverClasspath( profile, project ).plus( testSourceSet.getRuntimeClasspath() );
+			this.timingsDirectory = new File(
+					Helper.determineOutputDirectory( project, profile.getName() ),
+					TestTimings.DIRECTORY_NAME
+			);
+		}
+
+		private Map<String, Object> toJson() {
+			final TestTimings timings = TestTimings.readAll( timingsDirectory, name );
+			final Map<String, Double> classDurations = new TreeMap<>( TestShards.expectedDurations( timings ) );
+			double expectedMillis = 0;
+			for ( Double duration : classDurations.values() ) {
+				expectedMillis += duration;
+			}
+
+			final Map<String, Object> json = new LinkedHashMap<>();
+			json.put( "name", name );
+			json.put( "databaseKind", settings.get( "databaseKind" ) );
+			json.put( "testTask", settings.get( "testTask" ) );
+			json.put( "shardTasks", settings.get( "shardTasks" ) );
+			json.put( "classpathFingerprint", contentFingerprint( classpath ) );
+			json.put( "expectedDurationMillis", Math.round( expectedMillis ) );
+			json.put( "classDurationsMillis", classDurations );
+			json.put( "allocation", settings.get( "allocation" ) );
+			json.put( "jvm", settings.get( "jvm" ) );
+			return json;
+		}
+	}
+
+	/**
+	 * A fingerprint of the content of the classpath - of each jar, and of each file (and its
+	 * relative path) within each directory - which is the same wherever the classpath is located.
+	 * The files are hashed as they are read, rather than loaded whole
+	 */
+	static String contentFingerprint(Iterable<File> classpath) {
+		final StringBuilder buffer = new StringBuilder();
+		try {
+			for ( File entry : classpath ) {
+				if ( entry.isFile() ) {
+					buffer.append( ProfileDiscoveryIndex.hash( entry.toPath() ) ).append( '\n' );
+				}
+				else if ( entry.isDirectory() ) {
+					final Path root = entry.toPath();
+					final List<Path> files;
+					try ( Stream<Path> paths = Files.walk( root ) ) {
+						files = paths.filter( Files::isRegularFile ).sorted().collect( Collectors.toList() );
+					}
+					for ( Path file : files ) {
+						buffer.append( root.relativize( file ).toString().replace( '\\', '/' ) )
+								.append( ':' )
+								.append( ProfileDiscoveryIndex.hash( file ) )
+								.append( '\n' );
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to fingerprint the test classpath", e );
+		}
+		return ProfileDiscoveryIndex.hash( buffer.toString().getBytes( StandardCharsets.UTF_8 ) ).substring( 0, 16 );
+	}
+}
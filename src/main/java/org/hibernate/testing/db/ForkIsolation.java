@@ -0,0 +1,266 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.api.tasks.testing.junitplatform.JUnitPlatformOptions;
+import org.gradle.process.CommandLineArgumentProvider;
+
+/**
+ * Isolates the JVMs forked by a profile Test task from one another, so that `maxParallelForks`
+ * can be used against a real (shared) database.
+ *
+ * Each fork claims a slot number via the {@link ForkSlotAgent}; profile properties can then
+ * refer to it with the `{fork}` placeholder (e.g. `hibernate.default_schema = 'orm_test_{fork}'`),
+ * and pooled allocations hand each fork its own schema via per-fork system properties.  The agent
+ * jar also carries the listener performing the profile's {@linkplain Profile#getReset() database reset},
+ * and the {@link DurationClassOrderer}.
+ */
+class ForkIsolation {
+	private static final List<String> AGENT_CLASS_RESOURCES = Arrays.asList(
+			classResource( ForkSlotAgent.class ),
+			classResource( DatabaseReset.class ),
+			classResource( DatabaseResetListener.class ),
+			classResource( DurationClassOrderer.class )
+	);
+
+	/**
+	 * Registers the {@link DatabaseResetListener} with the JUnit Platform launcher
+	 */
+	private static final String LISTENER_SERVICE = "META-INF/services/org.junit.platform.launcher.TestExecutionListener";
+
+	/**
+	 * Whether the profile needs per-fork isolation - it refers to the `{fork}` placeholder, uses
+	 * pooled allocation or asks for the database to be reset
+	 */
+	static boolean requiresIsolation(Profile profile) {
+		if ( profile.getPool().isEnabled() || profile.getReset() != null ) {
+			return true;
+		}
+
+		for ( Object value : profile.getHibernateProperties().values() ) {
+			if ( value != null && value.toString().contains( ForkSlotAgent.FORK_PLACEHOLDER ) ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	static void apply(Profile profile, Test testTask, Project project) {
+		if ( ! requiresIsolation( profile ) && ! profile.getCircuitBreaker().isEnabled() && ! TestClassOrdering.isApplied( testTask ) ) {
+			return;
+		}
+
+		final File slotDirectory = new File(
+				new File( Helper.determineOutputDirectory( project, profile.getName() ), "forks" ),
+				testTask.getName()
+		);
+		final File agentDirectory = new File( project.getBuildDir(), "tmp/dbProfile" );
+
+		File snapshotDirectory = null;
+		if ( profile.getReset() != null ) {
+			snapshotDirectory = new File(
+					new File( Helper.determineOutputDirectory( project, profile.getName() ), "snapshots" ),
+					testTask.getName()
+			);
+
+			final Object url = profile.getHibernateProperties().get( Profile.URL );
+			try {
+				DatabaseReset.resolveStrategy( profile.getReset(), url == null ? null : url.toString() );
+			}
+			catch (IllegalArgumentException e) {
+				throw new ProfileCreationException(
+						"Unable to reset the database of profile `" + profile.getName() + "` : " + e.getMessage()
+				);
+			}
+			testTask.systemProperty( DatabaseReset.STRATEGY, profile.getReset() );
+		}
+
+		testTask.doFirst( new ForkSetupAction( slotDirectory, snapshotDirectory ) );
+		testTask.getJvmArgumentProviders().add( new AgentArgumentProvider( agentDirectory, slotDirectory ) );
+	}
+
+	/**
+	 * Passes the (final) number of forks along to the agent, and clears the snapshots of the
+	 * previous run so that each slot takes a new one as its first JVM starts.  The reset is
+	 * performed by a JUnit Platform listener, so requires `useJUnitPlatform()` (JUnit 4 tests can
+	 * use the Vintage engine).  The (absolute) snapshot
+	 * directory is only passed as the task starts, so that it is not part of the build cache key.
+	 */
+	private static class ForkSetupAction implements Action<Task> {
+		private final File slotDirectory;
+		private final File snapshotDirectory;
+
+		private ForkSetupAction(File slotDirectory, File snapshotDirectory) {
+			this.slotDirectory = slotDirectory;
+			this.snapshotDirectory = snapshotDirectory;
+		}
+
+		@Override
+		@SuppressWarnings("ResultOfMethodCallIgnored")
+		public void execute(Task task) {
+			final Test testTask = (Test) task;
+			slotDirectory.mkdirs();
+			if ( snapshotDirectory != null ) {
+				if ( ! ( testTask.getOptions() instanceof JUnitPlatformOptions ) ) {
+					throw new BuildExecutionException(
+							"Database reset requires the JUnit Platform (`useJUnitPlatform()`) : " + testTask.getPath()
+					);
+				}
+				deleteRecursively( snapshotDirectory );
+				testTask.systemProperty( DatabaseReset.DIRECTORY, snapshotDirectory.getAbsolutePath() );
+			}
+			testTask.systemProperty(
+					ForkSlotAgent.FORK_COUNT,
+					Integer.toString( Math.max( 1, testTask.getMaxParallelForks() ) )
+			);
+		}
+	}
+
+	private static void deleteRecursively(File directory) {
+		if ( ! directory.exists() ) {
+			return;
+		}
+		try ( Stream<Path> paths = Files.walk( directory.toPath() ) ) {
+			final List<Path> all = paths.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() );
+			for ( Path path : all ) {
+				Files.delete( path );
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to delete database snapshots : " + directory, e );
+		}
+	}
+
+	/**
+	 * Adds the `-javaagent` argument for the {@link ForkSlotAgent}
+	 */
+	private static class AgentArgumentProvider implements CommandLineArgumentProvider {
+		private final File agentDirectory;
+		private final File slotDirectory;
+
+		private AgentArgumentProvider(File agentDirectory, File slotDirectory) {
+			this.agentDirectory = agentDirectory;
+			this.slotDirectory = slotDirectory;
+		}
+
+		@Internal
+		public File getAgentDirectory() {
+			return agentDirectory;
+		}
+
+		@Internal
+		public File getSlotDirectory() {
+			return slotDirectory;
+		}
+
+		@Override
+		public Iterable<String> asArguments() {
+			final File agentJar = prepareAgentJar( agentDirectory );
+			return Collections.singletonList(
+					"-javaagent:" + agentJar.getAbsolutePath() + "=" + slotDirectory.getAbsolutePath()
+			);
+		}
+	}
+
+	/**
+	 * The agent is packaged in a jar of its own (rather than using the plugin jar) so that
+	 * nothing else from the plugin ends up on the test JVM's classpath.  The jar name includes
+	 * a hash of the agent classes, so different plugin versions never share a stale jar
+	 */
+	static synchronized File prepareAgentJar(File agentDirectory) {
+		final List<byte[]> agentClasses = new ArrayList<>();
+		final ByteArrayOutputStream allClasses = new ByteArrayOutputStream();
+		for ( String resource : AGENT_CLASS_RESOURCES ) {
+			final byte[] agentClass = readClass( resource );
+			agentClasses.add( agentClass );
+			allClasses.write( agentClass, 0, agentClass.length );
+		}
+
+		final File agentJar = new File(
+				agentDirectory,
+				"fork-slot-agent-" + ProfileDiscoveryIndex.hash( allClasses.toByteArray() ).substring( 0, 12 ) + ".jar"
+		);
+		if ( agentJar.exists() ) {
+			return agentJar;
+		}
+
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+		manifest.getMainAttributes().put( new Attributes.Name( "Premain-Class" ), ForkSlotAgent.class.getName() );
+
+		try {
+			Files.createDirectories( agentDirectory.toPath() );
+			final File tempFile = File.createTempFile( "fork-slot-agent", ".tmp", agentDirectory );
+			try ( OutputStream out = Files.newOutputStream( tempFile.toPath() );
+					JarOutputStream jar = new JarOutputStream( out, manifest ) ) {
+				for ( int i = 0; i < AGENT_CLASS_RESOURCES.size(); i++ ) {
+					jar.putNextEntry( new JarEntry( AGENT_CLASS_RESOURCES.get( i ) ) );
+					jar.write( agentClasses.get( i ) );
+					jar.closeEntry();
+				}
+				jar.putNextEntry( new JarEntry( LISTENER_SERVICE ) );
+				jar.write( DatabaseResetListener.class.getName().getBytes( StandardCharsets.UTF_8 ) );
+				jar.closeEntry();
+			}
+			Files.move( tempFile.toPath(), agentJar.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to create fork slot agent jar : " + agentJar, e );
+		}
+
+		return agentJar;
+	}
+
+	private static String classResource(Class<?> agentClass) {
+		return agentClass.getName().replace( '.', '/' ) + ".class";
+	}
+
+	private static byte[] readClass(String resource) {
+		try ( InputStream stream = ForkIsolation.class.getClassLoader().getResourceAsStream( resource ) ) {
+			if ( stream == null ) {
+				throw new BuildExecutionException( "Unable to locate fork slot agent class : " + resource );
+			}
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			final byte[] chunk = new byte[ 4096 ];
+			int read;
+			while ( ( read = stream.read( chunk ) ) != -1 ) {
+				buffer.write( chunk, 0, read );
+			}
+			return buffer.toByteArray();
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to read fork slot agent class : " + resource, e );
+		}
+	}
+}
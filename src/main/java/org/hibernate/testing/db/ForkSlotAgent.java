@@ -0,0 +1,210 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.Properties;
+
+/**
+ * Java agent installed into the JVMs forked by a profile Test task (see {@link ForkIsolation})
+ * which gives each fork a slot number between 1 and the task's `maxParallelForks`, and uses it
+ * to adjust the fork's system properties before any test code runs:
+ *
+ * * `{fork}` in any system property value is replaced by the slot number
+ * * `db-profile.fork.<slot>.<name>` system properties are applied as `<name>`
+ *
+ * Slots are claimed by locking `slot-<n>.lock` files in the directory passed as the agent
+ * argument; the lock is held until the fork exits, so a slot is only re-used (with `forkEvery`)
+ * once its previous fork is gone.
+ *
+ * The agent jar also carries the {@link DatabaseResetListener}, which resets the database around
+ * each test class if the profile asked for it.
+ *
+ * If the profile has a {@link CircuitBreaker}, the agent also watches for its trip file and
+ * stops the fork as soon as the breaker trips.
+ *
+ * NOTE : this class is copied into a jar of its own to be used as the agent, so it must not
+ * depend on anything but the JDK (nor use nested/anonymous classes)
+ */
+public final class ForkSlotAgent {
+	/**
+	 * The placeholder replaced by the fork's slot number
+	 */
+	public static final String FORK_PLACEHOLDER = "{fork}";
+
+	/**
+	 * System property holding the fork's slot number, once claimed
+	 */
+	public static final String FORK_SLOT = "db-profile.fork";
+
+	/**
+	 * System property holding the number of slots (the Test task's `maxParallelForks`)
+	 */
+	public static final String FORK_COUNT = "db-profile.fork.count";
+
+	/**
+	 * Prefix for per-fork system properties : `db-profile.fork.<slot>.<name>`
+	 */
+	public static final String FORK_PROPERTY_PREFIX = "db-profile.fork.";
+
+	/**
+	 * System property holding the {@link CircuitBreaker} trip file, if the profile has one
+	 */
+	public static final String CIRCUIT_BREAKER_FILE = "db-profile.breaker.file";
+
+	/**
+	 * The exit status of a fork stopped by the circuit breaker
+	 */
+	static final int CIRCUIT_BREAKER_EXIT_STATUS = 75;
+
+	private static final long SLOT_TIMEOUT_MS = 60_000;
+
+	private static final long CIRCUIT_BREAKER_POLL_MS = 250;
+
+	// held for the life of the JVM
+	@SuppressWarnings({"FieldCanBeLocal", "unused"})
+	private static FileChannel slotChannel;
+	@SuppressWarnings({"FieldCanBeLocal", "unused"})
+	private static FileLock slotLock;
+
+	private ForkSlotAgent() {
+	}
+
+	public static void premain(String slotDirectory) {
+		final String circuitBreakerFile = System.getProperty( CIRCUIT_BREAKER_FILE );
+		if ( circuitBreakerFile != null ) {
+			watchCircuitBreaker( new File( circuitBreakerFile ) );
+		}
+
+		final int slot = claimSlot( new File( slotDirectory ), Math.max( 1, Integer.getInteger( FORK_COUNT, 1 ) ) );
+		apply( slot, System.getProperties() );
+	}
+
+	/**
+	 * Stops the fork as soon as the trip file exists - including right away, for forks started
+	 * (e.g. with `forkEvery`) after the breaker tripped
+	 */
+	private static void watchCircuitBreaker(File tripFile) {
+		if ( tripFile.exists() ) {
+			stopTripped( tripFile );
+		}
+
+		// NOTE : a lambda, unlike a nested class, does not need a class file of its own
+		final Thread watcher = new Thread( () -> pollCircuitBreaker( tripFile ), "db-profile-circuit-breaker" );
+		watcher.setDaemon( true );
+		watcher.start();
+	}
+
+	private static void pollCircuitBreaker(File tripFile) {
+		while ( ! tripFile.exists() ) {
+			try {
+				Thread.sleep( CIRCUIT_BREAKER_POLL_MS );
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+		stopTripped( tripFile );
+	}
+
+	private static void stopTripped(File tripFile) {
+		System.err.println( "[db-profile] Circuit breaker tripped (" + tripFile + "); stopping fork" );
+		// halt rather than exit - the tests still running must not get to run shutdown hooks against the database
+		Runtime.getRuntime().halt( CIRCUIT_BREAKER_EXIT_STATUS );
+	}
+
+	/**
+	 * Per-fork system property name for the given slot
+	 */
+	public static String forkPropertyName(int slot, String name) {
+		return FORK_PROPERTY_PREFIX + slot + "." + name;
+	}
+
+	private static int claimSlot(File slotDirectory, int slotCount) {
+		//noinspection ResultOfMethodCallIgnored
+		slotDirectory.mkdirs();
+
+		final long deadline = System.currentTimeMillis() + SLOT_TIMEOUT_MS;
+		while ( true ) {
+			for ( int slot = 1; slot <= slotCount; slot++ ) {
+				if ( tryLock( new File( slotDirectory, "slot-" + slot + ".lock" ) ) ) {
+					return slot;
+				}
+			}
+
+			if ( System.currentTimeMillis() > deadline ) {
+				// should not happen, but better to share a slot than to fail
+				final int slot = 1 + (int) ( pid() % slotCount );
+				System.err.println( "[db-profile] Unable to claim a fork slot in " + slotDirectory + "; using slot " + slot );
+				return slot;
+			}
+
+			try {
+				// a previous fork (forkEvery) may still be shutting down
+				Thread.sleep( 50 );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return 1;
+			}
+		}
+	}
+
+	private static boolean tryLock(File lockFile) {
+		try {
+			final FileChannel channel = new RandomAccessFile( lockFile, "rw" ).getChannel();
+			final FileLock lock = channel.tryLock();
+			if ( lock == null ) {
+				channel.close();
+				return false;
+			}
+			slotChannel = channel;
+			slotLock = lock;
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	static void apply(int slot, Properties properties) {
+		properties.setProperty( FORK_SLOT, Integer.toString( slot ) );
+
+		final String slotPrefix = FORK_PROPERTY_PREFIX + slot + ".";
+		for ( String name : properties.stringPropertyNames() ) {
+			if ( name.startsWith( slotPrefix ) ) {
+				properties.setProperty( name.substring( slotPrefix.length() ), properties.getProperty( name ) );
+			}
+		}
+
+		final String slotString = Integer.toString( slot );
+		for ( String name : properties.stringPropertyNames() ) {
+			final String value = properties.getProperty( name );
+			if ( value.contains( FORK_PLACEHOLDER ) ) {
+				properties.setProperty( name, value.replace( FORK_PLACEHOLDER, slotString ) );
+			}
+		}
+	}
+
+	/**
+	 * The JVM's pid, without needing Java 9's `ProcessHandle`
+	 */
+	private static long pid() {
+		final String name = ManagementFactory.getRuntimeMXBean().getName();
+		try {
+			return Long.parseLong( name.substring( 0, name.indexOf( '@' ) ) );
+		}
+		catch (RuntimeException e) {
+			return System.nanoTime();
+		}
+	}
+}
@@ -0,0 +1,269 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.testing.Test;
+
+import org.hibernate.testing.db.alloc.ConnectionBudget;
+
+/**
+ * Determines the number of forks of a profile Test task as it starts (see
+ * {@link TestJvmSettings#isAutoParallelForks()}) - as many as there are cores (and Gradle workers),
+ * but no more than the free memory can hold given the heap of each fork, and no more than the
+ * profile's connection budget allows given the connections each fork opens.  The free memory and the
+ * budget are both shared between the profile's Test tasks allowed to run at once (see
+ * {@link SuiteConcurrencyLimit}).
+ */
+class ForkTuning {
+	/**
+	 * Memory, in MB, kept free for Gradle itself and the database, if local
+	 */
+	static final long RESERVED_MEMORY_MB = 1024;
+
+	/**
+	 * Memory, in MB, a fork uses beyond its heap (metaspace, code cache, thread stacks, ...)
+	 */
+	static final long FORK_OVERHEAD_MB = 256;
+
+	static final String POOL_SIZE = "hibernate.connection.pool_size";
+
+	static void apply(Profile profile, Test testTask, DslExtension dslExtension, Project project) {
+		final TestJvmSettings jvm = profile.getJvm();
+		if ( ! jvm.isAutoParallelForks() ) {
+			return;
+		}
+
+		final String url = stringValue( profile, Profile.URL );
+		final Integer concurrentSuites = SuiteConcurrencyLimit.determineLimit( profile, dslExtension );
+
+		testTask.doFirst(
+				new TuneAction(
+						profile.getName(),
+						jvm.getMaxParallelForks(),
+						jvm.isAdaptiveHeap()
+								? TestJvmSettings.toMegabytes( jvm.getAdaptiveMaxHeapSize(), "adaptiveMaxHeapSize", profile.getName() )
+								: TestJvmSettings.toMegabytes( jvm.determineMaxHeapSize(), "maxHeapSize", profile.getName() ),
+						jvm.getConnectionBudget(),
+						determineConnectionsPerFork( profile ),
+						concurrentSuites == null ? 1 : concurrentSuites,
+						project.getGradle().getStartParameter().getMaxWorkerCount(),
+						DriverResolutions.driverClasspath( profile, project ),
+						stringValue( profile, Profile.DRIVER ),
+						url,
+						stringValue( profile, Profile.USERNAME ),
+						stringValue( profile, Profile.PASSWORD )
+				)
+		);
+	}
+
+	private static int determineConnectionsPerFork(Profile profile) {
+		if ( profile.getJvm().getConnectionsPerFork() != null ) {
+			return Math.max( 1, profile.getJvm().getConnectionsPerFork() );
+		}
+
+		final String poolSize = stringValue( profile, POOL_SIZE );
+		if ( poolSize != null ) {
+			try {
+				return Math.max( 1, Integer.parseInt( poolSize.trim() ) );
+			}
+			catch (NumberFormatException e) {
+				throw new ProfileCreationException(
+						"Invalid `" + POOL_SIZE + "` for profile `" + profile.getName() + "` : " + poolSize
+				);
+			}
+		}
+
+		return 1;
+	}
+
+	private static String stringValue(Profile profile, String name) {
+		final Object value = profile.getHibernateProperties().get( name );
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * The number of forks to use
+	 *
+	 * @param availableMemoryMb The free memory, or `null` if unknown
+	 * @param connectionBudget The connections available to the Test task, or `null` if unlimited
+	 * @param maxParallelForks The configured upper bound, or `null` if none
+	 */
+	static int computeForks(
+			int cores,
+			int maxWorkers,
+			Long availableMemoryMb,
+			long heapMb,
+			Integer connectionBudget,
+			int connectionsPerFork,
+			Integer maxParallelForks) {
+		int forks = Math.min( cores, maxWorkers );
+
+		if ( availableMemoryMb != null ) {
+			final long byMemory = ( availableMemoryMb - RESERVED_MEMORY_MB ) / ( heapMb + FORK_OVERHEAD_MB );
+			forks = (int) Math.min( forks, byMemory );
+		}
+
+		if ( connectionBudget != null ) {
+			forks = Math.min( forks, connectionBudget / connectionsPerFork );
+		}
+
+		if ( maxParallelForks != null ) {
+			forks = Math.min( forks, maxParallelForks );
+		}
+
+		return Math.max( 1, forks );
+	}
+
+	/**
+	 * The share of the available memory (in MB, or `null` if unknown) of one of the given number of
+	 * Test tasks running at once - the memory kept free for Gradle and the database is only kept once
+	 */
+	static Long memoryShare(Long availableMemoryMb, int concurrentSuites) {
+		if ( availableMemoryMb == null || concurrentSuites <= 1 ) {
+			return availableMemoryMb;
+		}
+		return RESERVED_MEMORY_MB + Math.max( 0, availableMemoryMb - RESERVED_MEMORY_MB ) / concurrentSuites;
+	}
+
+	/**
+	 * The memory available to new processes, in MB, or `null` if unknown.  On Linux this is
+	 * `MemAvailable` (which, unlike the free memory, includes the reclaimable page cache)
+	 */
+	static Long determineAvailableMemory() {
+		final File meminfo = new File( "/proc/meminfo" );
+		if ( meminfo.exists() ) {
+			try {
+				final List<String> lines = Files.readAllLines( meminfo.toPath(), StandardCharsets.US_ASCII );
+				for ( String line : lines ) {
+					if ( line.startsWith( "MemAvailable:" ) ) {
+						// e.g. `MemAvailable:   12345678 kB`
+						final String[] parts = line.substring( "MemAvailable:".length() ).trim().split( "\\s+" );
+						return Long.parseLong( parts[0] ) / 1024;
+					}
+				}
+			}
+			catch (IOException | NumberFormatException ignore) {
+			}
+		}
+
+		final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+		if ( osBean instanceof com.sun.management.OperatingSystemMXBean ) {
+			return ( (com.sun.management.OperatingSystemMXBean) osBean ).getFreePhysicalMemorySize() / ( 1024 * 1024 );
+		}
+
+		return null;
+	}
+
+	/**
+	 * Measures the machine and the database, and sets the number of forks.  Added after the other
+	 * `doFirst` actions of the profile, so that it happens first - fork isolation then sees the
+	 * final number of forks.
+	 */
+	private static class TuneAction implements Action<Task> {
+		private final String profileName;
+		private final Integer maxParallelForks;
+		private final long heapMb;
+		private final Integer connectionBudget;
+		private final int connectionsPerFork;
+		private final int concurrentSuites;
+		private final int maxWorkers;
+
+		private final FileCollection driverClasspath;
+		private final String driverClassName;
+		private final String url;
+		private final String username;
+		private final String password;
+
+		private TuneAction(
+				String profileName,
+				Integer maxParallelForks,
+				long heapMb,
+				Integer connectionBudget,
+				int connectionsPerFork,
+				int concurrentSuites,
+				int maxWorkers,
+				FileCollection driverClasspath,
+				String driverClassName,
+				String url,
+				String username,
+				String password) {
+			this.profileName = profileName;
+			this.maxParallelForks = maxParallelForks;
+			this.heapMb = heapMb;
+			this.connectionBudget = connectionBudget;
+			this.connectionsPerFork = connectionsPerFork;
+			this.concurrentSuites = concurrentSuites;
+			this.maxWorkers = maxWorkers;
+			this.driverClasspath = driverClasspath;
+			this.driverClassName = driverClassName;
+			this.url = url;
+			this.username = username;
+			this.password = password;
+		}
+
+		@Override
+		public void execute(Task task) {
+			final Test testTask = (Test) task;
+
+			final int cores = Runtime.getRuntime().availableProcessors();
+			final Long availableMemory = memoryShare( determineAvailableMemory(), concurrentSuites );
+			final Integer budget = determineBudget();
+
+			final int forks = computeForks(
+					cores,
+					maxWorkers,
+					availableMemory,
+					heapMb,
+					budget,
+					connectionsPerFork,
+					maxParallelForks
+			);
+			testTask.setMaxParallelForks( forks );
+
+			task.getLogger().lifecycle(
+					"Using {} forks for `{}` profile Test task `{}` ({} cores, {} MB available, {} MB per fork, {} connections available at {} per fork)",
+					forks,
+					profileName,
+					testTask.getPath(),
+					cores,
+					availableMemory == null ? "?" : availableMemory,
+					heapMb + FORK_OVERHEAD_MB,
+					budget == null ? "unlimited" : budget,
+					connectionsPerFork
+			);
+		}
+
+		/**
+		 * The connections available to this Test task - the declared budget, else half of what the
+		 * server has left (leaving room for everyone else using it), shared between the profile's
+		 * Test tasks allowed to run at once
+		 */
+		private Integer determineBudget() {
+			Integer budget = connectionBudget;
+			if ( budget == null && url != null && ! ConnectionBudget.isEmbedded( url ) ) {
+				final Integer available = ConnectionBudget.probe( driverClasspath.getFiles(), driverClassName, url, username, password );
+				if ( available != null ) {
+					budget = Math.max( 0, available ) / 2;
+				}
+			}
+
+			return budget == null ? null : budget / concurrentSuites;
+		}
+	}
+}
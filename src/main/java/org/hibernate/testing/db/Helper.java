@@ -6,27 +6,42 @@
  */
 package org.hibernate.testing.db;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
+import org.gradle.StartParameter;
+import org.gradle.api.Action;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.testing.Test;
 import org.gradle.api.tasks.testing.TestDescriptor;
 import org.gradle.api.tasks.testing.TestFrameworkOptions;
-import org.gradle.api.tasks.testing.TestListener;
 import org.gradle.api.tasks.testing.TestResult;
 import org.gradle.api.tasks.testing.junit.JUnitOptions;
 import org.gradle.api.tasks.testing.junitplatform.JUnitPlatformOptions;
 import org.gradle.api.tasks.testing.testng.TestNGOptions;
+import org.gradle.process.CommandLineArgumentProvider;
+
+import org.hibernate.testing.db.alloc.DatabaseAllocator;
 
 /**
  * @author Steve Ebersole
@@ -63,6 +78,13 @@ public class Helper {
 
 	public static final String CUSTOM_DATABASES_DIRECTORY_KEY = "custom_profiles_dir";
 
+	/**
+	 * Used to enable concurrent execution of the profile Test tasks as a project (-P) property
+	 *
+	 * @see DslExtension#isConcurrentProfileSuites()
+	 */
+	public static final String CONCURRENT_SUITES_CONFIG_NAME = "db_profile_concurrent";
+
 	/**
 	 * A "grouping" task for executing tests against all resolved database profiles
 	 */
@@ -80,10 +102,56 @@ public class Helper {
 		);
 	}
 
+	/**
+	 * Whether the build uses the configuration cache, with which Gradle runs the tasks of a project
+	 * in parallel as well - parallel execution (`--parallel`) on its own only runs the tasks of
+	 * different projects concurrently.
+	 *
+	 * NOTE : Gradle 6 has no public API for this, so this checks the (internal) start parameter
+	 * and the `org.gradle.unsafe.configuration-cache` property
+	 */
+	public static boolean isConfigurationCacheRequested(Project project) {
+		final StartParameter startParameter = project.getGradle().getStartParameter();
+		for ( String methodName : new String[] { "isConfigurationCacheRequested", "isConfigurationCache", "getConfigurationCache" } ) {
+			try {
+				final Method method = startParameter.getClass().getMethod( methodName );
+				return isEnabled( method.invoke( startParameter ) );
+			}
+			catch (ReflectiveOperationException ignore) {
+				// not this Gradle version
+			}
+		}
+
+		return isEnabled( project.findProperty( "org.gradle.unsafe.configuration-cache" ) );
+	}
+
+	private static boolean isEnabled(Object option) {
+		if ( option == null ) {
+			return false;
+		}
+		final String value = option.toString().toLowerCase( Locale.ROOT );
+		return ! value.equals( "false" ) && ! value.equals( "off" );
+	}
+
 	public static void augmentHibernatePropertiesFile(
 			File hibernatePropertiesFile,
 			Profile selectedProfile,
 			Project project) {
+		augmentHibernatePropertiesFile(
+				hibernatePropertiesFile,
+				selectedProfile.getName(),
+				hibernatePropertiesSnapshot( selectedProfile )
+		);
+	}
+
+	/**
+	 * Form of {@link #augmentHibernatePropertiesFile(File, Profile, Project)} usable during
+	 * task execution, where only the captured profile state is available
+	 */
+	public static void augmentHibernatePropertiesFile(
+			File hibernatePropertiesFile,
+			String profileName,
+			Map<String, String> profileProperties) {
 		final Properties augmented;
 		if ( hibernatePropertiesFile.exists() ) {
 			augmented =  loadProperties( hibernatePropertiesFile );
@@ -93,21 +161,36 @@ public class Helper {
 		}
 
 		boolean changed = false;
-		for ( Map.Entry<String, Object> entry : selectedProfile.getHibernateProperties().entrySet() ) {
+		for ( Map.Entry<String, String> entry : profileProperties.entrySet() ) {
 			final Object existing = augmented.put( entry.getKey(), entry.getValue() );
-			changed = changed || existing != entry.getValue();
+			changed = changed || ! entry.getValue().equals( existing );
 		}
 
 		if ( changed ) {
 			writeProperties(
 					augmented,
 					hibernatePropertiesFile,
-					"Augmented for database profile `" + selectedProfile.getName() +
-							"` - " + new SimpleDateFormat( "yyyy-MM-dd" ).format( new Date() )
+					"Augmented for database profile `" + profileName + "`"
 			);
 		}
 	}
 
+	/**
+	 * A (sorted) copy of the profile's Hibernate properties as Strings.  Unlike the Profile
+	 * itself, this is safe to capture as task state.
+	 */
+	public static Map<String, String> hibernatePropertiesSnapshot(Profile profile) {
+		final TreeMap<String, String> snapshot = new TreeMap<>();
+		profile.getHibernateProperties().forEach(
+				(key, value) -> {
+					if ( value != null ) {
+						snapshot.put( key, value.toString() );
+					}
+				}
+		);
+		return snapshot;
+	}
+
 	public static Properties loadProperties(File propFile) {
 		final Properties props = new Properties();
 		try (FileInputStream stream = new FileInputStream( propFile )) {
@@ -122,46 +205,118 @@ public class Helper {
 		}
 	}
 
+	/**
+	 * Writes the properties, sorted and without the timestamp `Properties#store` adds, so that the
+	 * same properties always produce the same file
+	 */
 	@SuppressWarnings("ResultOfMethodCallIgnored")
 	public static void writeProperties(
 			Properties properties,
 			File file,
 			String comment) {
-		if ( ! file.exists() ) {
-			if ( ! file.getParentFile().exists() ) {
-				file.getParentFile().mkdirs();
-			}
+		if ( ! file.getParentFile().exists() ) {
+			file.getParentFile().mkdirs();
+		}
 
-			try {
-				file.createNewFile();
+		try {
+			// let Properties handle the escaping (ISO 8859-1)
+			final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+			properties.store( stored, null );
+
+			final List<String> entries = new ArrayList<>();
+			for ( String line : stored.toString( StandardCharsets.ISO_8859_1.name() ).split( "\\R" ) ) {
+				if ( ! line.isEmpty() && ! line.startsWith( "#" ) ) {
+					entries.add( line );
+				}
 			}
-			catch (IOException e) {
-				throw new RuntimeException( "Unable to create file to store Properties : " + file.getAbsolutePath(), e );
+			Collections.sort( entries );
+
+			final StringBuilder content = new StringBuilder();
+			if ( comment != null ) {
+				content.append( "# " ).append( comment ).append( '\n' );
 			}
-		}
+			entries.forEach( entry -> content.append( entry ).append( '\n' ) );
 
-		try ( FileOutputStream stream = new FileOutputStream( file ) ) {
-			properties.store( stream, comment );
-			stream.flush();
+			Files.write( file.toPath(), content.toString().getBytes( StandardCharsets.ISO_8859_1 ) );
 		}
 		catch (IOException e) {
 			throw new RuntimeException( "Unable to store Properties to file : " + file.getAbsolutePath(), e );
 		}
 	}
 
-	static Test makeCopy(
-			Test baseTestTask,
+	/**
+	 * Registers the `processTestResources_<profile>` task, generating the profile's
+	 * `hibernate.properties` (see {@link ProfileResourcesTask})
+	 */
+	static TaskProvider<ProfileResourcesTask> registerResources(
+			Profile profile,
+			JavaPluginConvention javaPluginConvention,
+			Project project) {
+		final SourceSet testSourceSet = javaPluginConvention.getSourceSets().getByName( SourceSet.TEST_SOURCE_SET_NAME );
+		final TaskProvider<ProfileResourcesTask> resourcesTask = project.getTasks().register(
+				ProfileResourcesTask.NAME_PREFIX + profile.getName(),
+				ProfileResourcesTask.class,
+				profile.getName(),
+				ProfileInputs.normalize( hibernatePropertiesSnapshot( profile ), project.getRootDir() )
+		);
+		resourcesTask.configure(
+				task -> {
+					task.getBaseProperties().from(
+							testSourceSet.getResources().matching( filter -> filter.include( "hibernate.properties" ) )
+					);
+					task.setOutputDirectory( new File( determineOutputDirectory( project, profile.getName() ), "resources" ) );
+				}
+		);
+		return resourcesTask;
+	}
+
+	/**
+	 * Registers the `test_<profile>` copy of the given Test task.  The copy is
+	 * only configured (see {@link #makeCopy}) if Gradle actually needs it
+	 */
+	static TaskProvider<Test> registerCopy(
+			TaskProvider<Test> baseTestTask,
 			JavaPluginConvention javaPluginConvention,
 			Profile profile,
 			DslExtension dslExtension,
 			Project project) {
+		return project.getTasks().register(
+				baseTestTask.getName() + "_" + profile.getName(),
+				Test.class,
+				copy -> {
+					makeCopy(
+							baseTestTask.get(),
+							copy,
+							javaPluginConvention,
+							profile,
+							determineOutputDirectory( project, profile.getName() ),
+							project
+					);
+					applyProfile( profile, copy, dslExtension, project );
+					ForkTuning.apply( profile, copy, dslExtension, project );
+				}
+		);
+	}
+
+	/**
+	 * Configures the copy of the base Test task for the profile
+	 *
+	 * @param outputDirectory The directory for the copy's reports, results, etc.  Generally the
+	 * profile's {@linkplain #determineOutputDirectory output directory}
+	 */
+	static void makeCopy(
+			Test baseTestTask,
+			Test copy,
+			JavaPluginConvention javaPluginConvention,
+			Profile profile,
+			File outputDirectory,
+			Project project) {
 		project.getLogger().lifecycle(
 				"Making copy of `{}` Test task for `{}` profile",
 				baseTestTask.getPath(),
 				profile.getName()
 		);
 
-		final Test copy = project.getTasks().create( baseTestTask.getName() + "_" + profile.getName(), Test.class );
 		copy.setGroup( "database" );
 		copy.setDescription( "Runs tests against the `" + profile.getName() + "` profile" );
 		copy.setIgnoreFailures( baseTestTask.getIgnoreFailures() );
@@ -169,21 +324,29 @@ public class Helper {
 
 		copy.getSystemProperties().putAll( baseTestTask.getSystemProperties() );
 
-		final File outputDirectory = determineOutputDirectory( project, profile.getName() );
-		copy.setWorkingDir( new File( outputDirectory, "work" ) );
+		// the working directory and binary results go in RAM, if asked (and available)
+		final File ramDirectory = RamStorage.determineDirectory( profile, copy, project );
+		final File scratchDirectory = ramDirectory == null ? outputDirectory : ramDirectory;
+		copy.setWorkingDir( new File( scratchDirectory, "work" ) );
 
 		copy.getReports().getHtml().setDestination( new File( outputDirectory, "reports" ) );
 		copy.getReports().getJunitXml().setDestination( new File( outputDirectory, "results" ) );
-		copy.getBinaryResultsDirectory().set( new File( outputDirectory, "binary-results" ) );
+		copy.getBinaryResultsDirectory().set( new File( scratchDirectory, "binary-results" ) );
 
 		baseTestTask.copyTo( copy );
 
+		// `copyTo` copies the JVM argument providers (and system properties) as well, including those
+		// added when applying the default profile to the base Test task - the copy gets its own profile's
+		copy.getJvmArgumentProviders().removeIf( Helper::isPluginArgumentProvider );
+		copy.getSystemProperties().remove( DatabaseReset.STRATEGY );
+
 		final SourceSet baseSourceSet = javaPluginConvention.getSourceSets().getByName( SourceSet.TEST_SOURCE_SET_NAME );
 
 		copy.setDependsOn( baseTestTask.getDependsOn() );
 		copy.dependsOn( baseSourceSet.getClassesTaskName() );
 
-		copy.setClasspath( profile.getDependencies().plus( baseSourceSet.getRuntimeClasspath() ) );
+		// the profile dependencies are added by `#applyProfile`
+		copy.setClasspath( baseSourceSet.getRuntimeClasspath() );
 		copy.setTestClassesDirs( baseSourceSet.getOutput().getClassesDirs() );
 
 		// fugly - i feel dirty
@@ -198,10 +361,18 @@ public class Helper {
 			copy.useJUnitPlatform();
 		}
 
-		copy.jvmArgs( "-Xms1024M", "-Xmx1024M" );
-		copy.setMaxHeapSize( "1024M" );
+		// heap, GC and forking settings for the profile
+		profile.getJvm().applyTo( copy, profile.getName(), outputDirectory );
 
-		return copy;
+		// run each fork's test classes longest first - using the durations recorded for the profile,
+		// rather than for the shard
+		if ( profile.getJvm().isOrderByDuration() ) {
+			TestClassOrdering.apply( copy, profile.getName(), determineOutputDirectory( project, profile.getName() ) );
+		}
+	}
+
+	private static boolean isPluginArgumentProvider(CommandLineArgumentProvider provider) {
+		return provider.getClass().getName().startsWith( Helper.class.getPackage().getName() + "." );
 	}
 
 	/**
@@ -218,100 +389,105 @@ public class Helper {
 				testTask.getPath()
 		);
 
-		// add the properties
-		testTask.getSystemProperties().putAll( profile.getHibernateProperties() );
+		// the extra (driver) dependencies go in front of the test task's classpath, which is
+		// de-duplicated against them.  They are resolved once per build (see `DriverResolutions`)
+		final FileCollection driverClasspath = DriverResolutions.driverClasspath( profile, project );
+		FileCollection classpath = driverClasspath.plus( testTask.getClasspath().minus( driverClasspath ) );
 
-		// add the extra dependencies to the test task
-		testTask.setClasspath( testTask.getClasspath().plus( profile.getDependencies() ) );
-		testTask.dependsOn( profile.getDependencies() );
+		// the profile's generated `hibernate.properties` goes in front of everything else
+		final String resourcesTaskName = ProfileResourcesTask.NAME_PREFIX + profile.getName();
+		if ( project.getTasks().getNames().contains( resourcesTaskName ) ) {
+			classpath = project.files( project.getTasks().named( resourcesTaskName ) ).plus( classpath );
+		}
+		testTask.setClasspath( classpath );
 
 		// add an input to the test task for the selected profile for up-to-date checking
 		testTask.getInputs().property( TEST_TASK_PROFILE_KEY, profile.getName() );
 
 		testTask.getExtensions().getExtraProperties().set( TEST_TASK_PROFILE_KEY, profile.getName() );
 
+		// limit the number of Test tasks hitting the same database at once
+		SuiteConcurrencyLimit.apply( profile, testTask, dslExtension, project );
+
 		// before Test task
 		profile.visitBeforeTestTaskActions(
-				taskAction -> testTask.doFirst(
-						task -> taskAction.accept( (Test) task )
-				)
+				taskAction -> testTask.doFirst( new TestTaskAction( taskAction ) )
 		);
 		dslExtension.visitBeforeTestTaskActions(
-				taskAction -> testTask.doFirst(
-						task -> taskAction.accept( (Test) task )
-				)
+				taskAction -> testTask.doFirst( new TestTaskAction( taskAction ) )
 		);
 
 		// after Test task
 		dslExtension.visitAfterTestTaskActions(
-				taskAction -> testTask.doLast(
-						task -> taskAction.accept( (Test) task )
-				)
+				taskAction -> testTask.doLast( new TestTaskAction( taskAction ) )
 		);
 		profile.visitAfterTestTaskActions(
-				taskAction -> testTask.doLast(
-						task -> taskAction.accept( (Test) task )
+				taskAction -> testTask.doLast( new TestTaskAction( taskAction ) )
+		);
+
+		// keep an embedded database in RAM, if asked - added before the properties, so that it
+		// happens after they are set
+		RamStorage.apply( profile, testTask, project );
+
+		// isolate the forks from one another (`{fork}` placeholder, per-fork schemas)
+		ForkIsolation.apply( profile, testTask, project );
+
+		// stop the Test task once the database appears to be gone
+		CircuitBreaker.apply( profile, testTask, project );
+
+		// allocate the database (pooled schema, etc) - added after the others so that it happens first
+		DatabaseAllocator.applyAllocation( profile, testTask, project );
+
+		// add the properties (normalized as input), before anything else happens
+		ProfileInputs.apply( profile, testTask, project.getRootDir() );
+
+		// record the test durations, for comparing profiles (see CompareProfileTimingsTask)
+		testTask.addTestListener(
+				new TestTimingsListener(
+						profile.getName(),
+						new File(
+								new File( determineOutputDirectory( project, profile.getName() ), TestTimings.DIRECTORY_NAME ),
+								testTask.getName() + ".json"
+						)
 				)
 		);
 
 		if ( dslExtension.getBeforeEachTestActions() != null || profile.getBeforeEachTestActions() != null
 				|| dslExtension.getAfterEachTestActions() != null || profile.getAfterEachTestActions() != null ) {
+			final List<Consumer<TestDescriptor>> beforeEachTestActions = new ArrayList<>();
+			profile.visitBeforeEachTestActions( beforeEachTestActions::add );
+			dslExtension.visitBeforeEachTestActions( beforeEachTestActions::add );
+
+			final List<BiConsumer<TestDescriptor, TestResult>> afterEachTestActions = new ArrayList<>();
+			profile.visitAfterEachTestActions( afterEachTestActions::add );
+			dslExtension.visitAfterEachTestActions( afterEachTestActions::add );
+
 			testTask.addTestListener(
-					new TestListener() {
-						@Override
-						public void beforeSuite(TestDescriptor testDescriptor) {
-						}
-
-						@Override
-						public void afterSuite(TestDescriptor testDescriptor, TestResult testResult) {
-						}
-
-						@Override
-						public void beforeTest(TestDescriptor testDescriptor) {
-							try {
-								profile.visitBeforeEachTestActions(
-										testDescriptorConsumer -> testDescriptorConsumer.accept( testDescriptor )
-								);
-								dslExtension.visitBeforeEachTestActions(
-										testDescriptorConsumer -> testDescriptorConsumer.accept( testDescriptor )
-								);
-							}
-							catch (Exception e) {
-								throw new BuildExecutionException(
-										"Unable to perform before-each test actions [profile = " + profile.getName() + "]",
-										e
-								);
-							}
-						}
-
-						@Override
-						public void afterTest(TestDescriptor testDescriptor, TestResult testResult) {
-							try {
-								profile.visitAfterEachTestActions(
-										testDescriptorConsumer -> testDescriptorConsumer.accept(
-												testDescriptor,
-												testResult
-										)
-								);
-								dslExtension.visitAfterEachTestActions(
-										testDescriptorConsumer -> testDescriptorConsumer.accept(
-												testDescriptor,
-												testResult
-										)
-								);
-							}
-							catch (Exception e) {
-								throw new BuildExecutionException(
-										"Unable to perform after-each test actions [profile = " + profile.getName() + "]",
-										e
-								);
-							}
-						}
-					}
+					new TestActionDispatcher( profile.getName(), beforeEachTestActions, afterEachTestActions )
 			);
 		}
 	}
 
+	/**
+	 * Adapts a before/after Test task action as a task action.
+	 *
+	 * NOTE : the actions, specs and listeners the plugin adds to the profile Test tasks are all
+	 * static classes (rather than lambdas) capturing only plain, serializable values (rather than
+	 * the Profile or Project), so that the configuration-cache can serialize them
+	 */
+	private static class TestTaskAction implements Action<Task> {
+		private final Consumer<Test> taskAction;
+
+		private TestTaskAction(Consumer<Test> taskAction) {
+			this.taskAction = taskAction;
+		}
+
+		@Override
+		public void execute(Task task) {
+			taskAction.accept( (Test) task );
+		}
+	}
+
 	public static Map<String, ?> asMap(Object... values) {
 		if ( values.length %2 != 0 ) {
 			throw new BuildExecutionException( "Expecting even number of values to create Map" );
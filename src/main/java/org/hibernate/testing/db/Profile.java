@@ -7,12 +7,17 @@
 package org.hibernate.testing.db;
 
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.gradle.api.Action;
 import org.gradle.api.Project;
 import org.gradle.api.artifacts.Configuration;
 
+import org.hibernate.testing.db.alloc.LocalServerSettings;
+import org.hibernate.testing.db.alloc.PoolSettings;
+
 import groovy.lang.Closure;
 
 /**
@@ -35,6 +40,23 @@ public class Profile extends AbstractActionContainer {
 
 	private Map<String, Object> hibernateProperties = new HashMap<>();
 
+	private Integer maxConcurrentSuites;
+
+	private final TestJvmSettings jvm = new TestJvmSettings();
+
+	private final PoolSettings pool = new PoolSettings();
+
+	private final LocalServerSettings localServer = new LocalServerSettings();
+
+	private final CircuitBreakerSettings circuitBreaker = new CircuitBreakerSettings();
+
+	private String reset;
+
+	private boolean ramStorage;
+	private String ramStorageDirectory = RamStorage.DEFAULT_DIRECTORY;
+
+	private boolean shared;
+
 	public Profile(String name, Configuration dependencies, Project project) {
 		this.name = name;
 		this.dependencies = dependencies;
@@ -53,7 +75,30 @@ public class Profile extends AbstractActionContainer {
 		return dependencies;
 	}
 
+	/**
+	 * Whether this profile is shared with other projects through the {@link ProfileCatalog}, in
+	 * which case it can no longer be changed - its properties are read-only and its DSL blocks
+	 * (`jvm {}`, `pool {}`, etc) are rejected
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	void markShared() {
+		shared = true;
+	}
+
+	private void checkModifiable() {
+		if ( shared ) {
+			throw new ProfileCreationException(
+					"Profile `" + name + "` (defined by project `" + project.getPath()
+							+ "`) is shared with other projects and can no longer be changed"
+			);
+		}
+	}
+
 	public void dependency(Object notation) {
+		checkModifiable();
 //		project.getLogger().lifecycle(
 //				"Adding `{}` dependency to `{}` profile Configuration",
 //				notation,
@@ -63,6 +108,7 @@ public class Profile extends AbstractActionContainer {
 	}
 
 	public void dependency(Object notation, Closure<?> config) {
+		checkModifiable();
 //		project.getLogger().lifecycle(
 //				"Adding `{}` dependency to `{}` profile Configuration",
 //				notation,
@@ -76,14 +122,19 @@ public class Profile extends AbstractActionContainer {
 	// Hibernate properties
 
 	public Map<String, Object> getHibernateProperties() {
+		if ( shared && hibernateProperties != null ) {
+			return Collections.unmodifiableMap( hibernateProperties );
+		}
 		return hibernateProperties;
 	}
 
 	public void setHibernateProperties(Map<String, Object> hibernateProperties) {
+		checkModifiable();
 		this.hibernateProperties = hibernateProperties;
 	}
 
 	void applyHibernateProperties(Map properties) {
+		checkModifiable();
 		if ( this.hibernateProperties == null ) {
 			this.hibernateProperties = new HashMap<>();
 		}
@@ -98,6 +149,7 @@ public class Profile extends AbstractActionContainer {
 	}
 
 	public void property(String name, Object value) {
+		checkModifiable();
 		if ( hibernateProperties == null ) {
 			hibernateProperties = new HashMap<>();
 		}
@@ -124,4 +176,183 @@ public class Profile extends AbstractActionContainer {
 		property( PASSWORD, password );
 	}
 
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Test execution
+
+	/**
+	 * The kind of database this profile targets, taken from the JDBC URL sub-protocol
+	 * (e.g. `postgresql` for `jdbc:postgresql://...`).  Falls back to the profile name
+	 * if the profile has no (JDBC) URL
+	 */
+	public String getDatabaseKind() {
+		final Object url = hibernateProperties == null ? null : hibernateProperties.get( URL );
+		if ( url != null ) {
+			final String urlString = url.toString();
+			if ( urlString.startsWith( "jdbc:" ) ) {
+				final int end = urlString.indexOf( ':', 5 );
+				if ( end > 5 ) {
+					return urlString.substring( 5, end );
+				}
+			}
+		}
+		return name;
+	}
+
+	/**
+	 * The maximum number of Test tasks which may run against this profile at once.  When not
+	 * specified, the limit for the profile's {@link #getDatabaseKind() database kind} applies
+	 *
+	 * @see DslExtension#getDatabaseConcurrencyLimits()
+	 */
+	public Integer getMaxConcurrentSuites() {
+		return maxConcurrentSuites;
+	}
+
+	public void setMaxConcurrentSuites(Integer maxConcurrentSuites) {
+		checkModifiable();
+		this.maxConcurrentSuites = maxConcurrentSuites;
+	}
+
+	public void maxConcurrentSuites(int maxConcurrentSuites) {
+		setMaxConcurrentSuites( maxConcurrentSuites );
+	}
+
+	/**
+	 * Settings for the JVMs forked to run tests against this profile
+	 */
+	public TestJvmSettings getJvm() {
+		return jvm;
+	}
+
+	public void jvm(Closure<?> config) {
+		checkModifiable();
+		project.configure( jvm, config );
+	}
+
+	public void jvm(Action<? super TestJvmSettings> config) {
+		checkModifiable();
+		config.execute( jvm );
+	}
+
+	/**
+	 * Settings for pooled allocation of schemas for this profile
+	 */
+	public PoolSettings getPool() {
+		return pool;
+	}
+
+	public void pool(Closure<?> config) {
+		checkModifiable();
+		project.configure( pool, config );
+	}
+
+	public void pool(Action<? super PoolSettings> config) {
+		checkModifiable();
+		config.execute( pool );
+	}
+
+	/**
+	 * Settings for a database server started by the build for this profile
+	 */
+	public LocalServerSettings getLocalServer() {
+		return localServer;
+	}
+
+	public void localServer(Closure<?> config) {
+		checkModifiable();
+		localServer.setEnabled( true );
+		project.configure( localServer, config );
+	}
+
+	public void localServer(Action<? super LocalServerSettings> config) {
+		checkModifiable();
+		localServer.setEnabled( true );
+		config.execute( localServer );
+	}
+
+	/**
+	 * Settings for stopping this profile's Test tasks once the database appears to be gone
+	 *
+	 * @see CircuitBreaker
+	 */
+	public CircuitBreakerSettings getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public void circuitBreaker(Closure<?> config) {
+		checkModifiable();
+		circuitBreaker.setEnabled( true );
+		project.configure( circuitBreaker, config );
+	}
+
+	public void circuitBreaker(Action<? super CircuitBreakerSettings> config) {
+		checkModifiable();
+		circuitBreaker.setEnabled( true );
+		config.execute( circuitBreaker );
+	}
+
+	/**
+	 * How the database is reset to a known state before each test class - one of
+	 * {@link DatabaseReset#STRATEGIES}, or `null` (the default) for no reset.  The snapshot is taken
+	 * as each fork slot starts, before any test class ran; requires the JUnit Platform
+	 *
+	 * @see DatabaseReset
+	 */
+	public String getReset() {
+		return reset;
+	}
+
+	public void setReset(String reset) {
+		checkModifiable();
+		if ( reset != null && ! DatabaseReset.STRATEGIES.contains( reset ) ) {
+			throw new ProfileCreationException(
+					"Unknown database reset strategy `" + reset + "` for profile `" + name + "`; expecting one of " + DatabaseReset.STRATEGIES
+			);
+		}
+		this.reset = reset;
+	}
+
+	public void reset(String reset) {
+		setReset( reset );
+	}
+
+	/**
+	 * Whether to keep the files of an embedded, file-based database (Derby, H2, HSQLDB) along with
+	 * the Test task's working directory and binary results in RAM - under the
+	 * {@link #getRamStorageDirectory() RAM storage directory} - rather than on disk.  The JDBC URL
+	 * is relocated automatically.  Ignored if that directory does not exist
+	 *
+	 * @see RamStorage
+	 */
+	public boolean isRamStorage() {
+		return ramStorage;
+	}
+
+	public void setRamStorage(boolean ramStorage) {
+		checkModifiable();
+		this.ramStorage = ramStorage;
+	}
+
+	public void ramStorage(boolean ramStorage) {
+		setRamStorage( ramStorage );
+	}
+
+	/**
+	 * The (tmpfs) directory used for {@link #isRamStorage() RAM storage}.  Defaults to
+	 * {@value RamStorage#DEFAULT_DIRECTORY}
+	 */
+	public String getRamStorageDirectory() {
+		return ramStorageDirectory;
+	}
+
+	public void setRamStorageDirectory(String ramStorageDirectory) {
+		checkModifiable();
+		this.ramStorageDirectory = ramStorageDirectory;
+	}
+
+	public void ramStorageDirectory(String ramStorageDirectory) {
+		setRamStorageDirectory( ramStorageDirectory );
+	}
+
 }
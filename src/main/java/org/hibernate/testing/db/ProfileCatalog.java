@@ -0,0 +1,231 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build-scoped catalog of the profiles found in the profile search directories.
+ *
+ * Every project applying the plugin shares this catalog, so each search directory is
+ * discovered (see {@link ProfileDiscoveryIndex}) and each descriptor (see {@link ProfileDescriptor})
+ * is parsed just once per build no matter how many projects search it.
+ *
+ * The {@link Profile} instances are built once as well, by the first project loading the profiles
+ * of a given list of search directories (which then owns their `profileDependencies<Name>`
+ * Configurations).  Other projects searching the very same directories are handed those instances,
+ * which are then {@linkplain Profile#isShared() read-only}, rather than applying the fragments and
+ * creating the profiles again.  A project declaring profiles of its own, or loading a fragment which
+ * configures the `databaseProfiles` extension itself, builds (and keeps) its own instances.
+ */
+public abstract class ProfileCatalog implements BuildService<ProfileCatalog.Parameters>, AutoCloseable {
+	/**
+	 * Name under which the catalog is registered as a shared build service
+	 */
+	public static final String SERVICE_NAME = "dbProfileCatalog";
+
+	public interface Parameters extends BuildServiceParameters {
+		/**
+		 * The persistent discovery index
+		 */
+		RegularFileProperty getIndexFile();
+	}
+
+	/**
+	 * A profile source found in a search directory
+	 */
+	static class ProfileSource {
+		enum Kind {
+			FRAGMENT,
+			DESCRIPTOR,
+			DIRECTORY_PROFILE
+		}
+
+		private final Kind kind;
+		private final File file;
+		private final Map<String, String> properties;
+
+		private ProfileSource(Kind kind, File file, Map<String, String> properties) {
+			this.kind = kind;
+			this.file = file;
+			this.properties = properties;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * The fragment or descriptor file, or the directory of a directory-based profile
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * The contents of the `hibernate.properties` of a directory-based profile
+		 */
+		public Map<String, String> getProperties() {
+			return properties;
+		}
+	}
+
+	private ProfileDiscoveryIndex discoveryIndex;
+	private ExecutorService descriptorParser;
+
+	private final Map<File, List<ProfileSource>> sourcesByDirectory = new HashMap<>();
+	private final Map<File, Future<ProfileDescriptor>> descriptors = new HashMap<>();
+	private final Map<List<File>, List<Profile>> profilesBySearchDirectories = new HashMap<>();
+
+	public static Provider<ProfileCatalog> locate(Project project) {
+		return project.getGradle().getSharedServices().registerIfAbsent(
+				SERVICE_NAME,
+				ProfileCatalog.class,
+				spec -> spec.getParameters().getIndexFile().set( ProfileDiscoveryIndex.locateIndexFile( project ) )
+		);
+	}
+
+	/**
+	 * The profile sources found in the given search directory, in discovery order
+	 */
+	synchronized List<ProfileSource> sources(File searchDirectory) {
+		final File key = searchDirectory.getAbsoluteFile();
+
+		final List<ProfileSource> existing = sourcesByDirectory.get( key );
+		if ( existing != null ) {
+			return existing;
+		}
+
+		final List<ProfileSource> sources = new ArrayList<>();
+		discoveryIndex().discover(
+				key,
+				new ProfileDiscoveryIndex.DiscoveryConsumer() {
+					@Override
+					public void fragment(File fragmentFile) {
+						sources.add( new ProfileSource( ProfileSource.Kind.FRAGMENT, fragmentFile, null ) );
+					}
+
+					@Override
+					public void descriptor(File descriptorFile) {
+						sources.add( new ProfileSource( ProfileSource.Kind.DESCRIPTOR, descriptorFile, null ) );
+						if ( ! descriptors.containsKey( descriptorFile ) ) {
+							// start parsing right away, in the background
+							descriptors.put(
+									descriptorFile,
+									descriptorParser().submit( () -> ProfileDescriptor.parse( descriptorFile ) )
+							);
+						}
+					}
+
+					@Override
+					public void directoryProfile(File directory, Map<String, String> properties) {
+						sources.add( new ProfileSource( ProfileSource.Kind.DIRECTORY_PROFILE, directory, properties ) );
+					}
+				}
+		);
+
+		final List<ProfileSource> result = Collections.unmodifiableList( sources );
+		sourcesByDirectory.put( key, result );
+		return result;
+	}
+
+	/**
+	 * The profiles already loaded, by another project, from the given search directories, or `null`
+	 * if none were shared.  The profiles are marked as {@linkplain Profile#isShared() shared}
+	 */
+	synchronized List<Profile> sharedProfiles(List<File> searchDirectories) {
+		final List<Profile> profiles = profilesBySearchDirectories.get( searchDirectories );
+		if ( profiles != null ) {
+			profiles.forEach( Profile::markShared );
+		}
+		return profiles;
+	}
+
+	/**
+	 * Offer the profiles a project loaded from the given search directories to the other projects
+	 * searching the same directories.  The first project to do so wins
+	 */
+	synchronized void shareProfiles(List<File> searchDirectories, List<Profile> profiles) {
+		profilesBySearchDirectories.putIfAbsent(
+				Collections.unmodifiableList( new ArrayList<>( searchDirectories ) ),
+				Collections.unmodifiableList( new ArrayList<>( profiles ) )
+		);
+	}
+
+	/**
+	 * The parsed descriptor for a {@link ProfileSource.Kind#DESCRIPTOR} source
+	 */
+	ProfileDescriptor descriptor(ProfileSource source) {
+		final Future<ProfileDescriptor> parsing;
+		synchronized ( this ) {
+			parsing = descriptors.get( source.getFile() );
+		}
+
+		try {
+			return parsing.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ProfileCreationException( "Interrupted parsing profile descriptor : " + source.getFile(), e );
+		}
+		catch (ExecutionException e) {
+			if ( e.getCause() instanceof ProfileCreationException ) {
+				throw (ProfileCreationException) e.getCause();
+			}
+			throw new ProfileCreationException( "Unable to parse profile descriptor : " + source.getFile(), e.getCause() );
+		}
+	}
+
+	private ProfileDiscoveryIndex discoveryIndex() {
+		if ( discoveryIndex == null ) {
+			discoveryIndex = ProfileDiscoveryIndex.load( getParameters().getIndexFile().get().getAsFile() );
+		}
+		return discoveryIndex;
+	}
+
+	private ExecutorService descriptorParser() {
+		if ( descriptorParser == null ) {
+			final AtomicInteger threadCount = new AtomicInteger();
+			descriptorParser = Executors.newFixedThreadPool(
+					Runtime.getRuntime().availableProcessors(),
+					runnable -> {
+						final Thread thread = new Thread( runnable, "db-profile-descriptor-" + threadCount.incrementAndGet() );
+						thread.setDaemon( true );
+						return thread;
+					}
+			);
+		}
+		return descriptorParser;
+	}
+
+	@Override
+	public synchronized void close() {
+		if ( descriptorParser != null ) {
+			descriptorParser.shutdownNow();
+		}
+
+		if ( discoveryIndex != null ) {
+			discoveryIndex.storeIfChanged( getParameters().getIndexFile().get().getAsFile() );
+		}
+	}
+}
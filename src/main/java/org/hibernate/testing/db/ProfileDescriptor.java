@@ -0,0 +1,207 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A declarative (script-free) profile definition, read from a `.dbprofile` file.  The file
+ * uses properties syntax:
+ *
+ * ----
+ * # optional - defaults to the file's base name, or the name of the containing
+ * # directory for a file named `profile.dbprofile`
+ * name = postgresql
+ *
+ * url = jdbc:postgresql://localhost/hibernate_orm_test
+ * driver = org.postgresql.Driver
+ * dialect = org.hibernate.dialect.PostgreSQLDialect
+ * username = hibernate_orm_test
+ * password = hibernate_orm_test
+ *
+ * # comma-separated, and / or as `dependency.1`, `dependency.2`, ... (added in numeric order)
+ * dependency = org.postgresql:postgresql:42.2.16
+ *
+ * # any `hibernate.` setting is passed along as-is
+ * hibernate.jdbc.batch_size = 10
+ * ----
+ *
+ * Parsing does not touch the Gradle model, so descriptors can be parsed in parallel; the
+ * result is then applied to the {@link Profile} on the configuration thread.  Profiles needing
+ * actions (closures) still need a `.profile`/`.gradle` fragment.
+ */
+class ProfileDescriptor {
+	/**
+	 * The file extension of descriptor files
+	 */
+	public static final String EXTENSION = ".dbprofile";
+
+	private static final String NAME = "name";
+	private static final String DEPENDENCY = "dependency";
+	private static final String DEPENDENCIES = "dependencies";
+
+	private static final Map<String, String> SHORTHANDS;
+	static {
+		final Map<String, String> shorthands = new TreeMap<>();
+		shorthands.put( "url", Profile.URL );
+		shorthands.put( "driver", Profile.DRIVER );
+		shorthands.put( "dialect", Profile.DIALECT );
+		shorthands.put( "username", Profile.USERNAME );
+		shorthands.put( "password", Profile.PASSWORD );
+		SHORTHANDS = Collections.unmodifiableMap( shorthands );
+	}
+
+	private final File file;
+	private final String name;
+	private final Map<String, String> hibernateProperties;
+	private final List<String> dependencies;
+
+	private ProfileDescriptor(
+			File file,
+			String name,
+			Map<String, String> hibernateProperties,
+			List<String> dependencies) {
+		this.file = file;
+		this.name = name;
+		this.hibernateProperties = hibernateProperties;
+		this.dependencies = dependencies;
+	}
+
+	public static boolean isDescriptor(String fileName) {
+		return fileName.endsWith( EXTENSION );
+	}
+
+	public static ProfileDescriptor parse(File file) {
+		final Properties properties = new Properties();
+		try ( Reader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+			properties.load( reader );
+		}
+		catch (IOException e) {
+			throw new ProfileCreationException( "Could not read profile descriptor : " + file.getAbsolutePath(), e );
+		}
+
+		String name = null;
+		final Map<String, String> hibernateProperties = new TreeMap<>();
+		// `dependency` / `dependencies` lists first, then the numbered `dependency.<n>` entries in numeric order
+		final List<String> listedDependencies = new ArrayList<>();
+		final Map<Integer, String> numberedDependencies = new TreeMap<>();
+
+		for ( String key : properties.stringPropertyNames() ) {
+			final String value = properties.getProperty( key ).trim();
+
+			if ( NAME.equals( key ) ) {
+				name = value;
+			}
+			else if ( DEPENDENCY.equals( key ) || DEPENDENCIES.equals( key ) ) {
+				// not added directly - `Properties` does not preserve the key order
+				continue;
+			}
+			else if ( key.startsWith( DEPENDENCY + "." ) ) {
+				final Integer position = dependencyPosition( key, file );
+				final String previous = numberedDependencies.put( position, value );
+				if ( previous != null ) {
+					throw new ProfileCreationException(
+							"Duplicate dependency number `" + key + "` in profile descriptor : " + file.getAbsolutePath()
+					);
+				}
+			}
+			else if ( SHORTHANDS.containsKey( key ) ) {
+				hibernateProperties.put( SHORTHANDS.get( key ), value );
+			}
+			else if ( key.startsWith( "hibernate." ) ) {
+				hibernateProperties.put( key, value );
+			}
+			else {
+				throw new ProfileCreationException(
+						"Unrecognized setting `" + key + "` in profile descriptor : " + file.getAbsolutePath()
+				);
+			}
+		}
+
+		addListedDependencies( properties.getProperty( DEPENDENCY ), listedDependencies );
+		addListedDependencies( properties.getProperty( DEPENDENCIES ), listedDependencies );
+
+		final List<String> dependencies = new ArrayList<>( listedDependencies );
+		dependencies.addAll( numberedDependencies.values() );
+
+		if ( name == null || name.isEmpty() ) {
+			name = defaultName( file );
+		}
+
+		return new ProfileDescriptor(
+				file,
+				name,
+				Collections.unmodifiableMap( hibernateProperties ),
+				Collections.unmodifiableList( dependencies )
+		);
+	}
+
+	private static Integer dependencyPosition(String key, File file) {
+		try {
+			return Integer.valueOf( key.substring( DEPENDENCY.length() + 1 ) );
+		}
+		catch (NumberFormatException e) {
+			throw new ProfileCreationException(
+					"Dependency setting `" + key + "` is not numbered (`dependency.1`, `dependency.2`, ...) in profile descriptor : "
+							+ file.getAbsolutePath()
+			);
+		}
+	}
+
+	private static void addListedDependencies(String value, List<String> dependencies) {
+		if ( value == null ) {
+			return;
+		}
+		for ( String notation : value.split( "," ) ) {
+			if ( ! notation.trim().isEmpty() ) {
+				dependencies.add( notation.trim() );
+			}
+		}
+	}
+
+	private static String defaultName(File file) {
+		final String baseName = file.getName().substring( 0, file.getName().length() - EXTENSION.length() );
+		if ( "profile".equals( baseName ) ) {
+			return file.getAbsoluteFile().getParentFile().getName();
+		}
+		return baseName;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Map<String, String> getHibernateProperties() {
+		return hibernateProperties;
+	}
+
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Apply the descriptor to the Profile.  Must be called on the configuration thread
+	 */
+	public void applyTo(Profile profile) {
+		hibernateProperties.forEach( profile::property );
+		dependencies.forEach( profile::dependency );
+	}
+}
@@ -0,0 +1,414 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Persistent index of the profile search directories, used by {@link ProfileLoader} to avoid
+ * walking (and re-reading) unchanged directory trees on every build.
+ *
+ * Each directory is recorded with its last-modified timestamp along with the fragment
+ * files, descriptor files and sub-directories it contained.  A directory-based profile additionally records
+ * the content hash and parsed contents of its `hibernate.properties` file.  A directory whose
+ * timestamp still matches is served from the index; otherwise just that sub-tree is re-scanned.
+ *
+ * The index is kept in the root project's `.gradle` directory.
+ */
+class ProfileDiscoveryIndex implements Serializable {
+	private static final long serialVersionUID = 2L;
+
+	private static final Logger log = Logging.getLogger( ProfileDiscoveryIndex.class );
+
+	/**
+	 * The index file location, relative to the root project directory
+	 */
+	public static final String INDEX_FILE_PATH = ".gradle/dbProfile/discovery.index";
+
+	/**
+	 * Time-stamps within this window of the scan time are not trusted - the directory could
+	 * have been changed again within the file system's time-stamp granularity
+	 */
+	private static final long TIMESTAMP_GRANULARITY = 2000;
+
+	private static final String PROPERTIES_FILE_NAME = "hibernate.properties";
+
+	/**
+	 * Callback for the profile sources discovered in a search directory
+	 */
+	interface DiscoveryConsumer {
+		/**
+		 * A profile fragment script (`.profile` or `.gradle` file)
+		 */
+		void fragment(File fragmentFile);
+
+		/**
+		 * A declarative profile descriptor (`.dbprofile` file)
+		 *
+		 * @see ProfileDescriptor
+		 */
+		void descriptor(File descriptorFile);
+
+		/**
+		 * A directory-based profile, along with the contents of its `hibernate.properties`
+		 */
+		void directoryProfile(File directory, Map<String, String> properties);
+	}
+
+	private final Map<String, DirectoryNode> directories = new HashMap<>();
+
+	private transient boolean changed;
+	private transient int rescans;
+
+	public static File locateIndexFile(Project project) {
+		return new File( project.getRootProject().getProjectDir(), INDEX_FILE_PATH );
+	}
+
+	public static ProfileDiscoveryIndex load(File indexFile) {
+		if ( indexFile.exists() ) {
+			try ( InputStream stream = Files.newInputStream( indexFile.toPath() );
+					ObjectInputStream objectStream = new ObjectInputStream( stream ) ) {
+				return (ProfileDiscoveryIndex) objectStream.readObject();
+			}
+			catch (Exception e) {
+				// corrupt or written by an incompatible version of the plugin - simply rebuild it
+				log.debug( "Unable to read profile discovery index `{}`; rebuilding", indexFile.getAbsolutePath(), e );
+			}
+		}
+
+		return new ProfileDiscoveryIndex();
+	}
+
+	/**
+	 * Write the index, if anything changed.  The index is written to a temporary file which is
+	 * then moved into place so that concurrent builds never see a partial index
+	 */
+	public void storeIfChanged(File indexFile) {
+		if ( ! changed ) {
+			return;
+		}
+
+		try {
+			Files.createDirectories( indexFile.getParentFile().toPath() );
+			final Path tempFile = Files.createTempFile( indexFile.getParentFile().toPath(), "discovery", ".tmp" );
+			try ( OutputStream stream = Files.newOutputStream( tempFile );
+					ObjectOutputStream objectStream = new ObjectOutputStream( stream ) ) {
+				objectStream.writeObject( this );
+			}
+
+			try {
+				Files.move( tempFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch (AtomicMoveNotSupportedException e) {
+				Files.move( tempFile, indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+
+			changed = false;
+		}
+		catch (IOException e) {
+			// the index is just an optimization
+			log.warn( "Unable to store profile discovery index `{}` : {}", indexFile.getAbsolutePath(), e.getMessage() );
+		}
+	}
+
+	/**
+	 * The number of sub-trees (re-)scanned, rather than served from the index, since this index
+	 * was loaded
+	 */
+	int getRescans() {
+		return rescans;
+	}
+
+	/**
+	 * Discover the profile sources under the given search directory.
+	 *
+	 * Sources are reported depth-first, in name order.  The search directory itself is never
+	 * considered a directory-based profile, only its sub-directories.
+	 */
+	public void discover(File searchDirectory, DiscoveryConsumer consumer) {
+		final DirectoryNode node = resolveNode( searchDirectory.getAbsoluteFile().toPath(), true );
+		if ( node == null ) {
+			return;
+		}
+
+		visit( searchDirectory.getAbsoluteFile(), node, consumer );
+	}
+
+	private void visit(File directory, DirectoryNode node, DiscoveryConsumer consumer) {
+		for ( String fragmentName : node.fragmentNames ) {
+			consumer.fragment( new File( directory, fragmentName ) );
+		}
+
+		for ( String descriptorName : node.descriptorNames ) {
+			consumer.descriptor( new File( directory, descriptorName ) );
+		}
+
+		for ( String directoryName : node.directoryNames ) {
+			final File subDirectory = new File( directory, directoryName );
+			final DirectoryNode subNode = resolveNode( subDirectory.toPath(), false );
+			if ( subNode == null ) {
+				continue;
+			}
+
+			if ( subNode.properties != null ) {
+				consumer.directoryProfile( subDirectory, subNode.properties );
+				// descriptors can also be placed next to the `hibernate.properties`
+				for ( String descriptorName : subNode.descriptorNames ) {
+					consumer.descriptor( new File( subDirectory, descriptorName ) );
+				}
+			}
+			else {
+				visit( subDirectory, subNode, consumer );
+			}
+		}
+	}
+
+	private DirectoryNode resolveNode(Path directory, boolean searchRoot) {
+		final File directoryFile = directory.toFile();
+		if ( ! directoryFile.isDirectory() ) {
+			return null;
+		}
+
+		final String key = directory.toString();
+		final DirectoryNode cached = directories.get( key );
+		if ( cached != null && cached.isCurrent( directoryFile ) ) {
+			if ( cached.properties != null && ! cached.isPropertiesFileCurrent( directoryFile ) ) {
+				// just the properties file changed - re-read it, no need to re-scan
+				cached.readProperties( new File( directoryFile, PROPERTIES_FILE_NAME ) );
+				changed = true;
+			}
+			return cached;
+		}
+
+		rescan( directory, searchRoot );
+		return directories.get( key );
+	}
+
+	private void rescan(Path start, boolean searchRoot) {
+		log.debug( "Scanning profile directory `{}`", start );
+
+		// forget the previous state of the entire sub-tree
+		final String prefix = start.toString() + File.separator;
+		directories.keySet().removeIf( key -> key.startsWith( prefix ) );
+		directories.remove( start.toString() );
+		changed = true;
+		rescans++;
+
+		final long scanTime = System.currentTimeMillis();
+
+		try {
+			Files.walkFileTree(
+					start,
+					new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+							final DirectoryNode node = new DirectoryNode( attrs.lastModifiedTime().toMillis(), scanTime );
+							directories.put( dir.toString(), node );
+
+							if ( ! dir.equals( start ) ) {
+								directories.get( dir.getParent().toString() ).directoryNames.add( dir.getFileName().toString() );
+							}
+
+							final File propertiesFile = dir.resolve( PROPERTIES_FILE_NAME ).toFile();
+							if ( ( ! searchRoot || ! dir.equals( start ) ) && propertiesFile.isFile() ) {
+								// a directory-based profile
+								node.readProperties( propertiesFile );
+								collectDescriptors( dir, node );
+								return FileVisitResult.SKIP_SUBTREE;
+							}
+
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+							final String fileName = file.getFileName().toString();
+							if ( attrs.isRegularFile() ) {
+								if ( fileName.endsWith( ".profile" ) || fileName.endsWith( ".gradle" ) ) {
+									directories.get( file.getParent().toString() ).fragmentNames.add( fileName );
+								}
+								else if ( ProfileDescriptor.isDescriptor( fileName ) ) {
+									directories.get( file.getParent().toString() ).descriptorNames.add( fileName );
+								}
+							}
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult visitFileFailed(Path file, IOException exc) {
+							// same as the unreadable directory case of `File#listFiles`
+							log.debug( "Unable to read `{}` : {}", file, exc.getMessage() );
+							return FileVisitResult.CONTINUE;
+						}
+
+						@Override
+						public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+							final DirectoryNode node = directories.get( dir.toString() );
+							if ( node != null ) {
+								Collections.sort( node.fragmentNames );
+								Collections.sort( node.descriptorNames );
+								Collections.sort( node.directoryNames );
+							}
+							return FileVisitResult.CONTINUE;
+						}
+					}
+			);
+		}
+		catch (IOException e) {
+			throw new ProfileCreationException( "Unable to scan profile directory : " + start, e );
+		}
+	}
+
+	private static void collectDescriptors(Path directory, DirectoryNode node) {
+		try ( DirectoryStream<Path> descriptors = Files.newDirectoryStream( directory, "*" + ProfileDescriptor.EXTENSION ) ) {
+			descriptors.forEach( descriptor -> node.descriptorNames.add( descriptor.getFileName().toString() ) );
+		}
+		catch (IOException e) {
+			throw new ProfileCreationException( "Unable to scan profile directory : " + directory, e );
+		}
+		Collections.sort( node.descriptorNames );
+	}
+
+	private static class DirectoryNode implements Serializable {
+		private static final long serialVersionUID = 2L;
+
+		private final long lastModified;
+		private final long scanTime;
+
+		private final List<String> fragmentNames = new ArrayList<>();
+		private final List<String> descriptorNames = new ArrayList<>();
+		private final List<String> directoryNames = new ArrayList<>();
+
+		// only for directory-based profiles
+		private Map<String, String> properties;
+		private long propertiesLastModified;
+		private long propertiesLength;
+		private long propertiesReadTime;
+		private String propertiesHash;
+
+		private DirectoryNode(long lastModified, long scanTime) {
+			this.lastModified = lastModified;
+			this.scanTime = scanTime;
+		}
+
+		private boolean isCurrent(File directory) {
+			return lastModified == directory.lastModified()
+					&& lastModified + TIMESTAMP_GRANULARITY < scanTime;
+		}
+
+		private boolean isPropertiesFileCurrent(File directory) {
+			final File propertiesFile = new File( directory, PROPERTIES_FILE_NAME );
+			return propertiesFile.lastModified() == propertiesLastModified
+					&& propertiesFile.length() == propertiesLength
+					&& propertiesLastModified + TIMESTAMP_GRANULARITY < propertiesReadTime;
+		}
+
+		private void readProperties(File propertiesFile) {
+			final byte[] content;
+			try {
+				propertiesReadTime = System.currentTimeMillis();
+				propertiesLastModified = propertiesFile.lastModified();
+				content = Files.readAllBytes( propertiesFile.toPath() );
+			}
+			catch (IOException e) {
+				throw new ProfileCreationException(
+						"Could not load Hibernate properties : " + propertiesFile.getAbsolutePath(),
+						e
+				);
+			}
+
+			propertiesLength = content.length;
+
+			final String hash = hash( content );
+			if ( hash.equals( propertiesHash ) ) {
+				// touched, but not changed
+				return;
+			}
+			propertiesHash = hash;
+
+			final Properties loaded = new Properties();
+			try {
+				loaded.load( new ByteArrayInputStream( content ) );
+			}
+			catch (IOException e) {
+				throw new ProfileCreationException(
+						"Could not load Hibernate properties : " + propertiesFile.getAbsolutePath(),
+						e
+				);
+			}
+
+			final TreeMap<String, String> map = new TreeMap<>();
+			loaded.stringPropertyNames().forEach( name -> map.put( name, loaded.getProperty( name ) ) );
+			properties = map;
+		}
+	}
+
+	static String hash(byte[] content) {
+		return toHex( sha256().digest( content ) );
+	}
+
+	/**
+	 * The same as {@link #hash(byte[])} of the file's content, reading it in chunks
+	 */
+	static String hash(Path file) throws IOException {
+		final MessageDigest digest = sha256();
+		try ( InputStream stream = Files.newInputStream( file ) ) {
+			final byte[] chunk = new byte[ 8192 ];
+			int read;
+			while ( ( read = stream.read( chunk ) ) != -1 ) {
+				digest.update( chunk, 0, read );
+			}
+		}
+		return toHex( digest.digest() );
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance( "SHA-256" );
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException( "SHA-256 not available", e );
+		}
+	}
+
+	private static String toHex(byte[] hashed) {
+		final StringBuilder buffer = new StringBuilder( hashed.length * 2 );
+		for ( byte b : hashed ) {
+			buffer.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) );
+			buffer.append( Character.forDigit( b & 0xF, 16 ) );
+		}
+		return buffer.toString();
+	}
+}
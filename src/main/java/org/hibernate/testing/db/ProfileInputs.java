@@ -0,0 +1,107 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Makes the profile's effective settings part of the Test task's up-to-date checking and build
+ * cache key, in a form which is stable across machines.
+ *
+ * The profile's Hibernate properties are only passed to the Test task (as system properties) as
+ * it starts; instead a normalized copy of them is registered as a task input -
+ *
+ * * the values of secrets (passwords, etc) are replaced by a hash
+ * * absolute paths within the root project directory (file-based databases, etc) are made relative
+ *
+ * The profile's (driver) dependencies are already part of the Test task's classpath, which Gradle
+ * fingerprints by content.
+ */
+class ProfileInputs {
+	/**
+	 * Name of the task input holding the normalized profile settings
+	 */
+	static final String SETTINGS_KEY = Helper.TEST_TASK_PROFILE_KEY + ".settings";
+
+	private static final String[] SECRET_MARKERS = { "password", "secret", "token", "credential" };
+
+	private static final String ROOT_DIRECTORY = "${rootDir}";
+
+	static void apply(Profile profile, Test testTask, File rootDirectory) {
+		final Map<String, String> properties = Helper.hibernatePropertiesSnapshot( profile );
+
+		testTask.getInputs().property( SETTINGS_KEY, normalize( properties, rootDirectory ) );
+		testTask.doFirst( new ProfilePropertiesAction( properties ) );
+	}
+
+	/**
+	 * The (sorted) properties, with secrets hashed and paths within the root directory made relative
+	 */
+	static Map<String, String> normalize(Map<String, String> properties, File rootDirectory) {
+		final String rootPath = rootDirectory.getAbsolutePath();
+		final String portableRootPath = rootPath.replace( '\\', '/' );
+
+		final Map<String, String> normalized = new TreeMap<>();
+		properties.forEach(
+				(key, value) -> {
+					if ( isSecret( key ) ) {
+						normalized.put( key, "sha256:" + ProfileDiscoveryIndex.hash( value.getBytes( StandardCharsets.UTF_8 ) ) );
+					}
+					else {
+						normalized.put(
+								key,
+								value.replace( rootPath, ROOT_DIRECTORY ).replace( portableRootPath, ROOT_DIRECTORY )
+						);
+					}
+				}
+		);
+		return normalized;
+	}
+
+	/**
+	 * Whether the normalized property can be written to generated files (see {@link ProfileResourcesTask})
+	 * as-is - it is neither a secret nor a path within the root directory, which are only passed
+	 * (as system properties) as the Test task starts
+	 */
+	static boolean isPortable(String key, String normalizedValue) {
+		return ! isSecret( key ) && ! normalizedValue.contains( ROOT_DIRECTORY );
+	}
+
+	static boolean isSecret(String key) {
+		final String normalizedKey = key.toLowerCase( Locale.ROOT );
+		for ( String marker : SECRET_MARKERS ) {
+			if ( normalizedKey.contains( marker ) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Passes the profile's properties to the Test task as system properties.
+	 */
+	private static class ProfilePropertiesAction implements Action<Task> {
+		private final Map<String, String> properties;
+
+		private ProfilePropertiesAction(Map<String, String> properties) {
+			this.properties = properties;
+		}
+
+		@Override
+		public void execute(Task task) {
+			( (Test) task ).systemProperties( properties );
+		}
+	}
+}
@@ -7,13 +7,16 @@
 package org.hibernate.testing.db;
 
 import java.io.File;
-import java.util.Properties;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import org.gradle.api.Project;
 
 /**
  * Contract for resolving database profiles available via searching specified
- * directories
+ * directories.  The sources found in those directories, and the profiles built from them,
+ * are shared by all projects through the build-scoped {@link ProfileCatalog}
  *
  * @see DslExtension#getProfileSearchDirectories()
  *
@@ -24,76 +27,65 @@ class ProfileLoader {
 			ProfileCreator profileCreator,
 			DslExtension dslExtension,
 			Project project) {
+		final ProfileCatalog catalog = ProfileCatalog.locate( project ).get();
+
+		final List<File> searchDirectories = new ArrayList<>();
+		dslExtension.visitProfileSearchDirectories( directory -> searchDirectories.add( directory.getAbsoluteFile() ) );
+
+		// profiles declared by the project itself might be changed by the profile sources,
+		// so such a project neither uses nor offers shared profiles
+		final boolean shareable = dslExtension.getProfiles().isEmpty();
+		if ( shareable ) {
+			final List<Profile> sharedProfiles = catalog.sharedProfiles( searchDirectories );
+			if ( sharedProfiles != null ) {
+				project.getLogger().debug( "Using the profiles shared through the profile catalog for `{}`", project.getPath() );
+				dslExtension.getProfiles().addAll( sharedProfiles );
+				return;
+			}
+		}
+
 		final ProfileFragmentTarget fragmentTarget = new ProfileFragmentTarget( dslExtension, profileCreator );
+
 		dslExtension.visitProfileSearchDirectories(
-				directory -> applyProfilesFromDirectory(
-						directory,
-						fragmentTarget,
-						profileCreator,
-						dslExtension,
-						project
+				directory -> catalog.sources( directory ).forEach(
+						source -> {
+							switch ( source.getKind() ) {
+								case FRAGMENT: {
+									project.apply( Helper.asMap( "from", source.getFile(), "to", fragmentTarget ) );
+									break;
+								}
+								case DESCRIPTOR: {
+									final ProfileDescriptor descriptor = catalog.descriptor( source );
+									descriptor.applyTo( dslExtension.getProfiles().maybeCreate( descriptor.getName() ) );
+									break;
+								}
+								case DIRECTORY_PROFILE: {
+									final Profile directoryBasedProfile = resolveDirectoryBasedProfile(
+											source.getFile(),
+											source.getProperties(),
+											dslExtension,
+											project
+									);
+									dslExtension.getProfiles().add( directoryBasedProfile );
+									break;
+								}
+							}
+						}
 				)
 		);
-	}
-
-	private static void applyProfilesFromDirectory(
-			File directory,
-			ProfileFragmentTarget fragmentTarget,
-			ProfileCreator profileCreator,
-			DslExtension dslExtension,
-			Project project) {
-		final File[] paths = directory.listFiles();
-		if ( paths == null ) {
-			return;
-		}
 
-		for ( int i = 0; i < paths.length; i++ ) {
-			final File path = paths[ i ];
-
-			if ( ! path.exists() ) {
-				continue;
-			}
-
-			if ( path.isFile() ) {
-				final String pathName = path.getName();
-				if ( pathName.endsWith( ".profile" ) || pathName.endsWith( ".gradle" ) ) {
-					project.apply( Helper.asMap( "from", path, "to", fragmentTarget ) );
-					continue;
-				}
-
-				// path was a file, no need to check any further
-				continue;
-			}
-
-			if ( path.isDirectory() ) {
-				// see if the directory is defines a "directory-based profile"...
-				final Profile directoryBasedProfile = resolveDirectoryBasedProfile( path, profileCreator, dslExtension, project );
-				if ( directoryBasedProfile != null ) {
-					dslExtension.getProfiles().add( directoryBasedProfile );
-					continue;
-				}
-
-				applyProfilesFromDirectory( path, fragmentTarget, profileCreator, dslExtension, project );
-			}
+		if ( shareable && ! fragmentTarget.isExtensionConfigured() ) {
+			catalog.shareProfiles( searchDirectories, new ArrayList<>( dslExtension.getProfiles() ) );
 		}
 	}
 
 	private static Profile resolveDirectoryBasedProfile(
 			File directory,
-			ProfileCreator profileCreator,
+			Map<String, String> properties,
 			DslExtension dslExtension,
 			Project project) {
-		final File propertiesFile = new File( directory, "hibernate.properties" );
-
-		// bare minimum the profile needs to have a properties file
-		final boolean hasPropertiesFile = propertiesFile.exists() && propertiesFile.isFile();
-		if ( !hasPropertiesFile ) {
-			return null;
-		}
-
 		final Profile profile = dslExtension.getProfiles().maybeCreate( directory.getName() );
 
-		final Properties properties = Helper.loadProperties( propertiesFile );
 		profile.applyHibernateProperties( properties );
 
 		// optionally (though generally) the profile can also specify some jars
@@ -101,7 +93,10 @@ class ProfileLoader {
 				profile.getDependencies().getName(),
 				project.fileTree(
 						directory,
-						files -> files.exclude( "hibernate.properties" )
+						files -> {
+							files.exclude( "hibernate.properties" );
+							files.exclude( "*" + ProfileDescriptor.EXTENSION );
+						}
 				)
 		);
 
@@ -7,16 +7,20 @@
 package org.hibernate.testing.db;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import javax.inject.Inject;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.plugins.JavaPluginConvention;
 import org.gradle.api.tasks.Copy;
+import org.gradle.api.tasks.TaskContainer;
+import org.gradle.api.tasks.TaskProvider;
 import org.gradle.api.tasks.testing.Test;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 
+import org.hibernate.testing.db.alloc.ConnectivityCheckTask;
 import org.hibernate.testing.db.alloc.DatabaseAllocator;
 
 import static org.hibernate.testing.db.Helper.DSL_NAME;
@@ -30,6 +34,13 @@ import static org.hibernate.testing.db.Helper.TEST_ALL_PROFILES_TASK_NAME;
  * @author Steve Ebersole
  */
 public class ProfilePlugin implements Plugin<Project> {
+	private final BuildEventsListenerRegistry buildEventsListenerRegistry;
+
+	@Inject
+	public ProfilePlugin(BuildEventsListenerRegistry buildEventsListenerRegistry) {
+		this.buildEventsListenerRegistry = buildEventsListenerRegistry;
+	}
+
 	@Override
 	public void apply(Project project) {
 		final ProfileCreator profileCreator = new ProfileCreator( project );
@@ -54,141 +65,242 @@ public class ProfilePlugin implements Plugin<Project> {
 			}
 		}
 
-		AfterEvalAction.apply( profileCreator, dslExtension, project );
+		// return pooled database leases as soon as the Test tasks holding them finish
+		DatabaseAllocator.listenForTaskCompletion( buildEventsListenerRegistry, project );
+
+		ProfileApplication.apply( profileCreator, dslExtension, project );
 	}
 
-	private static class AfterEvalAction {
+	/**
+	 * Applies the profiles once the plugin's project has been evaluated, and then to each of its
+	 * subprojects as (and only if) they are evaluated.  Each project is visited exactly once, so this
+	 * scales linearly with the number of projects and does not require every project to be configured
+	 * - with configure-on-demand, running `:some:sub:test_postgresql` only configures what it needs.
+	 */
+	private static class ProfileApplication {
 
 		public static void apply(
 				ProfileCreator profileCreator,
 				DslExtension dslExtension,
 				Project project) {
-			final AfterEvalAction afterEvalAction = new AfterEvalAction( profileCreator, dslExtension, project );
-			afterEvalAction.visitProject( project );
-
-			project.getTasks().create( "showProfileTestInfo", ShowTestTaskInfo.class );
+			final ProfileApplication profileApplication = new ProfileApplication( profileCreator, dslExtension );
+			project.afterEvaluate( profileApplication::projectEvaluated );
+
+			project.getTasks().register(
+					ShowTestTaskInfo.NAME,
+					ShowTestTaskInfo.class,
+					task -> {
+						final Object profileFilter = project.findProperty( LEGACY_PROFILE_NAME_CONFIG_NAME );
+						dslExtension.visitProfileNames(
+								profileName -> {
+									if ( profileFilter != null && ! profileFilter.toString().equals( profileName ) ) {
+										return;
+									}
+
+									final String profileTaskName = "test_" + profileName;
+									if ( project.getTasks().getNames().contains( profileTaskName ) ) {
+										task.include( project.getTasks().named( profileTaskName, Test.class ).get() );
+									}
+								}
+						);
+					}
+			);
 		}
 
 		private final ProfileCreator profileCreator;
 		private final DslExtension dslExtension;
-		private final Project project;
-
-		private final List<Project> allProjects = new ArrayList<>();
 
-		public AfterEvalAction(
-				ProfileCreator profileCreator,
-				DslExtension dslExtension,
-				Project project) {
+		public ProfileApplication(ProfileCreator profileCreator, DslExtension dslExtension) {
 			this.profileCreator = profileCreator;
 			this.dslExtension = dslExtension;
-			this.project = project;
-		}
-
-		private void visitProject(Project project) {
-			allProjects.add( project );
-			project.afterEvaluate( this::projectEvaluated );
-			project.getSubprojects().forEach( this::visitProject );
 		}
 
 		private void projectEvaluated(Project project) {
-			allProjects.remove( project );
+			loadProfiles( profileCreator, dslExtension, project );
+
+			final JavaPluginConvention javaPluginConvention = project.getConvention().findPlugin( JavaPluginConvention.class );
+			if ( javaPluginConvention != null ) {
+				applyToJavaProject( javaPluginConvention, dslExtension, project );
+				return;
+			}
+
+			// otherwise, apply to the (java) subprojects - those already evaluated (e.g. because of
+			// `evaluationDependsOnChildren()`) right away and the others when they are evaluated
+			//		NOTE : `getSubprojects()` includes the nested subprojects as well
+			project.getSubprojects().forEach(
+					subProject -> {
+						if ( subProject.getState().getExecuted() ) {
+							subProjectEvaluated( subProject );
+						}
+						else {
+							subProject.afterEvaluate( this::subProjectEvaluated );
+						}
+					}
+			);
+		}
 
-			if ( allProjects.isEmpty() ) {
-				ProfilePlugin.applyProfiles( profileCreator, dslExtension, this.project );
+		private void subProjectEvaluated(Project subProject) {
+			final JavaPluginConvention javaPluginConvention = subProject.getConvention().findPlugin( JavaPluginConvention.class );
+			if ( javaPluginConvention == null ) {
+				subProject.getLogger().debug( "Skipping db-profile application to non-java project `{}`", subProject.getPath() );
+				return;
 			}
+
+			applyToJavaProject( javaPluginConvention, dslExtension, subProject );
 		}
 	}
 
-	private static void applyProfiles(
+	private static void loadProfiles(
 			ProfileCreator profileCreator,
 			DslExtension dslExtension,
 			Project project) {
 		ProfileLoader.loadProfiles( profileCreator, dslExtension, project );
 		DatabaseAllocator.apply( dslExtension, project );
 
-		final JavaPluginConvention javaPluginConvention = project.getConvention().findPlugin( JavaPluginConvention.class );
-
-		if ( javaPluginConvention != null ) {
-			applyToJavaProject(
-					javaPluginConvention,
-					dslExtension,
-					project
+		// a plugin cannot turn on parallel execution - without the configuration cache the suites
+		// of a project run one after another, and without `--parallel` those of different projects too
+		if ( dslExtension.isConcurrentProfileSuites() && ! Helper.isConfigurationCacheRequested( project ) ) {
+			project.getLogger().warn(
+					"Concurrent profile suites were requested for `{}`, but the configuration cache is not used - "
+							+ "Gradle only runs the profile Test tasks of a project concurrently when using the configuration cache "
+							+ "(`--configuration-cache`){}",
+					project.getPath(),
+					project.getGradle().getStartParameter().isParallelProjectExecutionEnabled()
+							? ""
+							: ", and those of different projects only with parallel execution (`--parallel`)"
 			);
 		}
-		else {
-			applyToNonJavaProject( dslExtension, project );
-		}
-	}
-
-	private static void applyProfilesToProject(Project project, DslExtension dslExtension) {
-		final JavaPluginConvention javaPluginConvention = project.getConvention().findPlugin( JavaPluginConvention.class );
-
-		if ( javaPluginConvention != null ) {
-			applyToJavaProject(
-					javaPluginConvention,
-					dslExtension,
-					project
-			);
-		}
-		else {
-			applyToNonJavaProject( dslExtension, project );
-		}
 	}
 
 	private static void applyToJavaProject(
 			JavaPluginConvention javaPluginConvention,
 			DslExtension dslExtension,
 			Project project) {
+		final TaskContainer tasks = project.getTasks();
+
 		// create the grouping task for running tests against all profiles
-		final Task groupingTask = project.getTasks().create( TEST_ALL_PROFILES_TASK_NAME );
-		groupingTask.setGroup( "database" );
-		groupingTask.setDescription( "Runs tests against all discovered database profiles" );
+		final TaskProvider<Task> groupingTask = tasks.register(
+				TEST_ALL_PROFILES_TASK_NAME,
+				task -> {
+					task.setGroup( "database" );
+					task.setDescription( "Runs tests against all discovered database profiles" );
+				}
+		);
 
 		// find the test task...
-		final Test mainTestTask = (Test) project.getTasks().findByPath( "test" );
-		if ( mainTestTask == null ) {
+		//		NOTE : checking the names avoids realizing the task just to see whether it exists
+		if ( ! tasks.getNames().contains( "test" ) ) {
 			project.getLogger().debug( "No test task found, skipping db-profile application" );
 			return;
 		}
+		final TaskProvider<Test> mainTestTask = tasks.named( "test", Test.class );
 
+		// check that the profiles' databases are reachable before running the tests against them
+		final TaskProvider<ConnectivityCheckTask> connectivityCheck = tasks.register(
+				ConnectivityCheckTask.NAME,
+				ConnectivityCheckTask.class,
+				task -> dslExtension.getProfiles().forEach( task::include )
+		);
+		groupingTask.configure( task -> task.dependsOn( connectivityCheck ) );
+
+		// the per-profile copies are only registered here - they are configured (including
+		// the copy from the main Test task) only if they end up being needed
 		dslExtension.getProfiles().forEach(
 				(profile) -> {
-					final Test profileTestTask = Helper.makeCopy( mainTestTask, javaPluginConvention, profile, dslExtension, project );
-					Helper.applyProfile( profile, profileTestTask, dslExtension, project );
-					groupingTask.dependsOn( profileTestTask );
+					Helper.registerResources( profile, javaPluginConvention, project );
+
+					final TaskProvider<Test> profileTestTask = Helper.registerCopy(
+							mainTestTask,
+							javaPluginConvention,
+							profile,
+							dslExtension,
+							project
+					);
+					final TaskProvider<ConnectivityCheckTask> profileConnectivityCheck = ConnectivityCheckTask.registerFor(
+							profile,
+							connectivityCheck,
+							project
+					);
+					profileTestTask.configure(
+							task -> ConnectivityCheckTask.applyTo( task, profile, profileConnectivityCheck, project )
+					);
+					groupingTask.configure( task -> task.dependsOn( profileTestTask ) );
+
+					if ( TestShards.isSharded( profile ) ) {
+						TestShards.register( mainTestTask, javaPluginConvention, profile, dslExtension, project );
+					}
 				}
 		);
 
-		final Profile selectedProfile = dslExtension.getProfiles().getByName( dslExtension.getDefaultProfile() );
-		Helper.applyProfile( selectedProfile, mainTestTask, dslExtension, project );
-
-		final Task testResourcesTask = project.getTasks().getByName( "processTestResources" );
-
-		testResourcesTask.doLast(
+		// compare the test timings recorded for each profile against the default profile
+		tasks.register(
+				CompareProfileTimingsTask.NAME,
+				CompareProfileTimingsTask.class,
 				task -> {
-					final File testResourcesOutDir = ( (Copy) testResourcesTask ).getDestinationDir();
-					final File hibernatePropertiesFile = new File( testResourcesOutDir, "hibernate.properties" );
+					task.setBaselineProfile( dslExtension.getDefaultProfile() );
+					dslExtension.visitProfileNames(
+							profileName -> task.timings(
+									profileName,
+									new File( Helper.determineOutputDirectory( project, profileName ), TestTimings.DIRECTORY_NAME )
+							)
+					);
+					task.setReportFile( new File( project.getBuildDir(), "dbProfile/timings-comparison.json" ) );
+					task.mustRunAfter( groupingTask, mainTestTask );
+				}
+		);
 
-					Helper.augmentHibernatePropertiesFile( hibernatePropertiesFile, selectedProfile, project );
+		// aggregate the test results of all profiles into a test x profile outcome matrix
+		tasks.register(
+				AggregateProfileResultsTask.NAME,
+				AggregateProfileResultsTask.class,
+				task -> {
+					dslExtension.visitProfileNames(
+							profileName -> task.results( profileName, Helper.determineOutputDirectory( project, profileName ) )
+					);
+					task.setJsonReportFile( new File( project.getBuildDir(), "dbProfile/results-by-profile.json" ) );
+					task.setHtmlReportFile( new File( project.getBuildDir(), "dbProfile/results-by-profile.html" ) );
+					task.mustRunAfter( groupingTask, mainTestTask );
 				}
 		);
 
-		final TestPropertiesAugmentTask augmentTestPropertiesTask = project.getTasks().create(
-				TestPropertiesAugmentTask.NAME,
-				TestPropertiesAugmentTask.class,
-				selectedProfile,
-				project
+		// export the profiles / Test tasks plan for CI orchestration, without realizing the Test tasks
+		tasks.register(
+				ExportProfilePlanTask.NAME,
+				ExportProfilePlanTask.class,
+				task -> {
+					task.setDefaultProfile( dslExtension.getDefaultProfile() );
+					dslExtension.getProfiles().forEach(
+							profile -> task.include( profile, mainTestTask.getName(), javaPluginConvention )
+					);
+					task.setPlanFile( new File( project.getBuildDir(), "dbProfile/plan.json" ) );
+				}
 		);
-		augmentTestPropertiesTask.setGroup( "database" );
-	}
 
-	private static void applyToNonJavaProject(DslExtension dslExtension, Project project) {
-		if ( project.getSubprojects().isEmpty() ) {
-			return;
-		}
+		// NOTE : the profile's `jvm {}` settings (fork tuning included) are not applied to `test` -
+		// the profile Test tasks start out as copies of it, and would inherit them
+		final Profile selectedProfile = dslExtension.getProfiles().getByName( dslExtension.getDefaultProfile() );
+		mainTestTask.configure( task -> Helper.applyProfile( selectedProfile, task, dslExtension, project ) );
+
+		// capture just the name and properties - the Profile itself (and its Project) cannot be
+		// referenced from task actions when using the configuration-cache
+		final String selectedProfileName = selectedProfile.getName();
+		final Map<String, String> selectedProfileProperties = Helper.hibernatePropertiesSnapshot( selectedProfile );
 
-		project.getSubprojects().forEach(
-				subProject -> applyProfilesToProject( subProject, dslExtension )
+		tasks.register(
+				TestPropertiesAugmentTask.NAME,
+				TestPropertiesAugmentTask.class,
+				selectedProfileName,
+				selectedProfileProperties
+		).configure(
+				task -> {
+					task.setGroup( "database" );
+					task.setHibernatePropertiesFile(
+							new File(
+									tasks.named( "processTestResources", Copy.class ).get().getDestinationDir(),
+									"hibernate.properties"
+							)
+					);
+				}
 		);
 	}
 
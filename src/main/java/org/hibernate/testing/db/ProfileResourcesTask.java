@@ -0,0 +1,112 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+import javax.inject.Inject;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Generates the `hibernate.properties` for a profile - the project's own test `hibernate.properties`
+ * (if one) with the profile's properties applied over top - into a directory of its own, which is
+ * put in front of the test resources on the classpath of the profile's Test tasks.
+ *
+ * Unlike augmenting the `processTestResources` output in place, this leaves `processTestResources`
+ * up-to-date and cacheable.  The generated file does not include a timestamp and its properties
+ * are sorted, so the task itself is cacheable as well.
+ *
+ * The profile's properties are {@linkplain ProfileInputs#normalize normalized}, so that neither the
+ * task's inputs nor the generated file (which is part of the Test task's classpath, and so of its
+ * cache key) contain secrets or absolute paths.  Such properties are left out of the generated
+ * file; the Test tasks get their real values as system properties (see {@link ProfileInputs}), which
+ * take precedence over `hibernate.properties`.
+ */
+@CacheableTask
+public class ProfileResourcesTask extends DefaultTask {
+	public static final String NAME_PREFIX = "processTestResources_";
+
+	private final String profileName;
+	private final Map<String, String> hibernateProperties;
+
+	private final ConfigurableFileCollection baseProperties = getProject().files();
+	private File outputDirectory;
+
+	/**
+	 * @param hibernateProperties The profile's {@linkplain ProfileInputs#normalize normalized} properties
+	 */
+	@Inject
+	public ProfileResourcesTask(String profileName, Map<String, String> hibernateProperties) {
+		this.profileName = profileName;
+		this.hibernateProperties = hibernateProperties;
+
+		setGroup( "database" );
+		setDescription( "Generates the test `hibernate.properties` for the `" + profileName + "` profile" );
+	}
+
+	@Input
+	public String getProfileName() {
+		return profileName;
+	}
+
+	@Input
+	public Map<String, String> getHibernateProperties() {
+		return hibernateProperties;
+	}
+
+	/**
+	 * The project's own test `hibernate.properties` file(s), to which the profile's properties
+	 * are applied
+	 */
+	@InputFiles
+	@PathSensitive( PathSensitivity.NONE )
+	public ConfigurableFileCollection getBaseProperties() {
+		return baseProperties;
+	}
+
+	@OutputDirectory
+	public File getOutputDirectory() {
+		return outputDirectory;
+	}
+
+	public void setOutputDirectory(File outputDirectory) {
+		this.outputDirectory = outputDirectory;
+	}
+
+	@TaskAction
+	public void generate() {
+		final Properties properties = new Properties();
+		baseProperties.forEach( file -> properties.putAll( Helper.loadProperties( file ) ) );
+		hibernateProperties.forEach(
+				(key, value) -> {
+					if ( ProfileInputs.isPortable( key, value ) ) {
+						properties.put( key, value );
+					}
+					else {
+						// passed as a system property instead
+						properties.remove( key );
+					}
+				}
+		);
+
+		Helper.writeProperties(
+				properties,
+				new File( outputDirectory, "hibernate.properties" ),
+				"Generated for database profile `" + profileName + "` (secrets and paths are passed as system properties)"
+		);
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Keeps the files of a profile's Test task in RAM (a tmpfs such as `/dev/shm`) - the files of an
+ * embedded, file-based database, as well as the working directory and binary results of the
+ * `test_<profile>` copies.  See {@link Profile#isRamStorage()}.
+ *
+ * The files go in `<ram storage directory>/dbProfile-<checkout>/<profile>/<task>`, where `<checkout>`
+ * is a hash of the root project directory so that several checkouts (CI agents) on the same machine
+ * do not collide.  The JDBC URL of a Derby, H2 (`file:`) or HSQLDB (`file:`) database is relocated
+ * into its `db` sub-directory as the Test task starts.  Other URLs are left alone.
+ *
+ * The whole directory - database, working directory and binary results - is removed once the task
+ * is done (or, if it failed, as it next starts).  Nothing in it is needed afterwards : the HTML and
+ * XML reports are generated from the binary results before the task finishes, and are written to
+ * the profile's output directory on disk.
+ *
+ * When the RAM storage directory does not exist (not Linux, etc) everything stays where it would
+ * otherwise be.
+ */
+class RamStorage {
+	/**
+	 * The RAM storage directory used when nothing is specified
+	 */
+	static final String DEFAULT_DIRECTORY = "/dev/shm";
+
+	static final String DATABASE_DIRECTORY_NAME = "db";
+
+	/**
+	 * The directory (in RAM) for the profile's Test task, or `null` if RAM storage is not enabled
+	 * for the profile or not available
+	 */
+	static File determineDirectory(Profile profile, Test testTask, Project project) {
+		if ( ! profile.isRamStorage() ) {
+			return null;
+		}
+
+		final File root = new File( profile.getRamStorageDirectory() );
+		if ( ! root.isDirectory() || ! root.canWrite() ) {
+			project.getLogger().lifecycle(
+					"RAM storage directory `{}` for `{}` profile is not available; using regular storage",
+					root,
+					profile.getName()
+			);
+			return null;
+		}
+
+		final String checkout = ProfileDiscoveryIndex.hash(
+				project.getRootDir().getAbsolutePath().getBytes( StandardCharsets.UTF_8 )
+		).substring( 0, 12 );
+		final String projectPath = project.getPath().equals( ":" )
+				? ""
+				: project.getPath().substring( 1 ).replace( ':', '_' ) + "_";
+
+		return new File(
+				new File( new File( root, "dbProfile-" + checkout ), profile.getName() ),
+				projectPath + testTask.getName()
+		);
+	}
+
+	/**
+	 * Relocate the profile's embedded database into RAM, if RAM storage is enabled and available
+	 */
+	static void apply(Profile profile, Test testTask, Project project) {
+		final File directory = determineDirectory( profile, testTask, project );
+		if ( directory == null ) {
+			return;
+		}
+
+		testTask.doFirst( new RamDirectoryAction( directory, true ) );
+		testTask.doLast( new RamDirectoryAction( directory, false ) );
+	}
+
+	/**
+	 * The JDBC URL with the (file-based) database relocated into the given directory, or `null`
+	 * if the URL does not refer to a local file-based database
+	 */
+	static String relocateUrl(String url, File databaseDirectory) {
+		final String lowerCaseUrl = url.toLowerCase( Locale.ROOT );
+
+		final int pathStart;
+		if ( lowerCaseUrl.startsWith( "jdbc:derby:" ) ) {
+			final String rest = lowerCaseUrl.substring( "jdbc:derby:".length() );
+			if ( rest.startsWith( "//" ) || rest.startsWith( "memory:" ) || rest.startsWith( "classpath:" )
+					|| rest.startsWith( "jar:" ) ) {
+				return null;
+			}
+			pathStart = "jdbc:derby:".length() + ( rest.startsWith( "directory:" ) ? "directory:".length() : 0 );
+		}
+		else if ( lowerCaseUrl.startsWith( "jdbc:h2:" ) ) {
+			final String rest = lowerCaseUrl.substring( "jdbc:h2:".length() );
+			if ( rest.startsWith( "file:" ) ) {
+				pathStart = "jdbc:h2:file:".length();
+			}
+			else if ( rest.startsWith( "~" ) || rest.startsWith( "/" ) || rest.startsWith( "./" ) || rest.startsWith( "../" ) ) {
+				pathStart = "jdbc:h2:".length();
+			}
+			else {
+				// mem:, tcp:, ssl:, zip:, etc
+				return null;
+			}
+		}
+		else if ( lowerCaseUrl.startsWith( "jdbc:hsqldb:file:" ) ) {
+			pathStart = "jdbc:hsqldb:file:".length();
+		}
+		else {
+			return null;
+		}
+
+		final int pathEnd = url.indexOf( ';', pathStart ) < 0 ? url.length() : url.indexOf( ';', pathStart );
+		final String path = url.substring( pathStart, pathEnd );
+		if ( path.isEmpty() ) {
+			return null;
+		}
+
+		final String relocatedPath = new File( databaseDirectory, relativePath( path ) ).getAbsolutePath()
+				.replace( '\\', '/' );
+		return url.substring( 0, pathStart ) + relocatedPath + url.substring( pathEnd );
+	}
+
+	/**
+	 * The path, made relative (drive, root, `~`, `.` and `..` removed) so it can be resolved
+	 * against the RAM database directory
+	 */
+	private static String relativePath(String path) {
+		final List<String> segments = new ArrayList<>();
+		for ( String segment : path.replace( '\\', '/' ).split( "/" ) ) {
+			if ( segment.isEmpty() || segment.equals( "." ) || segment.equals( ".." ) || segment.equals( "~" )
+					|| segment.endsWith( ":" ) ) {
+				continue;
+			}
+			segments.add( segment );
+		}
+		return String.join( "/", segments );
+	}
+
+	/**
+	 * Removes the task's RAM directory - left over from a failed run as the task starts, and again
+	 * once the task is done - and relocates the database URL as the task starts.
+	 */
+	private static class RamDirectoryAction implements Action<Task> {
+		private final File directory;
+		private final boolean starting;
+
+		private RamDirectoryAction(File directory, boolean starting) {
+			this.directory = directory;
+			this.starting = starting;
+		}
+
+		@Override
+		@SuppressWarnings("ResultOfMethodCallIgnored")
+		public void execute(Task task) {
+			deleteRecursively( directory );
+
+			if ( ! starting ) {
+				return;
+			}
+
+			final Test testTask = (Test) task;
+			// the forks are started in the working directory, which (for the profile Test tasks) was just removed
+			testTask.getWorkingDir().mkdirs();
+
+			final File databaseDirectory = new File( directory, DATABASE_DIRECTORY_NAME );
+			final Object url = testTask.getSystemProperties().get( Profile.URL );
+			if ( url == null ) {
+				return;
+			}
+
+			final String relocatedUrl = relocateUrl( url.toString(), databaseDirectory );
+			if ( relocatedUrl != null ) {
+				databaseDirectory.mkdirs();
+				testTask.systemProperty( Profile.URL, relocatedUrl );
+				task.getLogger().info( "Relocated `{}` database to RAM : {}", task.getPath(), relocatedUrl );
+			}
+		}
+	}
+
+	private static void deleteRecursively(File directory) {
+		if ( ! directory.exists() ) {
+			return;
+		}
+		try ( Stream<Path> paths = Files.walk( directory.toPath() ) ) {
+			final List<Path> all = paths.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() );
+			for ( Path path : all ) {
+				Files.delete( path );
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to delete RAM storage files : " + directory, e );
+		}
+	}
+}
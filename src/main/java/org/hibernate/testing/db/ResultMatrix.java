@@ -0,0 +1,223 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The outcome of each test against each profile, aggregated from the JUnit XML results of the
+ * profile Test tasks (see {@link AggregateProfileResultsTask}).
+ *
+ * The result files are stream-parsed (StAX) and only a one byte outcome per test and profile is
+ * kept - plus a (truncated) message per failure - so memory is bounded by the number of distinct
+ * tests rather than by the size of the results (output captured by the tests, stack traces, ...).
+ */
+class ResultMatrix {
+	/**
+	 * The failure message kept for a test is truncated to this length
+	 */
+	static final int MESSAGE_LENGTH = 200;
+
+	// ordered by "severity" - a test reported more than once (shards, re-runs) keeps the worst outcome
+	static final byte NOT_RUN = 0;
+	static final byte SKIPPED = 1;
+	static final byte PASSED = 2;
+	static final byte FAILED = 3;
+
+	/**
+	 * The character representing each outcome in the {@link #outcomes(String) outcome string}
+	 */
+	static final char[] OUTCOME_CODES = { '-', 'S', 'P', 'F' };
+
+	private final List<String> profileNames;
+
+	private final Map<String, byte[]> outcomes = new TreeMap<>();
+	private final Map<String, String> failureMessages = new HashMap<>();
+
+	private final XMLInputFactory inputFactory;
+
+	ResultMatrix(List<String> profileNames) {
+		this.profileNames = new ArrayList<>( profileNames );
+
+		this.inputFactory = XMLInputFactory.newInstance();
+		inputFactory.setProperty( XMLInputFactory.SUPPORT_DTD, false );
+		inputFactory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false );
+		inputFactory.setProperty( XMLInputFactory.IS_COALESCING, false );
+	}
+
+	List<String> getProfileNames() {
+		return profileNames;
+	}
+
+	/**
+	 * The tests, by name (`<class>.<method>`), and their outcome per profile (in the order of
+	 * {@link #getProfileNames()})
+	 */
+	Map<String, byte[]> getOutcomes() {
+		return outcomes;
+	}
+
+	String getFailureMessage(String test, int profileIndex) {
+		return failureMessages.get( test + '|' + profileIndex );
+	}
+
+	/**
+	 * The outcomes of the test as a string of {@link #OUTCOME_CODES}, one per profile
+	 */
+	String outcomes(String test) {
+		final byte[] testOutcomes = outcomes.get( test );
+		final char[] codes = new char[ testOutcomes.length ];
+		for ( int i = 0; i < testOutcomes.length; i++ ) {
+			codes[i] = OUTCOME_CODES[ testOutcomes[i] ];
+		}
+		return new String( codes );
+	}
+
+	/**
+	 * Whether the test fails against some of the profiles while passing against others
+	 */
+	boolean isProfileSpecificFailure(String test) {
+		final byte[] testOutcomes = outcomes.get( test );
+		boolean failed = false;
+		boolean passed = false;
+		for ( byte outcome : testOutcomes ) {
+			failed |= outcome == FAILED;
+			passed |= outcome == PASSED;
+		}
+		return failed && passed;
+	}
+
+	/**
+	 * Whether the test fails against every profile it ran against
+	 */
+	boolean isCommonFailure(String test) {
+		final byte[] testOutcomes = outcomes.get( test );
+		boolean failed = false;
+		for ( byte outcome : testOutcomes ) {
+			if ( outcome == PASSED ) {
+				return false;
+			}
+			failed |= outcome == FAILED;
+		}
+		return failed;
+	}
+
+	/**
+	 * The number of tests with the given outcome against the profile
+	 */
+	int count(int profileIndex, byte outcome) {
+		int count = 0;
+		for ( byte[] testOutcomes : outcomes.values() ) {
+			if ( testOutcomes[ profileIndex ] == outcome ) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the results (`TEST-*.xml`) in the given directory for the profile
+	 */
+	void addResults(String profileName, File resultsDirectory) {
+		final int profileIndex = profileNames.indexOf( profileName );
+		if ( profileIndex < 0 ) {
+			throw new BuildExecutionException( "Unknown profile : " + profileName );
+		}
+
+		final File[] files = resultsDirectory.listFiles(
+				(dir, name) -> name.startsWith( "TEST-" ) && name.endsWith( ".xml" )
+		);
+		if ( files == null ) {
+			return;
+		}
+		Arrays.sort( files );
+
+		for ( File file : files ) {
+			try ( InputStream stream = Files.newInputStream( file.toPath() ) ) {
+				parse( stream, profileIndex );
+			}
+			catch (IOException | XMLStreamException e) {
+				throw new BuildExecutionException( "Unable to read test results : " + file, e );
+			}
+		}
+	}
+
+	void parse(InputStream stream, int profileIndex) throws XMLStreamException {
+		final XMLStreamReader reader = inputFactory.createXMLStreamReader( stream );
+		try {
+			String test = null;
+			byte outcome = PASSED;
+			String message = null;
+			int depth = 0;
+
+			while ( reader.hasNext() ) {
+				final int event = reader.next();
+				if ( event == XMLStreamConstants.START_ELEMENT ) {
+					depth++;
+					final String element = reader.getLocalName();
+					if ( test == null ) {
+						if ( "testcase".equals( element ) ) {
+							test = reader.getAttributeValue( null, "classname" ) + '.' + reader.getAttributeValue( null, "name" );
+							outcome = PASSED;
+							message = null;
+							depth = 1;
+						}
+					}
+					else if ( depth == 2 ) {
+						if ( "failure".equals( element ) || "error".equals( element ) ) {
+							outcome = FAILED;
+							if ( message == null ) {
+								message = describe( reader.getAttributeValue( null, "type" ), reader.getAttributeValue( null, "message" ) );
+							}
+						}
+						else if ( "skipped".equals( element ) && outcome != FAILED ) {
+							outcome = SKIPPED;
+						}
+					}
+				}
+				else if ( event == XMLStreamConstants.END_ELEMENT && test != null ) {
+					if ( --depth == 0 ) {
+						record( test, profileIndex, outcome, message );
+						test = null;
+					}
+				}
+			}
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	private static String describe(String type, String message) {
+		final String description = message == null ? String.valueOf( type ) : ( type == null ? message : type + ": " + message );
+		return description.length() > MESSAGE_LENGTH ? description.substring( 0, MESSAGE_LENGTH ) + "..." : description;
+	}
+
+	private void record(String test, int profileIndex, byte outcome, String message) {
+		final byte[] testOutcomes = outcomes.computeIfAbsent( test, key -> new byte[ profileNames.size() ] );
+		if ( outcome <= testOutcomes[ profileIndex ] ) {
+			return;
+		}
+		testOutcomes[ profileIndex ] = outcome;
+		if ( outcome == FAILED && message != null ) {
+			failureMessages.put( test + '|' + profileIndex, message );
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * Build-scoped holder of the {@linkplain TestShards shard} plans.  Each plan is computed once per
+ * build (by whichever shard task runs first) so that every shard of a profile works from the same
+ * plan, even though the shards record new timings as they finish.
+ */
+public abstract class ShardPlanner implements BuildService<BuildServiceParameters.None> {
+	/**
+	 * Name under which the planner is registered as a shared build service
+	 */
+	public static final String SERVICE_NAME = "dbProfileShardPlans";
+
+	private final Map<String, List<List<String>>> plans = new HashMap<>();
+
+	/**
+	 * The test classes for the given (1-based) shard, computing the plan if needed
+	 */
+	synchronized List<String> shard(String planKey, int shard, Supplier<List<List<String>>> planner) {
+		return plans.computeIfAbsent( planKey, key -> planner.get() ).get( shard - 1 );
+	}
+}
@@ -4,65 +4,76 @@
  */
 package org.hibernate.testing.db;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.tasks.TaskAction;
 import org.gradle.api.tasks.testing.Test;
 
 /**
+ * Renders information about the profile Test tasks.
+ *
+ * The information is captured from the Test tasks when this task is configured
+ * (see {@link #include}) so that nothing needs the Project during execution.
+ *
  * @author Steve Ebersole
  */
 public class ShowTestTaskInfo extends DefaultTask {
+	public static final String NAME = "showProfileTestInfo";
+
+	private final List<TestTaskInfo> testTaskInfos = new ArrayList<>();
+
+	/**
+	 * Include the given profile Test task in the rendered information
+	 */
+	public void include(Test testTask) {
+		testTaskInfos.add( new TestTaskInfo( testTask ) );
+	}
+
 	@TaskAction
 	public void showInfo()  {
-		final String profileFilter = getProject().hasProperty( "db" )
-				? (String) getProject().property( "db" )
-				: null;
+		testTaskInfos.forEach( testTaskInfo -> testTaskInfo.render( getLogger() ) );
+	}
 
-		getProject().getTasks().forEach(
-				task -> {
-					if ( task instanceof Test && !":test".equals( task.getPath() ) ) {
-						final Test testTask = (Test) task;
+	public static void renderTaskInfo(Test testTask, Logger logger, Project project) {
+		new TestTaskInfo( testTask ).render( logger );
+	}
 
-						final int taskProfileDelimiterPosition = task.getName().indexOf( "_" );
-						if ( taskProfileDelimiterPosition > 1 ) {
-							final String taskProfileName = task.getName().substring( taskProfileDelimiterPosition + 1 );
+	private static class TestTaskInfo {
+		private final String path;
+		private final FileCollection classpath;
+		private final Set<String> includes;
 
-							boolean output = true;
+		private TestTaskInfo(Test testTask) {
+			this.path = testTask.getPath();
+			this.classpath = testTask.getClasspath();
+			this.includes = new LinkedHashSet<>( testTask.getIncludes() );
+		}
 
-							if ( profileFilter != null ) {
-								if ( ! taskProfileName.equals( profileFilter ) ) {
-									output = false;
-								}
-							}
+		private void render(Logger logger) {
+			logger.lifecycle( "########################################################" );
+			logger.lifecycle( "Information for `{}` profile Test task", path );
+			logger.lifecycle( "########################################################" );
 
-							if ( output ) {
-								renderTaskInfo( testTask, getLogger(), getProject() );
-							}
-						}
+			logger.lifecycle( "  > Classpath:" );
+			classpath.forEach(
+					(classpathElement) -> {
+						logger.lifecycle( "    > {}", classpathElement.getPath() );
 					}
-				}
-		);
-	}
-
-	public static void renderTaskInfo(Test testTask, Logger logger, Project project) {
-		logger.lifecycle( "########################################################" );
-		logger.lifecycle( "Information for `{}` profile Test task", testTask.getPath() );
-		logger.lifecycle( "########################################################" );
-
-		logger.lifecycle( "  > Classpath:" );
-		testTask.getClasspath().forEach(
-				(classpathElement) -> {
-					logger.lifecycle( "    > {}", classpathElement.getPath() );
-				}
-		);
+			);
 
-		logger.lifecycle( "  > Includes:" );
-		testTask.getIncludes().forEach(
-				(include) -> {
-					logger.lifecycle( "    > {}", include );
-				}
-		);
+			logger.lifecycle( "  > Includes:" );
+			includes.forEach(
+					(include) -> {
+						logger.lifecycle( "    > {}", include );
+					}
+			);
+		}
 	}
 }
@@ -0,0 +1,100 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.util.Locale;
+
+import org.gradle.api.Project;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.api.services.BuildServiceRegistration;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Limits how many Test tasks may run against the same kind of database at once, across
+ * all projects of the build.
+ *
+ * The service itself has no state - the limit is enforced by Gradle through the service's
+ * `maxParallelUsages`, with each Test task declaring it uses the service for the database
+ * its profile targets.  The limits only apply when concurrent profile suites are
+ * {@linkplain DslExtension#isConcurrentProfileSuites() requested}; all projects must then agree
+ * on the limit for each database kind.
+ *
+ * @see Profile#getDatabaseKind()
+ * @see Profile#getMaxConcurrentSuites()
+ * @see DslExtension#getDatabaseConcurrencyLimits()
+ */
+public abstract class SuiteConcurrencyLimit implements BuildService<SuiteConcurrencyLimit.Parameters> {
+	/**
+	 * Prefix for the names under which the limits are registered as shared build services
+	 */
+	public static final String SERVICE_NAME_PREFIX = "dbProfileSuites_";
+
+	public interface Parameters extends BuildServiceParameters {
+		/**
+		 * The path of the project which registered the limit
+		 */
+		Property<String> getDeclaringProject();
+	}
+
+	/**
+	 * The number of the profile's suites which may run at once, or `null` if unlimited (including
+	 * when concurrent profile suites were not requested)
+	 */
+	static Integer determineLimit(Profile profile, DslExtension dslExtension) {
+		if ( ! dslExtension.isConcurrentProfileSuites() ) {
+			return null;
+		}
+
+		final Integer limit = profile.getMaxConcurrentSuites() != null
+				? profile.getMaxConcurrentSuites()
+				: dslExtension.getDatabaseConcurrencyLimits().get( profile.getDatabaseKind().toLowerCase( Locale.ROOT ) );
+		return limit == null || limit <= 0 ? null : limit;
+	}
+
+	/**
+	 * Apply the concurrency limit, if one, for the profile to the Test task
+	 */
+	static void apply(Profile profile, Test testTask, DslExtension dslExtension, Project project) {
+		final Integer limit = determineLimit( profile, dslExtension );
+		if ( limit == null ) {
+			// unlimited
+			return;
+		}
+
+		final String serviceName = profile.getMaxConcurrentSuites() != null
+				// a profile-specific limit
+				? SERVICE_NAME_PREFIX + "profile_" + profile.getName()
+				: SERVICE_NAME_PREFIX + profile.getDatabaseKind();
+
+		// the limit is shared by the whole build - `registerIfAbsent` would silently keep the
+		// first project's limit
+		final BuildServiceRegistration<?, ?> existing = project.getGradle().getSharedServices().getRegistrations().findByName( serviceName );
+		if ( existing != null ) {
+			final Integer existingLimit = existing.getMaxParallelUsages().get();
+			if ( ! limit.equals( existingLimit ) ) {
+				throw new ProfileCreationException(
+						"Conflicting concurrency limits for `" + serviceName.substring( SERVICE_NAME_PREFIX.length() ) + "` : "
+								+ limit + " declared by `" + project.getPath() + "` but " + existingLimit + " declared by `"
+								+ ( (Parameters) existing.getParameters() ).getDeclaringProject().get() + "`"
+				);
+			}
+		}
+
+		final Provider<SuiteConcurrencyLimit> service = project.getGradle().getSharedServices().registerIfAbsent(
+				serviceName,
+				SuiteConcurrencyLimit.class,
+				spec -> {
+					spec.getMaxParallelUsages().set( limit );
+					spec.getParameters().getDeclaringProject().set( project.getPath() );
+				}
+		);
+		testTask.usesService( service );
+	}
+}
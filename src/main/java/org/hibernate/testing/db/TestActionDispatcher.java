@@ -0,0 +1,249 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+
+/**
+ * Performs the before/after each test actions for a profile Test task.
+ *
+ * The actions are flattened into arrays once, at configuration time.  Actions registered as
+ * {@linkplain AbstractActionContainer#SYNCHRONOUS synchronous} are performed as Gradle reports
+ * the test event; all others are handed off to a single background thread, so that slow actions
+ * do not hold up Gradle's processing of test results.  The background thread performs the events
+ * in batches and in order; its queue is bounded, so if the actions cannot keep up the reporting
+ * of test events is (temporarily) blocked rather than queueing events without limit.
+ *
+ * All pending actions are completed as the test run finishes (the root suite); the first failure
+ * of a background action is reported then, and the remaining background actions are skipped.
+ *
+ * Only captures the profile name and the actions themselves (not the Profile / DslExtension) so
+ * that the configuration-cache can serialize it
+ */
+class TestActionDispatcher implements TestListener {
+	/**
+	 * The maximum number of test events waiting to be handled in the background
+	 */
+	static final int QUEUE_CAPACITY = 2048;
+
+	/**
+	 * The maximum number of test events handled per batch
+	 */
+	static final int BATCH_SIZE = 128;
+
+	private final String profileName;
+
+	private final Consumer<TestDescriptor>[] synchronousBeforeActions;
+	private final Consumer<TestDescriptor>[] asyncBeforeActions;
+	private final BiConsumer<TestDescriptor, TestResult>[] synchronousAfterActions;
+	private final BiConsumer<TestDescriptor, TestResult>[] asyncAfterActions;
+
+	private transient Worker worker;
+
+	@SuppressWarnings("unchecked")
+	TestActionDispatcher(
+			String profileName,
+			List<Consumer<TestDescriptor>> beforeEachTestActions,
+			List<BiConsumer<TestDescriptor, TestResult>> afterEachTestActions) {
+		this.profileName = profileName;
+
+		final List<Consumer<TestDescriptor>> synchronousBefore = new ArrayList<>();
+		final List<Consumer<TestDescriptor>> asyncBefore = new ArrayList<>();
+		for ( Consumer<TestDescriptor> action : beforeEachTestActions ) {
+			( AbstractActionContainer.isSynchronous( action ) ? synchronousBefore : asyncBefore ).add( action );
+		}
+
+		final List<BiConsumer<TestDescriptor, TestResult>> synchronousAfter = new ArrayList<>();
+		final List<BiConsumer<TestDescriptor, TestResult>> asyncAfter = new ArrayList<>();
+		for ( BiConsumer<TestDescriptor, TestResult> action : afterEachTestActions ) {
+			( AbstractActionContainer.isSynchronous( action ) ? synchronousAfter : asyncAfter ).add( action );
+		}
+
+		this.synchronousBeforeActions = synchronousBefore.toArray( new Consumer[0] );
+		this.asyncBeforeActions = asyncBefore.toArray( new Consumer[0] );
+		this.synchronousAfterActions = synchronousAfter.toArray( new BiConsumer[0] );
+		this.asyncAfterActions = asyncAfter.toArray( new BiConsumer[0] );
+	}
+
+	@Override
+	public void beforeSuite(TestDescriptor testDescriptor) {
+	}
+
+	@Override
+	public void afterSuite(TestDescriptor testDescriptor, TestResult testResult) {
+		if ( testDescriptor.getParent() == null ) {
+			finish();
+		}
+	}
+
+	@Override
+	public void beforeTest(TestDescriptor testDescriptor) {
+		try {
+			for ( Consumer<TestDescriptor> action : synchronousBeforeActions ) {
+				action.accept( testDescriptor );
+			}
+		}
+		catch (Exception e) {
+			throw new BuildExecutionException(
+					"Unable to perform before-each test actions [profile = " + profileName + "]",
+					e
+			);
+		}
+
+		if ( asyncBeforeActions.length > 0 ) {
+			dispatch( new TestEvent( testDescriptor, null ) );
+		}
+	}
+
+	@Override
+	public void afterTest(TestDescriptor testDescriptor, TestResult testResult) {
+		try {
+			for ( BiConsumer<TestDescriptor, TestResult> action : synchronousAfterActions ) {
+				action.accept( testDescriptor, testResult );
+			}
+		}
+		catch (Exception e) {
+			throw new BuildExecutionException(
+					"Unable to perform after-each test actions [profile = " + profileName + "]",
+					e
+			);
+		}
+
+		if ( asyncAfterActions.length > 0 ) {
+			dispatch( new TestEvent( testDescriptor, testResult ) );
+		}
+	}
+
+	private synchronized void dispatch(TestEvent event) {
+		if ( worker == null ) {
+			worker = new Worker( this );
+			worker.start();
+		}
+		worker.enqueue( event );
+	}
+
+	/**
+	 * Waits for the pending background actions to complete, reporting the first failure
+	 */
+	synchronized void finish() {
+		if ( worker == null ) {
+			return;
+		}
+
+		final Worker finished = worker;
+		worker = null;
+
+		final Throwable failure = finished.finish();
+		if ( failure != null ) {
+			throw new BuildExecutionException(
+					"Unable to perform each test actions [profile = " + profileName + "]",
+					failure
+			);
+		}
+	}
+
+	private void perform(TestEvent event) {
+		if ( event.result == null ) {
+			for ( Consumer<TestDescriptor> action : asyncBeforeActions ) {
+				action.accept( event.descriptor );
+			}
+		}
+		else {
+			for ( BiConsumer<TestDescriptor, TestResult> action : asyncAfterActions ) {
+				action.accept( event.descriptor, event.result );
+			}
+		}
+	}
+
+	private static class TestEvent {
+		private static final TestEvent END = new TestEvent( null, null );
+
+		private final TestDescriptor descriptor;
+		private final TestResult result;
+
+		private TestEvent(TestDescriptor descriptor, TestResult result) {
+			this.descriptor = descriptor;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * The background thread performing the (non-synchronous) actions
+	 */
+	private static class Worker extends Thread {
+		private final TestActionDispatcher dispatcher;
+		private final BlockingQueue<TestEvent> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+
+		private volatile Throwable failure;
+
+		private Worker(TestActionDispatcher dispatcher) {
+			super( "db-profile-test-actions-" + dispatcher.profileName );
+			this.dispatcher = dispatcher;
+			setDaemon( true );
+		}
+
+		private void enqueue(TestEvent event) {
+			try {
+				queue.put( event );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BuildExecutionException( "Interrupted dispatching test event [profile = " + dispatcher.profileName + "]", e );
+			}
+		}
+
+		private Throwable finish() {
+			enqueue( TestEvent.END );
+			try {
+				join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BuildExecutionException( "Interrupted waiting for test actions [profile = " + dispatcher.profileName + "]", e );
+			}
+			return failure;
+		}
+
+		@Override
+		public void run() {
+			final List<TestEvent> batch = new ArrayList<>( BATCH_SIZE );
+			try {
+				while ( true ) {
+					batch.add( queue.take() );
+					queue.drainTo( batch, BATCH_SIZE - 1 );
+
+					for ( TestEvent event : batch ) {
+						if ( event == TestEvent.END ) {
+							return;
+						}
+						if ( failure == null ) {
+							try {
+								dispatcher.perform( event );
+							}
+							catch (Throwable t) {
+								failure = t;
+							}
+						}
+					}
+					batch.clear();
+				}
+			}
+			catch (InterruptedException e) {
+				failure = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Properties;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Runs the test classes of a profile's Test task longest first (see
+ * {@link TestJvmSettings#isOrderByDuration()}), using the class durations recorded by earlier runs
+ * (see {@link TestTimings}).
+ *
+ * Gradle hands the test classes to the forks as it finds them, so this does not change which fork
+ * runs which class - {@linkplain TestShards shards} do that - but each fork runs its heaviest
+ * classes first rather than, by chance, last.  The ordering is done by the
+ * {@link DurationClassOrderer}, which the fork agent jar carries (see {@link ForkIsolation}); the
+ * expected durations are written to `dbProfile/<name>/order/<task>.properties` as the task starts.
+ * Neither the durations nor the file are task inputs.
+ */
+class TestClassOrdering {
+	static final String DIRECTORY_NAME = "order";
+
+	static void apply(Test testTask, String profileName, File outputDirectory) {
+		testTask.systemProperty( DurationClassOrderer.DEFAULT_ORDER, DurationClassOrderer.class.getName() );
+		testTask.doFirst(
+				new WriteDurationsAction(
+						profileName,
+						new File( outputDirectory, TestTimings.DIRECTORY_NAME ),
+						new File( new File( outputDirectory, DIRECTORY_NAME ), testTask.getName() + ".properties" )
+				)
+		);
+	}
+
+	/**
+	 * Whether {@link #apply} was applied to the Test task - it then needs the fork agent
+	 */
+	static boolean isApplied(Test testTask) {
+		return DurationClassOrderer.class.getName().equals( testTask.getSystemProperties().get( DurationClassOrderer.DEFAULT_ORDER ) );
+	}
+
+	static void writeDurations(Map<String, Double> expectedDurations, File durationsFile) throws IOException {
+		final Properties durations = new Properties();
+		expectedDurations.forEach( (testClass, duration) -> durations.setProperty( testClass, Double.toString( duration ) ) );
+
+		Files.createDirectories( durationsFile.getParentFile().toPath() );
+		try ( OutputStream stream = Files.newOutputStream( durationsFile.toPath() ) ) {
+			durations.store( stream, "Expected test class durations (ms)" );
+		}
+	}
+
+	private static class WriteDurationsAction implements Action<Task> {
+		private final String profileName;
+		private final File timingsDirectory;
+		private final File durationsFile;
+
+		private WriteDurationsAction(String profileName, File timingsDirectory, File durationsFile) {
+			this.profileName = profileName;
+			this.timingsDirectory = timingsDirectory;
+			this.durationsFile = durationsFile;
+		}
+
+		@Override
+		public void execute(Task task) {
+			final Map<String, Double> expectedDurations = TestShards.expectedDurations(
+					TestTimings.readAll( timingsDirectory, profileName )
+			);
+			try {
+				writeDurations( expectedDurations, durationsFile );
+			}
+			catch (IOException e) {
+				throw new BuildExecutionException( "Unable to write the expected test class durations : " + durationsFile, e );
+			}
+
+			task.getLogger().info(
+					"Running the test classes of `{}` longest first - {} with durations recorded by previous runs",
+					task.getPath(),
+					expectedDurations.size()
+			);
+			( (Test) task ).systemProperty( DurationClassOrderer.DURATIONS, durationsFile.getAbsolutePath() );
+		}
+	}
+}
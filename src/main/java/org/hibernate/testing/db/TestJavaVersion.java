@@ -0,0 +1,130 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.api.JavaVersion;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Determines the version of the JVM a Test task forks - its `executable`, which is not
+ * necessarily the JVM running Gradle.  Only meaningful as the task executes, once the executable
+ * is final.
+ */
+class TestJavaVersion {
+	private static final Pattern VERSION_OUTPUT = Pattern.compile( "version \"([^\"]+)\"" );
+
+	private static final Map<String, Optional<JavaVersion>> VERSIONS = new ConcurrentHashMap<>();
+
+	private TestJavaVersion() {
+	}
+
+	/**
+	 * The version of the JVM forked by the Test task, or `null` if it cannot be determined
+	 */
+	static JavaVersion of(Test testTask) {
+		return determine( testTask.getExecutable() );
+	}
+
+	/**
+	 * The version of the given java executable, or `null` if it cannot be determined
+	 */
+	static JavaVersion determine(String executable) {
+		if ( executable == null ) {
+			return JavaVersion.current();
+		}
+		return VERSIONS.computeIfAbsent(
+				new File( executable ).getAbsolutePath(),
+				path -> Optional.ofNullable( resolve( new File( path ) ) )
+		).orElse( null );
+	}
+
+	private static JavaVersion resolve(File executable) {
+		// `<java.home>/bin/java` - and, for a Java 8 JDK, `<jdk>/jre/bin/java`
+		final File binDirectory = executable.getParentFile();
+		final File home = binDirectory == null ? null : binDirectory.getParentFile();
+		if ( home == null ) {
+			return execute( executable );
+		}
+
+		if ( home.equals( new File( System.getProperty( "java.home" ) ).getAbsoluteFile() ) ) {
+			return JavaVersion.current();
+		}
+
+		for ( File candidate : new File[] { home, home.getParentFile() } ) {
+			final File releaseFile = candidate == null ? null : new File( candidate, "release" );
+			if ( releaseFile != null && releaseFile.isFile() ) {
+				final String version = Helper.loadProperties( releaseFile ).getProperty( "JAVA_VERSION" );
+				if ( version != null ) {
+					return JavaVersion.toVersion( version.replace( "\"", "" ) );
+				}
+			}
+		}
+
+		return execute( executable );
+	}
+
+	/**
+	 * Asks the executable itself (`java -version`)
+	 */
+	private static JavaVersion execute(File executable) {
+		try {
+			final Process process = new ProcessBuilder( executable.getPath(), "-version" )
+					.redirectErrorStream( true )
+					.start();
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try ( InputStream stream = process.getInputStream() ) {
+				final byte[] buffer = new byte[4096];
+				int read;
+				while ( ( read = stream.read( buffer ) ) != -1 ) {
+					output.write( buffer, 0, read );
+				}
+			}
+			if ( ! process.waitFor( 30, TimeUnit.SECONDS ) ) {
+				process.destroyForcibly();
+				return null;
+			}
+			return parseVersionOutput( output.toString( StandardCharsets.UTF_8.name() ) );
+		}
+		catch (IOException e) {
+			Logging.getLogger( TestJavaVersion.class ).debug( "Unable to determine the version of `{}`", executable, e );
+			return null;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Parses the output of `java -version` - e.g. `openjdk version "1.8.0_252"`
+	 */
+	static JavaVersion parseVersionOutput(String output) {
+		final Matcher matcher = VERSION_OUTPUT.matcher( output );
+		if ( ! matcher.find() ) {
+			return null;
+		}
+		try {
+			return JavaVersion.toVersion( matcher.group( 1 ) );
+		}
+		catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,441 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Settings for the JVMs forked by a profile's Test task - `test_<profile>` and its shards, not the
+ * `test` task itself.  Exposed as {@link Profile#getJvm()}:
+ *
+ * ----
+ * oracle {
+ *     ...
+ *     jvm {
+ *         maxHeapSize '2g'
+ *         garbageCollector 'G1'
+ *         tieredStopAtLevel 1
+ *         maxParallelForks 4
+ *         // fewer forks if the machine or the database cannot take 4
+ *         autoParallelForks true
+ *         // size the heap from previous runs
+ *         adaptiveHeap true
+ *         // start the forks from a CDS archive
+ *         classDataSharing true
+ *         // run the longest test classes first
+ *         orderByDuration true
+ *     }
+ * }
+ * ----
+ */
+public class TestJvmSettings {
+	/**
+	 * The heap size used when nothing is specified
+	 */
+	public static final String DEFAULT_HEAP_SIZE = "1024M";
+
+	private String minHeapSize;
+	private String maxHeapSize;
+
+	private String garbageCollector;
+	private Boolean tieredCompilation;
+	private Integer tieredStopAtLevel;
+	private final List<String> jvmArgs = new ArrayList<>();
+
+	private Integer maxParallelForks;
+	private Long forkEvery;
+	private Integer shards;
+	private boolean orderByDuration;
+
+	private boolean autoParallelForks;
+	private Integer connectionBudget;
+	private Integer connectionsPerFork;
+
+	private boolean adaptiveHeap;
+	private String adaptiveMinHeapSize = "256M";
+	private String adaptiveMaxHeapSize = "4096M";
+
+	private boolean classDataSharing;
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Heap
+
+	/**
+	 * The initial heap size (`-Xms`).  Defaults to the {@link #getMaxHeapSize() max heap size}
+	 */
+	public String getMinHeapSize() {
+		return minHeapSize;
+	}
+
+	public void setMinHeapSize(String minHeapSize) {
+		this.minHeapSize = minHeapSize;
+	}
+
+	public void minHeapSize(String minHeapSize) {
+		setMinHeapSize( minHeapSize );
+	}
+
+	/**
+	 * The maximum heap size (`-Xmx`).  Defaults to {@value #DEFAULT_HEAP_SIZE}
+	 */
+	public String getMaxHeapSize() {
+		return maxHeapSize;
+	}
+
+	public void setMaxHeapSize(String maxHeapSize) {
+		this.maxHeapSize = maxHeapSize;
+	}
+
+	public void maxHeapSize(String maxHeapSize) {
+		setMaxHeapSize( maxHeapSize );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// GC / JIT
+
+	/**
+	 * The garbage collector to use - `G1`, `Parallel`, `Serial`, `Z`, etc - which becomes
+	 * `-XX:+Use<name>GC`
+	 */
+	public String getGarbageCollector() {
+		return garbageCollector;
+	}
+
+	public void setGarbageCollector(String garbageCollector) {
+		this.garbageCollector = garbageCollector;
+	}
+
+	public void garbageCollector(String garbageCollector) {
+		setGarbageCollector( garbageCollector );
+	}
+
+	/**
+	 * Whether to use tiered compilation (`-XX:-TieredCompilation` when `false`)
+	 */
+	public Boolean getTieredCompilation() {
+		return tieredCompilation;
+	}
+
+	public void setTieredCompilation(Boolean tieredCompilation) {
+		this.tieredCompilation = tieredCompilation;
+	}
+
+	public void tieredCompilation(boolean tieredCompilation) {
+		setTieredCompilation( tieredCompilation );
+	}
+
+	/**
+	 * `-XX:TieredStopAtLevel` - `1` often speeds up short-lived test JVMs
+	 */
+	public Integer getTieredStopAtLevel() {
+		return tieredStopAtLevel;
+	}
+
+	public void setTieredStopAtLevel(Integer tieredStopAtLevel) {
+		this.tieredStopAtLevel = tieredStopAtLevel;
+	}
+
+	public void tieredStopAtLevel(int tieredStopAtLevel) {
+		setTieredStopAtLevel( tieredStopAtLevel );
+	}
+
+	/**
+	 * Any additional JVM arguments
+	 */
+	public List<String> getJvmArgs() {
+		return jvmArgs;
+	}
+
+	public void jvmArgs(String... jvmArgs) {
+		this.jvmArgs.addAll( Arrays.asList( jvmArgs ) );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Forking
+
+	public Integer getMaxParallelForks() {
+		return maxParallelForks;
+	}
+
+	public void setMaxParallelForks(Integer maxParallelForks) {
+		this.maxParallelForks = maxParallelForks;
+	}
+
+	public void maxParallelForks(int maxParallelForks) {
+		setMaxParallelForks( maxParallelForks );
+	}
+
+	public Long getForkEvery() {
+		return forkEvery;
+	}
+
+	public void setForkEvery(Long forkEvery) {
+		this.forkEvery = forkEvery;
+	}
+
+	public void forkEvery(long forkEvery) {
+		setForkEvery( forkEvery );
+	}
+
+	/**
+	 * Splits the profile's tests across this many `test_<profile>_shard<n>` tasks (one JVM each),
+	 * balanced using the test class durations recorded by earlier runs.  See {@link TestShards}
+	 */
+	public Integer getShards() {
+		return shards;
+	}
+
+	public void setShards(Integer shards) {
+		this.shards = shards;
+	}
+
+	public void shards(int shards) {
+		setShards( shards );
+	}
+
+	/**
+	 * Whether each fork runs its test classes longest first, based on the test class durations
+	 * recorded by earlier runs.  Requires JUnit Jupiter 5.8 or later.  See {@link TestClassOrdering}
+	 */
+	public boolean isOrderByDuration() {
+		return orderByDuration;
+	}
+
+	public void setOrderByDuration(boolean orderByDuration) {
+		this.orderByDuration = orderByDuration;
+	}
+
+	public void orderByDuration(boolean orderByDuration) {
+		setOrderByDuration( orderByDuration );
+	}
+
+	/**
+	 * Whether to determine the number of forks as the task starts, from the available cores, the
+	 * free memory, the heap size of each fork and the profile's connection budget.  The
+	 * {@link #getMaxParallelForks()}, if specified, is then the upper bound.  See {@link ForkTuning}
+	 */
+	public boolean isAutoParallelForks() {
+		return autoParallelForks;
+	}
+
+	public void setAutoParallelForks(boolean autoParallelForks) {
+		this.autoParallelForks = autoParallelForks;
+	}
+
+	public void autoParallelForks(boolean autoParallelForks) {
+		setAutoParallelForks( autoParallelForks );
+	}
+
+	/**
+	 * The number of connections the profile's Test task may open against the database, across
+	 * all of its forks.  If not specified, half of the connections available on the server is used
+	 * (when it can be determined)
+	 */
+	public Integer getConnectionBudget() {
+		return connectionBudget;
+	}
+
+	public void setConnectionBudget(Integer connectionBudget) {
+		this.connectionBudget = connectionBudget;
+	}
+
+	public void connectionBudget(int connectionBudget) {
+		setConnectionBudget( connectionBudget );
+	}
+
+	/**
+	 * The number of connections each fork opens.  Defaults to the profile's
+	 * `hibernate.connection.pool_size`, or 1
+	 */
+	public Integer getConnectionsPerFork() {
+		return connectionsPerFork;
+	}
+
+	public void setConnectionsPerFork(Integer connectionsPerFork) {
+		this.connectionsPerFork = connectionsPerFork;
+	}
+
+	public void connectionsPerFork(int connectionsPerFork) {
+		setConnectionsPerFork( connectionsPerFork );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Adaptive heap
+
+	/**
+	 * Whether to size the heap based on the peak heap usage and GC time recorded for
+	 * previous runs (see {@link AdaptiveHeap}).  The configured {@link #getMaxHeapSize()},
+	 * if one, is used until there is such history
+	 */
+	public boolean isAdaptiveHeap() {
+		return adaptiveHeap;
+	}
+
+	public void setAdaptiveHeap(boolean adaptiveHeap) {
+		this.adaptiveHeap = adaptiveHeap;
+	}
+
+	public void adaptiveHeap(boolean adaptiveHeap) {
+		setAdaptiveHeap( adaptiveHeap );
+	}
+
+	/**
+	 * The smallest heap adaptive sizing will use.  Defaults to 256M
+	 */
+	public String getAdaptiveMinHeapSize() {
+		return adaptiveMinHeapSize;
+	}
+
+	public void setAdaptiveMinHeapSize(String adaptiveMinHeapSize) {
+		this.adaptiveMinHeapSize = adaptiveMinHeapSize;
+	}
+
+	public void adaptiveMinHeapSize(String adaptiveMinHeapSize) {
+		setAdaptiveMinHeapSize( adaptiveMinHeapSize );
+	}
+
+	/**
+	 * The largest heap adaptive sizing will use.  Defaults to 4096M
+	 */
+	public String getAdaptiveMaxHeapSize() {
+		return adaptiveMaxHeapSize;
+	}
+
+	public void setAdaptiveMaxHeapSize(String adaptiveMaxHeapSize) {
+		this.adaptiveMaxHeapSize = adaptiveMaxHeapSize;
+	}
+
+	public void adaptiveMaxHeapSize(String adaptiveMaxHeapSize) {
+		setAdaptiveMaxHeapSize( adaptiveMaxHeapSize );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+	// Class data sharing
+
+	/**
+	 * Whether to start the forked JVMs from a Class Data Sharing archive of the classes loaded by
+	 * previous runs (see {@link ClassDataSharing}).  Requires Java 13 or later
+	 */
+	public boolean isClassDataSharing() {
+		return classDataSharing;
+	}
+
+	public void setClassDataSharing(boolean classDataSharing) {
+		this.classDataSharing = classDataSharing;
+	}
+
+	public void classDataSharing(boolean classDataSharing) {
+		setClassDataSharing( classDataSharing );
+	}
+
+	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+
+	/**
+	 * The effective max heap size
+	 */
+	public String determineMaxHeapSize() {
+		return maxHeapSize == null ? DEFAULT_HEAP_SIZE : maxHeapSize;
+	}
+
+	/**
+	 * Apply these settings to the profile's Test task
+	 *
+	 * @param outputDirectory The profile's output directory (see {@link Helper#determineOutputDirectory})
+	 */
+	void applyTo(Test testTask, String profileName, File outputDirectory) {
+		if ( adaptiveHeap ) {
+			AdaptiveHeap.apply( testTask, this, profileName, outputDirectory );
+		}
+		else {
+			final String effectiveMaxHeapSize = determineMaxHeapSize();
+			// fail now, naming the profile, rather than as the JVMs are forked
+			toMegabytes( effectiveMaxHeapSize, "maxHeapSize", profileName );
+			if ( minHeapSize != null ) {
+				toMegabytes( minHeapSize, "minHeapSize", profileName );
+			}
+			testTask.setMinHeapSize( minHeapSize == null ? effectiveMaxHeapSize : minHeapSize );
+			testTask.setMaxHeapSize( effectiveMaxHeapSize );
+		}
+
+		if ( garbageCollector != null ) {
+			testTask.jvmArgs( "-XX:+Use" + garbageCollector + "GC" );
+		}
+		if ( tieredCompilation != null && ! tieredCompilation ) {
+			testTask.jvmArgs( "-XX:-TieredCompilation" );
+		}
+		if ( tieredStopAtLevel != null ) {
+			testTask.jvmArgs( "-XX:TieredStopAtLevel=" + tieredStopAtLevel );
+		}
+		testTask.jvmArgs( jvmArgs );
+
+		if ( classDataSharing ) {
+			ClassDataSharing.apply( testTask, profileName, outputDirectory );
+		}
+
+		if ( maxParallelForks != null ) {
+			testTask.setMaxParallelForks( maxParallelForks );
+		}
+		if ( forkEvery != null ) {
+			testTask.setForkEvery( forkEvery );
+		}
+	}
+
+	/**
+	 * Convert one of the profile's memory size settings into megabytes
+	 *
+	 * @throws ProfileCreationException If the setting is not a memory size
+	 */
+	static long toMegabytes(String size, String settingName, String profileName) {
+		try {
+			return toMegabytes( size );
+		}
+		catch (IllegalArgumentException e) {
+			throw new ProfileCreationException(
+					"Invalid `" + settingName + "` for profile `" + profileName + "` : `" + size
+							+ "`; expecting a memory size such as `512M` or `2g`",
+					e
+			);
+		}
+	}
+
+	/**
+	 * Convert a JVM memory size (`512M`, `2g`, `1048576k`, ...) into megabytes
+	 */
+	public static long toMegabytes(String size) {
+		if ( size == null || size.trim().isEmpty() ) {
+			throw new IllegalArgumentException( "Unrecognized memory size : " + size );
+		}
+
+		final String normalized = size.trim().toUpperCase( Locale.ROOT );
+		final char unit = normalized.charAt( normalized.length() - 1 );
+		if ( Character.isDigit( unit ) ) {
+			return Long.parseLong( normalized ) / ( 1024 * 1024 );
+		}
+
+		final long amount = Long.parseLong( normalized.substring( 0, normalized.length() - 1 ) );
+		switch ( unit ) {
+			case 'K': {
+				return amount / 1024;
+			}
+			case 'M': {
+				return amount;
+			}
+			case 'G': {
+				return amount * 1024;
+			}
+			default: {
+				throw new IllegalArgumentException( "Unrecognized memory size : " + size );
+			}
+		}
+	}
+}
@@ -7,29 +7,35 @@
 package org.hibernate.testing.db;
 
 import java.io.File;
+import java.util.Map;
 import javax.inject.Inject;
 
-import org.gradle.api.Project;
-import org.gradle.api.Task;
-import org.gradle.api.internal.AbstractTask;
-import org.gradle.api.tasks.Copy;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.TaskAction;
 
 /**
+ * Applies the selected profile's properties to the `hibernate.properties` file
+ * produced by `processTestResources`.
+ *
+ * All state is captured when the task is configured (no access to the Project
+ * or the Profile during execution) to keep the task configuration-cache safe.
+ *
  * @author Steve Ebersole
  */
-public class TestPropertiesAugmentTask extends AbstractTask {
+public class TestPropertiesAugmentTask extends DefaultTask {
 	public static final String NAME = "augmentTestProperties";
 
-	private final Profile selectedProfile;
-	private final Project project;
+	private final String profileName;
+	private final Map<String, String> hibernateProperties;
+
+	private File hibernatePropertiesFile;
 
 	@Inject
-	public TestPropertiesAugmentTask(
-			Profile selectedProfile,
-			Project project) {
-		this.selectedProfile = selectedProfile;
-		this.project = project;
+	public TestPropertiesAugmentTask(String profileName, Map<String, String> hibernateProperties) {
+		this.profileName = profileName;
+		this.hibernateProperties = hibernateProperties;
 
 		setDescription(
 				"Applies properties defined by the profile indicated by the `db` project property to the" +
@@ -37,12 +43,31 @@ public class TestPropertiesAugmentTask extends AbstractTask {
 		);
 	}
 
+	@Input
+	public String getProfileName() {
+		return profileName;
+	}
+
+	@Input
+	public Map<String, String> getHibernateProperties() {
+		return hibernateProperties;
+	}
+
+	/**
+	 * The file to augment.  Generally the `hibernate.properties` file in the `processTestResources`
+	 * output directory, which is why it is not declared as an output of this task
+	 */
+	@Internal
+	public File getHibernatePropertiesFile() {
+		return hibernatePropertiesFile;
+	}
+
+	public void setHibernatePropertiesFile(File hibernatePropertiesFile) {
+		this.hibernatePropertiesFile = hibernatePropertiesFile;
+	}
+
 	@TaskAction
 	public void augmentPropertiesFile() {
-		final Task testResourcesTask = project.getTasks().findByName( "processTestResources" );
-		final File testResourcesOutDir = ( (Copy) testResourcesTask ).getDestinationDir();
-		final File hibernatePropertiesFile = new File( testResourcesOutDir, "hibernate.properties" );
-
-		Helper.augmentHibernatePropertiesFile( hibernatePropertiesFile, selectedProfile, project );
+		Helper.augmentHibernatePropertiesFile( hibernatePropertiesFile, profileName, hibernateProperties );
 	}
 }
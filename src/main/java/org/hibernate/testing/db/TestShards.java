@@ -0,0 +1,250 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.gradle.api.Action;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.plugins.JavaPluginConvention;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.testing.Test;
+
+/**
+ * Splits a profile's tests across a number of `test_<profile>_shard<n>` Test tasks (see
+ * {@link TestJvmSettings#getShards()}), each forking a single JVM.
+ *
+ * Gradle hands the test classes of a single Test task to its forks round-robin, in the order it
+ * finds them, and offers no way to influence that.  Shards instead partition the test classes by
+ * their expected duration - taken from the class durations recorded by earlier runs (see
+ * {@link TestTimings}) - assigning the longest classes first, each to the least loaded shard.
+ * Classes without recorded durations are spread over the shards round-robin.
+ *
+ * Gradle only runs tasks of the same project concurrently when using the configuration cache;
+ * without it the shards run one after another, each in a single JVM - slower than the profile's
+ * `test_<profile>` task with `maxParallelForks`.  A warning is logged when shards run that way.
+ * `test_<profile>_shards` runs all of them.
+ */
+class TestShards {
+	/**
+	 * Include pattern used for a shard with no test classes assigned - matches nothing
+	 */
+	private static final String NO_TESTS = "org.hibernate.testing.db.NoTestsInShard";
+
+	static boolean isSharded(Profile profile) {
+		return profile.getJvm().getShards() != null && profile.getJvm().getShards() > 1;
+	}
+
+	/**
+	 * Registers the shard tasks for the profile, along with the `test_<profile>_shards` task
+	 * running all of them
+	 */
+	static void register(
+			TaskProvider<Test> baseTestTask,
+			JavaPluginConvention javaPluginConvention,
+			Profile profile,
+			DslExtension dslExtension,
+			Project project) {
+		final int shards = profile.getJvm().getShards();
+		final String baseName = baseTestTask.getName() + "_" + profile.getName();
+		final String planKey = project.getPath() + ":" + baseName;
+		final File outputDirectory = Helper.determineOutputDirectory( project, profile.getName() );
+		final File timingsDirectory = new File( outputDirectory, TestTimings.DIRECTORY_NAME );
+		final boolean concurrent = Helper.isConfigurationCacheRequested( project );
+		final Provider<ShardPlanner> planner = project.getGradle().getSharedServices().registerIfAbsent(
+				ShardPlanner.SERVICE_NAME,
+				ShardPlanner.class,
+				spec -> {}
+		);
+
+		final List<TaskProvider<Test>> shardTasks = new ArrayList<>();
+		for ( int i = 1; i <= shards; i++ ) {
+			final int shard = i;
+			shardTasks.add(
+					project.getTasks().register(
+							baseName + "_shard" + shard,
+							Test.class,
+							copy -> {
+								Helper.makeCopy(
+										baseTestTask.get(),
+										copy,
+										javaPluginConvention,
+										profile,
+										new File( outputDirectory, "shard-" + shard ),
+										project
+								);
+								Helper.applyProfile( profile, copy, dslExtension, project );
+
+								copy.setDescription(
+										"Runs shard " + shard + " of " + shards + " of the tests against the `" + profile.getName() + "` profile"
+								);
+								copy.setMaxParallelForks( 1 );
+								copy.usesService( planner );
+								copy.doFirst(
+										new ShardAction( planKey, shard, shards, profile.getName(), timingsDirectory, planner, concurrent )
+								);
+							}
+					)
+			);
+		}
+
+		project.getTasks().register(
+				baseName + "_shards",
+				task -> {
+					task.setGroup( "database" );
+					task.setDescription( "Runs the tests against the `" + profile.getName() + "` profile in " + shards + " shards" );
+					task.dependsOn( shardTasks );
+				}
+		);
+	}
+
+	/**
+	 * Partition the test classes into the given number of shards, longest (expected duration) first
+	 *
+	 * @param expectedDurations The expected duration of test classes, in ms, where known
+	 */
+	static List<List<String>> partition(Collection<String> testClasses, Map<String, Double> expectedDurations, int shards) {
+		final List<List<String>> partition = new ArrayList<>( shards );
+		final double[] loads = new double[ shards ];
+		for ( int i = 0; i < shards; i++ ) {
+			partition.add( new ArrayList<>() );
+		}
+
+		final List<String> known = new ArrayList<>();
+		final List<String> unknown = new ArrayList<>();
+		for ( String testClass : new TreeSet<>( testClasses ) ) {
+			( expectedDurations.containsKey( testClass ) ? known : unknown ).add( testClass );
+		}
+
+		known.sort( Comparator.comparingDouble( (String testClass) -> expectedDurations.get( testClass ) ).reversed() );
+		for ( String testClass : known ) {
+			int leastLoaded = 0;
+			for ( int i = 1; i < shards; i++ ) {
+				if ( loads[ i ] < loads[ leastLoaded ] ) {
+					leastLoaded = i;
+				}
+			}
+			partition.get( leastLoaded ).add( testClass );
+			loads[ leastLoaded ] += expectedDurations.get( testClass );
+		}
+
+		for ( int i = 0; i < unknown.size(); i++ ) {
+			partition.get( i % shards ).add( unknown.get( i ) );
+		}
+
+		return partition;
+	}
+
+	/**
+	 * The mean recorded duration of each test class
+	 */
+	static Map<String, Double> expectedDurations(TestTimings timings) {
+		final Map<String, Double> expectedDurations = new HashMap<>();
+		timings.getClassHistograms().forEach(
+				(testClass, histogram) -> {
+					if ( histogram.getCount() > 0 ) {
+						expectedDurations.put( testClass, histogram.getMeanMillis() );
+					}
+				}
+		);
+		return expectedDurations;
+	}
+
+	/**
+	 * Restricts the shard task to the test classes assigned to it.
+	 */
+	private static class ShardAction implements Action<Task> {
+		private final String planKey;
+		private final int shard;
+		private final int shards;
+		private final String profileName;
+		private final File timingsDirectory;
+		private final Provider<ShardPlanner> planner;
+		private final boolean concurrent;
+
+		private ShardAction(
+				String planKey,
+				int shard,
+				int shards,
+				String profileName,
+				File timingsDirectory,
+				Provider<ShardPlanner> planner,
+				boolean concurrent) {
+			this.planKey = planKey;
+			this.shard = shard;
+			this.shards = shards;
+			this.profileName = profileName;
+			this.timingsDirectory = timingsDirectory;
+			this.planner = planner;
+			this.concurrent = concurrent;
+		}
+
+		@Override
+		public void execute(Task task) {
+			final Test testTask = (Test) task;
+			if ( shard == 1 && ! concurrent ) {
+				task.getLogger().warn(
+						"The `{}` profile shards run one after another, as the configuration cache is not used - "
+								+ "use `--configuration-cache` to run them concurrently, "
+								+ "or `maxParallelForks` rather than `shards` to run the tests in parallel without it",
+						profileName
+				);
+			}
+
+			final Map<String, Double> expectedDurations = expectedDurations( TestTimings.readAll( timingsDirectory, profileName ) );
+			final List<String> testClasses = planner.get().shard(
+					planKey,
+					shard,
+					() -> partition( candidateClasses( testTask ), expectedDurations, shards )
+			);
+
+			double expectedMillis = 0;
+			for ( String testClass : testClasses ) {
+				expectedMillis += expectedDurations.getOrDefault( testClass, 0d );
+			}
+			task.getLogger().lifecycle(
+					"Shard {} of {} for `{}` profile : {} test classes ({} s expected from previous runs)",
+					shard,
+					shards,
+					profileName,
+					testClasses.size(),
+					Math.round( expectedMillis / 1000 )
+			);
+
+			testTask.getFilter().setFailOnNoMatchingTests( false );
+			if ( testClasses.isEmpty() ) {
+				testTask.getFilter().includeTestsMatching( NO_TESTS );
+			}
+			else {
+				testClasses.forEach( testClass -> testTask.getFilter().includeTestsMatching( testClass ) );
+			}
+		}
+
+		private static Set<String> candidateClasses(Test testTask) {
+			final Set<String> candidates = new TreeSet<>();
+			testTask.getCandidateClassFiles().visit(
+					details -> {
+						final String path = details.getRelativePath().getPathString();
+						if ( ! details.isDirectory() && path.endsWith( ".class" ) && ! path.contains( "$" ) ) {
+							candidates.add( path.substring( 0, path.length() - ".class".length() ).replace( '/', '.' ) );
+						}
+					}
+			);
+			return candidates;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import groovy.json.JsonOutput;
+import groovy.json.JsonSlurper;
+
+/**
+ * The durations of the tests run against a profile, as a compact (power-of-2 buckets) histogram
+ * per test and per test class (including the class's setup/teardown).  Class durations are used
+ * to balance {@link TestShards}.  Written by the {@link TestTimingsListener} to `dbProfile/<name>/timings/<task>.json`
+ * and compared across profiles by the {@link CompareProfileTimingsTask}.
+ *
+ * The histograms accumulate across runs; a run of part of the suite leaves the histograms of the
+ * other tests as they were.
+ */
+class TestTimings {
+	/**
+	 * Name of the directory (under the profile's output directory) holding the timings
+	 */
+	static final String DIRECTORY_NAME = "timings";
+
+	private final String profileName;
+	private final Map<String, Histogram> histograms;
+	private final Map<String, Histogram> classHistograms;
+
+	TestTimings(String profileName, Map<String, Histogram> histograms, Map<String, Histogram> classHistograms) {
+		this.profileName = profileName;
+		this.histograms = histograms;
+		this.classHistograms = classHistograms;
+	}
+
+	TestTimings(String profileName) {
+		this( profileName, new TreeMap<>(), new TreeMap<>() );
+	}
+
+	String getProfileName() {
+		return profileName;
+	}
+
+	/**
+	 * The histograms, keyed by `<test class>#<test name>`
+	 */
+	Map<String, Histogram> getHistograms() {
+		return histograms;
+	}
+
+	/**
+	 * The histograms, keyed by test class name
+	 */
+	Map<String, Histogram> getClassHistograms() {
+		return classHistograms;
+	}
+
+	static String testKey(String className, String testName) {
+		return className == null ? testName : className + "#" + testName;
+	}
+
+	/**
+	 * Read the timings from the given file, or an empty set of timings if there is no such file
+	 */
+	@SuppressWarnings("unchecked")
+	static TestTimings read(File file, String profileName) {
+		final TestTimings timings = new TestTimings( profileName );
+		if ( ! file.exists() ) {
+			return timings;
+		}
+
+		final Map<String, Object> json;
+		try ( Reader reader = Files.newBufferedReader( file.toPath(), StandardCharsets.UTF_8 ) ) {
+			json = (Map<String, Object>) new JsonSlurper().parse( reader );
+		}
+		catch (IOException | RuntimeException e) {
+			throw new BuildExecutionException( "Unable to read test timings : " + file, e );
+		}
+
+		final Map<String, Map<String, Object>> tests = (Map<String, Map<String, Object>>) json.get( "tests" );
+		if ( tests != null ) {
+			tests.forEach( (test, histogram) -> timings.histograms.put( test, Histogram.fromJson( histogram ) ) );
+		}
+
+		final Map<String, Map<String, Object>> classes = (Map<String, Map<String, Object>>) json.get( "classes" );
+		if ( classes != null ) {
+			classes.forEach( (testClass, histogram) -> timings.classHistograms.put( testClass, Histogram.fromJson( histogram ) ) );
+		}
+
+		return timings;
+	}
+
+	/**
+	 * Read and merge all of the timings in the given directory
+	 */
+	static TestTimings readAll(File directory, String profileName) {
+		final TestTimings all = new TestTimings( profileName );
+		final File[] files = directory.listFiles( (dir, name) -> name.endsWith( ".json" ) );
+		if ( files != null ) {
+			for ( File file : files ) {
+				final TestTimings timings = read( file, profileName );
+				merge( timings.histograms, all.histograms );
+				merge( timings.classHistograms, all.classHistograms );
+			}
+		}
+		return all;
+	}
+
+	private static void merge(Map<String, Histogram> source, Map<String, Histogram> target) {
+		source.forEach( (key, histogram) -> target.computeIfAbsent( key, k -> new Histogram() ).merge( histogram ) );
+	}
+
+	void write(File file) {
+		final Map<String, Object> tests = new LinkedHashMap<>();
+		new TreeMap<>( histograms ).forEach( (test, histogram) -> tests.put( test, histogram.toJson() ) );
+
+		final Map<String, Object> classes = new LinkedHashMap<>();
+		new TreeMap<>( classHistograms ).forEach( (testClass, histogram) -> classes.put( testClass, histogram.toJson() ) );
+
+		final Map<String, Object> json = new LinkedHashMap<>();
+		json.put( "profile", profileName );
+		json.put( "tests", tests );
+		json.put( "classes", classes );
+
+		try {
+			Files.createDirectories( file.getParentFile().toPath() );
+			try ( Writer writer = Files.newBufferedWriter( file.toPath(), StandardCharsets.UTF_8 ) ) {
+				writer.write( JsonOutput.toJson( json ) );
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to write test timings : " + file, e );
+		}
+	}
+
+	/**
+	 * Histogram of the durations of a single test.  Bucket `0` counts durations under 1ms, bucket
+	 * `n` durations from `2^(n-1)` up to `2^n` ms
+	 */
+	static class Histogram {
+		private long count;
+		private long totalMillis;
+		private long minMillis = Long.MAX_VALUE;
+		private long maxMillis;
+		private long[] buckets = new long[0];
+
+		synchronized void record(long millis) {
+			final long duration = Math.max( 0, millis );
+			count++;
+			totalMillis += duration;
+			minMillis = Math.min( minMillis, duration );
+			maxMillis = Math.max( maxMillis, duration );
+
+			final int bucket = bucket( duration );
+			if ( bucket >= buckets.length ) {
+				final long[] grown = new long[ bucket + 1 ];
+				System.arraycopy( buckets, 0, grown, 0, buckets.length );
+				buckets = grown;
+			}
+			buckets[ bucket ]++;
+		}
+
+		synchronized void merge(Histogram other) {
+			count += other.count;
+			totalMillis += other.totalMillis;
+			minMillis = Math.min( minMillis, other.minMillis );
+			maxMillis = Math.max( maxMillis, other.maxMillis );
+
+			if ( other.buckets.length > buckets.length ) {
+				final long[] grown = new long[ other.buckets.length ];
+				System.arraycopy( buckets, 0, grown, 0, buckets.length );
+				buckets = grown;
+			}
+			for ( int i = 0; i < other.buckets.length; i++ ) {
+				buckets[ i ] += other.buckets[ i ];
+			}
+		}
+
+		static int bucket(long millis) {
+			return 64 - Long.numberOfLeadingZeros( millis );
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		double getMeanMillis() {
+			return count == 0 ? 0 : (double) totalMillis / count;
+		}
+
+		long getMinMillis() {
+			return count == 0 ? 0 : minMillis;
+		}
+
+		long getMaxMillis() {
+			return maxMillis;
+		}
+
+		long[] getBuckets() {
+			return buckets;
+		}
+
+		private Map<String, Object> toJson() {
+			final List<Long> bucketList = new ArrayList<>( buckets.length );
+			for ( long bucket : buckets ) {
+				bucketList.add( bucket );
+			}
+
+			final Map<String, Object> json = new LinkedHashMap<>();
+			json.put( "count", count );
+			json.put( "totalMillis", totalMillis );
+			json.put( "minMillis", getMinMillis() );
+			json.put( "maxMillis", maxMillis );
+			json.put( "buckets", bucketList );
+			return json;
+		}
+
+		private static Histogram fromJson(Map<String, Object> json) {
+			final Histogram histogram = new Histogram();
+			histogram.count = ( (Number) json.get( "count" ) ).longValue();
+			histogram.totalMillis = ( (Number) json.get( "totalMillis" ) ).longValue();
+			histogram.minMillis = histogram.count == 0 ? Long.MAX_VALUE : ( (Number) json.get( "minMillis" ) ).longValue();
+			histogram.maxMillis = ( (Number) json.get( "maxMillis" ) ).longValue();
+
+			final List<?> bucketList = (List<?>) json.get( "buckets" );
+			histogram.buckets = new long[ bucketList.size() ];
+			for ( int i = 0; i < bucketList.size(); i++ ) {
+				histogram.buckets[ i ] = ( (Number) bucketList.get( i ) ).longValue();
+			}
+			return histogram;
+		}
+	}
+}
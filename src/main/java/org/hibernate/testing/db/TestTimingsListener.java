@@ -0,0 +1,115 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.gradle.api.tasks.testing.TestDescriptor;
+import org.gradle.api.tasks.testing.TestListener;
+import org.gradle.api.tasks.testing.TestResult;
+
+/**
+ * Records the duration of each test (and test class) run by a profile Test task into
+ * {@link TestTimings}, written as the test run finishes.  Skipped tests are not recorded.  The
+ * timings of tests not run this time (a `--tests` run, another shard, a run stopped by the
+ * {@link CircuitBreaker}) are kept as they were.
+ *
+ * NOTE : only captures the profile name and the timings file, so that the configuration-cache
+ * can serialize it
+ */
+class TestTimingsListener implements TestListener {
+	private final String profileName;
+	private final File timingsFile;
+
+	private transient TestTimings recorded;
+
+	TestTimingsListener(String profileName, File timingsFile) {
+		this.profileName = profileName;
+		this.timingsFile = timingsFile;
+	}
+
+	@Override
+	public void beforeSuite(TestDescriptor testDescriptor) {
+	}
+
+	@Override
+	public void afterSuite(TestDescriptor testDescriptor, TestResult testResult) {
+		if ( testDescriptor.getParent() != null ) {
+			// a test class
+			if ( testDescriptor.getClassName() != null && testResult.getTestCount() > testResult.getSkippedTestCount() ) {
+				recorded().getClassHistograms()
+						.computeIfAbsent( testDescriptor.getClassName(), key -> new TestTimings.Histogram() )
+						.record( testResult.getEndTime() - testResult.getStartTime() );
+			}
+			return;
+		}
+
+		final TestTimings timings = takeRecorded();
+		if ( timings == null ) {
+			return;
+		}
+
+		merge( timings, TestTimings.read( timingsFile, profileName ) ).write( timingsFile );
+	}
+
+	/**
+	 * The previous timings, with those of the tests (classes) recorded in this run added
+	 */
+	static TestTimings merge(TestTimings recorded, TestTimings previous) {
+		final TestTimings merged = new TestTimings( previous.getProfileName() );
+		mergeInto( recorded.getHistograms(), previous.getHistograms(), merged.getHistograms() );
+		mergeInto( recorded.getClassHistograms(), previous.getClassHistograms(), merged.getClassHistograms() );
+		return merged;
+	}
+
+	private static void mergeInto(
+			Map<String, TestTimings.Histogram> recorded,
+			Map<String, TestTimings.Histogram> previous,
+			Map<String, TestTimings.Histogram> merged) {
+		merged.putAll( previous );
+		recorded.forEach(
+				(key, histogram) -> {
+					final TestTimings.Histogram previousHistogram = previous.get( key );
+					if ( previousHistogram != null ) {
+						histogram.merge( previousHistogram );
+					}
+					merged.put( key, histogram );
+				}
+		);
+	}
+
+	@Override
+	public void beforeTest(TestDescriptor testDescriptor) {
+	}
+
+	@Override
+	public void afterTest(TestDescriptor testDescriptor, TestResult testResult) {
+		if ( testResult.getResultType() == TestResult.ResultType.SKIPPED ) {
+			return;
+		}
+
+		final String test = TestTimings.testKey( testDescriptor.getClassName(), testDescriptor.getName() );
+		recorded().getHistograms()
+				.computeIfAbsent( test, key -> new TestTimings.Histogram() )
+				.record( testResult.getEndTime() - testResult.getStartTime() );
+	}
+
+	private synchronized TestTimings recorded() {
+		if ( recorded == null ) {
+			recorded = new TestTimings( profileName, new ConcurrentHashMap<>(), new ConcurrentHashMap<>() );
+		}
+		return recorded;
+	}
+
+	private synchronized TestTimings takeRecorded() {
+		final TestTimings timings = recorded;
+		recorded = null;
+		return timings;
+	}
+}
@@ -4,67 +4,197 @@
  */
 package org.hibernate.testing.db.alloc;
 
+import java.io.File;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
-import org.gradle.BuildListener;
-import org.gradle.BuildResult;
-import org.gradle.api.initialization.Settings;
-import org.gradle.api.invocation.Gradle;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
 
 import org.hibernate.testing.db.Profile;
 
 /**
+ * Build-scoped registry of the database allocations.  Registered as a shared build service
+ * (see {@link DatabaseAllocator#SERVICE_NAME}) so that Gradle closes it, releasing all
+ * allocations, at the end of the build - replaces the former `BuildListener` approach which
+ * is not compatible with the configuration-cache
+ *
+ * Also holds the {@link SchemaPool schema pools}, which are created on first use and shared by all
+ * Test tasks using the same database.  Leases are returned as tasks finish (the registry listens
+ * to task completion).  Likewise the {@link LocalServer local servers}, which are started on first
+ * use and stopped as the registry is released.  And the outcome of the {@link ConnectivityCheckTask}
+ * checks, so each database is checked just once per build.
+ *
  * @author Steve Ebersole
  */
-public class AllocationRegistry implements BuildListener {
+public abstract class AllocationRegistry
+		implements BuildService<BuildServiceParameters.None>, OperationCompletionListener, AutoCloseable {
+	private static final int BUILD_ID_TIME_LENGTH = 7;
+	private static final int BUILD_ID_RANDOM_LENGTH = 4;
+
 	private Map<Profile, DatabaseAllocation> databaseAllocationMap;
 
-	public void registerAllocation(Profile profile, DatabaseAllocation allocation) {
+	private final String buildId = newBuildId( System.currentTimeMillis() );
+	private final Map<String, SchemaPool> schemaPools = new HashMap<>();
+	private final Map<String, LocalServer> localServers = new HashMap<>();
+	private final AtomicBoolean listening = new AtomicBoolean();
+	private final Map<String, CompletableFuture<ConnectivityCheckTask.Outcome>> connectivityChecks = new ConcurrentHashMap<>();
+	private final Set<String> unreachableProfiles = ConcurrentHashMap.newKeySet();
+
+	public synchronized void registerAllocation(Profile profile, DatabaseAllocation allocation) {
 		if ( databaseAllocationMap == null ) {
 			databaseAllocationMap = new HashMap<>();
 		}
 		databaseAllocationMap.put( profile, allocation );
 	}
 
-	public DatabaseAllocation findAllocation(Profile profile) {
+	public synchronized DatabaseAllocation findAllocation(Profile profile) {
+		if ( databaseAllocationMap == null ) {
+			return null;
+		}
 		return databaseAllocationMap.get( profile );
 	}
 
-	public void release() {
-		if ( databaseAllocationMap == null ) {
-			return;
+	/**
+	 * An id unique to this build, used to keep the schemas of concurrent builds apart
+	 */
+	public String getBuildId() {
+		return buildId;
+	}
+
+	/**
+	 * The build's start time (in seconds, base 36, so that the schemas of a killed build can later
+	 * be recognized as left behind) followed by a random part
+	 */
+	static String newBuildId(long startTimeMillis) {
+		final String startTime = Long.toString( TimeUnit.MILLISECONDS.toSeconds( startTimeMillis ), Character.MAX_RADIX );
+		final StringBuilder buildId = new StringBuilder();
+		for ( int i = startTime.length(); i < BUILD_ID_TIME_LENGTH; i++ ) {
+			buildId.append( '0' );
 		}
+		buildId.append( startTime );
+
+		// a leading 1 keeps the leading zeros of the random part
+		final long randomBound = (long) Math.pow( Character.MAX_RADIX, BUILD_ID_RANDOM_LENGTH );
+		final long random = randomBound + ThreadLocalRandom.current().nextLong( randomBound );
+		buildId.append( Long.toString( random, Character.MAX_RADIX ).substring( 1 ) );
+		return buildId.toString();
+	}
 
-		databaseAllocationMap.forEach( (profile, allocation) -> allocation.release() );
-		databaseAllocationMap.clear();
+	/**
+	 * The start time (epoch millis) of the build with the given id, or -1 if not a build id
+	 */
+	static long buildStartTime(String buildId) {
+		if ( buildId.length() != BUILD_ID_TIME_LENGTH + BUILD_ID_RANDOM_LENGTH ) {
+			return -1;
+		}
+		try {
+			return TimeUnit.SECONDS.toMillis( Long.parseLong( buildId.substring( 0, BUILD_ID_TIME_LENGTH ), Character.MAX_RADIX ) );
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
 	}
 
-	// ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
-	// BuildListener
+	/**
+	 * Used to register for task completion events just once per build
+	 */
+	boolean startListening() {
+		return listening.compareAndSet( false, true );
+	}
 
-	@Override
-	public void buildStarted(Gradle gradle) {
-		// don't care
+	List<SchemaPool.Lease> lease(PoolSpec spec, Set<File> driverClasspath, String owner, int count) {
+		return locatePool( spec, driverClasspath ).lease( owner, count );
 	}
 
-	@Override
-	public void settingsEvaluated(Settings settings) {
-		// don't care
+	private synchronized SchemaPool locatePool(PoolSpec spec, Set<File> driverClasspath) {
+		return schemaPools.computeIfAbsent(
+				spec.getPoolKey(),
+				key -> new SchemaPool(
+						spec,
+						buildId,
+						JdbcConnector.create(
+								driverClasspath,
+								spec.getDriverClassName(),
+								spec.getUrl(),
+								spec.getUsername(),
+								spec.getPassword()
+						)
+				)
+		);
 	}
 
-	@Override
-	public void projectsLoaded(Gradle gradle) {
-		// don't care
+	/**
+	 * The (shared) local server for the spec, which is started by {@link LocalServer#ensureStarted}
+	 */
+	synchronized LocalServer locateServer(LocalServerSpec spec) {
+		return localServers.computeIfAbsent( spec.getServerKey(), key -> new LocalServer( spec ) );
+	}
+
+	/**
+	 * The (shared) connectivity check for the given connection, started by the first project to ask for it
+	 */
+	CompletableFuture<ConnectivityCheckTask.Outcome> checkConnectivity(
+			String connectionKey,
+			Supplier<CompletableFuture<ConnectivityCheckTask.Outcome>> check) {
+		return connectivityChecks.computeIfAbsent( connectionKey, key -> check.get() );
+	}
+
+	void markUnreachable(String profileName) {
+		unreachableProfiles.add( profileName );
+	}
+
+	boolean isUnreachable(String profileName) {
+		return unreachableProfiles.contains( profileName );
+	}
+
+	/**
+	 * Return all leases held by the given owner (task path)
+	 */
+	public void returnLeases(String owner) {
+		final SchemaPool[] pools;
+		synchronized ( this ) {
+			pools = schemaPools.values().toArray( new SchemaPool[0] );
+		}
+		for ( SchemaPool pool : pools ) {
+			pool.returnLeases( owner );
+		}
 	}
 
 	@Override
-	public void projectsEvaluated(Gradle gradle) {
-		// don't care
+	public void onFinish(FinishEvent event) {
+		if ( event instanceof TaskFinishEvent ) {
+			returnLeases( ( (TaskFinishEvent) event ).getDescriptor().getTaskPath() );
+		}
+	}
+
+	public synchronized void release() {
+		if ( databaseAllocationMap != null ) {
+			databaseAllocationMap.forEach( (profile, allocation) -> allocation.release() );
+			databaseAllocationMap.clear();
+		}
+
+		schemaPools.values().forEach( SchemaPool::close );
+		schemaPools.clear();
+
+		// after the pools, which may still need the server
+		localServers.values().forEach( LocalServer::stop );
+		localServers.clear();
 	}
 
 	@Override
-	public void buildFinished(BuildResult buildResult) {
+	public void close() {
 		release();
 	}
 }
@@ -0,0 +1,129 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+/**
+ * Probes a database server for the number of connections it still has available - its
+ * connection limit less the connections currently open.  Used to bound the number of forks of a
+ * profile Test task (see {@link org.hibernate.testing.db.TestJvmSettings#isAutoParallelForks()}).
+ *
+ * Supported for PostgreSQL, MySQL / MariaDB, SQL Server and Oracle; the latter two need access to
+ * the server's configuration and session views.  A SQL Server configured for the maximum number of
+ * connections (`user connections` of 0) has no budget to speak of.
+ */
+public class ConnectionBudget {
+	private static final Logger log = Logging.getLogger( ConnectionBudget.class );
+
+	/**
+	 * How long, in seconds, to wait for the probe
+	 */
+	private static final long PROBE_TIMEOUT = 10;
+
+	private ConnectionBudget() {
+	}
+
+	/**
+	 * Whether the URL refers to an in-process database, which has no connection limit to speak of
+	 */
+	public static boolean isEmbedded(String url) {
+		return url != null && ConnectivityCheckTask.Target.isEmbedded( url );
+	}
+
+	/**
+	 * The query for the number of available connections, or `null` if not supported for the URL
+	 */
+	static String availableConnectionsQuery(String url) {
+		final String lowerCaseUrl = url.toLowerCase( Locale.ROOT );
+		if ( lowerCaseUrl.startsWith( "jdbc:postgresql:" ) ) {
+			return "select current_setting('max_connections')::int - (select count(*) from pg_stat_activity)";
+		}
+		if ( lowerCaseUrl.startsWith( "jdbc:mysql:" ) || lowerCaseUrl.startsWith( "jdbc:mariadb:" ) ) {
+			return "select @@max_connections - (select count(*) from information_schema.processlist)";
+		}
+		if ( lowerCaseUrl.startsWith( "jdbc:sqlserver:" ) ) {
+			// `@@MAX_CONNECTIONS` is always the ceiling (32767); 0 `user connections` means no limit (null)
+			return "select nullif(cast(value_in_use as int), 0) - (select count(*) from sys.dm_exec_connections)"
+					+ " from sys.configurations where name = 'user connections'";
+		}
+		if ( lowerCaseUrl.startsWith( "jdbc:oracle:" ) ) {
+			return "select (select to_number(value) from v$parameter where name = 'sessions') - (select count(*) from v$session) from dual";
+		}
+		return null;
+	}
+
+	/**
+	 * The number of connections the server still has available, or `null` if that cannot be
+	 * determined (not supported, no access, server not reachable within a few seconds) or there
+	 * is no limit
+	 */
+	public static Integer probe(
+			Collection<File> driverClasspath,
+			String driverClassName,
+			String url,
+			String username,
+			String password) {
+		if ( url == null ) {
+			return null;
+		}
+		final String query = availableConnectionsQuery( url );
+		if ( query == null ) {
+			return null;
+		}
+
+		final CompletableFuture<Integer> probe = new CompletableFuture<>();
+		final Thread thread = new Thread(
+				() -> {
+					try ( JdbcConnector connector = JdbcConnector.create( driverClasspath, driverClassName, url, username, password )
+									.withLoginTimeout( PROBE_TIMEOUT );
+							Connection connection = connector.connect();
+							Statement statement = connection.createStatement();
+							ResultSet resultSet = statement.executeQuery( query ) ) {
+						Integer available = null;
+						if ( resultSet.next() ) {
+							available = resultSet.getInt( 1 );
+							if ( resultSet.wasNull() ) {
+								// no limit
+								available = null;
+							}
+						}
+						probe.complete( available );
+					}
+					catch (Exception e) {
+						probe.completeExceptionally( e );
+					}
+				},
+				"db-profile-connection-budget"
+		);
+		// a driver hanging on connect must not keep the build alive
+		thread.setDaemon( true );
+		thread.start();
+
+		try {
+			return probe.get( PROBE_TIMEOUT, TimeUnit.SECONDS );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (Exception e) {
+			log.info( "Unable to determine the available connections for {} : {}", url, e.toString() );
+			return null;
+		}
+	}
+}
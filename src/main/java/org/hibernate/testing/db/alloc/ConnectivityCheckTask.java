@@ -0,0 +1,385 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.api.tasks.testing.Test;
+
+import org.hibernate.testing.db.BuildExecutionException;
+import org.hibernate.testing.db.DriverResolutions;
+import org.hibernate.testing.db.Profile;
+
+/**
+ * Pre-flight check that the database of each profile is reachable, so that a database which is
+ * down fails the build (or skips the profile's Test task) within seconds rather than failing every
+ * test one by one.
+ *
+ * A JDBC connection is opened concurrently for every profile, using the profile's dependencies and
+ * `hibernate.connection.*` properties, all bounded by the {@linkplain #getConnectTimeout() connect timeout}.
+ * The outcome is logged as a table.  Profiles using an embedded database, or a {@linkplain LocalServer local
+ * server} (which is only started by the Test task), are not checked.  The outcome for a database is
+ * shared, through the {@link AllocationRegistry}, by the checks of all projects in the build.
+ *
+ * The connect timeout is also passed to the driver (see {@link JdbcConnector#withLoginTimeout}), so
+ * that a connection attempt which timed out does not linger in the Gradle daemon.
+ *
+ * `testAllDbProfiles` depends on the check of all profiles.  Each profile Test task depends on a
+ * check of just its profile (`checkDbProfileConnectivity_<profile>`), which takes its settings from
+ * the check of all profiles and, if that is run as well, re-uses its outcome.
+ */
+public class ConnectivityCheckTask extends DefaultTask {
+	public static final String NAME = "checkDbProfileConnectivity";
+
+	private final List<Target> targets = new ArrayList<>();
+	private final Provider<AllocationRegistry> registry;
+
+	private long connectTimeout = 10;
+	private boolean failOnUnreachable = true;
+
+	public ConnectivityCheckTask() {
+		setGroup( "database" );
+		setDescription( "Checks that the database of each profile accepts JDBC connections" );
+
+		this.registry = DatabaseAllocator.locateRegistry( getProject() );
+		usesService( registry );
+	}
+
+	/**
+	 * Include the given profile in the check
+	 */
+	public void include(Profile profile) {
+		targets.add( Target.from( profile, getProject() ) );
+	}
+
+	/**
+	 * How long, in seconds, to wait for the connections.  Defaults to 10
+	 */
+	@Input
+	public long getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(long connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public void connectTimeout(long connectTimeout) {
+		setConnectTimeout( connectTimeout );
+	}
+
+	/**
+	 * Whether an unreachable database fails the build (the default), or just skips the profile's
+	 * Test task
+	 */
+	@Input
+	public boolean isFailOnUnreachable() {
+		return failOnUnreachable;
+	}
+
+	public void setFailOnUnreachable(boolean failOnUnreachable) {
+		this.failOnUnreachable = failOnUnreachable;
+	}
+
+	public void failOnUnreachable(boolean failOnUnreachable) {
+		setFailOnUnreachable( failOnUnreachable );
+	}
+
+	@TaskAction
+	public void check() {
+		final AllocationRegistry allocationRegistry = registry.get();
+		final ExecutorService executor = Executors.newCachedThreadPool(
+				runnable -> {
+					// a driver hanging on connect must not keep the build alive
+					final Thread thread = new Thread( runnable, "db-profile-connectivity" );
+					thread.setDaemon( true );
+					return thread;
+				}
+		);
+
+		final List<Outcome> outcomes = new ArrayList<>( targets.size() );
+		try {
+			final List<CompletableFuture<Outcome>> checks = new ArrayList<>( targets.size() );
+			for ( Target target : targets ) {
+				checks.add(
+						target.skipReason != null
+								? CompletableFuture.completedFuture( Outcome.skipped( target.skipReason ) )
+								: allocationRegistry.checkConnectivity(
+										target.getConnectionKey(),
+										() -> CompletableFuture.supplyAsync( () -> target.connect( connectTimeout ), executor )
+								)
+				);
+			}
+
+			final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( connectTimeout );
+			for ( CompletableFuture<Outcome> check : checks ) {
+				outcomes.add( await( check, deadline ) );
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		final List<String> unreachable = new ArrayList<>();
+		getLogger().lifecycle( String.format( Locale.ROOT, "%-20s %-12s %8s  %s", "Profile", "Status", "Time", "Detail" ) );
+		for ( int i = 0; i < targets.size(); i++ ) {
+			final Target target = targets.get( i );
+			final Outcome outcome = outcomes.get( i );
+			getLogger().lifecycle(
+					String.format(
+							Locale.ROOT,
+							"%-20s %-12s %8s  %s",
+							target.profileName,
+							outcome.status,
+							outcome.millis < 0 ? "" : outcome.millis + "ms",
+							outcome.detail
+					)
+			);
+
+			if ( outcome.status == Status.UNREACHABLE ) {
+				unreachable.add( target.profileName );
+				allocationRegistry.markUnreachable( target.profileName );
+			}
+		}
+
+		if ( ! unreachable.isEmpty() ) {
+			if ( failOnUnreachable ) {
+				throw new BuildExecutionException( "Database unreachable for profiles : " + unreachable );
+			}
+			getLogger().lifecycle( "Skipping the Test tasks of unreachable profiles : {}", unreachable );
+		}
+	}
+
+	private Outcome await(CompletableFuture<Outcome> check, long deadline) {
+		try {
+			return check.get( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+		}
+		catch (TimeoutException e) {
+			// complete the (shared) check, so the other projects do not wait for it again
+			check.complete(
+					Outcome.unreachable( TimeUnit.SECONDS.toMillis( connectTimeout ), "timed out after " + connectTimeout + "s" )
+			);
+			return check.join();
+		}
+		catch (ExecutionException e) {
+			return Outcome.unreachable( -1, String.valueOf( e.getCause() ) );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildExecutionException( "Interrupted checking database connectivity", e );
+		}
+	}
+
+	/**
+	 * Registers the check of just the given profile, configured like the check of all profiles
+	 */
+	public static TaskProvider<ConnectivityCheckTask> registerFor(
+			Profile profile,
+			TaskProvider<ConnectivityCheckTask> checkAll,
+			Project project) {
+		return project.getTasks().register(
+				NAME + "_" + profile.getName(),
+				ConnectivityCheckTask.class,
+				task -> {
+					final ConnectivityCheckTask allProfiles = checkAll.get();
+					task.setDescription( "Checks that the database of the `" + profile.getName() + "` profile accepts JDBC connections" );
+					task.include( profile );
+					task.setConnectTimeout( allProfiles.getConnectTimeout() );
+					task.setFailOnUnreachable( allProfiles.isFailOnUnreachable() );
+					// if both are run, the check of all profiles connects to them all at once
+					task.mustRunAfter( allProfiles );
+				}
+		);
+	}
+
+	/**
+	 * Makes the profile's Test task depend on the check of its profile, skipping it if the check
+	 * found the profile's database unreachable
+	 */
+	public static void applyTo(Test testTask, Profile profile, TaskProvider<ConnectivityCheckTask> checkTask, Project project) {
+		final Provider<AllocationRegistry> registry = DatabaseAllocator.locateRegistry( project );
+		testTask.dependsOn( checkTask );
+		testTask.usesService( registry );
+		testTask.onlyIf( new ReachableSpec( registry, profile.getName() ) );
+	}
+
+	private static class ReachableSpec implements Spec<Task> {
+		private final Provider<AllocationRegistry> registry;
+		private final String profileName;
+
+		private ReachableSpec(Provider<AllocationRegistry> registry, String profileName) {
+			this.registry = registry;
+			this.profileName = profileName;
+		}
+
+		@Override
+		public boolean isSatisfiedBy(Task task) {
+			return ! registry.get().isUnreachable( profileName );
+		}
+	}
+
+	enum Status {
+		OK,
+		UNREACHABLE,
+		SKIPPED
+	}
+
+	static class Outcome {
+		private final Status status;
+		private final long millis;
+		private final String detail;
+
+		private Outcome(Status status, long millis, String detail) {
+			this.status = status;
+			this.millis = millis;
+			this.detail = detail;
+		}
+
+		static Outcome ok(long millis, String url) {
+			return new Outcome( Status.OK, millis, url );
+		}
+
+		static Outcome unreachable(long millis, String detail) {
+			return new Outcome( Status.UNREACHABLE, millis, detail );
+		}
+
+		static Outcome skipped(String reason) {
+			return new Outcome( Status.SKIPPED, -1, reason );
+		}
+
+		Status getStatus() {
+			return status;
+		}
+	}
+
+	/**
+	 * The connection details of a profile, captured as the task is configured
+	 */
+	static class Target implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final String profileName;
+		private final String skipReason;
+		private final FileCollection driverClasspath;
+		private final String driverClassName;
+		private final String url;
+		private final String username;
+		private final String password;
+
+		private Target(
+				String profileName,
+				String skipReason,
+				FileCollection driverClasspath,
+				String driverClassName,
+				String url,
+				String username,
+				String password) {
+			this.profileName = profileName;
+			this.skipReason = skipReason;
+			this.driverClasspath = driverClasspath;
+			this.driverClassName = driverClassName;
+			this.url = url;
+			this.username = username;
+			this.password = password;
+		}
+
+		static Target from(Profile profile, Project project) {
+			final String url = stringValue( profile, Profile.URL );
+			return new Target(
+					profile.getName(),
+					determineSkipReason( profile, url ),
+					DriverResolutions.driverClasspath( profile, project ),
+					stringValue( profile, Profile.DRIVER ),
+					url,
+					stringValue( profile, Profile.USERNAME ),
+					stringValue( profile, Profile.PASSWORD )
+			);
+		}
+
+		private static String stringValue(Profile profile, String name) {
+			final Object value = profile.getHibernateProperties().get( name );
+			return value == null ? null : value.toString();
+		}
+
+		static String determineSkipReason(Profile profile, String url) {
+			if ( profile.getLocalServer().isEnabled() ) {
+				return "local server";
+			}
+			if ( url == null ) {
+				return "no URL";
+			}
+			if ( isEmbedded( url ) ) {
+				return "embedded";
+			}
+			return null;
+		}
+
+		/**
+		 * Whether the URL refers to an in-process database - nothing to check, and connecting
+		 * could create the database relative to the Gradle daemon's working directory
+		 */
+		static boolean isEmbedded(String url) {
+			final String lowerCaseUrl = url.toLowerCase( Locale.ROOT );
+			if ( lowerCaseUrl.startsWith( "jdbc:derby:" ) ) {
+				return ! lowerCaseUrl.startsWith( "jdbc:derby://" );
+			}
+			if ( lowerCaseUrl.startsWith( "jdbc:h2:" ) ) {
+				return ! lowerCaseUrl.startsWith( "jdbc:h2:tcp:" ) && ! lowerCaseUrl.startsWith( "jdbc:h2:ssl:" );
+			}
+			if ( lowerCaseUrl.startsWith( "jdbc:hsqldb:" ) ) {
+				return ! lowerCaseUrl.startsWith( "jdbc:hsqldb:hsql" ) && ! lowerCaseUrl.startsWith( "jdbc:hsqldb:http" );
+			}
+			return lowerCaseUrl.startsWith( "jdbc:sqlite:" );
+		}
+
+		/**
+		 * Profiles connecting to the same database (from any project) share the check
+		 */
+		String getConnectionKey() {
+			return driverClassName + '|' + url + '|' + username;
+		}
+
+		private Outcome connect(long timeout) {
+			final long start = System.nanoTime();
+			try ( JdbcConnector connector = JdbcConnector.create(
+					driverClasspath.getFiles(),
+					driverClassName,
+					url,
+					username,
+					password ).withLoginTimeout( timeout );
+					Connection ignored = connector.connect() ) {
+				return Outcome.ok( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ), url );
+			}
+			catch (Exception e) {
+				final String message = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+				return Outcome.unreachable(
+						TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ),
+						message.replace( '\n', ' ' )
+				);
+			}
+		}
+	}
+}
@@ -20,7 +20,16 @@ import org.gradle.api.tasks.testing.TestDescriptor;
 public interface DatabaseAllocation {
 	void beforeAllTests(Test task);
 
-	void beforeEachTest(TestDescriptor testDescriptor);
+	/**
+	 * Never called - the build process is not synchronized with the tests running in the forked
+	 * test JVMs, so nothing done here is guaranteed to happen before the test starts.
+	 *
+	 * @deprecated Resetting the database between test classes is done inside the forks instead;
+	 * see {@link org.hibernate.testing.db.Profile#getReset()}
+	 */
+	@Deprecated
+	default void beforeEachTest(TestDescriptor testDescriptor) {
+	}
 
 	void release();
 }
@@ -4,9 +4,15 @@
  */
 package org.hibernate.testing.db.alloc;
 
+import org.gradle.api.Action;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+import org.gradle.build.event.BuildEventsListenerRegistry;
 
 import org.hibernate.testing.db.DslExtension;
+import org.hibernate.testing.db.Profile;
 
 /**
  * Delegate for managing dynamic database instance allocation as part of the testing lifecycle.
@@ -26,9 +32,13 @@ import org.hibernate.testing.db.DslExtension;
  * @author Steve Ebersole
  */
 public class DatabaseAllocator {
+    /**
+     * Name under which the {@link AllocationRegistry} is registered as a shared build service
+     */
+    public static final String SERVICE_NAME = "dbProfileAllocations";
+
     public static void apply(DslExtension dslExtension, Project project) {
-        final AllocationRegistry allocationRegistry = new AllocationRegistry();
-        project.getGradle().addBuildListener( allocationRegistry );
+        final AllocationRegistry allocationRegistry = locateRegistry( project ).get();
 
         final AllocationProvider allocationProvider = StandardAllocationProvider.INSTANCE;
 
@@ -39,4 +49,54 @@ public class DatabaseAllocator {
                 }
         );
     }
+
+    /**
+     * Applies the profile's allocation (if one) to the Test task - the allocation is performed
+     * as the Test task starts
+     */
+    public static void applyAllocation(Profile profile, Test testTask, Project project) {
+        final Provider<AllocationRegistry> registry = locateRegistry( project );
+        final DatabaseAllocation allocation = registry.get().findAllocation( profile );
+        if ( allocation == null || allocation == NoAllocation.INSTANCE ) {
+            return;
+        }
+
+        testTask.usesService( registry );
+        testTask.doFirst( new BeforeAllTestsAction( allocation ) );
+    }
+
+    /**
+     * Registers the AllocationRegistry for task completion events, so that leases are returned
+     * as soon as the Test task holding them finishes
+     */
+    public static void listenForTaskCompletion(BuildEventsListenerRegistry listenerRegistry, Project project) {
+        final Provider<AllocationRegistry> registry = locateRegistry( project );
+        if ( registry.get().startListening() ) {
+            listenerRegistry.onTaskCompletion( registry );
+        }
+    }
+
+    /**
+     * Access to the build-scoped AllocationRegistry
+     */
+    public static Provider<AllocationRegistry> locateRegistry(Project project) {
+        return project.getGradle().getSharedServices().registerIfAbsent(
+                SERVICE_NAME,
+                AllocationRegistry.class,
+                spec -> {}
+        );
+    }
+
+    private static class BeforeAllTestsAction implements Action<Task> {
+        private final DatabaseAllocation allocation;
+
+        private BeforeAllTestsAction(DatabaseAllocation allocation) {
+            this.allocation = allocation;
+        }
+
+        @Override
+        public void execute(Task task) {
+            allocation.beforeAllTests( (Test) task );
+        }
+    }
 }
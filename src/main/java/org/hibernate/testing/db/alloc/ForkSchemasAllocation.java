@@ -0,0 +1,103 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.tasks.testing.Test;
+
+import org.hibernate.testing.db.DriverResolutions;
+import org.hibernate.testing.db.ForkSlotAgent;
+import org.hibernate.testing.db.Profile;
+
+/**
+ * DatabaseAllocation for a (non-pooled) profile whose schema name uses the `{fork}` placeholder,
+ * e.g. `hibernate.default_schema = 'orm_test_{fork}'`.  Makes sure the schema for each fork
+ * (`orm_test_1` .. `orm_test_<maxParallelForks>`) exists before the tests start.
+ *
+ * The schemas are created if missing, and otherwise left as they are; they are not dropped
+ * at the end of the build.
+ */
+class ForkSchemasAllocation implements DatabaseAllocation {
+	// URL parameters referring to the fork's schema, which may not exist yet - e.g. `?currentSchema=x_{fork}`
+	private static final Pattern FORK_URL_PARAMETER = Pattern.compile(
+			"[;?&][^;?&]*" + Pattern.quote( ForkSlotAgent.FORK_PLACEHOLDER ) + "[^;?&]*"
+	);
+
+	private final PoolSpec spec;
+	private final String schemaNameTemplate;
+	private final FileCollection driverClasspath;
+
+	private ForkSchemasAllocation(PoolSpec spec, String schemaNameTemplate, FileCollection driverClasspath) {
+		this.spec = spec;
+		this.schemaNameTemplate = schemaNameTemplate;
+		this.driverClasspath = driverClasspath;
+	}
+
+	/**
+	 * Creates the allocation if the profile's schema name uses the `{fork}` placeholder
+	 */
+	static DatabaseAllocation from(Profile profile, Project project) {
+		final PoolSpec spec = PoolSpec.from( profile );
+		final String schemaNameTemplate = spec.getBaseProperties().get( spec.getStrategy().schemaNameProperty() );
+		if ( schemaNameTemplate == null || ! schemaNameTemplate.contains( ForkSlotAgent.FORK_PLACEHOLDER ) ) {
+			return null;
+		}
+		return new ForkSchemasAllocation( spec, schemaNameTemplate, DriverResolutions.driverClasspath( profile, project ) );
+	}
+
+	@Override
+	public void beforeAllTests(Test task) {
+		final int forks = Math.max( 1, task.getMaxParallelForks() );
+
+		try ( JdbcConnector connector = JdbcConnector.create(
+				driverClasspath.getFiles(),
+				spec.getDriverClassName(),
+				provisioningUrl( spec.getUrl() ),
+				resolveFork( spec.getUsername(), 1 ),
+				resolveFork( spec.getPassword(), 1 ) ) ) {
+			for ( int slot = 1; slot <= forks; slot++ ) {
+				final String schemaName = resolveFork( schemaNameTemplate, slot );
+				try {
+					connector.execute(
+							SchemaStrategy.resolve( spec.getCreateStatements(), schemaName, resolveFork( spec.getPassword(), slot ) )
+					);
+					task.getLogger().lifecycle( "Created schema `{}` for fork {} of `{}`", schemaName, slot, task.getPath() );
+				}
+				catch (SQLException e) {
+					// generally because it already exists
+					task.getLogger().info( "Did not create schema `{}` : {}", schemaName, e.getMessage() );
+				}
+			}
+		}
+	}
+
+	/**
+	 * The URL used to create the schemas, without any parameters referring to the fork's schema
+	 */
+	static String provisioningUrl(String url) {
+		if ( url == null ) {
+			return null;
+		}
+		final String stripped = FORK_URL_PARAMETER.matcher( url ).replaceAll( "" );
+		if ( stripped.contains( "&" ) && ! stripped.contains( "?" ) ) {
+			return stripped.replaceFirst( "&", "?" );
+		}
+		return stripped;
+	}
+
+	private static String resolveFork(String value, int slot) {
+		return value == null ? null : value.replace( ForkSlotAgent.FORK_PLACEHOLDER, Integer.toString( slot ) );
+	}
+
+	@Override
+	public void release() {
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.ServiceLoader;
+
+import org.hibernate.testing.db.BuildExecutionException;
+import org.hibernate.testing.db.Profile;
+
+/**
+ * Opens JDBC connections from within the build, using the driver from the profile's dependencies.
+ *
+ * The driver is loaded through its own ClassLoader; `DriverManager` does not see drivers
+ * loaded that way, so the {@link Driver} is used directly.
+ */
+class JdbcConnector implements AutoCloseable {
+	private final URLClassLoader classLoader;
+	private final Driver driver;
+	private final String url;
+	private final Properties connectionInfo;
+
+	private JdbcConnector(URLClassLoader classLoader, Driver driver, String url, Properties connectionInfo) {
+		this.classLoader = classLoader;
+		this.driver = driver;
+		this.url = url;
+		this.connectionInfo = connectionInfo;
+	}
+
+	static JdbcConnector create(
+			Collection<File> driverClasspath,
+			String driverClassName,
+			String url,
+			String username,
+			String password) {
+		if ( url == null ) {
+			throw new BuildExecutionException( "Profile does not define a JDBC URL (`" + Profile.URL + "`)" );
+		}
+
+		final URL[] urls = new URL[ driverClasspath.size() ];
+		int i = 0;
+		for ( File file : driverClasspath ) {
+			try {
+				urls[i++] = file.toURI().toURL();
+			}
+			catch (MalformedURLException e) {
+				throw new BuildExecutionException( "Unable to build JDBC driver classpath : " + file, e );
+			}
+		}
+
+		final URLClassLoader classLoader = new URLClassLoader( urls, JdbcConnector.class.getClassLoader() );
+		try {
+			final Driver driver = locateDriver( classLoader, driverClassName, url );
+
+			final Properties connectionInfo = new Properties();
+			if ( username != null ) {
+				connectionInfo.setProperty( "user", username );
+			}
+			if ( password != null ) {
+				connectionInfo.setProperty( "password", password );
+			}
+
+			return new JdbcConnector( classLoader, driver, url, connectionInfo );
+		}
+		catch (RuntimeException e) {
+			closeQuietly( classLoader );
+			throw e;
+		}
+	}
+
+	private static Driver locateDriver(ClassLoader classLoader, String driverClassName, String url) {
+		if ( driverClassName != null ) {
+			try {
+				return (Driver) classLoader.loadClass( driverClassName ).getDeclaredConstructor().newInstance();
+			}
+			catch (Exception e) {
+				throw new BuildExecutionException( "Unable to load JDBC driver : " + driverClassName, e );
+			}
+		}
+
+		for ( Driver driver : ServiceLoader.load( Driver.class, classLoader ) ) {
+			try {
+				if ( driver.acceptsURL( url ) ) {
+					return driver;
+				}
+			}
+			catch (SQLException ignore) {
+			}
+		}
+
+		throw new BuildExecutionException( "Unable to locate JDBC driver for URL : " + url );
+	}
+
+	/**
+	 * Limit how long the driver waits to connect, through the driver's own connection properties -
+	 * unlike `DriverManager.setLoginTimeout`, this does not affect every other driver in the JVM
+	 * (the Gradle daemon).  Ignored for drivers without such a property
+	 */
+	JdbcConnector withLoginTimeout(long seconds) {
+		connectionInfo.putAll( loginTimeoutProperties( url, seconds ) );
+		return this;
+	}
+
+	/**
+	 * The connection properties limiting how long the driver for the URL waits to connect
+	 */
+	static Properties loginTimeoutProperties(String url, long seconds) {
+		final String lowerCaseUrl = url.toLowerCase( Locale.ROOT );
+		final String millis = Long.toString( TimeUnit.SECONDS.toMillis( seconds ) );
+		final Properties properties = new Properties();
+		if ( lowerCaseUrl.startsWith( "jdbc:postgresql:" ) ) {
+			properties.setProperty( "loginTimeout", Long.toString( seconds ) );
+			properties.setProperty( "connectTimeout", Long.toString( seconds ) );
+		}
+		else if ( lowerCaseUrl.startsWith( "jdbc:mysql:" ) || lowerCaseUrl.startsWith( "jdbc:mariadb:" ) ) {
+			properties.setProperty( "connectTimeout", millis );
+		}
+		else if ( lowerCaseUrl.startsWith( "jdbc:sqlserver:" )
+				|| lowerCaseUrl.startsWith( "jdbc:db2:" )
+				|| lowerCaseUrl.startsWith( "jdbc:jtds:" ) ) {
+			properties.setProperty( "loginTimeout", Long.toString( seconds ) );
+		}
+		else if ( lowerCaseUrl.startsWith( "jdbc:oracle:" ) ) {
+			properties.setProperty( "oracle.net.CONNECT_TIMEOUT", millis );
+		}
+		return properties;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	Connection connect() throws SQLException {
+		return connect( url );
+	}
+
+	Connection connect(String url) throws SQLException {
+		final Connection connection = driver.connect( url, connectionInfo );
+		if ( connection == null ) {
+			throw new SQLException( "JDBC driver " + driver.getClass().getName() + " does not accept URL : " + url );
+		}
+		return connection;
+	}
+
+	void execute(List<String> statements) throws SQLException {
+		try ( Connection connection = connect(); Statement statement = connection.createStatement() ) {
+			for ( String sql : statements ) {
+				statement.execute( sql );
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		closeQuietly( classLoader );
+	}
+
+	private static void closeQuietly(URLClassLoader classLoader) {
+		try {
+			classLoader.close();
+		}
+		catch (IOException ignore) {
+		}
+	}
+}
@@ -0,0 +1,416 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import org.hibernate.testing.db.BuildExecutionException;
+import org.hibernate.testing.db.Profile;
+
+/**
+ * A database server process started by the build, from binaries installed on the machine - see
+ * {@link LocalServerAllocation}.
+ *
+ * The server is initialized into a fresh data directory under the root project's
+ * `build/tmp/dbProfile/servers` directory and listens (on the loopback interface only) on a free
+ * port.  It is considered started once it accepts JDBC connections, at which point the profile's
+ * database (and user, for MySQL/MariaDB) is created.  {@link #stop} stops the server and removes
+ * its data directory; the server's output is kept in a log file next to it.
+ */
+class LocalServer {
+	private static final Logger log = Logging.getLogger( LocalServer.class );
+
+	private static final long STOP_TIMEOUT_SECONDS = 30;
+
+	/**
+	 * The kinds of servers which can be started
+	 */
+	enum Kind {
+		POSTGRESQL {
+			@Override
+			List<List<String>> initializeCommands(LocalServer server) {
+				return Collections.singletonList(
+						Arrays.asList(
+								server.executable( "initdb" ),
+								"-D", server.dataDirectory.getAbsolutePath(),
+								"-U", adminUsername( server.spec ),
+								"-A", "trust",
+								"-E", "UTF8",
+								"-N"
+						)
+				);
+			}
+
+			@Override
+			List<String> startCommand(LocalServer server) {
+				return Arrays.asList(
+						server.executable( "postgres" ),
+						"-D", server.dataDirectory.getAbsolutePath(),
+						"-p", Integer.toString( server.port ),
+						"-k", server.dataDirectory.getAbsolutePath(),
+						"-c", "listen_addresses=127.0.0.1",
+						"-c", "fsync=off"
+				);
+			}
+
+			@Override
+			String adminUrl(int port) {
+				return "jdbc:postgresql://127.0.0.1:" + port + "/postgres";
+			}
+
+			@Override
+			String adminUsername(LocalServerSpec spec) {
+				// initdb makes the profile's user the superuser
+				return spec.getUsername() == null ? "postgres" : spec.getUsername();
+			}
+
+			@Override
+			List<String> setupStatements(LocalServerSpec spec) {
+				// connections are trusted, so the profile's password does not matter
+				return Collections.singletonList( "create database " + spec.getDatabaseName() );
+			}
+		},
+		MYSQL {
+			@Override
+			List<List<String>> initializeCommands(LocalServer server) {
+				return Collections.singletonList(
+						Arrays.asList(
+								server.executable( "mysqld" ),
+								"--no-defaults",
+								"--initialize-insecure",
+								"--user=" + System.getProperty( "user.name" ),
+								"--datadir=" + server.dataDirectory.getAbsolutePath()
+						)
+				);
+			}
+
+			@Override
+			List<String> startCommand(LocalServer server) {
+				return Arrays.asList(
+						server.executable( "mysqld" ),
+						"--no-defaults",
+						// required when the build runs as root
+						"--user=" + System.getProperty( "user.name" ),
+						"--datadir=" + server.dataDirectory.getAbsolutePath(),
+						"--port=" + server.port,
+						"--bind-address=127.0.0.1",
+						"--socket=" + new File( server.dataDirectory, "mysql.sock" ).getAbsolutePath(),
+						"--mysqlx=OFF"
+				);
+			}
+		},
+		MARIADB {
+			@Override
+			List<List<String>> initializeCommands(LocalServer server) {
+				return Collections.singletonList(
+						Arrays.asList(
+								server.executable( "mariadb-install-db", "mysql_install_db" ),
+								"--no-defaults",
+								"--user=" + System.getProperty( "user.name" ),
+								"--datadir=" + server.dataDirectory.getAbsolutePath(),
+								"--auth-root-authentication-method=normal"
+						)
+				);
+			}
+
+			@Override
+			List<String> startCommand(LocalServer server) {
+				return Arrays.asList(
+						server.executable( "mariadbd", "mysqld" ),
+						"--no-defaults",
+						// required when the build runs as root
+						"--user=" + System.getProperty( "user.name" ),
+						"--datadir=" + server.dataDirectory.getAbsolutePath(),
+						"--port=" + server.port,
+						"--bind-address=127.0.0.1",
+						"--socket=" + new File( server.dataDirectory, "mysql.sock" ).getAbsolutePath()
+				);
+			}
+		};
+
+		abstract List<List<String>> initializeCommands(LocalServer server);
+
+		abstract List<String> startCommand(LocalServer server);
+
+		/**
+		 * URL used to check the server is up and to create the database
+		 */
+		String adminUrl(int port) {
+			return "jdbc:" + name().toLowerCase( Locale.ROOT ) + "://127.0.0.1:" + port + "/";
+		}
+
+		String adminUsername(LocalServerSpec spec) {
+			return "root";
+		}
+
+		List<String> setupStatements(LocalServerSpec spec) {
+			final List<String> statements = new ArrayList<>();
+			statements.add( "create database " + spec.getDatabaseName() );
+			if ( spec.getUsername() != null && ! "root".equals( spec.getUsername() ) ) {
+				final String user = "'" + spec.getUsername() + "'@'%'";
+				final String password = spec.getPassword() == null ? "" : spec.getPassword().replace( "'", "''" );
+				statements.add( "create user " + user + " identified by '" + password + "'" );
+				// the tests may well create other schemas
+				statements.add( "grant all on *.* to " + user );
+			}
+			return statements;
+		}
+
+		static Kind fromName(String name) {
+			for ( Kind kind : values() ) {
+				if ( kind.name().equalsIgnoreCase( name ) ) {
+					return kind;
+				}
+			}
+			return null;
+		}
+
+		static List<String> names() {
+			return Arrays.stream( values() ).map( kind -> kind.name().toLowerCase( Locale.ROOT ) ).collect( Collectors.toList() );
+		}
+	}
+
+	private final LocalServerSpec spec;
+
+	private File dataDirectory;
+	private File logFile;
+	private int port;
+	private Process process;
+	private Map<String, String> connectionProperties;
+
+	LocalServer(LocalServerSpec spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Start the server, unless it already is.  Returns the Hibernate properties pointing to it
+	 */
+	synchronized Map<String, String> ensureStarted(Set<File> driverClasspath) {
+		if ( connectionProperties == null ) {
+			try {
+				connectionProperties = start( driverClasspath );
+			}
+			catch (RuntimeException e) {
+				stop();
+				throw e;
+			}
+		}
+		return connectionProperties;
+	}
+
+	private Map<String, String> start(Set<File> driverClasspath) {
+		final Kind kind = spec.getKind();
+		try {
+			Files.createDirectories( spec.getDataRoot().toPath() );
+			dataDirectory = Files.createTempDirectory( spec.getDataRoot().toPath(), spec.getProfileName() + "-" ).toFile();
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to create data directory for `" + spec.getProfileName() + "` server", e );
+		}
+		logFile = new File( spec.getDataRoot(), dataDirectory.getName() + ".log" );
+		port = findFreePort();
+
+		log.lifecycle( "Starting {} server for `{}` profile on port {}", kind.name().toLowerCase( Locale.ROOT ), spec.getProfileName(), port );
+
+		for ( List<String> command : kind.initializeCommands( this ) ) {
+			run( command );
+		}
+
+		try {
+			process = new ProcessBuilder( kind.startCommand( this ) )
+					.redirectErrorStream( true )
+					.redirectOutput( ProcessBuilder.Redirect.appendTo( logFile ) )
+					.start();
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to start `" + spec.getProfileName() + "` server", e );
+		}
+
+		try ( JdbcConnector connector = JdbcConnector.create(
+				driverClasspath,
+				spec.getDriverClassName(),
+				kind.adminUrl( port ),
+				kind.adminUsername( spec ),
+				null ) ) {
+			awaitConnection( connector );
+			connector.execute( kind.setupStatements( spec ) );
+		}
+		catch (SQLException | RuntimeException e) {
+			throw new BuildExecutionException(
+					"Unable to set up `" + spec.getProfileName() + "` server; see " + logFile,
+					e
+			);
+		}
+
+		final Map<String, String> properties = new HashMap<>();
+		properties.put( Profile.URL, spec.serverUrl( port ) );
+		if ( spec.getUsername() == null ) {
+			properties.put( Profile.USERNAME, kind.adminUsername( spec ) );
+		}
+		return Collections.unmodifiableMap( properties );
+	}
+
+	/**
+	 * The JDBC readiness probe - wait for the server to accept connections
+	 */
+	private void awaitConnection(JdbcConnector connector) {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( spec.getStartTimeout() );
+		SQLException lastFailure = null;
+		while ( System.nanoTime() < deadline ) {
+			if ( ! process.isAlive() ) {
+				throw new BuildExecutionException(
+						"`" + spec.getProfileName() + "` server exited with " + process.exitValue() + "; see " + logFile
+				);
+			}
+
+			try ( Connection ignored = connector.connect() ) {
+				log.lifecycle( "`{}` server is accepting connections", spec.getProfileName() );
+				return;
+			}
+			catch (SQLException e) {
+				lastFailure = e;
+			}
+
+			try {
+				Thread.sleep( 250 );
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BuildExecutionException( "Interrupted waiting for `" + spec.getProfileName() + "` server", e );
+			}
+		}
+
+		throw new BuildExecutionException(
+				"Timed out waiting for `" + spec.getProfileName() + "` server to accept connections; see " + logFile,
+				lastFailure
+		);
+	}
+
+	private void run(List<String> command) {
+		try {
+			final Process initialization = new ProcessBuilder( command )
+					.redirectErrorStream( true )
+					.redirectOutput( ProcessBuilder.Redirect.appendTo( logFile ) )
+					.start();
+			final int exitValue = initialization.waitFor();
+			if ( exitValue != 0 ) {
+				throw new BuildExecutionException(
+						"Unable to initialize `" + spec.getProfileName() + "` server (`" + command.get( 0 ) + "` exited with "
+								+ exitValue + "); see " + logFile
+				);
+			}
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to initialize `" + spec.getProfileName() + "` server", e );
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildExecutionException( "Interrupted initializing `" + spec.getProfileName() + "` server", e );
+		}
+	}
+
+	/**
+	 * Locate one of the named executables, in the configured directory or on the `PATH`
+	 */
+	String executable(String... names) {
+		final List<File> directories = new ArrayList<>();
+		if ( spec.getBinDirectory() != null ) {
+			directories.add( new File( spec.getBinDirectory() ) );
+		}
+		else {
+			final String path = System.getenv( "PATH" );
+			if ( path != null ) {
+				for ( String entry : path.split( File.pathSeparator ) ) {
+					directories.add( new File( entry ) );
+				}
+			}
+		}
+
+		for ( String name : names ) {
+			for ( File directory : directories ) {
+				for ( String candidate : Arrays.asList( name, name + ".exe" ) ) {
+					final File executable = new File( directory, candidate );
+					if ( executable.isFile() && executable.canExecute() ) {
+						return executable.getAbsolutePath();
+					}
+				}
+			}
+		}
+
+		throw new BuildExecutionException(
+				"Unable to locate " + Arrays.toString( names ) + " for `" + spec.getProfileName() + "` server in "
+						+ ( spec.getBinDirectory() == null ? "PATH" : spec.getBinDirectory() )
+						+ "; set `localServer { binDirectory ... }`"
+		);
+	}
+
+	private static int findFreePort() {
+		try ( ServerSocket socket = new ServerSocket( 0 ) ) {
+			socket.setReuseAddress( true );
+			return socket.getLocalPort();
+		}
+		catch (IOException e) {
+			throw new BuildExecutionException( "Unable to find a free port", e );
+		}
+	}
+
+	/**
+	 * Stop the server (if started) and remove its data
+	 */
+	synchronized void stop() {
+		if ( process != null ) {
+			log.lifecycle( "Stopping `{}` server", spec.getProfileName() );
+			process.destroy();
+			try {
+				if ( ! process.waitFor( STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS ) ) {
+					process.destroyForcibly().waitFor( STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				process.destroyForcibly();
+			}
+			process = null;
+		}
+
+		if ( dataDirectory != null ) {
+			try ( Stream<Path> paths = Files.walk( dataDirectory.toPath() ) ) {
+				final List<Path> all = paths.sorted( Comparator.reverseOrder() ).collect( Collectors.toList() );
+				for ( Path path : all ) {
+					Files.deleteIfExists( path );
+				}
+			}
+			catch (IOException e) {
+				log.info( "Unable to remove data directory of `{}` server : {}", spec.getProfileName(), dataDirectory, e );
+			}
+			dataDirectory = null;
+		}
+
+		connectionProperties = null;
+	}
+}
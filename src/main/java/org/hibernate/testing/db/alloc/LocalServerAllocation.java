@@ -0,0 +1,55 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.util.Map;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+
+import org.hibernate.testing.db.Profile;
+
+/**
+ * DatabaseAllocation for profiles with a {@linkplain Profile#getLocalServer() local server}.
+ *
+ * The server is started (see {@link LocalServer}) by the first Test task to need it and then shared,
+ * through the {@link AllocationRegistry}, by the Test tasks of all projects using the profile; the
+ * registry stops it at the end of the build.  Each Test task's system properties are pointed at the
+ * server as it starts.
+ */
+class LocalServerAllocation implements DatabaseAllocation {
+	private final LocalServerSpec spec;
+	private final FileCollection driverClasspath;
+	private final Provider<AllocationRegistry> registry;
+
+	LocalServerAllocation(LocalServerSpec spec, FileCollection driverClasspath, Provider<AllocationRegistry> registry) {
+		this.spec = spec;
+		this.driverClasspath = driverClasspath;
+		this.registry = registry;
+	}
+
+	@Override
+	public void beforeAllTests(Test task) {
+		final Map<String, String> connectionProperties = registry.get()
+				.locateServer( spec )
+				.ensureStarted( driverClasspath.getFiles() );
+
+		task.getLogger().lifecycle(
+				"Running `{}` against local `{}` server : {}",
+				task.getPath(),
+				spec.getProfileName(),
+				connectionProperties.get( Profile.URL )
+		);
+		task.systemProperties( connectionProperties );
+	}
+
+	@Override
+	public void release() {
+		// the server is owned (and stopped) by the AllocationRegistry
+	}
+}
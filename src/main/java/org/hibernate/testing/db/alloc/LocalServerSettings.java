@@ -0,0 +1,92 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+/**
+ * Settings for a database server started by the build, from binaries installed on the machine, for
+ * a profile.  Exposed as {@link org.hibernate.testing.db.Profile#getLocalServer()}:
+ *
+ * ----
+ * postgresql {
+ *     ...
+ *     localServer {
+ *         // optional - otherwise the binaries are looked up on the `PATH`
+ *         binDirectory '/usr/lib/postgresql/13/bin'
+ *         startTimeout 120
+ *     }
+ * }
+ * ----
+ *
+ * Configuring `localServer` enables it.  Supported for `postgresql`, `mysql` and `mariadb`.
+ *
+ * @see LocalServerAllocation
+ */
+public class LocalServerSettings {
+	private boolean enabled;
+	private String kind;
+	private String binDirectory;
+	private long startTimeout = 60;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void enabled(boolean enabled) {
+		setEnabled( enabled );
+	}
+
+	/**
+	 * The kind of server - `postgresql`, `mysql` or `mariadb`.  Defaults to the profile's
+	 * {@linkplain org.hibernate.testing.db.Profile#getDatabaseKind() database kind}
+	 */
+	public String getKind() {
+		return kind;
+	}
+
+	public void setKind(String kind) {
+		this.kind = kind;
+	}
+
+	public void kind(String kind) {
+		setKind( kind );
+	}
+
+	/**
+	 * The directory containing the server binaries (`initdb`/`postgres`, `mysqld`, ...).  When not
+	 * specified, the binaries are looked up on the `PATH`
+	 */
+	public String getBinDirectory() {
+		return binDirectory;
+	}
+
+	public void setBinDirectory(String binDirectory) {
+		this.binDirectory = binDirectory;
+	}
+
+	public void binDirectory(String binDirectory) {
+		setBinDirectory( binDirectory );
+	}
+
+	/**
+	 * How long, in seconds, to wait for the server to accept JDBC connections.  Defaults to 60
+	 */
+	public long getStartTimeout() {
+		return startTimeout;
+	}
+
+	public void setStartTimeout(long startTimeout) {
+		this.startTimeout = startTimeout;
+	}
+
+	public void startTimeout(long startTimeout) {
+		setStartTimeout( startTimeout );
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.api.Project;
+
+import org.hibernate.testing.db.Profile;
+import org.hibernate.testing.db.ProfileCreationException;
+
+/**
+ * Everything needed to start a {@link LocalServer} at execution time, without access to the
+ * {@link Profile} (which is not available when running from the configuration-cache)
+ */
+class LocalServerSpec implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The database name used when the profile's URL does not name one
+	 */
+	static final String DEFAULT_DATABASE_NAME = "hibernate_orm_test";
+
+	// `jdbc:<kind>://<host:port>/<database><parameters>`
+	private static final Pattern SERVER_URL = Pattern.compile( "^(jdbc:[a-z]+://)([^/?;]*)(/([^/?;]*))?(.*)$" );
+
+	private final String profileName;
+	private final LocalServer.Kind kind;
+	private final String binDirectory;
+	private final long startTimeout;
+	private final File dataRoot;
+
+	private final String url;
+	private final String driverClassName;
+	private final String username;
+	private final String password;
+
+	private LocalServerSpec(
+			String profileName,
+			LocalServer.Kind kind,
+			String binDirectory,
+			long startTimeout,
+			File dataRoot,
+			String url,
+			String driverClassName,
+			String username,
+			String password) {
+		this.profileName = profileName;
+		this.kind = kind;
+		this.binDirectory = binDirectory;
+		this.startTimeout = startTimeout;
+		this.dataRoot = dataRoot;
+		this.url = url;
+		this.driverClassName = driverClassName;
+		this.username = username;
+		this.password = password;
+	}
+
+	static LocalServerSpec from(Profile profile, Project project) {
+		final LocalServerSettings settings = profile.getLocalServer();
+		final String kindName = settings.getKind() == null ? profile.getDatabaseKind() : settings.getKind();
+		final LocalServer.Kind kind = LocalServer.Kind.fromName( kindName );
+		if ( kind == null ) {
+			throw new ProfileCreationException(
+					"Local server for profile `" + profile.getName() + "` is not supported for `" + kindName
+							+ "`; expecting one of " + LocalServer.Kind.names()
+			);
+		}
+		if ( profile.getPool().isEnabled() ) {
+			throw new ProfileCreationException(
+					"Profile `" + profile.getName() + "` cannot use both a local server and a schema pool"
+			);
+		}
+
+		return new LocalServerSpec(
+				profile.getName(),
+				kind,
+				settings.getBinDirectory(),
+				settings.getStartTimeout(),
+				new File( project.getRootProject().getBuildDir(), "tmp/dbProfile/servers" ),
+				stringValue( profile, Profile.URL ),
+				stringValue( profile, Profile.DRIVER ),
+				stringValue( profile, Profile.USERNAME ),
+				stringValue( profile, Profile.PASSWORD )
+		);
+	}
+
+	private static String stringValue(Profile profile, String name) {
+		final Object value = profile.getHibernateProperties().get( name );
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Servers are shared by all (sub)projects using the same profile
+	 */
+	String getServerKey() {
+		return profileName + '|' + kind + '|' + binDirectory + '|' + url + '|' + username;
+	}
+
+	String getProfileName() {
+		return profileName;
+	}
+
+	LocalServer.Kind getKind() {
+		return kind;
+	}
+
+	String getBinDirectory() {
+		return binDirectory;
+	}
+
+	long getStartTimeout() {
+		return startTimeout;
+	}
+
+	File getDataRoot() {
+		return dataRoot;
+	}
+
+	String getDriverClassName() {
+		return driverClassName;
+	}
+
+	String getUsername() {
+		return username;
+	}
+
+	String getPassword() {
+		return password;
+	}
+
+	/**
+	 * The database named by the profile's URL, or {@value #DEFAULT_DATABASE_NAME}
+	 */
+	String getDatabaseName() {
+		return databaseName( url );
+	}
+
+	static String databaseName(String url) {
+		if ( url != null ) {
+			final Matcher matcher = SERVER_URL.matcher( url );
+			if ( matcher.matches() && matcher.group( 4 ) != null && ! matcher.group( 4 ).isEmpty() ) {
+				return matcher.group( 4 );
+			}
+		}
+		return DEFAULT_DATABASE_NAME;
+	}
+
+	/**
+	 * The profile's URL, pointed at the local server
+	 */
+	String serverUrl(int port) {
+		return serverUrl( url, kind, getDatabaseName(), port );
+	}
+
+	static String serverUrl(String url, LocalServer.Kind kind, String databaseName, int port) {
+		final String hostAndPort = "127.0.0.1:" + port;
+		if ( url != null ) {
+			final Matcher matcher = SERVER_URL.matcher( url );
+			if ( matcher.matches() ) {
+				return matcher.group( 1 ) + hostAndPort + "/" + databaseName + matcher.group( 5 );
+			}
+		}
+		return "jdbc:" + kind.name().toLowerCase( Locale.ROOT ) + "://" + hostAndPort + "/" + databaseName;
+	}
+}
@@ -7,7 +7,6 @@
 package org.hibernate.testing.db.alloc;
 
 import org.gradle.api.tasks.testing.Test;
-import org.gradle.api.tasks.testing.TestDescriptor;
 
 
 /**
@@ -25,10 +24,6 @@ class NoAllocation implements DatabaseAllocation {
     public void beforeAllTests(Test task) {
     }
 
-    @Override
-    public void beforeEachTest(TestDescriptor testDescriptor) {
-    }
-
     @Override
     public void release() {
     }
@@ -0,0 +1,141 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Settings for pooled allocation of schemas (or databases / users, depending on the kind of
+ * database) for a profile.  Exposed as {@link org.hibernate.testing.db.Profile#getPool()}:
+ *
+ * ----
+ * postgresql {
+ *     ...
+ *     pool {
+ *         size 4
+ *         // optional - the defaults depend on the kind of database
+ *         create 'CREATE SCHEMA {name}'
+ *         drop 'DROP SCHEMA {name} CASCADE'
+ *     }
+ * }
+ * ----
+ *
+ * Pooling is disabled unless a `size` is specified.  Not supported for in-memory databases, which
+ * would be provisioned in the memory of the Gradle daemon rather than that of the forks.
+ *
+ * @see PooledAllocation
+ */
+public class PoolSettings {
+	/**
+	 * Placeholder for the allocated schema name in {@link #getCreateStatements()} and {@link #getDropStatements()}
+	 */
+	public static final String NAME_PLACEHOLDER = "{name}";
+
+	/**
+	 * Placeholder, in {@link #getCreateStatements()}, for the password of the allocated schema's user
+	 * where the schema is a user (Oracle).  A random password is generated each time a pooled
+	 * schema is created, and passed to the tests as `hibernate.connection.password`; with the
+	 * `{fork}` placeholder, the profile's own password is used
+	 */
+	public static final String PASSWORD_PLACEHOLDER = "{password}";
+
+	private int size;
+	private String namePrefix = "dbp";
+	private final List<String> createStatements = new ArrayList<>();
+	private final List<String> dropStatements = new ArrayList<>();
+	private long leaseTimeout = 30 * 60;
+	private long orphanAge = 24;
+
+	/**
+	 * The number of schemas to provision
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public void size(int size) {
+		setSize( size );
+	}
+
+	/**
+	 * Prefix for the names of the provisioned schemas, which are named `<prefix>_<build-id>_<n>`
+	 */
+	public String getNamePrefix() {
+		return namePrefix;
+	}
+
+	public void setNamePrefix(String namePrefix) {
+		this.namePrefix = namePrefix;
+	}
+
+	public void namePrefix(String namePrefix) {
+		setNamePrefix( namePrefix );
+	}
+
+	/**
+	 * Statements used to create a schema, overriding the defaults for the kind of database
+	 */
+	public List<String> getCreateStatements() {
+		return createStatements;
+	}
+
+	public void create(String... statements) {
+		createStatements.addAll( Arrays.asList( statements ) );
+	}
+
+	/**
+	 * Statements used to drop a schema, overriding the defaults for the kind of database
+	 */
+	public List<String> getDropStatements() {
+		return dropStatements;
+	}
+
+	public void drop(String... statements) {
+		dropStatements.addAll( Arrays.asList( statements ) );
+	}
+
+	/**
+	 * How long, in seconds, a Test task waits for a schema to become available.  Defaults to 30 minutes
+	 */
+	public long getLeaseTimeout() {
+		return leaseTimeout;
+	}
+
+	public void setLeaseTimeout(long leaseTimeout) {
+		this.leaseTimeout = leaseTimeout;
+	}
+
+	public void leaseTimeout(long leaseTimeout) {
+		setLeaseTimeout( leaseTimeout );
+	}
+
+	/**
+	 * How old, in hours, the schemas of another build must be before they are considered left behind
+	 * (by a killed build) and dropped as the pool is created.  Defaults to 24 hours; 0 disables the sweep
+	 */
+	public long getOrphanAge() {
+		return orphanAge;
+	}
+
+	public void setOrphanAge(long orphanAge) {
+		this.orphanAge = orphanAge;
+	}
+
+	public void orphanAge(long orphanAge) {
+		setOrphanAge( orphanAge );
+	}
+
+	public boolean isEnabled() {
+		return size > 0;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.hibernate.testing.db.Profile;
+import org.hibernate.testing.db.ProfileCreationException;
+
+/**
+ * Everything needed to create a {@link SchemaPool} at execution time, without access to the
+ * {@link Profile} (which is not available when running from the configuration-cache)
+ */
+class PoolSpec implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final String profileName;
+	private final String databaseKind;
+	private final Map<String, String> baseProperties;
+
+	private final int size;
+	private final String namePrefix;
+	private final List<String> createStatements;
+	private final List<String> dropStatements;
+	private final long leaseTimeout;
+	private final long orphanAge;
+
+	private PoolSpec(
+			String profileName,
+			String databaseKind,
+			Map<String, String> baseProperties,
+			int size,
+			String namePrefix,
+			List<String> createStatements,
+			List<String> dropStatements,
+			long leaseTimeout,
+			long orphanAge) {
+		this.profileName = profileName;
+		this.databaseKind = databaseKind;
+		this.baseProperties = baseProperties;
+		this.size = size;
+		this.namePrefix = namePrefix;
+		this.createStatements = createStatements;
+		this.dropStatements = dropStatements;
+		this.leaseTimeout = leaseTimeout;
+		this.orphanAge = orphanAge;
+	}
+
+	static PoolSpec from(Profile profile) {
+		final PoolSettings settings = profile.getPool();
+		final SchemaStrategy strategy = SchemaStrategy.forDatabaseKind( profile.getDatabaseKind() );
+
+		final Map<String, String> baseProperties = new TreeMap<>();
+		profile.getHibernateProperties().forEach(
+				(key, value) -> {
+					if ( value != null ) {
+						baseProperties.put( key, value.toString() );
+					}
+				}
+		);
+
+		if ( isInMemory( baseProperties.get( Profile.URL ) ) ) {
+			throw new ProfileCreationException(
+					"Schema pooling is not supported for the in-memory database of `" + profile.getName() + "` profile : "
+							+ baseProperties.get( Profile.URL )
+			);
+		}
+
+		return new PoolSpec(
+				profile.getName(),
+				profile.getDatabaseKind(),
+				Collections.unmodifiableMap( baseProperties ),
+				settings.getSize(),
+				settings.getNamePrefix(),
+				new ArrayList<>( settings.getCreateStatements().isEmpty() ? strategy.createStatements() : settings.getCreateStatements() ),
+				new ArrayList<>( settings.getDropStatements().isEmpty() ? strategy.dropStatements() : settings.getDropStatements() ),
+				settings.getLeaseTimeout(),
+				settings.getOrphanAge()
+		);
+	}
+
+	/**
+	 * Whether the URL refers to an in-memory database - which lives in the process that opens it,
+	 * here the Gradle daemon, and so is never seen by the forks
+	 */
+	static boolean isInMemory(String url) {
+		if ( url == null ) {
+			return false;
+		}
+		final String lowerCaseUrl = url.toLowerCase( Locale.ROOT );
+		return lowerCaseUrl.startsWith( "jdbc:h2:mem:" )
+				|| lowerCaseUrl.startsWith( "jdbc:hsqldb:mem:" )
+				|| lowerCaseUrl.startsWith( "jdbc:derby:memory:" )
+				|| ( lowerCaseUrl.startsWith( "jdbc:sqlite:" ) && lowerCaseUrl.contains( ":memory:" ) );
+	}
+
+	/**
+	 * Pools are shared by all profiles using the same database (and credentials)
+	 */
+	String getPoolKey() {
+		return databaseKind + '|' + getUrl() + '|' + getUsername() + '|' + namePrefix;
+	}
+
+	String getProfileName() {
+		return profileName;
+	}
+
+	String getDatabaseKind() {
+		return databaseKind;
+	}
+
+	SchemaStrategy getStrategy() {
+		return SchemaStrategy.forDatabaseKind( databaseKind );
+	}
+
+	Map<String, String> getBaseProperties() {
+		return baseProperties;
+	}
+
+	String getUrl() {
+		return baseProperties.get( Profile.URL );
+	}
+
+	String getDriverClassName() {
+		return baseProperties.get( Profile.DRIVER );
+	}
+
+	String getUsername() {
+		return baseProperties.get( Profile.USERNAME );
+	}
+
+	String getPassword() {
+		return baseProperties.get( Profile.PASSWORD );
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	String getNamePrefix() {
+		return namePrefix;
+	}
+
+	List<String> getCreateStatements() {
+		return createStatements;
+	}
+
+	List<String> getDropStatements() {
+		return dropStatements;
+	}
+
+	long getLeaseTimeout() {
+		return leaseTimeout;
+	}
+
+	/**
+	 * See {@link PoolSettings#getOrphanAge()}
+	 */
+	long getOrphanAge() {
+		return orphanAge;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.util.List;
+
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.testing.Test;
+
+import org.hibernate.testing.db.ForkSlotAgent;
+
+/**
+ * DatabaseAllocation leasing schemas from a {@link SchemaPool} held by the {@link AllocationRegistry}.
+ *
+ * When the Test task starts, a schema is leased and the Test task's system properties are
+ * pointed at it; the lease is returned (see {@link AllocationRegistry#onFinish}) when the task
+ * finishes, whether or not the tests passed.
+ *
+ * With `maxParallelForks` > 1 one schema is leased per fork, and each fork is pointed at its own
+ * schema through per-fork system properties (see {@link ForkSlotAgent}).  If the pool is smaller
+ * than `maxParallelForks`, the number of forks is reduced to match.
+ */
+class PooledAllocation implements DatabaseAllocation {
+	private final PoolSpec spec;
+	private final FileCollection driverClasspath;
+	private final Provider<AllocationRegistry> registry;
+
+	PooledAllocation(PoolSpec spec, FileCollection driverClasspath, Provider<AllocationRegistry> registry) {
+		this.spec = spec;
+		this.driverClasspath = driverClasspath;
+		this.registry = registry;
+	}
+
+	@Override
+	public void beforeAllTests(Test task) {
+		final int forks = Math.max( 1, task.getMaxParallelForks() );
+		final List<SchemaPool.Lease> leases = registry.get().lease( spec, driverClasspath.getFiles(), task.getPath(), forks );
+
+		if ( leases.size() == 1 ) {
+			final SchemaPool.Lease lease = leases.get( 0 );
+			task.getLogger().lifecycle( "Running `{}` against pooled schema `{}`", task.getPath(), lease.getSchemaName() );
+			task.systemProperties( lease.getConnectionProperties() );
+		}
+		else {
+			for ( int i = 0; i < leases.size(); i++ ) {
+				final int slot = i + 1;
+				final SchemaPool.Lease lease = leases.get( i );
+				task.getLogger().lifecycle( "Running fork {} of `{}` against pooled schema `{}`", slot, task.getPath(), lease.getSchemaName() );
+				lease.getConnectionProperties().forEach(
+						(name, value) -> task.systemProperty( ForkSlotAgent.forkPropertyName( slot, name ), value )
+				);
+			}
+		}
+
+		if ( leases.size() < forks ) {
+			task.getLogger().lifecycle(
+					"Reducing `{}` to {} forks - the `{}` schema pool is not big enough for {}",
+					task.getPath(),
+					leases.size(),
+					spec.getProfileName(),
+					forks
+			);
+			task.setMaxParallelForks( leases.size() );
+		}
+	}
+
+	@Override
+	public void release() {
+		// the pool is owned (and released) by the AllocationRegistry
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import org.hibernate.testing.db.BuildExecutionException;
+
+/**
+ * A pool of pre-provisioned schemas in one database.
+ *
+ * All of the schemas are provisioned (in parallel) as soon as the pool is created.  Test tasks
+ * {@linkplain #lease lease} a schema, blocking until one is available; when the task finishes its
+ * leases are returned and the schemas are recycled (dropped and re-created) in the background
+ * before being leased again.  A schema which cannot be recycled is taken out of the pool and
+ * replaced by a newly provisioned one.  {@link #close} drops all of the schemas.
+ *
+ * Where the schema is a user (Oracle), each is created with a random password - see
+ * {@link PoolSettings#PASSWORD_PLACEHOLDER} - which is passed on through the lease's properties.
+ *
+ * Schema names include an id unique to the build, so concurrent builds against the same database
+ * server do not collide.  The id starts with the build's start time, so that the schemas left
+ * behind by killed builds can be recognized - those older than {@link PoolSpec#getOrphanAge()} are
+ * dropped, in the background, as the pool is created.
+ */
+class SchemaPool implements AutoCloseable {
+	private static final Logger log = Logging.getLogger( SchemaPool.class );
+
+	private static final String PASSWORD_CHARACTERS = "ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz23456789";
+	private static final SecureRandom random = new SecureRandom();
+
+	/**
+	 * A schema leased to a Test task (or fork)
+	 */
+	static class Lease {
+		private final String schemaName;
+		private final Map<String, String> connectionProperties;
+
+		private Lease(String schemaName, Map<String, String> connectionProperties) {
+			this.schemaName = schemaName;
+			this.connectionProperties = connectionProperties;
+		}
+
+		String getSchemaName() {
+			return schemaName;
+		}
+
+		/**
+		 * Hibernate properties pointing to the leased schema, overriding the profile's own
+		 */
+		Map<String, String> getConnectionProperties() {
+			return connectionProperties;
+		}
+	}
+
+	private final PoolSpec spec;
+	private final String buildId;
+	private final JdbcConnector connector;
+	private final ExecutorService executor;
+
+	private final AtomicInteger schemaCount = new AtomicInteger();
+	private final Set<String> provisioned = ConcurrentHashMap.newKeySet();
+	private final Map<String, String> passwords = new ConcurrentHashMap<>();
+	private final Deque<String> available = new ArrayDeque<>();
+	private final Map<String, String> owners = new ConcurrentHashMap<>();
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile Exception lastFailure;
+
+	SchemaPool(PoolSpec spec, String buildId, JdbcConnector connector) {
+		this.spec = spec;
+		this.buildId = buildId;
+		this.connector = connector;
+
+		final AtomicInteger threadCount = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(
+				Math.min( spec.getSize(), 4 ),
+				runnable -> {
+					final Thread thread = new Thread( runnable, "db-profile-pool-" + threadCount.incrementAndGet() );
+					thread.setDaemon( true );
+					return thread;
+				}
+		);
+
+		final List<String> names = new ArrayList<>();
+		for ( int i = 1; i <= spec.getSize(); i++ ) {
+			names.add( newSchemaName() );
+		}
+
+		log.lifecycle( "Provisioning {} schemas for `{}` profile : {}", names.size(), spec.getProfileName(), names );
+		for ( String name : names ) {
+			executor.submit( () -> provision( name ) );
+		}
+		if ( spec.getOrphanAge() > 0 ) {
+			executor.submit( this::dropOrphans );
+		}
+	}
+
+	private String newSchemaName() {
+		return spec.getNamePrefix() + "_" + buildId + "_" + schemaCount.incrementAndGet();
+	}
+
+	/**
+	 * A random password for a schema's user, starting with a letter
+	 */
+	static String newPassword() {
+		final StringBuilder password = new StringBuilder( "P" );
+		for ( int i = 0; i < 23; i++ ) {
+			password.append( PASSWORD_CHARACTERS.charAt( random.nextInt( PASSWORD_CHARACTERS.length() ) ) );
+		}
+		return password.toString();
+	}
+
+	private void create(String name) throws SQLException {
+		final String password = newPassword();
+		connector.execute( SchemaStrategy.resolve( spec.getCreateStatements(), name, password ) );
+		passwords.put( name, password );
+	}
+
+	private void provision(String name) {
+		try {
+			create( name );
+			provisioned.add( name );
+			makeAvailable( name );
+		}
+		catch (SQLException | RuntimeException e) {
+			log.warn( "Unable to provision schema `{}` for `{}` profile", name, spec.getProfileName(), e );
+			lastFailure = e;
+			failures.incrementAndGet();
+			synchronized ( this ) {
+				notifyAll();
+			}
+		}
+	}
+
+	private void recycle(String name) {
+		try {
+			drop( name );
+		}
+		catch (SQLException | RuntimeException e) {
+			// still there (in some state), so drop it again as the pool is closed
+			replace( name, e );
+			return;
+		}
+
+		try {
+			create( name );
+		}
+		catch (SQLException | RuntimeException e) {
+			provisioned.remove( name );
+			replace( name, e );
+			return;
+		}
+
+		makeAvailable( name );
+	}
+
+	/**
+	 * Take a schema which could not be recycled out of the pool, provisioning another in its place
+	 */
+	private void replace(String name, Exception failure) {
+		passwords.remove( name );
+		final String replacement = newSchemaName();
+		log.warn(
+				"Unable to recycle schema `{}` for `{}` profile; replacing it with `{}`",
+				name,
+				spec.getProfileName(),
+				replacement,
+				failure
+		);
+		provision( replacement );
+	}
+
+	private void drop(String name) throws SQLException {
+		try ( Connection connection = connector.connect() ) {
+			spec.getStrategy().drop( connection, name, spec.getDropStatements() );
+		}
+	}
+
+	private void dropOrphans() {
+		final List<String> orphans;
+		try ( Connection connection = connector.connect() ) {
+			orphans = orphans(
+					spec.getStrategy().existingNames( connection ),
+					spec.getNamePrefix(),
+					buildId,
+					System.currentTimeMillis(),
+					TimeUnit.HOURS.toMillis( spec.getOrphanAge() )
+			);
+		}
+		catch (SQLException | RuntimeException e) {
+			log.info( "Unable to look for schemas left behind by earlier builds for `{}` profile", spec.getProfileName(), e );
+			return;
+		}
+
+		for ( String name : orphans ) {
+			log.lifecycle( "Dropping schema `{}` left behind by an earlier build", name );
+			try {
+				drop( name );
+			}
+			catch (SQLException | RuntimeException e) {
+				log.warn( "Unable to drop schema `{}` left behind by an earlier build", name, e );
+			}
+		}
+	}
+
+	/**
+	 * Of the given (existing) names, those of pooled schemas (`<prefix>_<build-id>_<n>`) of builds
+	 * other than the given one, which started more than `maxAge` ago
+	 */
+	static List<String> orphans(Collection<String> names, String prefix, String buildId, long now, long maxAge) {
+		final Pattern pattern = Pattern.compile(
+				Pattern.quote( prefix.toLowerCase( Locale.ROOT ) ) + "_([0-9a-z]+)_[0-9]+"
+		);
+
+		final List<String> orphans = new ArrayList<>();
+		for ( String name : names ) {
+			if ( name == null ) {
+				continue;
+			}
+			final Matcher matcher = pattern.matcher( name.toLowerCase( Locale.ROOT ) );
+			if ( ! matcher.matches() || matcher.group( 1 ).equalsIgnoreCase( buildId ) ) {
+				continue;
+			}
+			final long startTime = AllocationRegistry.buildStartTime( matcher.group( 1 ) );
+			if ( startTime >= 0 && now - startTime > maxAge ) {
+				orphans.add( name );
+			}
+		}
+		return orphans;
+	}
+
+	private synchronized void makeAvailable(String name) {
+		available.add( name );
+		notifyAll();
+	}
+
+	/**
+	 * Lease a schema for the given owner (task path), waiting for one to become available
+	 */
+	Lease lease(String owner) {
+		return lease( owner, 1 ).get( 0 );
+	}
+
+	/**
+	 * Lease schemas for the given owner (task path) - one per fork.  The schemas are leased all
+	 * at once, so that Test tasks each waiting on part of their schemas cannot deadlock.  Fewer
+	 * schemas than requested are leased if the pool is not big enough
+	 */
+	synchronized List<Lease> lease(String owner, int count) {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos( spec.getLeaseTimeout() );
+		try {
+			while ( true ) {
+				final int usable = spec.getSize() - failures.get();
+				if ( usable <= 0 ) {
+					throw new BuildExecutionException(
+							"Unable to provision any schemas for `" + spec.getProfileName() + "` profile",
+							lastFailure
+					);
+				}
+
+				final int wanted = Math.max( 1, Math.min( count, usable ) );
+				if ( available.size() >= wanted ) {
+					final List<Lease> leases = new ArrayList<>( wanted );
+					for ( int i = 0; i < wanted; i++ ) {
+						final String name = available.poll();
+						owners.put( name, owner );
+						leases.add(
+								new Lease(
+										name,
+										spec.getStrategy().connectionProperties( spec.getBaseProperties(), name, passwords.get( name ) )
+								)
+						);
+					}
+					log.info( "Leased schemas {} to {}", names( leases ), owner );
+					return leases;
+				}
+
+				final long remaining = deadline - System.nanoTime();
+				if ( remaining <= 0 ) {
+					throw new BuildExecutionException(
+							"Timed out waiting for a pooled schema for `" + spec.getProfileName() + "` profile [" + owner + "]"
+					);
+				}
+				TimeUnit.NANOSECONDS.timedWait( this, Math.min( remaining, TimeUnit.SECONDS.toNanos( 1 ) ) );
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BuildExecutionException( "Interrupted waiting for a pooled schema [" + owner + "]", e );
+		}
+	}
+
+	private static List<String> names(List<Lease> leases) {
+		final List<String> names = new ArrayList<>( leases.size() );
+		leases.forEach( lease -> names.add( lease.getSchemaName() ) );
+		return names;
+	}
+
+	/**
+	 * Return all schemas leased to the given owner, which are recycled for the next lease
+	 */
+	void returnLeases(String owner) {
+		owners.forEach(
+				(name, leaseOwner) -> {
+					if ( owner.equals( leaseOwner ) && owners.remove( name, leaseOwner ) ) {
+						log.info( "Returning schema `{}` from {}", name, owner );
+						executor.submit( () -> recycle( name ) );
+					}
+				}
+		);
+	}
+
+	@Override
+	public void close() {
+		executor.shutdown();
+		try {
+			if ( ! executor.awaitTermination( 1, TimeUnit.MINUTES ) ) {
+				executor.shutdownNow();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		for ( String name : provisioned ) {
+			try {
+				drop( name );
+			}
+			catch (SQLException | RuntimeException e) {
+				log.warn( "Unable to drop pooled schema `{}` for `{}` profile", name, spec.getProfileName(), e );
+			}
+		}
+		provisioned.clear();
+
+		connector.close();
+	}
+}
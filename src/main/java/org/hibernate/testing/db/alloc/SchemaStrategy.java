@@ -0,0 +1,444 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.hibernate.testing.db.Profile;
+
+/**
+ * How an allocated schema is created, dropped and pointed to, per kind of database
+ */
+enum SchemaStrategy {
+	/**
+	 * Plain `CREATE SCHEMA` / `DROP SCHEMA ... CASCADE`, used via `hibernate.default_schema`
+	 */
+	SCHEMA,
+
+	POSTGRESQL {
+		@Override
+		String adjustUrl(String url, String name) {
+			return appendUrlParameter( url, "currentSchema=" + name, '?', '&' );
+		}
+	},
+
+	H2 {
+		@Override
+		String adjustUrl(String url, String name) {
+			return url + ";SCHEMA=" + name;
+		}
+	},
+
+	/**
+	 * Derby can only drop an empty schema (`RESTRICT` is the only option), so whatever the tests
+	 * created in it is dropped first
+	 */
+	DERBY {
+		@Override
+		List<String> dropStatements() {
+			return Collections.singletonList( "DROP SCHEMA {name} RESTRICT" );
+		}
+
+		@Override
+		void drop(Connection connection, String name, List<String> dropStatements) throws SQLException {
+			// unquoted names are stored in upper case
+			final String schema = name.toUpperCase( Locale.ROOT );
+			final String qualifier = quote( schema ) + ".";
+
+			final List<String> statements = new ArrayList<>();
+			query(
+					connection,
+					"select t.TABLENAME, c.CONSTRAINTNAME from SYS.SYSCONSTRAINTS c"
+							+ " join SYS.SYSTABLES t on c.TABLEID = t.TABLEID"
+							+ " join SYS.SYSSCHEMAS s on c.SCHEMAID = s.SCHEMAID"
+							+ " where c.TYPE = 'F' and s.SCHEMANAME = ?",
+					schema,
+					row -> statements.add( "ALTER TABLE " + qualifier + quote( row[0] ) + " DROP CONSTRAINT " + quote( row[1] ) )
+			);
+			query(
+					connection,
+					"select t.TABLENAME, t.TABLETYPE from SYS.SYSTABLES t"
+							+ " join SYS.SYSSCHEMAS s on t.SCHEMAID = s.SCHEMAID"
+							+ " where s.SCHEMANAME = ? order by t.TABLETYPE desc",
+					schema,
+					row -> {
+						switch ( row[1] ) {
+							case "V": {
+								statements.add( "DROP VIEW " + qualifier + quote( row[0] ) );
+								break;
+							}
+							case "A": {
+								statements.add( "DROP SYNONYM " + qualifier + quote( row[0] ) );
+								break;
+							}
+							case "T": {
+								statements.add( "DROP TABLE " + qualifier + quote( row[0] ) );
+								break;
+							}
+						}
+					}
+			);
+			query(
+					connection,
+					"select q.SEQUENCENAME from SYS.SYSSEQUENCES q"
+							+ " join SYS.SYSSCHEMAS s on q.SCHEMAID = s.SCHEMAID"
+							+ " where s.SCHEMANAME = ?",
+					schema,
+					row -> statements.add( "DROP SEQUENCE " + qualifier + quote( row[0] ) + " RESTRICT" )
+			);
+			query(
+					connection,
+					"select a.ALIAS, a.ALIASTYPE from SYS.SYSALIASES a"
+							+ " join SYS.SYSSCHEMAS s on a.SCHEMAID = s.SCHEMAID"
+							+ " where s.SCHEMANAME = ? and a.SYSTEMALIAS = false",
+					schema,
+					row -> {
+						switch ( row[1] ) {
+							case "F": {
+								statements.add( "DROP FUNCTION " + qualifier + quote( row[0] ) );
+								break;
+							}
+							case "P": {
+								statements.add( "DROP PROCEDURE " + qualifier + quote( row[0] ) );
+								break;
+							}
+							case "A": {
+								statements.add( "DROP TYPE " + qualifier + quote( row[0] ) + " RESTRICT" );
+								break;
+							}
+						}
+					}
+			);
+			executeInAnyOrder( connection, statements );
+
+			super.drop( connection, name, dropStatements );
+		}
+	},
+
+	/**
+	 * A SQL Server schema cannot be dropped while it contains objects (there is no `CASCADE`),
+	 * so each lease is a database of its own instead
+	 */
+	SQLSERVER {
+		@Override
+		List<String> createStatements() {
+			return Collections.singletonList( "CREATE DATABASE {name}" );
+		}
+
+		@Override
+		List<String> dropStatements() {
+			return Arrays.asList(
+					// disconnect anyone (e.g. a killed fork's pool) still using it
+					"ALTER DATABASE {name} SET SINGLE_USER WITH ROLLBACK IMMEDIATE",
+					"DROP DATABASE {name}"
+			);
+		}
+
+		@Override
+		String adjustUrl(String url, String name) {
+			// jdbc:sqlserver://host:port;databaseName=database;other=value
+			final StringBuilder adjusted = new StringBuilder();
+			for ( String part : url.split( ";" ) ) {
+				final String lowerCasePart = part.trim().toLowerCase( Locale.ROOT );
+				if ( lowerCasePart.startsWith( "databasename=" ) || lowerCasePart.startsWith( "database=" ) ) {
+					continue;
+				}
+				if ( ! part.isEmpty() ) {
+					adjusted.append( part ).append( ';' );
+				}
+			}
+			return adjusted.append( "databaseName=" ).append( name ).toString();
+		}
+
+		@Override
+		void adjustProperties(Map<String, String> properties, String name, String password) {
+			properties.put( DEFAULT_CATALOG, name );
+		}
+
+		@Override
+		String schemaNameProperty() {
+			return DEFAULT_CATALOG;
+		}
+
+		@Override
+		List<String> existingNames(Connection connection) throws SQLException {
+			return catalogNames( connection );
+		}
+	},
+
+	/**
+	 * A MySQL/MariaDB "schema" is a database
+	 */
+	MYSQL {
+		@Override
+		List<String> createStatements() {
+			return Collections.singletonList( "CREATE DATABASE {name}" );
+		}
+
+		@Override
+		List<String> dropStatements() {
+			return Collections.singletonList( "DROP DATABASE {name}" );
+		}
+
+		@Override
+		String adjustUrl(String url, String name) {
+			// jdbc:mysql://host:port/database?params
+			final int hostStart = url.indexOf( "//" );
+			if ( hostStart < 0 ) {
+				return url;
+			}
+			final int databaseStart = url.indexOf( '/', hostStart + 2 );
+			if ( databaseStart < 0 ) {
+				return url + "/" + name;
+			}
+			final int parametersStart = url.indexOf( '?', databaseStart );
+			return url.substring( 0, databaseStart + 1 )
+					+ name
+					+ ( parametersStart < 0 ? "" : url.substring( parametersStart ) );
+		}
+
+		@Override
+		void adjustProperties(Map<String, String> properties, String name, String password) {
+			properties.put( DEFAULT_CATALOG, name );
+		}
+
+		@Override
+		String schemaNameProperty() {
+			return DEFAULT_CATALOG;
+		}
+
+		@Override
+		List<String> existingNames(Connection connection) throws SQLException {
+			return catalogNames( connection );
+		}
+	},
+
+	/**
+	 * An Oracle schema is a user
+	 */
+	ORACLE {
+		@Override
+		List<String> createStatements() {
+			return Arrays.asList(
+					"CREATE USER {name} IDENTIFIED BY \"{password}\" QUOTA UNLIMITED ON USERS",
+					"GRANT CONNECT, RESOURCE TO {name}"
+			);
+		}
+
+		@Override
+		List<String> dropStatements() {
+			return Collections.singletonList( "DROP USER {name} CASCADE" );
+		}
+
+		@Override
+		void adjustProperties(Map<String, String> properties, String name, String password) {
+			properties.put( Profile.USERNAME, name );
+			if ( password != null ) {
+				properties.put( Profile.PASSWORD, password );
+			}
+		}
+
+		@Override
+		String schemaNameProperty() {
+			return Profile.USERNAME;
+		}
+	};
+
+	static final String DEFAULT_SCHEMA = "hibernate.default_schema";
+	static final String DEFAULT_CATALOG = "hibernate.default_catalog";
+
+	static SchemaStrategy forDatabaseKind(String databaseKind) {
+		switch ( databaseKind.toLowerCase( Locale.ROOT ) ) {
+			case "postgresql": {
+				return POSTGRESQL;
+			}
+			case "h2": {
+				return H2;
+			}
+			case "derby": {
+				return DERBY;
+			}
+			case "sqlserver": {
+				return SQLSERVER;
+			}
+			case "mysql":
+			case "mariadb": {
+				return MYSQL;
+			}
+			case "oracle": {
+				return ORACLE;
+			}
+			default: {
+				return SCHEMA;
+			}
+		}
+	}
+
+	List<String> createStatements() {
+		return Collections.singletonList( "CREATE SCHEMA {name}" );
+	}
+
+	List<String> dropStatements() {
+		return Collections.singletonList( "DROP SCHEMA {name} CASCADE" );
+	}
+
+	/**
+	 * Drop the named schema, using the (default or configured) drop statements
+	 */
+	void drop(Connection connection, String name, List<String> dropStatements) throws SQLException {
+		try ( Statement statement = connection.createStatement() ) {
+			for ( String sql : resolve( dropStatements, name ) ) {
+				statement.execute( sql );
+			}
+		}
+	}
+
+	/**
+	 * The names of the schemas (or databases, users) which exist, used to find those left behind
+	 * by killed builds
+	 */
+	List<String> existingNames(Connection connection) throws SQLException {
+		final List<String> names = new ArrayList<>();
+		try ( ResultSet resultSet = connection.getMetaData().getSchemas() ) {
+			while ( resultSet.next() ) {
+				names.add( resultSet.getString( "TABLE_SCHEM" ) );
+			}
+		}
+		return names;
+	}
+
+	String adjustUrl(String url, String name) {
+		return url;
+	}
+
+	void adjustProperties(Map<String, String> properties, String name, String password) {
+		properties.put( DEFAULT_SCHEMA, name );
+	}
+
+	/**
+	 * The Hibernate property naming the schema
+	 */
+	String schemaNameProperty() {
+		return DEFAULT_SCHEMA;
+	}
+
+	/**
+	 * The connection properties pointing to the named schema
+	 *
+	 * @param password The password the schema was created with (see {@link PoolSettings#PASSWORD_PLACEHOLDER}),
+	 * if one
+	 */
+	Map<String, String> connectionProperties(Map<String, String> baseProperties, String name, String password) {
+		final Map<String, String> properties = new HashMap<>();
+		final String url = baseProperties.get( Profile.URL );
+		if ( url != null ) {
+			properties.put( Profile.URL, adjustUrl( url, name ) );
+		}
+		adjustProperties( properties, name, password );
+		return properties;
+	}
+
+	static String appendUrlParameter(String url, String parameter, char first, char subsequent) {
+		return url + ( url.indexOf( first ) < 0 ? first : subsequent ) + parameter;
+	}
+
+	static List<String> resolve(List<String> statements, String name) {
+		return resolve( statements, name, null );
+	}
+
+	/**
+	 * Resolve the placeholders in the statements - the password placeholder is left as-is if no
+	 * password is given
+	 */
+	static List<String> resolve(List<String> statements, String name, String password) {
+		final String[] resolved = new String[ statements.size() ];
+		for ( int i = 0; i < resolved.length; i++ ) {
+			resolved[i] = statements.get( i ).replace( PoolSettings.NAME_PLACEHOLDER, name );
+			if ( password != null ) {
+				resolved[i] = resolved[i].replace( PoolSettings.PASSWORD_PLACEHOLDER, password );
+			}
+		}
+		return Arrays.asList( resolved );
+	}
+
+	static List<String> catalogNames(Connection connection) throws SQLException {
+		final List<String> names = new ArrayList<>();
+		try ( ResultSet resultSet = connection.getMetaData().getCatalogs() ) {
+			while ( resultSet.next() ) {
+				names.add( resultSet.getString( "TABLE_CAT" ) );
+			}
+		}
+		return names;
+	}
+
+	interface RowConsumer {
+		void accept(String[] row);
+	}
+
+	static void query(Connection connection, String sql, String parameter, RowConsumer consumer) throws SQLException {
+		try ( PreparedStatement statement = connection.prepareStatement( sql ) ) {
+			statement.setString( 1, parameter );
+			try ( ResultSet resultSet = statement.executeQuery() ) {
+				final int columnCount = resultSet.getMetaData().getColumnCount();
+				while ( resultSet.next() ) {
+					final String[] row = new String[ columnCount ];
+					for ( int i = 0; i < columnCount; i++ ) {
+						row[i] = resultSet.getString( i + 1 ).trim();
+					}
+					consumer.accept( row );
+				}
+			}
+		}
+	}
+
+	/**
+	 * Execute the statements, retrying those which fail for as long as others succeed - objects
+	 * (views on views, etc) are dropped without having to know how they depend on one another
+	 */
+	static void executeInAnyOrder(Connection connection, List<String> statements) throws SQLException {
+		final List<String> remaining = new ArrayList<>( statements );
+		try ( Statement statement = connection.createStatement() ) {
+			while ( ! remaining.isEmpty() ) {
+				SQLException lastFailure = null;
+				final Iterator<String> iterator = remaining.iterator();
+				while ( iterator.hasNext() ) {
+					try {
+						statement.execute( iterator.next() );
+						iterator.remove();
+					}
+					catch (SQLException e) {
+						lastFailure = e;
+					}
+				}
+
+				if ( lastFailure != null && remaining.size() == statements.size() ) {
+					throw lastFailure;
+				}
+				if ( lastFailure != null ) {
+					// progress was made - try the failed ones again
+					statements = new ArrayList<>( remaining );
+				}
+			}
+		}
+	}
+
+	static String quote(String identifier) {
+		return '"' + identifier.replace( "\"", "\"\"" ) + '"';
+	}
+}
@@ -6,9 +6,15 @@ package org.hibernate.testing.db.alloc;
 
 import org.gradle.api.Project;
 
+import org.hibernate.testing.db.DriverResolutions;
 import org.hibernate.testing.db.Profile;
 
 /**
+ * Starts a local database server (see {@link LocalServerAllocation}) for profiles which ask for it
+ * via {@link Profile#getLocalServer()}, pools schemas (see {@link PooledAllocation}) for profiles
+ * which ask for it via {@link Profile#getPool()}, or provisions per-fork schemas (see {@link ForkSchemasAllocation})
+ * for profiles using the `{fork}` placeholder in their schema name; no allocation otherwise
+ *
  * @author Steve Ebersole
  */
 public class StandardAllocationProvider implements AllocationProvider {
@@ -19,8 +25,23 @@ public class StandardAllocationProvider implements AllocationProvider {
 
 	@Override
 	public DatabaseAllocation createAllocation(Profile profile, Project project) {
-		// todo : determine how we know which profiles to allocate...
+		if ( profile.getLocalServer().isEnabled() ) {
+			return new LocalServerAllocation(
+					LocalServerSpec.from( profile, project ),
+					DriverResolutions.driverClasspath( profile, project ),
+					DatabaseAllocator.locateRegistry( project )
+			);
+		}
 
-		return NoAllocation.INSTANCE;
+		if ( ! profile.getPool().isEnabled() ) {
+			final DatabaseAllocation forkSchemas = ForkSchemasAllocation.from( profile, project );
+			return forkSchemas == null ? NoAllocation.INSTANCE : forkSchemas;
+		}
+
+		return new PooledAllocation(
+				PoolSpec.from( profile ),
+				DriverResolutions.driverClasspath( profile, project ),
+				DatabaseAllocator.locateRegistry( project )
+		);
 	}
 }
@@ -0,0 +1,83 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class AdaptiveHeapTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testSummarizeGcLogs() throws IOException {
+		final File unified = write(
+				"gc-101.log",
+				"[0.015s] Using G1",
+				"[1.250s] GC(0) Pause Young (Normal) (G1 Evacuation Pause) 300M->40M(512M) 10.000ms",
+				"[4.000s] GC(1) Pause Young (Normal) (G1 Evacuation Pause) 420M->60M(512M) 15.500ms"
+		);
+		final File legacy = write(
+				"gc-102.log",
+				"2.000: [GC (Allocation Failure)  102400K->10240K(262144K), 0.0200 secs]",
+				"6.000: [Full GC (Ergonomics)  204800K->20480K(262144K), 0.1000 secs]"
+		);
+
+		final AdaptiveHeap.Run run = AdaptiveHeap.summarize( Arrays.asList( unified, legacy ) );
+		assertThat( run.getPeakHeapMb(), equalTo( 420L ) );
+		assertThat( run.getHeapMb(), equalTo( 512L ) );
+		assertThat( run.getGcPauseMillis(), equalTo( 146L ) );
+		assertThat( run.getUptimeMillis(), equalTo( 10000L ) );
+	}
+
+	@Test
+	public void testInvalidHeapSize() {
+		assertThat( TestJvmSettings.toMegabytes( " 2g " ), equalTo( 2048L ) );
+
+		try {
+			TestJvmSettings.toMegabytes( " ", "adaptiveMaxHeapSize", "oracle" );
+			fail( "Expecting a ProfileCreationException" );
+		}
+		catch (ProfileCreationException e) {
+			assertThat( e.getMessage(), containsString( "`adaptiveMaxHeapSize` for profile `oracle`" ) );
+		}
+	}
+
+	@Test
+	public void testHistory() throws IOException {
+		final File historyFile = new File( temporaryFolder.newFolder(), AdaptiveHeap.HISTORY_FILE_NAME );
+
+		final AdaptiveHeap.History history = AdaptiveHeap.History.load( historyFile );
+		for ( int i = 1; i <= AdaptiveHeap.HISTORY_SIZE + 2; i++ ) {
+			history.record( new AdaptiveHeap.Run( i * 100, 1024, i, 1000 ) );
+		}
+		history.store( historyFile );
+
+		final AdaptiveHeap.History loaded = AdaptiveHeap.History.load( historyFile );
+		assertThat( loaded.getRuns().size(), equalTo( AdaptiveHeap.HISTORY_SIZE ) );
+		// most recent first
+		assertThat( loaded.getRuns().get( 0 ).getPeakHeapMb(), equalTo( 700L ) );
+	}
+
+	private File write(String name, String... lines) throws IOException {
+		final File file = new File( temporaryFolder.getRoot(), name );
+		Files.write( file.toPath(), Arrays.asList( lines ), StandardCharsets.UTF_8 );
+		return file;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.net.ConnectException;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CircuitBreakerTests {
+	@Test
+	public void testConnectionFailureDetection() {
+		final CircuitBreakerSettings settings = new CircuitBreakerSettings();
+		settings.failurePattern( "ORA-12541" );
+		final CircuitBreaker breaker = new CircuitBreaker( "oracle", ":test_oracle", settings, new File( "tripped" ), null );
+
+		// found in the cause
+		assertThat(
+				breaker.findConnectionFailure(
+						Collections.singletonList(
+								new RuntimeException( "Unable to open JDBC Connection", new ConnectException( "Connection refused" ) )
+						)
+				),
+				containsString( "java.net.ConnectException" )
+		);
+
+		// a custom pattern
+		assertThat(
+				breaker.findConnectionFailure(
+						Collections.singletonList( new SQLException( "ORA-12541: TNS:no listener" ) )
+				),
+				containsString( "ORA-12541" )
+		);
+
+		// a regular test failure
+		assertThat(
+				breaker.findConnectionFailure(
+						Collections.singletonList( new AssertionError( "expected:<1> but was:<2>" ) )
+				),
+				nullValue()
+		);
+	}
+}
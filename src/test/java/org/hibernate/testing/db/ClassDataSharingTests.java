@@ -0,0 +1,74 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ClassDataSharingTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testFingerprint() throws IOException {
+		final File driver = temporaryFolder.newFile( "driver.jar" );
+		final File classes = temporaryFolder.newFolder( "classes" );
+		final List<File> classpath = Arrays.asList( classes, driver );
+
+		final String fingerprint = ClassDataSharing.fingerprint( classpath, null );
+		assertThat( ClassDataSharing.fingerprint( classpath, null ), equalTo( fingerprint ) );
+
+		Files.write( driver.toPath(), new byte[] { 1, 2, 3 } );
+		assertThat( ClassDataSharing.fingerprint( classpath, null ), not( equalTo( fingerprint ) ) );
+	}
+
+	@Test
+	public void testPromoteDumps() throws IOException {
+		final File directory = temporaryFolder.newFolder( ClassDataSharing.DIRECTORY_NAME );
+		final ClassDataSharing classDataSharing = new ClassDataSharing( directory, "test_h2" );
+
+		final File stale = write( new File( directory, "test_h2-0000000000000000.jsa" ), 64 );
+		final File otherTask = write( new File( directory, "test_h2_shard1-0123456789abcdef.jsa" ), 64 );
+		final File small = write( new File( directory, "test_h2-0123456789abcdef.1.dump" ), 64 );
+		final File large = write( new File( directory, "test_h2-0123456789abcdef.2.dump" ), 128 );
+		final File incomplete = new File( directory, "test_h2-0123456789abcdef.3.dump" );
+		Files.write( incomplete.toPath(), new byte[ 256 ] );
+
+		classDataSharing.promoteDumps( "0123456789abcdef" );
+
+		final File archive = classDataSharing.archiveFile( "0123456789abcdef" );
+		assertThat( archive.exists(), equalTo( true ) );
+		assertThat( archive.length(), equalTo( 128L ) );
+		assertThat( stale.exists(), equalTo( false ) );
+		assertThat( small.exists(), equalTo( false ) );
+		assertThat( large.exists(), equalTo( false ) );
+		assertThat( incomplete.exists(), equalTo( false ) );
+		assertThat( otherTask.exists(), equalTo( true ) );
+	}
+
+	private static File write(File file, int size) throws IOException {
+		final byte[] content = new byte[ size ];
+		// the dynamic archive magic, little-endian
+		content[0] = (byte) 0xa8;
+		content[1] = (byte) 0xab;
+		content[2] = (byte) 0x0b;
+		content[3] = (byte) 0xf0;
+		Files.write( file.toPath(), content );
+		return file;
+	}
+}
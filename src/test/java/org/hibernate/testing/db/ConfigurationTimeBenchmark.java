@@ -0,0 +1,97 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Measures the configuration time of a synthetic multi-project build, comparing a build
+ * which only needs the lazily registered profile tasks to exist (`help`) against one
+ * which forces all of them to be realized (`tasks --all`).
+ *
+ * Not part of the normal `test` run - use the `benchmark` task.  The size of the synthetic
+ * build can be controlled with the `db-profile.benchmark.projects` and
+ * `db-profile.benchmark.profiles` system properties.
+ */
+public class ConfigurationTimeBenchmark {
+	private static final String PROJECT_NAME = "benchmark";
+
+	@Test
+	public void compareConfigurationTime() throws IOException {
+		final int projectCount = Integer.getInteger( "db-profile.benchmark.projects", 50 );
+		final int profileCount = Integer.getInteger( "db-profile.benchmark.profiles", 10 );
+
+		generateBuild( TestHelper.projectDirectory( PROJECT_NAME ), projectCount, profileCount );
+
+		// warm up the daemon / plugin classloaders
+		TestHelper.createGradleRunner( PROJECT_NAME, "help" ).build();
+
+		final long lazyStart = System.nanoTime();
+		final BuildResult lazyResult = TestHelper.createGradleRunner( PROJECT_NAME, "help" ).build();
+		final long lazyMillis = ( System.nanoTime() - lazyStart ) / 1_000_000;
+
+		final long realizedStart = System.nanoTime();
+		TestHelper.createGradleRunner( PROJECT_NAME, "tasks", "--all" ).build();
+		final long realizedMillis = ( System.nanoTime() - realizedStart ) / 1_000_000;
+
+		System.out.println( "----------------------------------------------------------" );
+		System.out.printf(
+				"Configuration benchmark : %s projects x %s profiles%n",
+				projectCount,
+				profileCount
+		);
+		System.out.printf( "  > `help` (profile tasks registered only) : %s ms%n", lazyMillis );
+		System.out.printf( "  > `tasks --all` (profile tasks realized) : %s ms%n", realizedMillis );
+		System.out.println( "----------------------------------------------------------" );
+
+		assertThat( lazyResult.getOutput(), not( containsString( "Making copy of" ) ) );
+	}
+
+	private static void generateBuild(File projectDirectory, int projectCount, int profileCount) throws IOException {
+		final StringBuilder settings = new StringBuilder();
+		for ( int i = 0; i < projectCount; i++ ) {
+			settings.append( "include 'sub" ).append( i ).append( "'\n" );
+
+			write(
+					new File( new File( projectDirectory, "sub" + i ), "build.gradle" ),
+					"plugins {\n\tid 'java'\n}\n"
+			);
+		}
+		write( new File( projectDirectory, "settings.gradle" ), settings.toString() );
+
+		final StringBuilder build = new StringBuilder();
+		build.append( "plugins {\n\tid 'org.hibernate.testing.database-profile'\n}\n\n" );
+		build.append( "databases {\n\tprofiles {\n" );
+		for ( int i = 0; i < profileCount; i++ ) {
+			final String name = i == 0 ? "h2" : "h2_" + i;
+			build.append( "\t\t" ).append( name ).append( " {\n" );
+			build.append( "\t\t\turl 'jdbc:h2:mem:" ).append( name ).append( ";DB_CLOSE_DELAY=-1'\n" );
+			build.append( "\t\t\tdependency 'com.h2database:h2:1.4.196'\n" );
+			build.append( "\t\t}\n" );
+		}
+		build.append( "\t}\n}\n" );
+		write( new File( projectDirectory, "build.gradle" ), build.toString() );
+	}
+
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DatabaseResetTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testStrategySelection() {
+		assertThat( DatabaseReset.determineStrategy( "jdbc:h2:./target/db1" ), equalTo( DatabaseReset.SCRIPT ) );
+		assertThat( DatabaseReset.determineStrategy( "jdbc:postgresql://localhost/test" ), equalTo( DatabaseReset.TEMPLATE ) );
+		assertThat( DatabaseReset.determineStrategy( "jdbc:derby:target/db;create=true" ), equalTo( DatabaseReset.FILES ) );
+		assertThat( DatabaseReset.determineStrategy( "jdbc:hsqldb:file:target/db" ), equalTo( DatabaseReset.FILES ) );
+	}
+
+	@Test
+	public void testInMemoryRejected() {
+		for ( String url : new String[] { "jdbc:h2:mem:db1", "jdbc:derby:memory:db1;create=true", "jdbc:hsqldb:mem:db1" } ) {
+			try {
+				DatabaseReset.resolveStrategy( DatabaseReset.AUTO, url );
+				fail( "Expecting in-memory URL to be rejected : " + url );
+			}
+			catch (IllegalArgumentException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void testPostgresqlUrls() {
+		final String url = "jdbc:postgresql://localhost:5432/orm_test_1?ssl=false";
+		assertThat( DatabaseReset.postgresqlDatabase( url ), equalTo( "orm_test_1" ) );
+		assertThat( DatabaseReset.postgresqlUrl( url, "postgres" ), equalTo( "jdbc:postgresql://localhost:5432/postgres?ssl=false" ) );
+		assertThat( DatabaseReset.postgresqlDatabase( "jdbc:postgresql:orm_test" ), equalTo( "orm_test" ) );
+	}
+
+	@Test
+	public void testFilesReset() throws Exception {
+		final File databaseDirectory = temporaryFolder.newFolder( "db" );
+		final File script = new File( databaseDirectory, "test.script" );
+		final File log = new File( databaseDirectory, "test.log" );
+		write( script, "baseline" );
+
+		final String url = "jdbc:hsqldb:file:" + new File( databaseDirectory, "test" ).getAbsolutePath() + ";shutdown=true";
+		final File snapshotDirectory = temporaryFolder.newFolder( "snapshots" );
+
+		// snapshot, as the fork starts
+		DatabaseReset.files( url, snapshotDirectory, false );
+
+		// ... a test class changes the database
+		write( script, "changed" );
+		write( log, "changes" );
+
+		// restored before the next test class
+		DatabaseReset.files( url, snapshotDirectory, true );
+
+		assertThat( new String( Files.readAllBytes( script.toPath() ), StandardCharsets.UTF_8 ), equalTo( "baseline" ) );
+		assertThat( log.exists(), is( false ) );
+	}
+
+	@Test
+	public void testRestoreRequiresSnapshot() throws Exception {
+		final Properties properties = new Properties();
+		properties.setProperty( DatabaseReset.STRATEGY, DatabaseReset.FILES );
+		properties.setProperty( DatabaseReset.DIRECTORY, temporaryFolder.newFolder( "snapshots" ).getAbsolutePath() );
+		properties.setProperty( "hibernate.connection.url", "jdbc:hsqldb:file:target/db" );
+
+		// the snapshot is taken as the fork starts, so a test class never runs without one
+		try {
+			DatabaseReset.beforeTestClass( 1, properties );
+			fail( "Expecting the restore to fail without a snapshot" );
+		}
+		catch (IllegalStateException expected) {
+		}
+
+		// no reset requested
+		DatabaseReset.beforeTestClass( 1, new Properties() );
+		DatabaseReset.beforeTestPlan( 1, new Properties() );
+	}
+
+	private static void write(File file, String content) throws Exception {
+		Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.jar.JarFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ForkSlotAgentTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testApply() {
+		final Properties properties = new Properties();
+		properties.setProperty( Profile.URL, "jdbc:postgresql://localhost/test?currentSchema=orm_{fork}" );
+		properties.setProperty( "hibernate.default_schema", "orm_{fork}" );
+		properties.setProperty( ForkSlotAgent.forkPropertyName( 1, Profile.USERNAME ), "first" );
+		properties.setProperty( ForkSlotAgent.forkPropertyName( 2, Profile.USERNAME ), "second" );
+
+		ForkSlotAgent.apply( 2, properties );
+
+		assertThat( properties.getProperty( ForkSlotAgent.FORK_SLOT ), equalTo( "2" ) );
+		assertThat( properties.getProperty( Profile.URL ), equalTo( "jdbc:postgresql://localhost/test?currentSchema=orm_2" ) );
+		assertThat( properties.getProperty( "hibernate.default_schema" ), equalTo( "orm_2" ) );
+		assertThat( properties.getProperty( Profile.USERNAME ), equalTo( "second" ) );
+	}
+
+	@Test
+	public void testAgentJar() throws IOException {
+		final File agentJar = ForkIsolation.prepareAgentJar( temporaryFolder.getRoot() );
+
+		try ( JarFile jarFile = new JarFile( agentJar ) ) {
+			assertThat(
+					jarFile.getManifest().getMainAttributes().getValue( "Premain-Class" ),
+					equalTo( ForkSlotAgent.class.getName() )
+			);
+			assertThat( jarFile.getEntry( "org/hibernate/testing/db/ForkSlotAgent.class" ), notNullValue() );
+		}
+
+		// re-used as-is
+		assertThat( ForkIsolation.prepareAgentJar( temporaryFolder.getRoot() ), equalTo( agentJar ) );
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ForkTuningTests {
+	@Test
+	public void testCoresAndWorkers() {
+		assertThat( ForkTuning.computeForks( 8, 16, null, 1024, null, 1, null ), is( 8 ) );
+		assertThat( ForkTuning.computeForks( 8, 4, null, 1024, null, 1, null ), is( 4 ) );
+	}
+
+	@Test
+	public void testMemory() {
+		// (8192 - 1024) / (1024 + 256)
+		assertThat( ForkTuning.computeForks( 16, 16, 8192L, 1024, null, 1, null ), is( 5 ) );
+		// never less than one
+		assertThat( ForkTuning.computeForks( 16, 16, 512L, 1024, null, 1, null ), is( 1 ) );
+	}
+
+	@Test
+	public void testMemoryShare() {
+		assertThat( ForkTuning.memoryShare( 9216L, 1 ), is( 9216L ) );
+		// 1024 + (9216 - 1024) / 2
+		assertThat( ForkTuning.memoryShare( 9216L, 2 ), is( 5120L ) );
+		assertThat( ForkTuning.memoryShare( null, 2 ), nullValue() );
+		// two suites at once, each limited to (5120 - 1024) / (1024 + 256) forks
+		assertThat( ForkTuning.computeForks( 16, 16, ForkTuning.memoryShare( 9216L, 2 ), 1024, null, 1, null ), is( 3 ) );
+	}
+
+	@Test
+	public void testConnectionBudget() {
+		assertThat( ForkTuning.computeForks( 16, 16, null, 1024, 20, 5, null ), is( 4 ) );
+		assertThat( ForkTuning.computeForks( 16, 16, null, 1024, 3, 5, null ), is( 1 ) );
+	}
+
+	@Test
+	public void testMaxParallelForksIsUpperBound() {
+		assertThat( ForkTuning.computeForks( 16, 16, 65536L, 1024, 100, 1, 6 ), is( 6 ) );
+		assertThat( ForkTuning.computeForks( 2, 16, 65536L, 1024, 100, 1, 6 ), is( 2 ) );
+	}
+
+	@Test
+	public void testAvailableMemory() {
+		final Long availableMemory = ForkTuning.determineAvailableMemory();
+		assertThat( availableMemory == null || availableMemory > 0, is( true ) );
+	}
+}
@@ -13,6 +13,11 @@ import org.gradle.testkit.runner.GradleRunner;
 
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
 /**
  * @author Steve Ebersole
  */
@@ -89,6 +94,27 @@ public class MultiProjectTests {
 		);
 	}
 
+	@Test
+	public void testConfigureOnDemand() {
+		final BuildResult buildResult = createRootGradleRunner( ":sub:test_derby", "--configure-on-demand" ).build();
+		System.out.println( buildResult.getOutput() );
+
+		assertThat( buildResult.task( ":sub:test_derby" ), notNullValue() );
+		assertThat( buildResult.getOutput(), not( containsString( ":sub2:" ) ) );
+	}
+
+	@Test
+	public void testProfilesSharedBetweenProjects() {
+		// `:a` and `:b` each apply the plugin and search the same directory
+		final BuildResult buildResult = TestHelper.createGradleRunner( "catalog", "showProfileSharing" ).build();
+		System.out.println( buildResult.getOutput() );
+
+		assertThat( buildResult.getOutput(), containsString( ":a : custom shared=true definedBy=:a" ) );
+		assertThat( buildResult.getOutput(), containsString( ":b : custom shared=true definedBy=:a" ) );
+		assertThat( buildResult.getOutput(), containsString( ":b : declarative shared=true definedBy=:a" ) );
+		assertThat( buildResult.getOutput(), containsString( ":b : own configurations=[]" ) );
+	}
+
 	@Test
 	public void testAllProfiles() {
 		withAllProjects(
@@ -0,0 +1,60 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for parsing {@link ProfileDescriptor} files
+ */
+public class ProfileDescriptorTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testDependencyOrder() throws IOException {
+		final ProfileDescriptor descriptor = ProfileDescriptor.parse(
+				write(
+						"postgresql.dbprofile",
+						"url = jdbc:postgresql:db\n"
+								+ "dependency.10 = g:ten:1\n"
+								+ "dependency.2 = g:two:1\n"
+								+ "dependency.1 = g:one:1\n"
+								+ "dependency = g:listed-a:1, g:listed-b:1\n"
+				)
+		);
+
+		assertThat( descriptor.getName(), equalTo( "postgresql" ) );
+		assertThat( descriptor.getHibernateProperties().get( Profile.URL ), equalTo( "jdbc:postgresql:db" ) );
+		assertThat(
+				descriptor.getDependencies(),
+				equalTo( Arrays.asList( "g:listed-a:1", "g:listed-b:1", "g:one:1", "g:two:1", "g:ten:1" ) )
+		);
+	}
+
+	@Test( expected = ProfileCreationException.class )
+	public void testUnnumberedDependency() throws IOException {
+		ProfileDescriptor.parse( write( "h2.dbprofile", "dependency.driver = com.h2database:h2:1.4.196\n" ) );
+	}
+
+	private File write(String fileName, String content) throws IOException {
+		final File file = new File( temporaryFolder.getRoot(), fileName );
+		Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+		return file;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for discovering profile sources through the {@link ProfileDiscoveryIndex}
+ */
+public class ProfileDiscoveryIndexTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testDiscovery() throws IOException {
+		final File searchDirectory = temporaryFolder.newFolder( "databases" );
+		write( new File( searchDirectory, "h2/profile.gradle" ), "h2 {}" );
+		write( new File( searchDirectory, "local/derby/hibernate.properties" ), "hibernate.connection.url=jdbc:derby:db" );
+		write( new File( searchDirectory, "local/derby/nested/ignored.gradle" ), "ignored {}" );
+		write( new File( searchDirectory, "local/derby/profile.dbprofile" ), "dependency=org.apache.derby:derby:10.11.1.1" );
+		write( new File( searchDirectory, "postgresql.dbprofile" ), "url=jdbc:postgresql:db" );
+
+		final Discovered discovered = new Discovered();
+		new ProfileDiscoveryIndex().discover( searchDirectory, discovered );
+
+		assertThat( discovered.fragments.size(), equalTo( 1 ) );
+		assertThat( discovered.fragments, hasItems( "profile.gradle" ) );
+		assertThat( discovered.descriptors, hasItems( "postgresql.dbprofile", "profile.dbprofile" ) );
+		assertThat( discovered.directoryProfiles.size(), equalTo( 1 ) );
+		assertThat(
+				discovered.directoryProfiles.get( "derby" ).get( "hibernate.connection.url" ),
+				equalTo( "jdbc:derby:db" )
+		);
+	}
+
+	@Test
+	public void testStoredIndex() throws IOException {
+		final File searchDirectory = temporaryFolder.newFolder( "databases" );
+		final File propertiesFile = new File( searchDirectory, "derby/hibernate.properties" );
+		write( new File( searchDirectory, "h2/profile.gradle" ), "h2 {}" );
+		write( propertiesFile, "hibernate.connection.url=jdbc:derby:db" );
+		// time-stamps within the file system's granularity of the scan are not trusted
+		backdate( searchDirectory );
+
+		final File indexFile = new File( temporaryFolder.getRoot(), "discovery.index" );
+		final ProfileDiscoveryIndex index = new ProfileDiscoveryIndex();
+		index.discover( searchDirectory, new Discovered() );
+		index.storeIfChanged( indexFile );
+		assertThat( index.getRescans(), equalTo( 1 ) );
+
+		final ProfileDiscoveryIndex loaded = ProfileDiscoveryIndex.load( indexFile );
+		final Discovered fromIndex = new Discovered();
+		loaded.discover( searchDirectory, fromIndex );
+		assertThat( loaded.getRescans(), equalTo( 0 ) );
+		assertThat( fromIndex.fragments, hasItems( "profile.gradle" ) );
+		assertThat(
+				fromIndex.directoryProfiles.get( "derby" ).get( "hibernate.connection.url" ),
+				equalTo( "jdbc:derby:db" )
+		);
+
+		// changing the properties file is picked up without needing the directory to change
+		write( propertiesFile, "hibernate.connection.url=jdbc:derby:other_db" );
+
+		final ProfileDiscoveryIndex afterChangeIndex = ProfileDiscoveryIndex.load( indexFile );
+		final Discovered afterChange = new Discovered();
+		afterChangeIndex.discover( searchDirectory, afterChange );
+		assertThat( afterChangeIndex.getRescans(), equalTo( 0 ) );
+		assertThat(
+				afterChange.directoryProfiles.get( "derby" ).get( "hibernate.connection.url" ),
+				equalTo( "jdbc:derby:other_db" )
+		);
+
+		// a new fragment re-scans just the changed sub-tree
+		write( new File( searchDirectory, "h2/other.gradle" ), "other {}" );
+
+		final ProfileDiscoveryIndex afterAdditionIndex = ProfileDiscoveryIndex.load( indexFile );
+		final Discovered afterAddition = new Discovered();
+		afterAdditionIndex.discover( searchDirectory, afterAddition );
+		assertThat( afterAdditionIndex.getRescans(), equalTo( 1 ) );
+		assertThat( afterAddition.fragments, hasItems( "other.gradle", "profile.gradle" ) );
+		assertThat(
+				afterAddition.directoryProfiles.get( "derby" ).get( "hibernate.connection.url" ),
+				equalTo( "jdbc:derby:other_db" )
+		);
+	}
+
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private static void backdate(File directory) throws IOException {
+		final long timestamp = System.currentTimeMillis() - 60_000;
+		try ( Stream<Path> paths = Files.walk( directory.toPath() ) ) {
+			paths.forEach( path -> path.toFile().setLastModified( timestamp ) );
+		}
+	}
+
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Files.write( file.toPath(), content.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	private static class Discovered implements ProfileDiscoveryIndex.DiscoveryConsumer {
+		private final List<String> fragments = new ArrayList<>();
+		private final List<String> descriptors = new ArrayList<>();
+		private final Map<String, Map<String, String>> directoryProfiles = new LinkedHashMap<>();
+
+		@Override
+		public void fragment(File fragmentFile) {
+			fragments.add( fragmentFile.getName() );
+		}
+
+		@Override
+		public void descriptor(File descriptorFile) {
+			descriptors.add( descriptorFile.getName() );
+		}
+
+		@Override
+		public void directoryProfile(File directory, Map<String, String> properties) {
+			directoryProfiles.put( directory.getName(), properties );
+		}
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ProfileInputsTests {
+	@Test
+	public void testNormalization() {
+		final Map<String, String> properties = new HashMap<>();
+		properties.put( Profile.URL, "jdbc:h2:file:/ci/agent-1/orm/build/h2/db;MODE=LEGACY" );
+		properties.put( Profile.PASSWORD, "sa" );
+		properties.put( "hibernate.dialect", "org.hibernate.dialect.H2Dialect" );
+
+		final Map<String, String> agent1 = ProfileInputs.normalize( properties, new File( "/ci/agent-1/orm" ) );
+		assertThat( agent1.get( Profile.URL ), equalTo( "jdbc:h2:file:${rootDir}/build/h2/db;MODE=LEGACY" ) );
+		assertThat( agent1.get( "hibernate.dialect" ), equalTo( "org.hibernate.dialect.H2Dialect" ) );
+		assertThat( agent1.get( Profile.PASSWORD ), not( equalTo( "sa" ) ) );
+
+		properties.put( Profile.URL, "jdbc:h2:file:/ci/agent-2/orm/build/h2/db;MODE=LEGACY" );
+		final Map<String, String> agent2 = ProfileInputs.normalize( properties, new File( "/ci/agent-2/orm" ) );
+		assertThat( agent2, equalTo( agent1 ) );
+
+		// only the dialect can be written to the generated `hibernate.properties`
+		assertThat( ProfileInputs.isPortable( "hibernate.dialect", agent2.get( "hibernate.dialect" ) ), is( true ) );
+		assertThat( ProfileInputs.isPortable( Profile.URL, agent2.get( Profile.URL ) ), is( false ) );
+		assertThat( ProfileInputs.isPortable( Profile.PASSWORD, agent2.get( Profile.PASSWORD ) ), is( false ) );
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class RamStorageTests {
+	private static final File DATABASE_DIRECTORY = new File( "/dev/shm/dbProfile-0123456789ab/derby/test_derby/db" );
+
+	@Test
+	public void testRelocateFileBasedUrls() {
+		assertThat(
+				RamStorage.relocateUrl(
+						"jdbc:derby:target/tmp/derby/hibernate_orm_test;databaseName=hibernate_orm_test;create=true",
+						DATABASE_DIRECTORY
+				),
+				equalTo( "jdbc:derby:/dev/shm/dbProfile-0123456789ab/derby/test_derby/db/target/tmp/derby/hibernate_orm_test;databaseName=hibernate_orm_test;create=true" )
+		);
+		assertThat(
+				RamStorage.relocateUrl( "jdbc:h2:file:./build/h2/db_{fork};MODE=LEGACY", DATABASE_DIRECTORY ),
+				equalTo( "jdbc:h2:file:/dev/shm/dbProfile-0123456789ab/derby/test_derby/db/build/h2/db_{fork};MODE=LEGACY" )
+		);
+		assertThat(
+				RamStorage.relocateUrl( "jdbc:h2:~/orm", DATABASE_DIRECTORY ),
+				equalTo( "jdbc:h2:/dev/shm/dbProfile-0123456789ab/derby/test_derby/db/orm" )
+		);
+		assertThat(
+				RamStorage.relocateUrl( "jdbc:hsqldb:file:/ci/agent-1/orm/build/hsqldb/test", DATABASE_DIRECTORY ),
+				equalTo( "jdbc:hsqldb:file:/dev/shm/dbProfile-0123456789ab/derby/test_derby/db/ci/agent-1/orm/build/hsqldb/test" )
+		);
+	}
+
+	@Test
+	public void testOtherUrlsAreLeftAlone() {
+		assertThat( RamStorage.relocateUrl( "jdbc:h2:mem:db1;DB_CLOSE_DELAY=-1", DATABASE_DIRECTORY ), nullValue() );
+		assertThat( RamStorage.relocateUrl( "jdbc:h2:tcp://localhost/~/test", DATABASE_DIRECTORY ), nullValue() );
+		assertThat( RamStorage.relocateUrl( "jdbc:derby://localhost:1527/test", DATABASE_DIRECTORY ), nullValue() );
+		assertThat( RamStorage.relocateUrl( "jdbc:derby:memory:test;create=true", DATABASE_DIRECTORY ), nullValue() );
+		assertThat( RamStorage.relocateUrl( "jdbc:hsqldb:mem:test", DATABASE_DIRECTORY ), nullValue() );
+		assertThat( RamStorage.relocateUrl( "jdbc:postgresql://localhost/hibernate_orm_test", DATABASE_DIRECTORY ), nullValue() );
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ResultMatrixTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testOutcomeMatrix() throws IOException {
+		final ResultMatrix matrix = new ResultMatrix( Arrays.asList( "h2", "postgresql", "oracle" ) );
+
+		matrix.addResults( "h2", results( "h2", "<testcase classname=\"a.ATest\" name=\"one\" time=\"0.1\"/>"
+				+ "<testcase classname=\"a.ATest\" name=\"two\" time=\"0.1\"><system-out><![CDATA[noise]]></system-out></testcase>"
+				+ "<testcase classname=\"a.ATest\" name=\"three\" time=\"0.1\"><skipped/></testcase>" ) );
+		matrix.addResults( "postgresql", results( "postgresql", "<testcase classname=\"a.ATest\" name=\"one\" time=\"0.1\"/>"
+				+ "<testcase classname=\"a.ATest\" name=\"two\" time=\"0.1\">"
+				+ "<failure message=\"expected:&lt;1&gt; but was:&lt;2&gt;\" type=\"java.lang.AssertionError\">trace</failure></testcase>" ) );
+		matrix.addResults( "oracle", results( "oracle", "<testcase classname=\"a.ATest\" name=\"one\" time=\"0.1\"/>"
+				+ "<testcase classname=\"a.ATest\" name=\"two\" time=\"0.1\"><error type=\"java.sql.SQLException\"/></testcase>" ) );
+
+		assertThat( matrix.getOutcomes().size(), is( 3 ) );
+		assertThat( matrix.outcomes( "a.ATest.one" ), equalTo( "PPP" ) );
+		assertThat( matrix.outcomes( "a.ATest.two" ), equalTo( "PFF" ) );
+		assertThat( matrix.outcomes( "a.ATest.three" ), equalTo( "S--" ) );
+
+		assertThat( matrix.isProfileSpecificFailure( "a.ATest.two" ), is( true ) );
+		assertThat( matrix.isProfileSpecificFailure( "a.ATest.one" ), is( false ) );
+		assertThat( matrix.getFailureMessage( "a.ATest.two", 1 ), equalTo( "java.lang.AssertionError: expected:<1> but was:<2>" ) );
+		assertThat( matrix.getFailureMessage( "a.ATest.two", 2 ), equalTo( "java.sql.SQLException" ) );
+
+		assertThat( matrix.count( 0, ResultMatrix.PASSED ), is( 2 ) );
+		assertThat( matrix.count( 2, ResultMatrix.FAILED ), is( 1 ) );
+	}
+
+	private File results(String profileName, String testCases) throws IOException {
+		final File directory = temporaryFolder.newFolder( profileName );
+		Files.write(
+				new File( directory, "TEST-a.ATest.xml" ).toPath(),
+				( "<?xml version=\"1.0\" encoding=\"UTF-8\"?><testsuite name=\"a.ATest\" tests=\"3\">"
+						+ testCases + "<system-out/></testsuite>" ).getBytes( StandardCharsets.UTF_8 )
+		);
+		return directory;
+	}
+}
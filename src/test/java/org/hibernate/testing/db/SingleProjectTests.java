@@ -18,6 +18,7 @@ import org.gradle.testkit.runner.TaskOutcome;
 import org.junit.Test;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -140,6 +141,16 @@ public class SingleProjectTests {
 		validateTaskResult( buildResult.task( ":test_custom" ) );
 	}
 
+	@Test
+	public void testDescriptorProfileTaskUsage() {
+		final GradleRunner gradleRunner = createGradleRunner( "test_declarative" );
+
+		final BuildResult buildResult = gradleRunner.build();
+		TestHelper.logRunnerOutput( buildResult );
+
+		validateTaskResult( buildResult.task( ":test_declarative" ) );
+	}
+
 	@Test
 	public void testAllProfiles() {
 		final GradleRunner gradleRunner = createGradleRunner( "testAllDbProfiles" );
@@ -151,6 +162,26 @@ public class SingleProjectTests {
 
 	}
 
+	@Test
+	public void testExportPlan() {
+		// remove the plan of an earlier run, which would make the task up-to-date
+		final GradleRunner gradleRunner = createGradleRunner( "cleanExportDbProfilePlan", "exportDbProfilePlan" );
+
+		final BuildResult buildResult = gradleRunner.build();
+		TestHelper.logRunnerOutput( buildResult );
+
+		validateTaskResult( buildResult.task( ":exportDbProfilePlan" ) );
+
+		// the plan is produced without configuring any of the profile Test tasks
+		assertThat( buildResult.getOutput(), not( containsString( "Making copy of" ) ) );
+		assertThat( buildResult.getOutput(), containsString( "Exported plan for" ) );
+
+		// the classpath, timings and settings are inputs - nothing changed, so nothing is hashed again
+		final BuildResult secondResult = createGradleRunner( "exportDbProfilePlan" ).build();
+		TestHelper.logRunnerOutput( secondResult );
+		assertThat( secondResult.task( ":exportDbProfilePlan" ).getOutcome(), is( TaskOutcome.UP_TO_DATE ) );
+	}
+
 	@Test
 	public void testAugmentProperties() {
 		final GradleRunner gradleRunner = createGradleRunner( "augmentTestProperties", "-Pdb_profile_name=derby" );
@@ -161,6 +192,37 @@ public class SingleProjectTests {
 		validateTaskResult( buildResult.task( ":augmentTestProperties" ) );
 	}
 
+	@Test
+	public void testConfigurationCache() {
+		final BuildResult propertiesResult = createGradleRunner(
+				"augmentTestProperties",
+				"-Pdb_profile_name=derby",
+				"--configuration-cache"
+		).build();
+		TestHelper.logRunnerOutput( propertiesResult );
+		validateTaskResult( propertiesResult.task( ":augmentTestProperties" ) );
+
+		// the profile Test tasks hold most of the serialized state - listeners, task actions, build services
+		final BuildResult firstResult = createGradleRunner( "test_derby", "--configuration-cache" ).build();
+		TestHelper.logRunnerOutput( firstResult );
+		validateTaskResult( firstResult.task( ":test_derby" ) );
+
+		final BuildResult secondResult = createGradleRunner( "test_derby", "--configuration-cache" ).build();
+		TestHelper.logRunnerOutput( secondResult );
+		validateTaskResult( secondResult.task( ":test_derby" ) );
+
+		assertThat( secondResult.getOutput(), containsString( "Reusing configuration cache" ) );
+	}
+
+	@Test
+	public void testConcurrentSuitesWithoutConfigurationCache() {
+		// only warns - e.g. `db_profile_concurrent` set in `gradle.properties` must not break other tasks
+		final BuildResult buildResult = createGradleRunner( "compileJava", "-Pdb_profile_concurrent=true" ).build();
+		TestHelper.logRunnerOutput( buildResult );
+
+		assertThat( buildResult.getOutput(), containsString( "Concurrent profile suites were requested" ) );
+	}
+
 	@Test
 	public void testInvalidProjectProperty() {
 		final GradleRunner gradleRunner = createGradleRunner( "test", "-Pdb_profile_name=mongodb" );
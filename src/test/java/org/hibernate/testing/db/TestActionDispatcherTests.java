@@ -0,0 +1,112 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.gradle.api.tasks.testing.TestDescriptor;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+public class TestActionDispatcherTests {
+	@Test
+	public void testBackgroundActionsInOrder() {
+		final Thread testThread = Thread.currentThread();
+		final List<String> background = Collections.synchronizedList( new ArrayList<>() );
+		final List<String> synchronous = new ArrayList<>();
+
+		final AbstractActionContainer container = new AbstractActionContainer() {};
+		container.beforeEachTest(
+				descriptor -> {
+					if ( Thread.currentThread() != testThread ) {
+						background.add( descriptor.getName() );
+					}
+				}
+		);
+		container.beforeEachTest(
+				Collections.singletonMap( AbstractActionContainer.SYNCHRONOUS, true ),
+				(Consumer<TestDescriptor>) descriptor -> {
+					if ( Thread.currentThread() == testThread ) {
+						synchronous.add( descriptor.getName() );
+					}
+				}
+		);
+
+		final TestActionDispatcher dispatcher = new TestActionDispatcher(
+				"h2",
+				container.getBeforeEachTestActions(),
+				Collections.emptyList()
+		);
+
+		final TestDescriptor root = descriptor( "root", null );
+		final List<String> expected = new ArrayList<>();
+		for ( int i = 0; i < 3 * TestActionDispatcher.QUEUE_CAPACITY; i++ ) {
+			expected.add( "test" + i );
+			dispatcher.beforeTest( descriptor( "test" + i, root ) );
+		}
+		dispatcher.afterSuite( root, null );
+
+		assertThat( synchronous, equalTo( expected ) );
+		assertThat( background, equalTo( expected ) );
+	}
+
+	@Test
+	public void testBackgroundFailure() {
+		final AbstractActionContainer container = new AbstractActionContainer() {};
+		container.beforeEachTest(
+				descriptor -> {
+					throw new IllegalStateException( "audit table unavailable" );
+				}
+		);
+
+		final TestActionDispatcher dispatcher = new TestActionDispatcher(
+				"h2",
+				container.getBeforeEachTestActions(),
+				Collections.emptyList()
+		);
+
+		final TestDescriptor root = descriptor( "root", null );
+		dispatcher.beforeTest( descriptor( "test", root ) );
+		try {
+			dispatcher.afterSuite( root, null );
+			fail( "Expecting the background failure to be reported" );
+		}
+		catch (BuildExecutionException expected) {
+			assertThat( expected.getCause().getMessage(), is( "audit table unavailable" ) );
+		}
+	}
+
+	private static TestDescriptor descriptor(String name, TestDescriptor parent) {
+		return (TestDescriptor) Proxy.newProxyInstance(
+				TestActionDispatcherTests.class.getClassLoader(),
+				new Class[] { TestDescriptor.class },
+				(proxy, method, args) -> {
+					switch ( method.getName() ) {
+						case "getName":
+						case "toString": {
+							return name;
+						}
+						case "getParent": {
+							return parent;
+						}
+						default: {
+							return null;
+						}
+					}
+				}
+		);
+	}
+}
@@ -0,0 +1,45 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestClassOrderingTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testWriteDurations() throws Exception {
+		final Map<String, Double> expectedDurations = new HashMap<>();
+		expectedDurations.put( "a.HeavyTest", 1500.5d );
+		expectedDurations.put( "a.TinyTest", 10d );
+
+		final File durationsFile = new File( temporaryFolder.getRoot(), "order/test_h2.properties" );
+		TestClassOrdering.writeDurations( expectedDurations, durationsFile );
+
+		// read back as the DurationClassOrderer does, inside the fork
+		final Properties durations = new Properties();
+		try ( InputStream stream = Files.newInputStream( durationsFile.toPath() ) ) {
+			durations.load( stream );
+		}
+		assertThat( Double.parseDouble( durations.getProperty( "a.HeavyTest" ) ), equalTo( 1500.5d ) );
+		assertThat( Double.parseDouble( durations.getProperty( "a.TinyTest" ) ), equalTo( 10d ) );
+		assertThat( durations.size(), equalTo( 2 ) );
+	}
+}
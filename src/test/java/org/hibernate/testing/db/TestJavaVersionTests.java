@@ -0,0 +1,41 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+
+import org.gradle.api.JavaVersion;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Tests for determining the version of the JVM forked by a Test task
+ */
+public class TestJavaVersionTests {
+	@Test
+	public void testVersionOutput() {
+		assertThat(
+				TestJavaVersion.parseVersionOutput( "openjdk version \"1.8.0_252\"\nOpenJDK Runtime Environment (build 1.8.0_252-b09)" ),
+				equalTo( JavaVersion.VERSION_1_8 )
+		);
+		assertThat(
+				TestJavaVersion.parseVersionOutput( "java version \"11.0.8\" 2020-07-14 LTS" ),
+				equalTo( JavaVersion.VERSION_11 )
+		);
+		assertThat( TestJavaVersion.parseVersionOutput( "Error: could not find libjava.so" ), nullValue() );
+	}
+
+	@Test
+	public void testCurrentExecutable() {
+		final File executable = new File( new File( System.getProperty( "java.home" ), "bin" ), "java" );
+		assertThat( TestJavaVersion.determine( executable.getAbsolutePath() ), equalTo( JavaVersion.current() ) );
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestShardsTests {
+	@Test
+	public void testLongestFirstPartition() {
+		final Map<String, Double> expectedDurations = new HashMap<>();
+		expectedDurations.put( "a.HeavyTest", 100d );
+		expectedDurations.put( "a.MediumTest", 60d );
+		expectedDurations.put( "a.LightTest", 50d );
+		expectedDurations.put( "a.TinyTest", 10d );
+
+		final List<List<String>> partition = TestShards.partition(
+				Arrays.asList( "a.TinyTest", "a.LightTest", "a.NewTest", "a.MediumTest", "a.HeavyTest", "a.OtherNewTest" ),
+				expectedDurations,
+				2
+		);
+
+		assertThat( partition.get( 0 ), equalTo( Arrays.asList( "a.HeavyTest", "a.TinyTest", "a.NewTest" ) ) );
+		assertThat( partition.get( 1 ), equalTo( Arrays.asList( "a.MediumTest", "a.LightTest", "a.OtherNewTest" ) ) );
+	}
+
+	@Test
+	public void testExpectedDurations() {
+		final TestTimings timings = new TestTimings( "h2" );
+		final TestTimings.Histogram histogram = new TestTimings.Histogram();
+		histogram.record( 1000 );
+		histogram.record( 3000 );
+		timings.getClassHistograms().put( "a.HeavyTest", histogram );
+
+		assertThat( TestShards.expectedDurations( timings ).get( "a.HeavyTest" ), equalTo( 2000d ) );
+	}
+}
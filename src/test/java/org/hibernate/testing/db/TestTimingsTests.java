@@ -0,0 +1,93 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TestTimingsTests {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testHistogram() {
+		assertThat( TestTimings.Histogram.bucket( 0 ), equalTo( 0 ) );
+		assertThat( TestTimings.Histogram.bucket( 1 ), equalTo( 1 ) );
+		assertThat( TestTimings.Histogram.bucket( 3 ), equalTo( 2 ) );
+		assertThat( TestTimings.Histogram.bucket( 1024 ), equalTo( 11 ) );
+
+		final TestTimings.Histogram histogram = new TestTimings.Histogram();
+		histogram.record( 2 );
+		histogram.record( 3 );
+		histogram.record( 700 );
+
+		assertThat( histogram.getCount(), equalTo( 3L ) );
+		assertThat( histogram.getMinMillis(), equalTo( 2L ) );
+		assertThat( histogram.getMaxMillis(), equalTo( 700L ) );
+		assertThat( histogram.getMeanMillis(), equalTo( 235d ) );
+		assertThat( histogram.getBuckets(), equalTo( new long[] { 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 1 } ) );
+	}
+
+	@Test
+	public void testWriteRead() throws Exception {
+		final File file = new File( temporaryFolder.newFolder( TestTimings.DIRECTORY_NAME ), "test_h2.json" );
+		final TestTimings timings = timings( "h2", "org.hibernate.FooTest#testFoo", 10, 30 );
+		timings.write( file );
+
+		final TestTimings read = TestTimings.readAll( file.getParentFile(), "h2" );
+		final TestTimings.Histogram histogram = read.getHistograms().get( "org.hibernate.FooTest#testFoo" );
+		assertThat( histogram.getCount(), equalTo( 2L ) );
+		assertThat( histogram.getMeanMillis(), equalTo( 20d ) );
+		assertThat( histogram.getBuckets(), equalTo( new long[] { 0, 0, 0, 0, 1, 1 } ) );
+	}
+
+	@Test
+	public void testMergeKeepsTestsNotRun() {
+		final TestTimings previous = timings( "h2", "FooTest#run", 10 );
+		previous.getHistograms().putAll( timings( "h2", "FooTest#notRun", 20 ).getHistograms() );
+
+		// e.g. `--tests FooTest.run`
+		final TestTimings merged = TestTimingsListener.merge( timings( "h2", "FooTest#run", 30 ), previous );
+
+		assertThat( merged.getHistograms().get( "FooTest#run" ).getCount(), equalTo( 2L ) );
+		assertThat( merged.getHistograms().get( "FooTest#notRun" ).getCount(), equalTo( 1L ) );
+		assertThat( merged.getHistograms().get( "FooTest#notRun" ).getMeanMillis(), equalTo( 20d ) );
+	}
+
+	@Test
+	public void testComparison() {
+		final TestTimings baseline = timings( "h2", "FooTest#fast", 10 );
+		baseline.getHistograms().putAll( timings( "h2", "FooTest#slow", 10 ).getHistograms() );
+		baseline.getHistograms().putAll( timings( "h2", "FooTest#baselineOnly", 10 ).getHistograms() );
+
+		final TestTimings oracle = timings( "oracle", "FooTest#fast", 20 );
+		oracle.getHistograms().putAll( timings( "oracle", "FooTest#slow", 400 ).getHistograms() );
+
+		final List<CompareProfileTimingsTask.Slowdown> slowdowns = CompareProfileTimingsTask.compare( baseline, oracle );
+		assertThat( slowdowns.size(), equalTo( 2 ) );
+		assertThat( slowdowns.get( 0 ).test, equalTo( "FooTest#slow" ) );
+		assertThat( slowdowns.get( 0 ).ratio, equalTo( 40d ) );
+		assertThat( slowdowns.get( 1 ).ratio, equalTo( 2d ) );
+	}
+
+	private static TestTimings timings(String profileName, String test, long... durations) {
+		final TestTimings.Histogram histogram = new TestTimings.Histogram();
+		for ( long duration : durations ) {
+			histogram.record( duration );
+		}
+		final TestTimings timings = new TestTimings( profileName );
+		timings.getHistograms().put( test, histogram );
+		return timings;
+	}
+}
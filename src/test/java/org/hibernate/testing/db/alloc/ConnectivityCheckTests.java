@@ -0,0 +1,44 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ConnectivityCheckTests {
+	@Test
+	public void testEmbeddedUrls() {
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:derby:target/tmp/derby/hibernate_orm_test;create=true" ), is( true ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:h2:mem:db1;DB_CLOSE_DELAY=-1" ), is( true ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:hsqldb:mem:test" ), is( true ) );
+
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:derby://localhost:1527/hibernate_orm_test" ), is( false ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:h2:tcp://localhost/~/test" ), is( false ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:hsqldb:hsql://localhost/test" ), is( false ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:postgresql://localhost/hibernate_orm_test" ), is( false ) );
+		assertThat( ConnectivityCheckTask.Target.isEmbedded( "jdbc:oracle:thin:@localhost:1521/xe" ), is( false ) );
+	}
+
+	@Test
+	public void testLoginTimeoutProperties() {
+		final Properties postgresql = JdbcConnector.loginTimeoutProperties( "jdbc:postgresql://localhost/test", 5 );
+		assertThat( postgresql.getProperty( "loginTimeout" ), equalTo( "5" ) );
+
+		final Properties mysql = JdbcConnector.loginTimeoutProperties( "jdbc:mysql://localhost/test", 5 );
+		assertThat( mysql.getProperty( "connectTimeout" ), equalTo( "5000" ) );
+
+		final Properties oracle = JdbcConnector.loginTimeoutProperties( "jdbc:oracle:thin:@localhost:1521/xe", 5 );
+		assertThat( oracle.getProperty( "oracle.net.CONNECT_TIMEOUT" ), equalTo( "5000" ) );
+
+		assertThat( JdbcConnector.loginTimeoutProperties( "jdbc:h2:tcp://localhost/~/test", 5 ).isEmpty(), is( true ) );
+	}
+}
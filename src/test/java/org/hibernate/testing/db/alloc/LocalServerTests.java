@@ -0,0 +1,51 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LocalServerTests {
+	@Test
+	public void testKindSelection() {
+		assertThat( LocalServer.Kind.fromName( "postgresql" ), is( LocalServer.Kind.POSTGRESQL ) );
+		assertThat( LocalServer.Kind.fromName( "MariaDB" ), is( LocalServer.Kind.MARIADB ) );
+		assertThat( LocalServer.Kind.fromName( "oracle" ), nullValue() );
+	}
+
+	@Test
+	public void testServerUrl() {
+		assertThat(
+				LocalServerSpec.databaseName( "jdbc:postgresql://localhost/hibernate_orm_test?preparedStatementCacheQueries=0" ),
+				equalTo( "hibernate_orm_test" )
+		);
+		assertThat(
+				LocalServerSpec.serverUrl(
+						"jdbc:postgresql://localhost/hibernate_orm_test?preparedStatementCacheQueries=0",
+						LocalServer.Kind.POSTGRESQL,
+						"hibernate_orm_test",
+						54321
+				),
+				equalTo( "jdbc:postgresql://127.0.0.1:54321/hibernate_orm_test?preparedStatementCacheQueries=0" )
+		);
+
+		assertThat( LocalServerSpec.databaseName( "jdbc:mysql://db.example.com:3306" ), equalTo( LocalServerSpec.DEFAULT_DATABASE_NAME ) );
+		assertThat(
+				LocalServerSpec.serverUrl( "jdbc:mysql://db.example.com:3306", LocalServer.Kind.MYSQL, "hibernate_orm_test", 33060 ),
+				equalTo( "jdbc:mysql://127.0.0.1:33060/hibernate_orm_test" )
+		);
+
+		assertThat(
+				LocalServerSpec.serverUrl( null, LocalServer.Kind.MARIADB, "hibernate_orm_test", 3307 ),
+				equalTo( "jdbc:mariadb://127.0.0.1:3307/hibernate_orm_test" )
+		);
+	}
+}
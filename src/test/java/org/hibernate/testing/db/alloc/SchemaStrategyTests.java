@@ -0,0 +1,138 @@
+/*
+ * Hibernate, Relational Persistence for Idiomatic Java
+ *
+ * License: GNU Lesser General Public License (LGPL), version 2.1 or later
+ * See the lgpl.txt file in the root directory or http://www.gnu.org/licenses/lgpl-2.1.html
+ */
+package org.hibernate.testing.db.alloc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.hibernate.testing.db.Profile;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SchemaStrategyTests {
+	@Test
+	public void testStrategySelection() {
+		assertThat( SchemaStrategy.forDatabaseKind( "postgresql" ), is( SchemaStrategy.POSTGRESQL ) );
+		assertThat( SchemaStrategy.forDatabaseKind( "mariadb" ), is( SchemaStrategy.MYSQL ) );
+		assertThat( SchemaStrategy.forDatabaseKind( "derby" ), is( SchemaStrategy.DERBY ) );
+		assertThat( SchemaStrategy.forDatabaseKind( "sqlserver" ), is( SchemaStrategy.SQLSERVER ) );
+		assertThat( SchemaStrategy.forDatabaseKind( "db2" ), is( SchemaStrategy.SCHEMA ) );
+	}
+
+	@Test
+	public void testConnectionProperties() {
+		final Map<String, String> postgresql = SchemaStrategy.POSTGRESQL.connectionProperties(
+				Collections.singletonMap( Profile.URL, "jdbc:postgresql://localhost/test" ),
+				"dbp_1234_1",
+				null
+		);
+		assertThat( postgresql.get( Profile.URL ), equalTo( "jdbc:postgresql://localhost/test?currentSchema=dbp_1234_1" ) );
+		assertThat( postgresql.get( SchemaStrategy.DEFAULT_SCHEMA ), equalTo( "dbp_1234_1" ) );
+
+		final Map<String, String> mysql = SchemaStrategy.MYSQL.connectionProperties(
+				Collections.singletonMap( Profile.URL, "jdbc:mysql://localhost:3306/test?useSSL=false" ),
+				"dbp_1234_2",
+				null
+		);
+		assertThat( mysql.get( Profile.URL ), equalTo( "jdbc:mysql://localhost:3306/dbp_1234_2?useSSL=false" ) );
+
+		final Map<String, String> oracle = SchemaStrategy.ORACLE.connectionProperties(
+				Collections.singletonMap( Profile.URL, "jdbc:oracle:thin:@localhost:1521/xe" ),
+				"dbp_1234_3",
+				"P0123456789"
+		);
+		assertThat( oracle.get( Profile.URL ), equalTo( "jdbc:oracle:thin:@localhost:1521/xe" ) );
+		assertThat( oracle.get( Profile.USERNAME ), equalTo( "dbp_1234_3" ) );
+		assertThat( oracle.get( Profile.PASSWORD ), equalTo( "P0123456789" ) );
+
+		final Map<String, String> sqlServer = SchemaStrategy.SQLSERVER.connectionProperties(
+				Collections.singletonMap( Profile.URL, "jdbc:sqlserver://localhost:1433;DatabaseName=test;sendTimeAsDatetime=false" ),
+				"dbp_1234_4",
+				null
+		);
+		assertThat(
+				sqlServer.get( Profile.URL ),
+				equalTo( "jdbc:sqlserver://localhost:1433;sendTimeAsDatetime=false;databaseName=dbp_1234_4" )
+		);
+		assertThat( sqlServer.get( SchemaStrategy.DEFAULT_CATALOG ), equalTo( "dbp_1234_4" ) );
+	}
+
+	@Test
+	public void testInMemoryUrls() {
+		assertThat( PoolSpec.isInMemory( "jdbc:h2:mem:test" ), is( true ) );
+		assertThat( PoolSpec.isInMemory( "jdbc:derby:memory:test;create=true" ), is( true ) );
+		assertThat( PoolSpec.isInMemory( "jdbc:h2:./target/test" ), is( false ) );
+		assertThat( PoolSpec.isInMemory( "jdbc:postgresql://localhost/test" ), is( false ) );
+	}
+
+	@Test
+	public void testOrphans() {
+		final long now = System.currentTimeMillis();
+		final String buildId = AllocationRegistry.newBuildId( now );
+		final String oldBuildId = AllocationRegistry.newBuildId( now - TimeUnit.DAYS.toMillis( 2 ) );
+		final String recentBuildId = AllocationRegistry.newBuildId( now - TimeUnit.MINUTES.toMillis( 5 ) );
+
+		assertThat( AllocationRegistry.buildStartTime( buildId ), is( TimeUnit.SECONDS.toMillis( TimeUnit.MILLISECONDS.toSeconds( now ) ) ) );
+		assertThat( AllocationRegistry.buildStartTime( "12345678" ), is( -1L ) );
+
+		assertThat(
+				SchemaPool.orphans(
+						Arrays.asList(
+								"public",
+								"dbp_" + buildId + "_1",
+								// Derby and Oracle report the names in upper case
+								( "dbp_" + oldBuildId + "_1" ).toUpperCase(),
+								"dbp_" + recentBuildId + "_2",
+								"other_" + oldBuildId + "_1"
+						),
+						"dbp",
+						buildId,
+						now,
+						TimeUnit.HOURS.toMillis( 24 )
+				),
+				equalTo( Collections.singletonList( ( "dbp_" + oldBuildId + "_1" ).toUpperCase() ) )
+		);
+	}
+
+	@Test
+	public void testForkProvisioningUrl() {
+		assertThat(
+				ForkSchemasAllocation.provisioningUrl( "jdbc:postgresql://localhost/test?currentSchema=orm_{fork}&ssl=false" ),
+				equalTo( "jdbc:postgresql://localhost/test?ssl=false" )
+		);
+		assertThat(
+				ForkSchemasAllocation.provisioningUrl( "jdbc:h2:mem:test;SCHEMA=orm_{fork};MODE=PostgreSQL" ),
+				equalTo( "jdbc:h2:mem:test;MODE=PostgreSQL" )
+		);
+	}
+
+	@Test
+	public void testStatementResolution() {
+		assertThat(
+				SchemaStrategy.resolve( SchemaStrategy.SCHEMA.dropStatements(), "dbp_1234_1" ),
+				equalTo( Collections.singletonList( "DROP SCHEMA dbp_1234_1 CASCADE" ) )
+		);
+		assertThat(
+				SchemaStrategy.resolve( SchemaStrategy.ORACLE.createStatements(), "dbp_1234_1", "P0123456789" ).get( 0 ),
+				equalTo( "CREATE USER dbp_1234_1 IDENTIFIED BY \"P0123456789\" QUOTA UNLIMITED ON USERS" )
+		);
+	}
+
+	@Test
+	public void testRandomPasswords() {
+		final String password = SchemaPool.newPassword();
+		assertThat( password.length(), is( 24 ) );
+		assertThat( Character.isLetter( password.charAt( 0 ) ), is( true ) );
+		assertThat( password.equals( SchemaPool.newPassword() ), is( false ) );
+	}
+}